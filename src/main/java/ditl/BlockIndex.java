@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public final class BlockIndex {
+
+    private final static int BITS_PER_ID = 8;
+    private final static int MAX_WORDS = 1024;
+    private final static int N_HASHES = 3;
+
+    private int n_blocks = 0;
+    private long[] positions = new long[64];
+    private int[] mins = new int[64];
+    private int[] maxs = new int[64];
+    private int[] word_offsets = new int[65];
+    private long[] words = new long[64];
+
+    private BlockIndex() {
+    }
+
+    public static BlockIndex open(InputStream is) throws IOException {
+        final BlockIndex bi = new BlockIndex();
+        final CodedInputStream in = new CodedInputStream(new BufferedInputStream(is));
+        long position = 0;
+        while (!in.isAtEnd()) {
+            position += in.readLong();
+            final int n_ids = in.readInt();
+            if (n_ids == 0) {
+                bi.append(position, Integer.MAX_VALUE, Integer.MIN_VALUE, 0);
+            } else {
+                final int min = in.readSInt();
+                final int max = min + in.readInt();
+                final int n_words = in.readInt();
+                bi.append(position, min, max, n_words);
+                final int offset = bi.word_offsets[bi.n_blocks - 1];
+                for (int i = 0; i < n_words; ++i)
+                    bi.words[offset + i] = in.readFixedLong();
+            }
+        }
+        in.close();
+        return bi;
+    }
+
+    private void append(long position, int min, int max, int n_words) {
+        if (n_blocks == positions.length) {
+            final int len = n_blocks << 1;
+            positions = Arrays.copyOf(positions, len);
+            mins = Arrays.copyOf(mins, len);
+            maxs = Arrays.copyOf(maxs, len);
+            word_offsets = Arrays.copyOf(word_offsets, len + 1);
+        }
+        final int offset = word_offsets[n_blocks];
+        if (offset + n_words > words.length)
+            words = Arrays.copyOf(words, Math.max(words.length << 1, offset + n_words));
+        positions[n_blocks] = position;
+        mins[n_blocks] = min;
+        maxs[n_blocks] = max;
+        word_offsets[n_blocks + 1] = offset + n_words;
+        n_blocks++;
+    }
+
+    // sortedIds must be sorted in ascending order. Blocks that were not
+    // indexed are always assumed to contain the ids.
+    public boolean mayContain(long position, int[] sortedIds) {
+        final int k = Arrays.binarySearch(positions, 0, n_blocks, position);
+        if (k < 0)
+            return true;
+        final int min = mins[k];
+        final int max = maxs[k];
+        if (min > max)
+            return false;
+        int j = Arrays.binarySearch(sortedIds, min);
+        if (j < 0)
+            j = -(j + 1);
+        final int offset = word_offsets[k];
+        final int n_words = word_offsets[k + 1] - offset;
+        final boolean exact = isExact(min, max, n_words);
+        for (; j < sortedIds.length && sortedIds[j] <= max; ++j) {
+            final int id = sortedIds[j];
+            if (exact) {
+                final int bit = id - min;
+                if ((words[offset + (bit >>> 6)] & (1L << bit)) != 0)
+                    return true;
+            } else if (bloomContains(words, offset, n_words, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return n_blocks;
+    }
+
+    // blocks whose id range fits in the summary are stored as an exact bitmap
+    // offset by min rather than as a bloom filter
+    private static boolean isExact(int min, int max, int n_words) {
+        return (long) max - (long) min < ((long) n_words << 6);
+    }
+
+    private static long hash(int id) {
+        return id * 0x9E3779B97F4A7C15L;
+    }
+
+    private static boolean bloomContains(long[] bloom, int offset, int n_words, int id) {
+        final long h = hash(id);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32);
+        final int n_bits = n_words << 6;
+        for (int i = 0; i < N_HASHES; ++i) {
+            final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % n_bits;
+            if ((bloom[offset + (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static void bloomAdd(long[] bloom, int n_words, int id) {
+        final long h = hash(id);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32);
+        final int n_bits = n_words << 6;
+        for (int i = 0; i < N_HASHES; ++i) {
+            final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % n_bits;
+            bloom[bit >>> 6] |= (1L << bit);
+        }
+    }
+
+    public static final class Writer implements IdCollector {
+        private final OutputStream _os;
+        private final CodedBuffer _buffer = new CodedBuffer();
+        private int[] ids = new int[64];
+        private int n_ids = 0;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+        private long prev_position = 0;
+        private long[] bloom = new long[MAX_WORDS];
+
+        public Writer(OutputStream out) {
+            _os = new BufferedOutputStream(out);
+        }
+
+        @Override
+        public void add(int id) {
+            if (n_ids == ids.length)
+                ids = Arrays.copyOf(ids, n_ids << 1);
+            ids[n_ids++] = id;
+            if (id < min)
+                min = id;
+            if (id > max)
+                max = id;
+        }
+
+        // closes the block starting at the given byte position in the
+        // trace file with all the ids collected since the previous call
+        public void append(long position) throws IOException {
+            _buffer.writeLong(position - prev_position);
+            _buffer.writeInt(n_ids);
+            if (n_ids > 0) {
+                final long range = (long) max - (long) min + 1;
+                int n_words = Math.min(MAX_WORDS, (n_ids * BITS_PER_ID + 63) >>> 6);
+                if (range <= ((long) n_words << 6)) {
+                    n_words = (int) ((range + 63) >>> 6);
+                    Arrays.fill(bloom, 0, n_words, 0L);
+                    for (int i = 0; i < n_ids; ++i) {
+                        final int bit = ids[i] - min;
+                        bloom[bit >>> 6] |= (1L << bit);
+                    }
+                } else {
+                    Arrays.fill(bloom, 0, n_words, 0L);
+                    for (int i = 0; i < n_ids; ++i)
+                        bloomAdd(bloom, n_words, ids[i]);
+                }
+                _buffer.writeSInt(min);
+                _buffer.writeInt(max - min);
+                _buffer.writeInt(n_words);
+                for (int i = 0; i < n_words; ++i)
+                    _buffer.writeFixedLong(bloom[i]);
+            }
+            _buffer.flush(_os);
+            prev_position = position;
+            n_ids = 0;
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+        }
+
+        public void close() throws IOException {
+            _os.close();
+        }
+    }
+}
@@ -78,33 +78,30 @@ public class Bus<E> {
 
     public boolean removeFromQueueAfterTime(long time, Matcher<E> matcher) {
         boolean changed = false;
-        final Iterator<Long> i = buffer.keySet().iterator();
+        final Iterator<List<E>> i = buffer.tailMap(time, true).values().iterator();
         while (i.hasNext()) {
-            final Long t = i.next();
-            if (t >= time) {
-                final List<E> events = buffer.get(t);
-                final Iterator<E> j = events.iterator();
-                while (j.hasNext()) {
-                    final E event = j.next();
-                    if (matcher.matches(event)) {
-                        j.remove();
-                        changed = true;
-                    }
+            final List<E> events = i.next();
+            final Iterator<E> j = events.iterator();
+            while (j.hasNext()) {
+                final E event = j.next();
+                if (matcher.matches(event)) {
+                    j.remove();
+                    changed = true;
                 }
-                if (events.isEmpty())
-                    i.remove();
             }
+            if (events.isEmpty())
+                i.remove();
         }
         return changed;
     }
 
     public void flush() throws IOException {
-        while (!buffer.isEmpty())
+        while (hasNextEvent())
             signalNext();
     }
 
     public void flush(long maxTime) throws IOException {
-        while (!buffer.isEmpty() && buffer.firstKey() <= maxTime)
+        while (hasNextEvent() && nextEventTime() <= maxTime)
             signalNext();
     }
 
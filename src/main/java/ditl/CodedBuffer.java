@@ -96,6 +96,10 @@ public class CodedBuffer {
         writeRawLittleEndian64(Double.doubleToRawLongBits(value));
     }
 
+    public void writeFixedLong(final long value) {
+        writeRawLittleEndian64(value);
+    }
+
     public void writeSIntSet(final Set<Integer> integers) {
         writeInt(integers.size());
         for (Integer i : integers)
@@ -95,6 +95,10 @@ public class CodedInputStream {
         return Double.longBitsToDouble(readRawLittleEndian64());
     }
 
+    public long readFixedLong() throws IOException {
+        return readRawLittleEndian64();
+    }
+
     public Set<Integer> readSIntSet() throws IOException {
         Set<Integer> integers = new HashSet<Integer>();
         int size = readInt();
@@ -150,6 +154,10 @@ public class CodedInputStream {
         return (n >>> 1) ^ -(n & 1);
     }
 
+    public long position() {
+        return position;
+    }
+
     public void mark() {
         mark = position;
     }
@@ -40,6 +40,7 @@ public class FilterConverter implements Converter {
         final Filter filter = ((Trace.Filterable) _from).eventFilter(_group);
         final Reader reader = _from.getReader();
         final Writer writer = _to.getWriter();
+        reader.skipBlocksNotContaining(_group);
         reader.seek(_from.minTime());
 
         if (_from instanceof StatefulTrace) {
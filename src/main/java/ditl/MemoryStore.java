@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Keeps the files of new traces in memory, up to max_bytes, and spills the
+// rest to a temporary directory. The traces of the parent store are visible
+// through this store, and new traces are only written to the parent when
+// persisted.
+public class MemoryStore extends WritableStore {
+
+    final private static int chunk = 1 << 16;
+
+    private final WritableStore parent;
+    private final long max_bytes;
+    private final File spill_root;
+    private DirectoryStore spill = null;
+    private final Map<String, Buffer> in_memory = new HashMap<String, Buffer>();
+    private final Set<String> spilled = new HashSet<String>();
+    private long used = 0;
+
+    public MemoryStore(long maxBytes) throws IOException {
+        this(null, maxBytes, null);
+    }
+
+    public MemoryStore(WritableStore parentStore, long maxBytes, File spillDir) throws IOException {
+        parent = parentStore;
+        max_bytes = maxBytes;
+        spill_root = spillDir;
+        if (parent != null) {
+            traces.putAll(parent.traces);
+            setBlockIndexing(parent.isBlockIndexing());
+            setNodeIndexing(parent.isNodeIndexing());
+            setStateCacheSize(parent.stateCacheSize());
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        InputStream newInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    private final class TierOutputStream extends OutputStream {
+        private final String name;
+        private Buffer buffer = new Buffer();
+        private OutputStream file = null;
+        private long reserved = 0;
+        private boolean closed = false;
+
+        TierOutputStream(String fileName) {
+            name = fileName;
+        }
+
+        private void ensure(int len) throws IOException {
+            if (file != null)
+                return;
+            final long needed = buffer.size() + len;
+            if (needed > reserved) {
+                final long more = reserve(needed - reserved, Math.max(needed - reserved, chunk));
+                if (more > 0)
+                    reserved += more;
+                else {
+                    file = new BufferedOutputStream(spillStore().getOutputStream(name));
+                    buffer.writeTo(file);
+                    buffer = null;
+                    release(reserved);
+                    reserved = 0;
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensure(1);
+            if (file != null)
+                file.write(b);
+            else
+                buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensure(len);
+            if (file != null)
+                file.write(b, off, len);
+            else
+                buffer.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (file != null)
+                file.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            if (file != null) {
+                file.close();
+                synchronized (MemoryStore.this) {
+                    spilled.add(name);
+                }
+            } else {
+                release(reserved - buffer.size());
+                synchronized (MemoryStore.this) {
+                    in_memory.put(name, buffer);
+                }
+            }
+        }
+    }
+
+    // grants between min and max bytes, or nothing
+    private synchronized long reserve(long min, long max) {
+        final long bytes = Math.min(max, max_bytes - used);
+        if (bytes < min)
+            return 0;
+        used += bytes;
+        return bytes;
+    }
+
+    private synchronized void release(long bytes) {
+        used -= bytes;
+    }
+
+    private synchronized DirectoryStore spillStore() throws IOException {
+        if (spill == null) {
+            File dir;
+            if (spill_root == null) {
+                dir = File.createTempFile("ditl", null);
+                dir.delete();
+            } else
+                dir = new File(spill_root, "ditl-" + System.nanoTime());
+            spill = new DirectoryStore(dir);
+        }
+        return spill;
+    }
+
+    private synchronized boolean hasOwnFile(String name) {
+        return in_memory.containsKey(name) || spilled.contains(name);
+    }
+
+    private synchronized void deleteOwnFile(String name) throws IOException {
+        final Buffer buffer = in_memory.remove(name);
+        if (buffer != null)
+            used -= buffer.size();
+        else if (spilled.remove(name))
+            spill.deleteFile(name);
+    }
+
+    private synchronized List<String> ownFiles(String traceName) {
+        final String dir = traceName + separator;
+        final List<String> files = new ArrayList<String>();
+        for (final String name : in_memory.keySet())
+            if (name.startsWith(dir))
+                files.add(name);
+        for (final String name : spilled)
+            if (name.startsWith(dir))
+                files.add(name);
+        return files;
+    }
+
+    public boolean isOwnTrace(String name) {
+        return hasOwnFile(infoFile(name));
+    }
+
+    public synchronized long usedBytes() {
+        return used;
+    }
+
+    @Override
+    public boolean hasFile(String name) {
+        return hasOwnFile(name) || (parent != null && parent.hasFile(name));
+    }
+
+    @Override
+    public synchronized InputStream getInputStream(String name) throws IOException {
+        final Buffer buffer = in_memory.get(name);
+        if (buffer != null)
+            return buffer.newInputStream();
+        if (spilled.contains(name))
+            return spill.getInputStream(name);
+        if (parent != null)
+            return parent.getInputStream(name);
+        throw new IOException("No such file '" + name + "'");
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream(String name) throws IOException {
+        deleteOwnFile(name);
+        return new TierOutputStream(name);
+    }
+
+    @Override
+    public synchronized void deleteFile(String name) throws IOException {
+        if (hasOwnFile(name))
+            deleteOwnFile(name);
+        else if (parent != null)
+            parent.deleteFile(name);
+        else
+            throw new IOException("Could not delete '" + name + "'");
+    }
+
+    @Override
+    public synchronized void deleteTrace(String name) throws IOException {
+        if (isOwnTrace(name))
+            for (final String file : ownFiles(name))
+                deleteOwnFile(file);
+        else if (parent != null)
+            parent.deleteTrace(name);
+        traces.remove(name);
+    }
+
+    @Override
+    public synchronized void moveTrace(String origName, String destName, boolean force) throws IOException {
+        if (!isOwnTrace(origName)) {
+            if (parent == null)
+                throw new IOException("No such trace '" + origName + "'");
+            parent.moveTrace(origName, destName, force);
+            return;
+        }
+        if (hasTrace(destName))
+            if (force)
+                deleteTrace(destName);
+            else
+                throw new IOException("A trace with name '" + destName + "' already exists!");
+        for (final String file : ownFiles(origName)) {
+            final String dest_file = destName + file.substring(origName.length());
+            final Buffer buffer = in_memory.remove(file);
+            if (buffer != null)
+                in_memory.put(dest_file, buffer);
+            else {
+                copy(spill.getInputStream(file), spill.getOutputStream(dest_file));
+                spill.deleteFile(file);
+                spilled.remove(file);
+                spilled.add(dest_file);
+            }
+        }
+        traces.remove(origName);
+        reload(destName);
+    }
+
+    // Writes a trace of this store to the parent store, replacing any trace
+    // with the same name there, and frees its files.
+    public synchronized void persistTrace(String name) throws IOException {
+        if (!isOwnTrace(name))
+            return;
+        if (parent == null)
+            throw new IOException("Cannot persist trace '" + name + "': store has no parent");
+        if (parent.hasTrace(name))
+            parent.deleteTrace(name);
+        parent.copyTrace(this, getTrace(name));
+        try {
+            parent.loadTrace(name);
+        } catch (final ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        }
+        for (final String file : ownFiles(name))
+            deleteOwnFile(file);
+        traces.put(name, parent.getTrace(name));
+    }
+
+    public synchronized void persistAll() throws IOException {
+        for (final String name : new ArrayList<String>(traces.keySet()))
+            persistTrace(name);
+    }
+
+    private void reload(String name) throws IOException {
+        try {
+            loadTrace(name);
+        } catch (final ClassNotFoundException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        synchronized (this) {
+            in_memory.clear();
+            spilled.clear();
+            used = 0;
+            if (spill != null) {
+                spill.close();
+                spill.rec_delete(spill.root);
+                spill = null;
+            }
+        }
+    }
+}
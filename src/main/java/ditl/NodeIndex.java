@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public final class NodeIndex {
+
+    private NodeIndex() {
+    }
+
+    // returns the sorted positions of all the event blocks that involve at
+    // least one of the given nodes
+    public static long[] positions(InputStream is, Set<Integer> nodes) throws IOException {
+        final CodedInputStream in = new CodedInputStream(new BufferedInputStream(is));
+        long[] positions = new long[64];
+        int n = 0;
+        int n_lists = 0;
+        while (!in.isAtEnd()) {
+            final int id = in.readSInt();
+            final int count = in.readInt();
+            final int n_bytes = in.readInt();
+            if (nodes.contains(id)) {
+                if (n + count > positions.length)
+                    positions = Arrays.copyOf(positions, Math.max(positions.length << 1, n + count));
+                long position = 0;
+                for (int i = 0; i < count; ++i) {
+                    position += in.readLong();
+                    positions[n++] = position;
+                }
+                n_lists++;
+            } else {
+                in.skip(n_bytes);
+            }
+        }
+        in.close();
+        if (n_lists > 1) {
+            Arrays.sort(positions, 0, n);
+            int k = 0;
+            for (int i = 0; i < n; ++i)
+                if (k == 0 || positions[i] != positions[k - 1])
+                    positions[k++] = positions[i];
+            n = k;
+        }
+        return Arrays.copyOf(positions, n);
+    }
+
+    public static <I extends Item> void build(Trace<I> trace) throws IOException {
+        if (!(trace._store instanceof WritableStore))
+            throw new IOException("Cannot index trace '" + trace.name() + "' in a read-only store");
+        if (!(trace instanceof Trace.Indexable<?>))
+            throw new IOException("Trace '" + trace.name() + "' cannot be indexed by node");
+        @SuppressWarnings("unchecked")
+        final Trace.Indexable<I> indexer = (Trace.Indexable<I>) trace;
+        final WritableStore store = (WritableStore) trace._store;
+        final Item.Factory<I> factory = trace.factory();
+        final NodeIndex.Writer writer = new NodeIndex.Writer(store.getOutputStream(trace.nodeIndexFile()));
+        final CodedInputStream in = new CodedInputStream(new BufferedInputStream(store.getInputStream(trace.traceFile())));
+        while (!in.isAtEnd()) {
+            final long position = in.position();
+            final byte flag = in.readByte();
+            final int n_bytes = in.readInt();
+            in.readSLong();
+            if (flag == 0) {
+                in.mark();
+                while (in.bytesReadSinceMark() < n_bytes)
+                    indexer.collectIds(factory.fromBinaryStream(in), writer);
+                writer.append(position);
+            } else {
+                in.skip(n_bytes);
+            }
+        }
+        in.close();
+        writer.close();
+        trace.set(Trace.nodeIndexKey, true);
+        store.writeInfo(trace);
+    }
+
+    private final static class Postings {
+        final CodedBuffer buffer = new CodedBuffer(8);
+        long last = -1;
+        int count = 0;
+    }
+
+    public static final class Writer implements IdCollector {
+        private final OutputStream _os;
+        private final Map<Integer, Postings> postings = new HashMap<Integer, Postings>();
+        private int[] ids = new int[64];
+        private int n_ids = 0;
+
+        public Writer(OutputStream out) {
+            _os = new BufferedOutputStream(out);
+        }
+
+        @Override
+        public void add(int id) {
+            if (n_ids == ids.length)
+                ids = Arrays.copyOf(ids, n_ids << 1);
+            ids[n_ids++] = id;
+        }
+
+        // assigns all the ids collected since the previous call to the block
+        // starting at the given byte position in the trace file
+        public void append(long position) {
+            for (int i = 0; i < n_ids; ++i) {
+                Postings p = postings.get(ids[i]);
+                if (p == null) {
+                    p = new Postings();
+                    postings.put(ids[i], p);
+                }
+                if (p.last != position) {
+                    p.buffer.writeLong(p.last < 0 ? position : position - p.last);
+                    p.last = position;
+                    p.count++;
+                }
+            }
+            n_ids = 0;
+        }
+
+        public void close() throws IOException {
+            final CodedBuffer header = new CodedBuffer(16);
+            for (final Map.Entry<Integer, Postings> e : postings.entrySet()) {
+                final Postings p = e.getValue();
+                header.writeSInt(e.getKey());
+                header.writeInt(p.count);
+                header.writeInt(p.buffer.bytesInBuffer());
+                header.flush(_os);
+                p.buffer.flush(_os);
+            }
+            _os.close();
+        }
+    }
+}
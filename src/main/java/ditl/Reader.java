@@ -20,9 +20,12 @@ package ditl;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 public class Reader<I extends Item> implements Generator {
 
@@ -38,9 +41,14 @@ public class Reader<I extends Item> implements Generator {
 
     byte next_flag;
     private int next_block_bytes;
+    long next_block_position;
 
     private CodedInputStream cis;
     final SeekMap seek_map;
+    private BlockIndex block_index = null;
+    private int[] block_ids = null;
+    private long[] node_positions = null;
+    private NodeSelection<I> node_selection = null;
 
     private final Store _store;
     private final Trace<I> _trace;
@@ -103,10 +111,21 @@ public class Reader<I extends Item> implements Generator {
 
     void step() throws IOException {
         buffer = readItemBlock(_factory);
+        if (node_selection != null)
+            node_selection.retain(buffer);
+        buffer = decode(buffer);
         prev_time = next_time;
         readHeader();
     }
 
+    List<I> decode(List<I> items) {
+        return items;
+    }
+
+    long position() {
+        return cis.position();
+    }
+
     void skipBlock() throws IOException {
         cis.skip(next_block_bytes);
     }
@@ -123,6 +142,60 @@ public class Reader<I extends Item> implements Generator {
         _bus = bus;
     }
 
+    public void skipBlocksNotContaining(Set<Integer> ids) throws IOException {
+        block_ids = null;
+        node_positions = null;
+        if (ids == null)
+            return;
+        if (_trace.hasNodeIndex()) {
+            node_positions = NodeIndex.positions(_store.getInputStream(_trace.nodeIndexFile()), ids);
+        } else if (_trace.hasBlockIndex()) {
+            if (block_index == null)
+                block_index = BlockIndex.open(_store.getInputStream(_trace.blockIndexFile()));
+            block_ids = new int[ids.size()];
+            int k = 0;
+            for (final Integer id : ids)
+                block_ids[k++] = id;
+            Arrays.sort(block_ids);
+        }
+    }
+
+    // only return the items that involve at least one of the given nodes
+    @SuppressWarnings("unchecked")
+    public void selectNodes(Set<Integer> nodes) throws IOException {
+        if (!(_trace instanceof Trace.Indexable<?>))
+            throw new IOException("Trace '" + _trace.name() + "' cannot be restricted to a set of nodes");
+        skipBlocksNotContaining(nodes);
+        node_selection = (nodes == null) ? null : new NodeSelection<I>((Trace.Indexable<I>) _trace, nodes);
+    }
+
+    private final static class NodeSelection<I extends Item> implements IdCollector {
+        private final Trace.Indexable<I> _indexer;
+        private final Set<Integer> _nodes;
+        private boolean found;
+
+        NodeSelection(Trace.Indexable<I> indexer, Set<Integer> nodes) {
+            _indexer = indexer;
+            _nodes = nodes;
+        }
+
+        @Override
+        public void add(int id) {
+            if (_nodes.contains(id))
+                found = true;
+        }
+
+        void retain(List<I> items) {
+            final Iterator<I> i = items.iterator();
+            while (i.hasNext()) {
+                found = false;
+                _indexer.collectIds(i.next(), this);
+                if (!found)
+                    i.remove();
+            }
+        }
+    }
+
     private void init() throws IOException {
         _store.notifyOpen(this);
         cis = new CodedInputStream(new BufferedInputStream(_store.getInputStream(_trace.traceFile())));
@@ -133,13 +206,33 @@ public class Reader<I extends Item> implements Generator {
     }
 
     void readHeader() throws IOException {
-        if (!cis.isAtEnd()) {
+        while (!cis.isAtEnd()) {
+            final long position = cis.position();
             next_flag = cis.readByte();
             next_block_bytes = cis.readInt();
             next_time = cis.readSLong();
-        } else {
-            next_time = Long.MAX_VALUE;
+            next_block_position = position;
+            // state blocks are never skipped
+            if (next_flag != 0)
+                return;
+            if (node_positions != null) {
+                int k = Arrays.binarySearch(node_positions, position);
+                if (k >= 0)
+                    return;
+                k = -(k + 1);
+                if (k == node_positions.length) {
+                    skipBlock();
+                    break;
+                }
+                // jump straight to the next block involving the nodes
+                cis.fastForwardTo(node_positions[k]);
+            } else if (block_ids == null || block_index.mayContain(position, block_ids)) {
+                return;
+            } else {
+                skipBlock();
+            }
         }
+        next_time = Long.MAX_VALUE;
     }
 
     <E extends Item> List<E> readItemBlock(Item.Factory<E> factory) throws IOException {
@@ -157,7 +250,10 @@ public class Reader<I extends Item> implements Generator {
     }
 
     void fastSeek(long time) throws IOException {
-        long absolutePosition = seek_map.getOffset(time);
+        jumpTo(seek_map.getOffset(time));
+    }
+
+    void jumpTo(long absolutePosition) throws IOException {
         if (cis.canFastForwardTo(absolutePosition)) {
             cis.fastForwardTo(absolutePosition);
             readHeader();
@@ -170,6 +266,10 @@ public class Reader<I extends Item> implements Generator {
         }
     }
 
+    boolean isSelecting() {
+        return block_ids != null || node_positions != null;
+    }
+
     @Override
     public Bus<?>[] busses() {
         return new Bus<?>[] { _bus };
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// LRU of materialized states, keyed by the time at which they were reached.
+// Shared by all the readers of a given stateful trace. Cached states are
+// never handed out directly: readers copy them in and out.
+final class StateCache {
+
+    final static int itemCost = 64; // rough footprint of a cached state item
+
+    static final class Keyframe {
+        final long time;
+        final long position; // header of the next block to read
+        final List<?> states;
+
+        Keyframe(long t, long pos, List<?> items) {
+            time = t;
+            position = pos;
+            states = items;
+        }
+
+        long cost() {
+            return (long) states.size() * itemCost;
+        }
+    }
+
+    private final TreeMap<Long, Keyframe> by_time = new TreeMap<Long, Keyframe>();
+    private final LinkedHashMap<Long, Keyframe> lru = new LinkedHashMap<Long, Keyframe>(16, 0.75f, true);
+    private final long _budget;
+    private long bytes = 0;
+
+    StateCache(long budget) {
+        _budget = budget;
+    }
+
+    synchronized Keyframe floor(long time) {
+        final Map.Entry<Long, Keyframe> e = by_time.floorEntry(time);
+        if (e == null)
+            return null;
+        lru.get(e.getKey()); // touch
+        return e.getValue();
+    }
+
+    synchronized void put(long time, long position, List<?> states) {
+        final Keyframe k = new Keyframe(time, position, states);
+        if (k.cost() > _budget || by_time.containsKey(time))
+            return;
+        by_time.put(time, k);
+        lru.put(time, k);
+        bytes += k.cost();
+        final Iterator<Keyframe> i = lru.values().iterator();
+        while (bytes > _budget) {
+            final Keyframe old = i.next();
+            i.remove();
+            by_time.remove(old.time);
+            bytes -= old.cost();
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package ditl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 public class StatefulReader<E extends Item, S extends Item> extends Reader<E> {
@@ -26,11 +29,21 @@ public class StatefulReader<E extends Item, S extends Item> extends Reader<E> {
     private final StateUpdater<E, S> _updater;
     private Bus<S> state_bus = new Bus<S>();
     private final Item.Factory<S> state_factory;
+    private final StatefulTrace<E, S> _trace;
+    private final StatefulTrace.Decoder<E, S> decoder;
 
     StatefulReader(StatefulTrace<E, S> trace, int priority, long offset) throws IOException {
+        this(trace, priority, offset, true);
+    }
+
+    // without decoding, the items of a compressed trace are read as they are
+    // stored
+    StatefulReader(StatefulTrace<E, S> trace, int priority, long offset, boolean decode) throws IOException {
         super(trace, priority, offset);
         _updater = trace.getNewUpdaterFactory();
         state_factory = trace.stateFactory();
+        _trace = trace;
+        decoder = decode ? trace.newDecoder() : null;
     }
 
     public Set<S> referenceState() {
@@ -39,22 +52,95 @@ public class StatefulReader<E extends Item, S extends Item> extends Reader<E> {
 
     @Override
     public void seek(long time) throws IOException {
-        if (seek_map.getOffset(time + _offset) == Long.MIN_VALUE) {
+        final long t = time + _offset;
+        // a decoder cannot resume from a cached state
+        final StateCache cache = (isSelecting() || decoder != null) ? null : _trace.stateCache();
+        final StateCache.Keyframe keyframe = (cache != null) ? cache.floor(t) : null;
+        // prefer a cached state if it is at least as recent as the last snapshot
+        if (keyframe != null && keyframe.position >= seek_map.getOffset(t))
+            loadKeyframe(keyframe);
+        else
+            loadSnapshot(t);
+        if (replayUntil(t) > 0 && cache != null && hasNext())
+            cache.put(t, next_block_position, copyStates(_updater.states()));
+        state_bus.queue(time, _updater.states());
+        cur_time = time + _offset;
+    }
+
+    // Visits the state at each of the given times in a single forward pass.
+    // Between two consecutive times, the reader only jumps to a snapshot if
+    // one lies ahead of the current replay position. The state set handed to
+    // the visitor is live and is only valid during the call to visit.
+    public void statesAt(long[] sortedTimes, StateVisitor<S> visitor) throws IOException {
+        boolean positioned = false;
+        long last = Long.MIN_VALUE;
+        for (final long time : sortedTimes) {
+            final long t = time + _offset;
+            if (!positioned || t < last || seek_map.getOffset(t) > position()) {
+                loadSnapshot(t);
+                positioned = true;
+            }
+            replayUntil(t);
+            cur_time = t;
+            last = t;
+            visitor.visit(time, _updater.states());
+        }
+    }
+
+    private void loadSnapshot(long time) throws IOException {
+        if (seek_map.getOffset(time) == Long.MIN_VALUE) {
             throw new IOException("Cannot seek before initial state");
         }
-        fastSeek(time + _offset);
+        fastSeek(time);
         // we always hit a state item block after this step
-        _updater.setState(readItemBlock(state_factory));
+        final List<S> states = readItemBlock(state_factory);
+        _updater.setState((decoder != null) ? decoder.decodeState(states) : states);
         prev_time = next_time;
         readHeader();
-        while (hasNext() && next_time < time + _offset) {
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadKeyframe(StateCache.Keyframe keyframe) throws IOException {
+        jumpTo(keyframe.position);
+        _updater.setState(copyStates((List<S>) keyframe.states));
+        prev_time = keyframe.time;
+    }
+
+    private List<S> copyStates(Collection<S> states) throws IOException {
+        final List<S> copies = new ArrayList<S>(states.size());
+        for (final S state : states)
+            copies.add(_trace.copyState(state));
+        return copies;
+    }
+
+    private int replayUntil(long time) throws IOException {
+        int n = 0;
+        while (hasNext() && next_time < time) {
             for (final E event : next()) {
                 // cur_time is updated by call to next
                 _updater.handleEvent(cur_time, event);
             }
+            n++;
         }
-        state_bus.queue(time, _updater.states());
-        cur_time = time + _offset;
+        return n;
+    }
+
+    @Override
+    public void selectNodes(Set<Integer> nodes) throws IOException {
+        if (decoder != null && nodes != null)
+            throw new IOException("Trace '" + _trace.name() + "' is compressed and cannot be restricted to a set of nodes");
+        super.selectNodes(nodes);
+    }
+
+    // a decoder has to see every block, so none are skipped
+    @Override
+    public void skipBlocksNotContaining(Set<Integer> ids) throws IOException {
+        super.skipBlocksNotContaining((decoder != null) ? null : ids);
+    }
+
+    @Override
+    List<E> decode(List<E> events) {
+        return (decoder != null) ? decoder.decodeEvents(events) : events;
     }
 
     public void setStateBus(Bus<S> bus) {
@@ -18,7 +18,10 @@
  *******************************************************************************/
 package ditl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 
 import net.sf.json.JSONObject;
@@ -27,11 +30,21 @@ public abstract class StatefulTrace<E extends Item, S extends Item> extends Trac
 
     protected Item.Factory<S> state_factory;
     protected StateUpdaterFactory<E, S> updater_factory;
+    private StateCache state_cache = null;
 
     public interface Filterable<E extends Item, S extends Item> extends Trace.Filterable<E> {
         public Filter<S> stateFilter(Set<Integer> group);
     }
 
+    // Turns the items of a compressed encoding into plain items as they are
+    // read. Decoding events may depend on the previous ones, so each reader
+    // has its own decoder.
+    public interface Decoder<E extends Item, S extends Item> {
+        public List<S> decodeState(List<S> states);
+
+        public List<E> decodeEvents(List<E> events);
+    }
+
     public StatefulTrace(Store store, String name, JSONObject config, Item.Factory<E> itemFactory,
             Item.Factory<S> stateFactory, StateUpdaterFactory<E, S> stateUpdaterFactory)
             throws IOException {
@@ -55,11 +68,33 @@ public abstract class StatefulTrace<E extends Item, S extends Item> extends Trac
         return getReader(defaultPriority(), 0L);
     }
 
+    // Reads the items as they are stored, without decoding them. Only the
+    // readers that do not decode share the state cache.
+    public StatefulReader<E, S> getEncodedReader(int priority, long offset) throws IOException {
+        return new StatefulReader<E, S>(this, priority, offset, false);
+    }
+
     @Override
     public StatefulWriter<E, S> getWriter() throws IOException {
         return new StatefulWriter<E, S>(this);
     }
 
+    synchronized StateCache stateCache() {
+        if (state_cache == null && _store.stateCacheSize() > 0)
+            state_cache = new StateCache(_store.stateCacheSize());
+        return state_cache;
+    }
+
+    // Copies a state item for the state cache. The default goes through the
+    // binary encoding, traces whose encoding is lossy should override this.
+    protected S copyState(S state) throws IOException {
+        final CodedBuffer buffer = new CodedBuffer(64);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        state.write(buffer);
+        buffer.flush(out);
+        return state_factory.fromBinaryStream(new CodedInputStream(new ByteArrayInputStream(out.toByteArray())));
+    }
+
     public Item.Factory<S> stateFactory() {
         return state_factory;
     }
@@ -73,4 +108,9 @@ public abstract class StatefulTrace<E extends Item, S extends Item> extends Trac
         return updater_factory.getNew();
     }
 
+    // null unless the trace uses a compressed encoding
+    protected Decoder<E, S> newDecoder() {
+        return null;
+    }
+
 }
@@ -26,6 +26,7 @@ import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.lang.reflect.Constructor;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -44,14 +45,21 @@ public abstract class Store {
     final protected static String infoFile = "info";
     final protected static String traceFile = "trace";
     final protected static String indexFile = "index";
+    final protected static String blockIndexFile = "blocks";
+    final protected static String nodeIndexFile = "nodes";
 
     protected String separator = "/";
 
-    final Map<String, Trace<?>> traces = new HashMap<String, Trace<?>>();
+    // converters may run concurrently on the same store
+    final Map<String, Trace<?>> traces = Collections.synchronizedMap(new HashMap<String, Trace<?>>());
     final static Map<String, Class<? extends Trace<?>>> type_class_map = buildTypeClassMap();
 
-    private final Set<Reader<?>> openReaders = new HashSet<Reader<?>>();
+    private final Set<Reader<?>> openReaders = Collections.synchronizedSet(new HashSet<Reader<?>>());
     private boolean closing = false;
+    private long state_cache_size = defaultStateCacheSize;
+
+    final public static long defaultStateCacheSize = 0; // no cache by default
+    final public static long seekingStateCacheSize = (16 << 20); // 16MB per trace, for tools that seek back and forth
 
     @SuppressWarnings("unchecked")
     private static Map<String, Class<? extends Trace<?>>> buildTypeClassMap() {
@@ -79,6 +87,14 @@ public abstract class Store {
         return name + separator + indexFile;
     }
 
+    String blockIndexFile(String name) {
+        return name + separator + blockIndexFile;
+    }
+
+    String nodeIndexFile(String name) {
+        return name + separator + nodeIndexFile;
+    }
+
     public Collection<Trace<?>> listTraces() {
         return traces.values();
     }
@@ -143,6 +159,14 @@ public abstract class Store {
         openReaders.add(reader);
     }
 
+    public void setStateCacheSize(long bytes) {
+        state_cache_size = bytes;
+    }
+
+    public long stateCacheSize() {
+        return state_cache_size;
+    }
+
     public void close() throws IOException {
         closing = true;
         for (final Reader<?> reader : openReaders)
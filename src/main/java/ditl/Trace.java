@@ -23,6 +23,8 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import net.sf.json.JSONObject;
@@ -44,7 +46,9 @@ public abstract class Trace<E extends Item> {
             minTimeKey = "min time",
             maxTimeKey = "max time",
             defaultPriorityKey = "default priority",
-            idMapKey = "id map";
+            idMapKey = "id map",
+            blockIndexKey = "block index",
+            nodeIndexKey = "node index";
 
     final public static int
             defaultPriority = 100,
@@ -65,6 +69,10 @@ public abstract class Trace<E extends Item> {
         public Filter<E> eventFilter(Set<Integer> group);
     }
 
+    public interface Indexable<E extends Item> {
+        public void collectIds(E item, IdCollector collector);
+    }
+
     public Trace(Store store, String name, JSONObject jsonConfig, Item.Factory<E> itemFactory) throws IOException {
         _store = store;
         _name = name;
@@ -76,6 +84,10 @@ public abstract class Trace<E extends Item> {
         return _name;
     }
 
+    public Store store() {
+        return _store;
+    }
+
     String indexFile() {
         return _store.indexFile(_name);
     }
@@ -88,6 +100,27 @@ public abstract class Trace<E extends Item> {
         return _store.infoFile(_name);
     }
 
+    String blockIndexFile() {
+        return _store.blockIndexFile(_name);
+    }
+
+    public boolean hasBlockIndex() {
+        return config.optBoolean(blockIndexKey) && _store.hasFile(blockIndexFile());
+    }
+
+    String nodeIndexFile() {
+        return _store.nodeIndexFile(_name);
+    }
+
+    public boolean hasNodeIndex() {
+        return config.optBoolean(nodeIndexKey) && _store.hasFile(nodeIndexFile());
+    }
+
+    // extra resources stored alongside the trace, e.g. by trace-specific indexes
+    public List<String> resources() throws IOException {
+        return Collections.emptyList();
+    }
+
     public String description() {
         return config.getString(descriptionKey);
     }
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+// A bus backed by a hierarchical timing wheel. Each level has 256 slots,
+// and a slot of level k covers 256^k time units, so events up to 2^32 units
+// ahead are scheduled and cancelled in constant time. Events further away,
+// or queued before the current time of the wheel, go to a sorted overflow
+// map. Events queued for the same time are signaled in queuing order, as
+// with the plain bus.
+public class WheelBus<E> extends Bus<E> {
+
+    private final static int bits = 8;
+    private final static int n_slots = 1 << bits;
+    private final static int mask = n_slots - 1;
+    private final static int n_levels = 4;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private final Slot[][] wheels = (Slot[][]) new WheelBus.Slot[n_levels][n_slots];
+    private final long[][] occupied = new long[n_levels][n_slots / 64];
+    private final TreeMap<Long, Slot> overflow = new TreeMap<Long, Slot>();
+    private long now;
+    private boolean started = false;
+    private long seq = 0;
+    private int size = 0;
+    private long next_time;
+    private boolean next_valid = false;
+
+    public final class Timer {
+        private final long _time;
+        private final long order;
+        private final E _event;
+        private Timer prev;
+        private Timer next;
+        private Slot slot;
+
+        private Timer(long time, long ord, E event) {
+            _time = time;
+            order = ord;
+            _event = event;
+        }
+
+        public long time() {
+            return _time;
+        }
+
+        public E event() {
+            return _event;
+        }
+
+        public boolean isPending() {
+            return slot != null;
+        }
+
+        // returns false if the event was already signaled or cancelled
+        public boolean cancel() {
+            if (slot == null)
+                return false;
+            unlink(this);
+            --size;
+            if (next_valid && _time == next_time)
+                next_valid = false;
+            return true;
+        }
+    }
+
+    private final class Slot {
+        final int level;
+        final int index;
+        final long time; // only for overflow slots
+        final Timer head = new Timer(0, 0, null);
+
+        Slot(int lvl, int idx, long t) {
+            level = lvl;
+            index = idx;
+            time = t;
+            head.prev = head;
+            head.next = head;
+        }
+
+        boolean isEmpty() {
+            return head.next == head;
+        }
+
+        void add(Timer timer) {
+            timer.slot = this;
+            timer.prev = head.prev;
+            timer.next = head;
+            head.prev.next = timer;
+            head.prev = timer;
+        }
+
+        // detaches all timers and returns them in list order
+        void drain(List<Timer> timers) {
+            Timer timer = head.next;
+            while (timer != head) {
+                final Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                timer.slot = null;
+                timers.add(timer);
+                timer = next;
+            }
+            head.prev = head;
+            head.next = head;
+            release(this);
+        }
+    }
+
+    private final static Comparator<WheelBus<?>.Timer> by_order = new Comparator<WheelBus<?>.Timer>() {
+        @Override
+        public int compare(WheelBus<?>.Timer t1, WheelBus<?>.Timer t2) {
+            return (t1.order < t2.order) ? -1 : (t1.order > t2.order) ? 1 : 0;
+        }
+    };
+
+    public Timer schedule(long time, E event) {
+        final Timer timer = new Timer(time, seq++, event);
+        insert(timer);
+        ++size;
+        if (next_valid && time < next_time)
+            next_time = time;
+        return timer;
+    }
+
+    @Override
+    public void queue(long time, E event) {
+        schedule(time, event);
+    }
+
+    @Override
+    public void queue(long time, Collection<E> events) {
+        for (final E event : events)
+            schedule(time, event);
+    }
+
+    // lowest level whose slots are aligned with the current time, or -1 if
+    // the event is too far ahead (or in the past)
+    private int level(long time) {
+        if (time < now)
+            return -1;
+        for (int k = 0; k < n_levels; ++k) {
+            final int shift = bits * (k + 1);
+            if ((time >> shift) == (now >> shift))
+                return k;
+        }
+        return -1;
+    }
+
+    private static int digit(long time, int level) {
+        return (int) (time >> (bits * level)) & mask;
+    }
+
+    private void insert(Timer timer) {
+        final long time = timer._time;
+        if (!started) {
+            now = time;
+            started = true;
+        }
+        final int k = level(time);
+        Slot slot;
+        if (k < 0) {
+            slot = overflow.get(time);
+            if (slot == null) {
+                slot = new Slot(-1, 0, time);
+                overflow.put(time, slot);
+            }
+        } else {
+            final int i = digit(time, k);
+            slot = wheels[k][i];
+            if (slot == null) {
+                slot = new Slot(k, i, 0);
+                wheels[k][i] = slot;
+            }
+            if (slot.isEmpty())
+                occupied[k][i >> 6] |= 1L << (i & 63);
+        }
+        slot.add(timer);
+    }
+
+    private void unlink(Timer timer) {
+        final Slot slot = timer.slot;
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = null;
+        if (slot.isEmpty())
+            release(slot);
+    }
+
+    private void release(Slot slot) {
+        if (slot.level < 0)
+            overflow.remove(slot.time);
+        else
+            occupied[slot.level][slot.index >> 6] &= ~(1L << (slot.index & 63));
+    }
+
+    // first occupied slot of the level at or after index from, or -1
+    private int nextOccupied(int level, int from) {
+        final long[] words = occupied[level];
+        int w = from >> 6;
+        if (w >= words.length)
+            return -1;
+        long word = words[w] & (-1L << (from & 63));
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == words.length)
+                return -1;
+            word = words[w];
+        }
+    }
+
+    private long findNext() {
+        long best = overflow.isEmpty() ? Long.MAX_VALUE : overflow.firstKey();
+        for (int k = 0; k < n_levels; ++k) {
+            // slots of upper levels at the current digit have been cascaded
+            final int from = (k == 0) ? digit(now, 0) : digit(now, k) + 1;
+            final int i = nextOccupied(k, from);
+            if (i >= 0) {
+                long t;
+                if (k == 0) {
+                    t = ((now >> bits) << bits) | i;
+                } else {
+                    t = Long.MAX_VALUE;
+                    final Slot slot = wheels[k][i];
+                    for (Timer timer = slot.head.next; timer != slot.head; timer = timer.next)
+                        if (timer._time < t)
+                            t = timer._time;
+                }
+                return Math.min(best, t);
+            }
+        }
+        return best;
+    }
+
+    // moves the wheel to the given time, which must not be after any pending
+    // event, and redistributes the upper slots that now cover it
+    private void advance(long time) {
+        if (time <= now)
+            return;
+        now = time;
+        final List<Timer> timers = new ArrayList<Timer>();
+        for (int k = n_levels - 1; k > 0; --k) {
+            final Slot slot = wheels[k][digit(time, k)];
+            if (slot != null && !slot.isEmpty()) {
+                timers.clear();
+                slot.drain(timers);
+                for (final Timer timer : timers)
+                    insert(timer);
+            }
+        }
+    }
+
+    @Override
+    public void signalNext() throws IOException {
+        final long time = nextEventTime();
+        next_valid = false;
+        final List<Timer> due = new ArrayList<Timer>();
+        final Slot late = overflow.get(time);
+        if (late != null)
+            late.drain(due);
+        if (time >= now) {
+            advance(time);
+            final Slot slot = wheels[0][digit(time, 0)];
+            if (slot != null && !slot.isEmpty())
+                slot.drain(due);
+        }
+        size -= due.size();
+        for (int i = 1; i < due.size(); ++i)
+            if (due.get(i - 1).order > due.get(i).order) {
+                Collections.sort(due, by_order);
+                break;
+            }
+        final List<E> events = new ArrayList<E>(due.size());
+        for (final Timer timer : due)
+            events.add(timer._event);
+        signal(time, events);
+    }
+
+    @Override
+    public boolean removeFromQueueAfterTime(long time, Matcher<E> matcher) {
+        final List<Timer> matched = new ArrayList<Timer>();
+        for (final Slot[] wheel : wheels)
+            for (final Slot slot : wheel)
+                if (slot != null)
+                    collect(slot, time, matcher, matched);
+        for (final Slot slot : overflow.tailMap(time, true).values())
+            collect(slot, time, matcher, matched);
+        for (final Timer timer : matched)
+            timer.cancel();
+        return !matched.isEmpty();
+    }
+
+    private void collect(Slot slot, long time, Matcher<E> matcher, List<Timer> matched) {
+        for (Timer timer = slot.head.next; timer != slot.head; timer = timer.next)
+            if (timer._time >= time && matcher.matches(timer._event))
+                matched.add(timer);
+    }
+
+    @Override
+    public void reset() {
+        final List<Timer> timers = new ArrayList<Timer>();
+        for (final Slot[] wheel : wheels)
+            for (final Slot slot : wheel)
+                if (slot != null && !slot.isEmpty())
+                    slot.drain(timers);
+        for (final Slot slot : new ArrayList<Slot>(overflow.values()))
+            slot.drain(timers);
+        size = 0;
+        started = false;
+        next_valid = false;
+        super.reset();
+    }
+
+    @Override
+    public boolean hasNextEvent() {
+        return size > 0;
+    }
+
+    @Override
+    public long nextEventTime() {
+        if (!next_valid) {
+            next_time = findNext();
+            next_valid = true;
+        }
+        return next_time;
+    }
+}
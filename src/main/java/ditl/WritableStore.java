@@ -25,6 +25,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,7 +34,9 @@ import net.sf.json.JSONObject;
 
 public abstract class WritableStore extends Store {
 
-    private final Map<String, Writer<?>> openWriters = new HashMap<String, Writer<?>>();
+    private final Map<String, Writer<?>> openWriters = Collections.synchronizedMap(new HashMap<String, Writer<?>>());
+    private boolean index_blocks = false;
+    private boolean index_nodes = false;
 
     public WritableStore() throws IOException {
         super();
@@ -77,6 +81,28 @@ public abstract class WritableStore extends Store {
         return openWriters.containsKey(name);
     }
 
+    public void setBlockIndexing(boolean indexBlocks) {
+        index_blocks = indexBlocks;
+    }
+
+    public boolean isBlockIndexing() {
+        return index_blocks;
+    }
+
+    public void setNodeIndexing(boolean indexNodes) {
+        index_nodes = indexNodes;
+    }
+
+    public boolean isNodeIndexing() {
+        return index_nodes;
+    }
+
+    public void writeInfo(Trace<?> trace) throws IOException {
+        final OutputStreamWriter info_os = new OutputStreamWriter(getOutputStream(trace.infoFile()));
+        info_os.write(trace.config.toString(4));
+        info_os.close();
+    }
+
     @Override
     public void close() throws IOException {
         super.close();
@@ -100,13 +126,20 @@ public abstract class WritableStore extends Store {
         final String[] files = new String[] {
                 infoFile(trace.name()),
                 trace instanceof StatefulTrace ? indexFile(trace.name()) : null,
-                traceFile(trace.name()) };
+                traceFile(trace.name()),
+                trace.hasBlockIndex() ? blockIndexFile(trace.name()) : null,
+                trace.hasNodeIndex() ? nodeIndexFile(trace.name()) : null };
         for (final String file : files)
             if (file != null) {
                 final InputStream in = store.getInputStream(file);
                 final OutputStream out = getOutputStream(file);
                 copy(in, out);
             }
+        for (final String resource : trace.resources()) {
+            final InputStream in = store.getInputStream(store.getTraceResource(trace, resource));
+            final OutputStream out = getOutputStream(getTraceResource(trace, resource));
+            copy(in, out);
+        }
     }
 
     public Trace<?> newTrace(String name, String type, boolean force) throws IOException, ClassNotFoundException {
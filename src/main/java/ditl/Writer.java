@@ -20,7 +20,6 @@ package ditl;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.Collection;
 
 import net.sf.json.JSONObject;
@@ -34,6 +33,9 @@ public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
 
     private final BufferedOutputStream out;
     private final SeekMap.Writer sm;
+    private BlockIndex.Writer block_index = null;
+    private NodeIndex.Writer node_index = null;
+    private Trace.Indexable<I> indexer = null;
     final CodedBuffer buffer = new CodedBuffer();
     private final CodedBuffer header_buffer = new CodedBuffer(HEADER_BUFFER_SIZE);
     long max_time;
@@ -55,11 +57,23 @@ public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
         _store.notifyOpen(trace.name(), this);
         sm = new SeekMap.Writer(_store.getOutputStream(trace.indexFile()));
         out = new BufferedOutputStream(_store.getOutputStream(trace.traceFile()));
+        if (trace instanceof Trace.Indexable<?>)
+            initIndexes();
         min_time = Long.MAX_VALUE;
         max_time = Long.MIN_VALUE;
         addListener(this);
     }
 
+    @SuppressWarnings("unchecked")
+    private void initIndexes() throws IOException {
+        if (_store.isBlockIndexing())
+            block_index = new BlockIndex.Writer(_store.getOutputStream(_trace.blockIndexFile()));
+        if (_store.isNodeIndexing())
+            node_index = new NodeIndex.Writer(_store.getOutputStream(_trace.nodeIndexFile()));
+        if (block_index != null || node_index != null)
+            indexer = (Trace.Indexable<I>) _trace;
+    }
+
     void setRemainingInfo() {
         _trace.set(Trace.maxUpdateIntervalKey, max_update_interval);
         _trace.setIfUnset(Trace.maxTimeKey, max_time);
@@ -72,10 +86,16 @@ public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
             flushBuffer();
         out.close();
         sm.close();
+        if (block_index != null) {
+            block_index.close();
+            _trace.set(Trace.blockIndexKey, true);
+        }
+        if (node_index != null) {
+            node_index.close();
+            _trace.set(Trace.nodeIndexKey, true);
+        }
         setRemainingInfo();
-        OutputStreamWriter info_os = new OutputStreamWriter(_store.getOutputStream(_trace.infoFile()));
-        info_os.write(_trace.config.toString(4));
-        info_os.close();
+        _store.writeInfo(_trace);
         _store.notifyClose(_trace.name());
     }
 
@@ -108,6 +128,10 @@ public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
 
     void write(long time, I item) throws IOException {
         item.write(buffer);
+        if (block_index != null)
+            indexer.collectIds(item, block_index);
+        if (node_index != null)
+            indexer.collectIds(item, node_index);
     }
 
     private void updateTime(long time) throws IOException {
@@ -135,6 +159,10 @@ public class Writer<I extends Item> extends Bus<I> implements Listener<I> {
     }
 
     private void flushBuffer() throws IOException {
+        if (block_index != null)
+            block_index.append(total_bytes_written);
+        if (node_index != null)
+            node_index.append(total_bytes_written);
         writeItemBlockHeader((byte) 0, max_time);
         writeItemBlock();
     }
@@ -61,7 +61,11 @@ public abstract class App {
             forceOption = "force",
             typeOption = "type",
             stringIdsOption = "string-ids",
-            minIdOption = "min-id";
+            minIdOption = "min-id",
+            indexBlocksOption = "index-blocks",
+            indexNodesOption = "index-nodes",
+            nodesOption = "nodes",
+            threadsOption = "threads";
 
     protected Options options = new Options();
     protected String usageString;
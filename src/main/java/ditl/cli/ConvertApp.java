@@ -35,10 +35,14 @@ public abstract class ConvertApp extends App {
     protected Store orig_store;
     protected WritableStore dest_store;
     protected boolean force;
+    protected boolean index_blocks;
+    protected boolean index_nodes;
 
     @Override
     protected void initOptions() {
         options.addOption(new Option("f", forceOption, false, "Force overwrite existing traces."));
+        options.addOption(null, indexBlocksOption, false, "Store per-block node id summaries alongside new traces.");
+        options.addOption(null, indexNodesOption, false, "Store per-node block indexes alongside new traces.");
         options.addOption(null, storeOutputOption, true, "Name of store to output new traces to");
     }
 
@@ -48,11 +52,15 @@ public abstract class ConvertApp extends App {
         orig_store_file = new File(args[0]);
         dest_store_file = new File(cli.getOptionValue(storeOutputOption, args[0]));
         force = cli.hasOption(forceOption);
+        index_blocks = cli.hasOption(indexBlocksOption);
+        index_nodes = cli.hasOption(indexNodesOption);
     }
 
     @Override
     protected void init() throws Exception {
         dest_store = WritableStore.open(dest_store_file);
+        dest_store.setBlockIndexing(index_blocks);
+        dest_store.setNodeIndexing(index_nodes);
         if (orig_store_file.equals(dest_store_file))
             orig_store = dest_store;
         else
@@ -52,6 +52,8 @@ public class Filter extends ConvertApp {
             dest_store_file = new File(args[1]);
             group_json = JSONArray.fromObject(args[2]);
             force = cli.hasOption(forceOption);
+            index_blocks = cli.hasOption(indexBlocksOption);
+            index_nodes = cli.hasOption(indexNodesOption);
         }
     }
 
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.cli;
+
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import ditl.NodeIndex;
+import ditl.Trace;
+
+@App.Cli(cmd = "index-nodes")
+public class IndexNodes extends WriteApp {
+
+    private String[] trace_names;
+
+    @Override
+    protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException {
+        super.parseArgs(cli, args);
+        trace_names = Arrays.copyOfRange(args, 1, args.length);
+    }
+
+    @Override
+    protected void run() throws Exception {
+        if (trace_names.length == 0) {
+            for (final Trace<?> trace : _store.listTraces())
+                if (trace instanceof Trace.Indexable<?>)
+                    NodeIndex.build(trace);
+        } else {
+            for (final String name : trace_names) {
+                final Trace<?> trace = _store.getTrace(name);
+                if (trace instanceof Trace.Indexable<?>)
+                    NodeIndex.build(trace);
+                else
+                    System.err.println("Trace '" + name + "' cannot be indexed by node. Skipping");
+            }
+        }
+    }
+
+    @Override
+    protected String getUsageString() {
+        return "[OPTIONS] STORE [TRACE1 TRACE2...]";
+    }
+}
@@ -20,9 +20,12 @@ package ditl.cli;
 
 import java.io.IOException;
 
+import net.sf.json.JSONArray;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
 
+import ditl.Groups;
 import ditl.Reader;
 import ditl.StatefulReader;
 import ditl.StatefulTrace;
@@ -32,21 +35,31 @@ import ditl.Trace;
 public class PrintTrace extends ReadOnlyApp {
 
     private String trace_name;
+    private JSONArray nodes_json = null;
+
+    @Override
+    protected void initOptions() {
+        super.initOptions();
+        options.addOption(null, nodesOption, true, "only print items involving these nodes (e.g., [1,[3,5]])");
+    }
 
     @Override
     protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException, ArrayIndexOutOfBoundsException {
         super.parseArgs(cli, args);
         trace_name = args[1];
+        if (cli.hasOption(nodesOption))
+            nodes_json = JSONArray.fromObject(cli.getOptionValue(nodesOption));
     }
 
-    @SuppressWarnings("rawtypes")
     @Override
     protected void run() throws IOException {
-        final Trace trace = _store.getTrace(trace_name);
-        final Reader reader = trace.getReader();
+        final Trace<?> trace = _store.getTrace(trace_name);
+        final Reader<?> reader = trace.getReader();
+        if (nodes_json != null)
+            reader.selectNodes(Groups.parse(nodes_json, trace.idMap()));
         if (trace instanceof StatefulTrace) {
             reader.seek(trace.minTime());
-            for (Object state : ((StatefulReader) reader).referenceState()) {
+            for (Object state : ((StatefulReader<?, ?>) reader).referenceState()) {
                 System.out.println(trace.minTime() + " " + state);
             }
             System.out.println("-----------------------------");
@@ -32,10 +32,14 @@ public abstract class WriteApp extends App {
     protected File store_file;
     protected WritableStore _store;
     protected boolean force;
+    protected boolean index_blocks;
+    protected boolean index_nodes;
 
     @Override
     protected void initOptions() {
         options.addOption(new Option("f", forceOption, false, "Force overwrite existing traces."));
+        options.addOption(null, indexBlocksOption, false, "Store per-block node id summaries alongside new traces.");
+        options.addOption(null, indexNodesOption, false, "Store per-node block indexes alongside new traces.");
     }
 
     @Override
@@ -43,11 +47,15 @@ public abstract class WriteApp extends App {
             throws ParseException, ArrayIndexOutOfBoundsException, HelpException {
         store_file = new File(args[0]);
         force = cli.hasOption(forceOption);
+        index_blocks = cli.hasOption(indexBlocksOption);
+        index_nodes = cli.hasOption(indexNodesOption);
     }
 
     @Override
     protected void init() throws Exception {
         _store = WritableStore.open(store_file);
+        _store.setBlockIndexing(index_blocks);
+        _store.setNodeIndexing(index_nodes);
     }
 
     @Override
@@ -19,10 +19,22 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ditl.Bus;
 import ditl.Converter;
@@ -50,14 +62,27 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
     private final long eta;
     private boolean init_state_set = false;
     private long min_time;
+    private final int n_threads;
+    private ExecutorService executor = null;
+    private Slice[] slices;
+
+    // the phases that each composer goes through at every update
+    private enum Phase {
+        DELTA_UP, UP, DOWN
+    }
 
     public AddingReachableConverter(ReachabilityTrace addedTrace, ReachabilityFamily family1, ReachabilityFamily family2, long delay) {
+        this(addedTrace, family1, family2, delay, 1);
+    }
+
+    public AddingReachableConverter(ReachabilityTrace addedTrace, ReachabilityFamily family1, ReachabilityFamily family2, long delay, int nThreads) {
         added_trace = addedTrace;
         _family1 = family1;
         _family2 = family2;
         _delay = delay;
         eta = family1.eta();
         tau = family1.tau();
+        n_threads = nThreads;
     }
 
     @Override
@@ -69,22 +94,25 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
 
         if (tau == 0) {
             composers = new Composer[1];
-            if (_delay == eta) // first step in the tau==0 case, we are "adding"
-                               // R0 and R0
-                composers[0] = new Composer(_family1.getMember(0), _family2.getMember(0), eta);
+            final ReachabilityTrace delta_trace = _family1.getMember(0);
+            final ReachabilityTrace mu_trace = _family2.getMember(0);
+            final long offset = (_delay == eta) ? eta : delta_trace.delay();
+            // first step in the tau==0 case, we are "adding" R0 and R0
+            if (_delay == eta && delta_trace.hasCliques() && mu_trace.hasCliques())
+                composers[0] = new CliqueComposer(delta_trace, mu_trace, offset);
             else
-                composers[0] = new Composer(_family1.getMember(0), _family2.getMember(0));
+                composers[0] = new ArcComposer(delta_trace, mu_trace, offset);
         } else {
             final int n = (int) (tau / eta);
             composers = new Composer[n];
             final int i = (int) ((_delay - _family1.delay() - _family2.delay()) / eta);
             if (i < 0)
                 for (int k = 0; k < n; ++k)
-                    composers[k] = new Composer(_family1.getMemberByOffset(i + k),
+                    composers[k] = new ArcComposer(_family1.getMemberByOffset(i + k),
                             _family2.getMemberByOffset(-k));
             else
                 for (int k = 0; k < n; ++k)
-                    composers[k] = new Composer(_family1.getMemberByOffset(k),
+                    composers[k] = new ArcComposer(_family1.getMemberByOffset(k),
                             _family2.getMemberByOffset(i - k));
         }
 
@@ -92,11 +120,24 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         final Trace<?> trace = composers[0].delta_trace;
         min_time = trace.minTime();
 
-        final Runner runner = new Runner(eta, trace.minTime(), trace.maxTime());
-        for (final Composer composer : composers)
-            runner.addGenerator(composer);
-        runner.addGenerator(this);
-        runner.run();
+        if (n_threads > 1 && composers.length > 1) {
+            executor = Executors.newFixedThreadPool(n_threads);
+            slices = new Slice[n_threads];
+            for (int s = 0; s < n_threads; ++s)
+                slices[s] = new Slice(s);
+        }
+        try {
+            final Runner runner = new Runner(eta, trace.minTime(), trace.maxTime());
+            for (final Composer composer : composers)
+                runner.addGenerator(composer);
+            runner.addGenerator(this);
+            runner.run();
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
 
         update_bus.flush(trace.maxTime());
         writer.setPropertiesFromTrace(trace);
@@ -109,40 +150,407 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         update_bus.queue(time, Collections.<Object> emptyList());
     }
 
-    private final class Waypoints {
+    private final static class Waypoints {
         AdjacencySet.Arcs delta_arcs = new AdjacencySet.Arcs();
         AdjacencySet.Arcs mu_arcs = new AdjacencySet.Arcs();
+        final ScoreDeltas deltas;
+
+        Waypoints(ScoreDeltas scoreDeltas) {
+            deltas = scoreDeltas;
+        }
 
         void addDeltaArc(Arc de) {
             delta_arcs.add(de.reverse());
             for (final Integer to : mu_arcs.getNext(de.to))
                 if (!to.equals(de.from)) // prevent loops on self
-                    increment(new Arc(de.from, to));
+                    deltas.add(de.from, to, 1);
         }
 
         void addShiftedMuArc(Arc me) {
             mu_arcs.add(me);
             for (final Integer from : delta_arcs.getNext(me.from))
                 if (!from.equals(me.to)) // prevent loops on self
-                    increment(new Arc(from, me.to));
+                    deltas.add(from, me.to, 1);
         }
 
         void removeDeltaArc(Arc de) {
             delta_arcs.remove(de.reverse());
             for (final Integer to : mu_arcs.getNext(de.to))
                 if (!to.equals(de.from)) // prevent loops on self
-                    decrement(new Arc(de.from, to));
+                    deltas.add(de.from, to, -1);
         }
 
         void removeShiftedMuArc(Arc me) {
             mu_arcs.remove(me);
             for (final Integer from : delta_arcs.getNext(me.from))
                 if (!from.equals(me.to)) // prevent loops on self
-                    decrement(new Arc(from, me.to));
+                    deltas.add(from, me.to, -1);
         }
 
     };
 
+    // Members of the cliques of a trace, see ReachabilityTrace.cliqueMarker
+    private final static class Cliques {
+        final Map<Integer, Set<Integer>> members = new HashMap<Integer, Set<Integer>>();
+        final Map<Integer, Set<Integer>> cliques_of = new HashMap<Integer, Set<Integer>>();
+
+        Set<Integer> members(Integer marker) {
+            final Set<Integer> m = members.get(marker);
+            return (m != null) ? m : Collections.<Integer> emptySet();
+        }
+
+        Set<Integer> cliquesOf(Integer node) {
+            final Set<Integer> c = cliques_of.get(node);
+            return (c != null) ? c : Collections.<Integer> emptySet();
+        }
+
+        boolean contains(Integer node, Integer marker) {
+            return members(marker).contains(node);
+        }
+
+        void join(Integer node, Integer marker) {
+            add(members, marker, node);
+            add(cliques_of, node, marker);
+        }
+
+        void leave(Integer node, Integer marker) {
+            remove(members, marker, node);
+            remove(cliques_of, node, marker);
+        }
+
+        private static void add(Map<Integer, Set<Integer>> map, Integer key, Integer value) {
+            Set<Integer> set = map.get(key);
+            if (set == null) {
+                set = new HashSet<Integer>();
+                map.put(key, set);
+            }
+            set.add(value);
+        }
+
+        private static void remove(Map<Integer, Set<Integer>> map, Integer key, Integer value) {
+            final Set<Integer> set = map.get(key);
+            set.remove(value);
+            if (set.isEmpty())
+                map.remove(key);
+        }
+    }
+
+    // The waypoints of two traces with cliques. Instead of one path per
+    // waypoint, an arc i->j scores one per pair of a delta clique C holding i
+    // and a mu clique D holding j, as long as C and D have a common member
+    // other than i and j. Only the number of common members of each pair is
+    // kept, so a node joining or leaving a clique only changes the scores of
+    // its own arcs, except when a pair ends up with fewer than 3 common
+    // members. Arcs within a clique score one per clique, as before.
+    private final static class CliqueWaypoints {
+        // the delta cliques that the direct arcs come from are joined one
+        // phase ahead of those used as waypoints
+        final Cliques direct_delta = new Cliques();
+        final Cliques delta = new Cliques();
+        final Cliques mu = new Cliques();
+        // number of common members, by delta and by mu clique
+        final Map<Integer, Map<Integer, int[]>> delta_overlaps = new HashMap<Integer, Map<Integer, int[]>>();
+        final Map<Integer, Map<Integer, int[]>> mu_overlaps = new HashMap<Integer, Map<Integer, int[]>>();
+        // the mu arcs that went down at the last update
+        final List<Arc> shifted_mu_down = new ArrayList<Arc>();
+        final ScoreDeltas deltas;
+
+        CliqueWaypoints(ScoreDeltas scoreDeltas) {
+            deltas = scoreDeltas;
+        }
+
+        void joinDirectDelta(Integer node, Integer marker) {
+            if (direct_delta.contains(node, marker))
+                return;
+            addClique(node, direct_delta.members(marker), 1);
+            direct_delta.join(node, marker);
+        }
+
+        void leaveDirectDelta(Integer node, Integer marker) {
+            if (!direct_delta.contains(node, marker))
+                return;
+            direct_delta.leave(node, marker);
+            addClique(node, direct_delta.members(marker), -1);
+        }
+
+        void joinDelta(Integer node, Integer marker) {
+            if (delta.contains(node, marker))
+                return;
+            final Set<Integer> members = delta.members(marker);
+            for (final Integer d : mu.cliquesOf(node))
+                addThreshold(members, mu.members(d), node, overlap(delta_overlaps, marker, d), false, 1);
+            for (final Integer d : mu.cliquesOf(node))
+                addOverlap(marker, d, 1);
+            delta.join(node, marker);
+            addPaths(node, delta_overlaps, marker, mu, false, 1);
+        }
+
+        void leaveDelta(Integer node, Integer marker) {
+            if (!delta.contains(node, marker))
+                return;
+            addPaths(node, delta_overlaps, marker, mu, false, -1);
+            delta.leave(node, marker);
+            for (final Integer d : mu.cliquesOf(node))
+                addOverlap(marker, d, -1);
+            final Set<Integer> members = delta.members(marker);
+            for (final Integer d : mu.cliquesOf(node))
+                addThreshold(members, mu.members(d), node, overlap(delta_overlaps, marker, d), false, -1);
+        }
+
+        void joinMu(Integer node, Integer marker) {
+            if (mu.contains(node, marker))
+                return;
+            final Set<Integer> members = mu.members(marker);
+            addClique(node, members, 1);
+            for (final Integer c : delta.cliquesOf(node))
+                addThreshold(members, delta.members(c), node, overlap(mu_overlaps, marker, c), true, 1);
+            for (final Integer c : delta.cliquesOf(node))
+                addOverlap(c, marker, 1);
+            mu.join(node, marker);
+            addPaths(node, mu_overlaps, marker, delta, true, 1);
+        }
+
+        // the direct arcs only go down at the next update
+        void leaveMu(Integer node, Integer marker) {
+            if (!mu.contains(node, marker))
+                return;
+            for (final Integer m : mu.members(marker))
+                if (!m.equals(node)) {
+                    shifted_mu_down.add(new Arc(node, m));
+                    shifted_mu_down.add(new Arc(m, node));
+                    deltas.add(node, m, 1);
+                    deltas.add(m, node, 1);
+                }
+            addPaths(node, mu_overlaps, marker, delta, true, -1);
+            mu.leave(node, marker);
+            final Set<Integer> members = mu.members(marker);
+            addClique(node, members, -1);
+            for (final Integer c : delta.cliquesOf(node))
+                addOverlap(c, marker, -1);
+            for (final Integer c : delta.cliquesOf(node))
+                addThreshold(members, delta.members(c), node, overlap(mu_overlaps, marker, c), true, -1);
+        }
+
+        void removeShiftedMuDown() {
+            for (final Arc a : shifted_mu_down)
+                deltas.add(a.from, a.to, -1);
+            shifted_mu_down.clear();
+        }
+
+        void clear() {
+            shifted_mu_down.clear();
+        }
+
+        private void addClique(Integer node, Set<Integer> members, int d) {
+            for (final Integer m : members)
+                if (!m.equals(node)) {
+                    deltas.add(node, m, d);
+                    deltas.add(m, node, d);
+                }
+        }
+
+        private static int overlap(Map<Integer, Map<Integer, int[]>> overlaps, Integer marker, Integer other) {
+            final Map<Integer, int[]> counts = overlaps.get(marker);
+            if (counts == null)
+                return 0;
+            final int[] count = counts.get(other);
+            return (count != null) ? count[0] : 0;
+        }
+
+        private void addOverlap(Integer c, Integer d, int n) {
+            Map<Integer, int[]> counts = delta_overlaps.get(c);
+            if (counts == null) {
+                counts = new HashMap<Integer, int[]>();
+                delta_overlaps.put(c, counts);
+            }
+            int[] count = counts.get(d);
+            if (count == null) {
+                count = new int[] { 0 };
+                counts.put(d, count);
+                Map<Integer, int[]> mu_counts = mu_overlaps.get(d);
+                if (mu_counts == null) {
+                    mu_counts = new HashMap<Integer, int[]>();
+                    mu_overlaps.put(d, mu_counts);
+                }
+                mu_counts.put(c, count);
+            }
+            count[0] += n;
+            if (count[0] == 0) {
+                counts.remove(d);
+                if (counts.isEmpty())
+                    delta_overlaps.remove(c);
+                final Map<Integer, int[]> mu_counts = mu_overlaps.get(d);
+                mu_counts.remove(c);
+                if (mu_counts.isEmpty())
+                    mu_overlaps.remove(d);
+            }
+        }
+
+        // Paths from (or to, when reversed) a node in the given clique, through
+        // the cliques of the other side that overlap it.
+        private void addPaths(Integer node, Map<Integer, Map<Integer, int[]>> overlaps, Integer marker, Cliques other,
+                boolean reversed, int d) {
+            final Map<Integer, int[]> counts = overlaps.get(marker);
+            if (counts == null)
+                return;
+            for (final Map.Entry<Integer, int[]> e : counts.entrySet()) {
+                final Set<Integer> members = other.members(e.getKey());
+                // the common members other than the node itself
+                int n = e.getValue()[0];
+                if (members.contains(node))
+                    n--;
+                if (n == 0)
+                    continue;
+                final Integer k = (n == 1) ? commonMembers(members, reversed ? mu.members(marker) : delta.members(marker), node, 1)[0] : null;
+                for (final Integer m : members)
+                    if (!m.equals(node) && !m.equals(k))
+                        addArc(node, m, reversed, d);
+            }
+        }
+
+        // The paths between the other members of a clique and the members of
+        // another clique that the node also belongs to, which depend on the
+        // number of their common members when there are fewer than 3.
+        private void addThreshold(Set<Integer> members, Set<Integer> others, Integer node, int n, boolean reversed, int d) {
+            if (n == 0) {
+                for (final Integer m : members)
+                    for (final Integer o : others)
+                        if (!o.equals(node) && !o.equals(m))
+                            addArc(m, o, reversed, d);
+            } else if (n == 1) {
+                final Integer k = commonMembers(members, others, node, 1)[0];
+                for (final Integer o : others)
+                    if (!o.equals(node) && !o.equals(k))
+                        addArc(k, o, reversed, d);
+                for (final Integer m : members)
+                    if (!m.equals(k))
+                        addArc(m, k, reversed, d);
+            } else if (n == 2) {
+                final Integer[] kl = commonMembers(members, others, node, 2);
+                addArc(kl[0], kl[1], reversed, d);
+                addArc(kl[1], kl[0], reversed, d);
+            }
+        }
+
+        private void addArc(Integer from, Integer to, boolean reversed, int d) {
+            if (reversed)
+                deltas.add(to, from, d);
+            else
+                deltas.add(from, to, d);
+        }
+
+        // the first n common members of both sets, other than the node
+        private static Integer[] commonMembers(Set<Integer> s1, Set<Integer> s2, Integer node, int n) {
+            final Integer[] common = new Integer[n];
+            final Set<Integer> small = (s1.size() < s2.size()) ? s1 : s2;
+            final Set<Integer> large = (small == s1) ? s2 : s1;
+            int i = 0;
+            for (final Integer m : small)
+                if (!m.equals(node) && large.contains(m)) {
+                    common[i++] = m;
+                    if (i == n)
+                        break;
+                }
+            return common;
+        }
+    }
+
+    // Score changes of a single composer. Without a thread pool, they go
+    // straight to arc_infos. Otherwise they are summed per arc during a phase,
+    // and split over n_threads slices of the arc space.
+    private final class ScoreDeltas {
+        final PairTable index = new PairTable();
+        final List<List<int[]>> by_slice = new ArrayList<List<int[]>>(n_threads);
+
+        ScoreDeltas() {
+            for (int s = 0; s < n_threads; ++s)
+                by_slice.add(new ArrayList<int[]>());
+        }
+
+        void add(int from, int to, int d) {
+            if (executor == null) {
+                if (d > 0)
+                    increment(new Arc(from, to));
+                else
+                    decrement(new Arc(from, to));
+                return;
+            }
+            final long key = PairTable.key(from, to);
+            int[] entry = (int[]) index.get(key);
+            if (entry == null) {
+                entry = new int[] { from, to, 0 };
+                index.put(key, entry);
+                by_slice.get((int) ((key * 0x9E3779B97F4A7C15L) >>> 33) % n_threads).add(entry);
+            }
+            entry[2] += d;
+        }
+
+        // drops the consumed changes, but keeps the capacity of the index
+        void clear() {
+            for (final List<int[]> entries : by_slice) {
+                for (final int[] entry : entries)
+                    index.remove(PairTable.key(entry[0], entry[1]));
+                entries.clear();
+            }
+        }
+    }
+
+    // Reduces one slice of the score changes of all composers, in composer
+    // order. Each worker only updates the scores of the arcs of its own slice,
+    // and leaves the new arcs and the changes to to_bring_down to the main
+    // thread. Within a phase, the scores only go up (or only go down), so this
+    // leaves arc_infos, to_bring_up and to_bring_down exactly as the
+    // sequential updates would.
+    private final class Slice {
+        final int index;
+        final PairTable created_index = new PairTable();
+        final List<int[]> created = new ArrayList<int[]>();
+        final List<ArcInfo> crossed = new ArrayList<ArcInfo>();
+
+        Slice(int sliceIndex) {
+            index = sliceIndex;
+        }
+
+        void reduce() {
+            for (final Composer composer : composers)
+                for (final int[] entry : composer.deltas.by_slice.get(index)) {
+                    final int d = entry[2];
+                    if (d == 0)
+                        continue;
+                    entry[2] = 0; // consumed
+                    final ArcInfo ai = arc_infos.get(new Arc(entry[0], entry[1]));
+                    if (ai != null) {
+                        if ((ai.score <= 0) != (ai.score + d <= 0)) // crosses zero
+                            crossed.add(ai);
+                        ai.score += d;
+                    } else {
+                        final long key = PairTable.key(entry[0], entry[1]);
+                        int[] c = (int[]) created_index.get(key);
+                        if (c == null && d > 0) {
+                            c = new int[] { entry[0], entry[1], 0 };
+                            created_index.put(key, c);
+                            created.add(c);
+                        }
+                        c[2] += d;
+                    }
+                }
+        }
+
+        void apply() {
+            for (final ArcInfo ai : crossed)
+                if (ai.score > 0)
+                    to_bring_down.remove(ai._arc);
+                else
+                    to_bring_down.add(ai._arc);
+            crossed.clear();
+            for (final int[] c : created) {
+                new ArcInfo(new Arc(c[0], c[1])).score = c[2];
+                created_index.remove(PairTable.key(c[0], c[1]));
+            }
+            created.clear();
+        }
+    }
+
     private final class ArcInfo {
         Arc _arc;
         int score = 0;
@@ -188,13 +596,13 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
     void flushState(long time) throws IOException {
         if (time >= min_time) {
             if (!init_state_set) {
-                writer.setInitState(min_time, to_bring_up);
+                writer.setInitState(min_time, sorted(to_bring_up));
                 init_state_set = true;
             } else
-                for (final Arc a : to_bring_up)
+                for (final Arc a : sorted(to_bring_up))
                     writer.append(time, new ArcEvent(a, ArcEvent.Type.UP));
             to_bring_up.clear();
-            for (final Arc a : to_bring_down) {
+            for (final Arc a : sorted(to_bring_down)) {
                 arc_infos.remove(a);
                 writer.append(time, new ArcEvent(a, ArcEvent.Type.DOWN));
             }
@@ -202,21 +610,73 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         }
     }
 
+    // The iteration order of an AdjacencySet depends on the order in which its
+    // arcs were added, which in turn depends on how the score changes were
+    // reduced. Simultaneous events are therefore written in arc order.
+    private List<Arc> sorted(Collection<Arc> arcs) {
+        final List<Arc> list = new ArrayList<Arc>(arcs);
+        Collections.sort(list, Arc.order);
+        return list;
+    }
+
     @Override
     public void handle(long time, Collection<Object> events) throws IOException {
-        for (final Composer composer : composers)
-            composer.processDeltaUpEvents();
+        runPhase(Phase.DELTA_UP);
         flushState(time - eta);
-        for (final Composer composer : composers) {
-            composer.processDeltaUpJourneyEvents();
-            composer.processMuUpEvents();
+        runPhase(Phase.UP);
+        runPhase(Phase.DOWN);
+        scheduleUpdate(time + eta);
+    }
+
+    // Composers only touch their own waypoints and score deltas during a
+    // phase, so they may run concurrently. Their deltas are then reduced
+    // slice by slice.
+    private void runPhase(final Phase phase) throws IOException {
+        if (executor == null) {
+            for (final Composer composer : composers)
+                composer.process(phase);
+            return;
         }
-        for (final Composer composer : composers) {
-            composer.processShiftedMuDownEvents();
-            composer.processMuDownJourneyEvents();
-            composer.processDeltaDownEvents();
+        final AtomicInteger next = new AtomicInteger(0);
+        runTasks(new Callable<Void>() {
+            @Override
+            public Void call() {
+                int k;
+                while ((k = next.getAndIncrement()) < composers.length)
+                    composers[k].process(phase);
+                return null;
+            }
+        });
+        reduceDeltas();
+    }
+
+    private void reduceDeltas() throws IOException {
+        final AtomicInteger next = new AtomicInteger(0);
+        runTasks(new Callable<Void>() {
+            @Override
+            public Void call() {
+                int s;
+                while ((s = next.getAndIncrement()) < slices.length)
+                    slices[s].reduce();
+                return null;
+            }
+        });
+        for (final Slice slice : slices)
+            slice.apply();
+    }
+
+    private void runTasks(Callable<Void> task) throws IOException {
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(n_threads);
+        for (int t = 0; t < n_threads; ++t)
+            tasks.add(task);
+        try {
+            for (final Future<Void> f : executor.invokeAll(tasks))
+                f.get();
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
         }
-        scheduleUpdate(time + eta);
     }
 
     ArcInfo increment(Arc a) {
@@ -234,26 +694,53 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         return ai;
     }
 
-    private final class Composer implements Generator {
+    // Reads the delta trace and the mu trace, shifted by offset, and turns
+    // their events into score changes, phase by phase.
+    private abstract class Composer implements Generator {
         ReachabilityTrace delta_trace, mu_trace;
         StatefulReader<ArcEvent, Arc> delta_reader;
         StatefulReader<ArcEvent, Arc> mu_reader;
+        ScoreDeltas deltas = new ScoreDeltas();
+
+        abstract void process(Phase phase);
+
+        void close() throws IOException {
+            delta_reader.close();
+            mu_reader.close();
+        }
+
+        @Override
+        public void incr(long dt) throws IOException {
+            delta_reader.incr(dt);
+            mu_reader.incr(dt);
+        }
+
+        @Override
+        public Bus<?>[] busses() {
+            return new Bus<?>[] {
+                    delta_reader.stateBus(), delta_reader.bus(),
+                    mu_reader.stateBus(), mu_reader.bus() };
+        }
+
+        @Override
+        public int priority() {
+            return Trace.defaultPriority;
+        }
+    }
+
+    private final class ArcComposer extends Composer {
         Deque<Arc> mu_down_events = new LinkedList<Arc>();
         Deque<Arc> shifted_mu_down_events = new LinkedList<Arc>();
         Deque<Arc> mu_up_events = new LinkedList<Arc>();
         Deque<Arc> delta_down_events = new LinkedList<Arc>();
         Deque<Arc> delta_up_events = new LinkedList<Arc>();
-        Waypoints waypoints = new Waypoints();
-
-        Composer(ReachabilityTrace deltaTrace, ReachabilityTrace muTrace) throws IOException {
-            init(deltaTrace, muTrace, deltaTrace.delay());
-        }
+        Waypoints waypoints = new Waypoints(deltas);
 
-        Composer(ReachabilityTrace deltaTrace, ReachabilityTrace muTrace, long offset) throws IOException {
-            init(deltaTrace, muTrace, offset);
+        ArcComposer(ReachabilityTrace deltaTrace, ReachabilityTrace muTrace) throws IOException {
+            this(deltaTrace, muTrace, deltaTrace.delay());
         }
 
-        void init(ReachabilityTrace deltaTrace, ReachabilityTrace muTrace, long offset) throws IOException {
+        ArcComposer(ReachabilityTrace deltaTrace, ReachabilityTrace muTrace, long offset) throws IOException {
             delta_trace = deltaTrace;
             mu_trace = muTrace;
             delta_reader = delta_trace.getReader();
@@ -264,16 +751,30 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
             mu_reader.bus().addListener(new MuEventListener());
         }
 
-        void processDeltaUpEvents() {
-            for (final Arc a : delta_up_events) {
-                ArcInfo ai = arc_infos.get(a);
-                if (ai == null)
-                    ai = new ArcInfo(a);
-                else
-                    ai.increment();
+        @Override
+        void process(Phase phase) {
+            deltas.clear();
+            switch (phase) {
+            case DELTA_UP:
+                processDeltaUpEvents();
+                break;
+            case UP:
+                processDeltaUpJourneyEvents();
+                processMuUpEvents();
+                break;
+            case DOWN:
+                processShiftedMuDownEvents();
+                processMuDownJourneyEvents();
+                processDeltaDownEvents();
+                break;
             }
         }
 
+        void processDeltaUpEvents() {
+            for (final Arc a : delta_up_events)
+                deltas.add(a.from, a.to, 1);
+        }
+
         void processDeltaUpJourneyEvents() {
             while (!delta_up_events.isEmpty()) {
                 final Arc de = delta_up_events.poll();
@@ -284,7 +785,7 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         void processDeltaDownEvents() {
             while (!delta_down_events.isEmpty()) {
                 final Arc de = delta_down_events.poll();
-                decrement(de);
+                deltas.add(de.from, de.to, -1);
                 waypoints.removeDeltaArc(de);
             }
         }
@@ -292,7 +793,7 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         void processMuUpEvents() {
             while (!mu_up_events.isEmpty()) {
                 final Arc me = mu_up_events.poll();
-                increment(me);
+                deltas.add(me.from, me.to, 1);
                 waypoints.addShiftedMuArc(me);
             }
         }
@@ -308,22 +809,19 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
         void processShiftedMuDownEvents() {
             while (!shifted_mu_down_events.isEmpty()) {
                 final Arc a = shifted_mu_down_events.poll();
-                decrement(a);
+                deltas.add(a.from, a.to, -1);
             }
         }
 
-        void close() throws IOException {
-            delta_reader.close();
-            mu_reader.close();
-        }
-
         final class DeltaListener implements Listener<Arc> {
             @Override
-            public void handle(long time, Collection<Arc> events) {
+            public void handle(long time, Collection<Arc> events) throws IOException {
                 for (final Arc a : events) {
                     increment(a);
                     waypoints.addDeltaArc(a);
                 }
+                if (executor != null)
+                    reduceDeltas();
                 scheduleUpdate(time + eta);
             }
         }
@@ -342,11 +840,13 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
 
         final class MuListener implements Listener<Arc> {
             @Override
-            public void handle(long time, Collection<Arc> events) {
+            public void handle(long time, Collection<Arc> events) throws IOException {
                 for (final Arc a : events) {
                     increment(a);
                     waypoints.addShiftedMuArc(a);
                 }
+                if (executor != null)
+                    reduceDeltas();
                 scheduleUpdate(time + eta);
             }
         }
@@ -363,12 +863,6 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
             }
         }
 
-        @Override
-        public void incr(long dt) throws IOException {
-            delta_reader.incr(dt);
-            mu_reader.incr(dt);
-        }
-
         @Override
         public void seek(long time) throws IOException {
             mu_down_events.clear();
@@ -379,17 +873,124 @@ public final class AddingReachableConverter implements Converter, Generator, Lis
             delta_reader.seek(time);
             mu_reader.seek(time);
         }
+    }
+
+    // Composes two traces with cliques from their markers, without expanding
+    // the cliques into arcs.
+    private final class CliqueComposer extends Composer {
+        Deque<Arc> mu_leaves = new LinkedList<Arc>();
+        Deque<Arc> mu_joins = new LinkedList<Arc>();
+        Deque<Arc> delta_leaves = new LinkedList<Arc>();
+        Deque<Arc> delta_joins = new LinkedList<Arc>();
+        CliqueWaypoints waypoints = new CliqueWaypoints(deltas);
+
+        CliqueComposer(ReachabilityTrace deltaTrace, ReachabilityTrace muTrace, long offset) throws IOException {
+            delta_trace = deltaTrace;
+            mu_trace = muTrace;
+            delta_reader = delta_trace.getEncodedReader(delta_trace.defaultPriority(), 0L);
+            delta_reader.stateBus().addListener(new Listener<Arc>() {
+                @Override
+                public void handle(long time, Collection<Arc> events) throws IOException {
+                    for (final Arc a : events) {
+                        checkMarker(a);
+                        waypoints.joinDirectDelta(a.from, a.to);
+                        waypoints.joinDelta(a.from, a.to);
+                    }
+                    if (executor != null)
+                        reduceDeltas();
+                    scheduleUpdate(time + eta);
+                }
+            });
+            delta_reader.bus().addListener(new Listener<ArcEvent>() {
+                @Override
+                public void handle(long time, Collection<ArcEvent> events) throws IOException {
+                    queue(events, delta_joins, delta_leaves);
+                    scheduleUpdate(time);
+                }
+            });
+            mu_reader = mu_trace.getEncodedReader(Trace.defaultPriority, offset);
+            mu_reader.stateBus().addListener(new Listener<Arc>() {
+                @Override
+                public void handle(long time, Collection<Arc> events) throws IOException {
+                    for (final Arc a : events) {
+                        checkMarker(a);
+                        waypoints.joinMu(a.from, a.to);
+                    }
+                    if (executor != null)
+                        reduceDeltas();
+                    scheduleUpdate(time + eta);
+                }
+            });
+            mu_reader.bus().addListener(new Listener<ArcEvent>() {
+                @Override
+                public void handle(long time, Collection<ArcEvent> events) throws IOException {
+                    queue(events, mu_joins, mu_leaves);
+                    scheduleUpdate(time);
+                }
+            });
+        }
+
+        // Joins are applied before leaves, which is also the order in which
+        // ConnectedComponentsToReachableConverter writes the markers of a
+        // given time.
+        void queue(Collection<ArcEvent> events, Deque<Arc> joins, Deque<Arc> leaves) throws IOException {
+            for (final ArcEvent aev : events) {
+                final Arc a = aev.arc();
+                checkMarker(a);
+                if (aev.isUp())
+                    joins.addLast(a);
+                else
+                    leaves.addLast(a);
+            }
+        }
+
+        void checkMarker(Arc a) throws IOException {
+            if (!ReachabilityTrace.isCliqueMarker(a.to))
+                throw new IOException("Trace '" + delta_trace.name() + "' has arcs besides its cliques");
+        }
 
         @Override
-        public Bus<?>[] busses() {
-            return new Bus<?>[] {
-                    delta_reader.stateBus(), delta_reader.bus(),
-                    mu_reader.stateBus(), mu_reader.bus() };
+        void process(Phase phase) {
+            deltas.clear();
+            switch (phase) {
+            case DELTA_UP:
+                for (final Arc a : delta_joins)
+                    waypoints.joinDirectDelta(a.from, a.to);
+                break;
+            case UP:
+                while (!delta_joins.isEmpty()) {
+                    final Arc a = delta_joins.poll();
+                    waypoints.joinDelta(a.from, a.to);
+                }
+                while (!mu_joins.isEmpty()) {
+                    final Arc a = mu_joins.poll();
+                    waypoints.joinMu(a.from, a.to);
+                }
+                break;
+            case DOWN:
+                waypoints.removeShiftedMuDown();
+                while (!mu_leaves.isEmpty()) {
+                    final Arc a = mu_leaves.poll();
+                    waypoints.leaveMu(a.from, a.to);
+                }
+                while (!delta_leaves.isEmpty()) {
+                    final Arc a = delta_leaves.poll();
+                    waypoints.leaveDirectDelta(a.from, a.to);
+                    waypoints.leaveDelta(a.from, a.to);
+                }
+                break;
+            }
         }
 
         @Override
-        public int priority() {
-            return Trace.defaultPriority;
+        public void seek(long time) throws IOException {
+            mu_leaves.clear();
+            mu_joins.clear();
+            delta_leaves.clear();
+            delta_joins.clear();
+            waypoints.clear();
+            delta_reader.seek(time);
+            mu_reader.seek(time);
         }
     }
 }
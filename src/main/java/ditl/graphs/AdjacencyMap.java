@@ -19,63 +19,83 @@
 package ditl.graphs;
 
 import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+// Couples are stored as packed long keys in a primitive hash table, while
+// the neighbors of each vertex are kept in sorted int rows for adjacency
+// queries and iteration.
 public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
-    Map<Integer, Map<Integer, T>> map = new HashMap<Integer, Map<Integer, T>>();
-    int size = 0;
+    final PairTable pairs = new PairTable();
+    final NeighborTable rows = new NeighborTable();
 
+    long key(int id1, int id2) {
+        return PairTable.key(id1, id2);
+    }
+
+    // whether the row entry (id1,id2) should be visited when iterating
+    boolean visits(int id1, int id2) {
+        return true;
+    }
+
+    void link(int id1, int id2) {
+        rows.add(id1, id2);
+    }
+
+    void unlink(int id1, int id2) {
+        rows.remove(id1, id2);
+    }
+
+    // Row views are live but read-only: their put and remove throw
+    // UnsupportedOperationException, update the adjacency map itself instead.
+    // Their iterators walk a copy of the row, so the map may be modified
+    // while iterating over them.
     public Map<Integer, T> getStartsWith(Integer i) {
-        final Map<Integer, T> from_map = map.get(i);
-        if (from_map == null)
-            return Collections.emptyMap();
-        return from_map;
+        return new RowMap(i);
+    }
+
+    Set<Integer> getNext(Integer i) {
+        return new RowSet(i);
     }
 
     public Set<Integer> vertices() {
         final Set<Integer> vertices = new HashSet<Integer>();
-        vertices.addAll(map.keySet());
-        for (final Map<Integer, T> from_maps : map.values())
-            vertices.addAll(from_maps.keySet());
+        final Iterator<C> i = keysIterator();
+        while (i.hasNext()) {
+            final C c = i.next();
+            vertices.add(c.id1());
+            vertices.add(c.id2());
+        }
         return Collections.unmodifiableSet(vertices);
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public T get(Object key) {
         final Couple c = (Couple) key;
-        final Map<Integer, T> from_map = map.get(c.id1());
-        if (from_map != null)
-            return from_map.get(c.id2());
-        return null;
+        return (T) pairs.get(key(c.id1(), c.id2()));
     }
 
     @Override
     public T put(C c, T obj) {
         if (obj == null)
             throw new NullPointerException();
-        final T prev = put(c.id1(), c.id2(), obj);
-        if (prev == null)
-            size++;
-        return prev;
+        return put((int) c.id1(), (int) c.id2(), obj);
     }
 
-    T put(Integer id1, Integer id2, T obj) {
-        T prev = null;
-        Map<Integer, T> from_map = map.get(id1);
-        if (from_map != null)
-            prev = from_map.put(id2, obj);
-        else {
-            from_map = new HashMap<Integer, T>();
-            from_map.put(id2, obj);
-            map.put(id1, from_map);
-        }
+    @SuppressWarnings("unchecked")
+    T put(int id1, int id2, T obj) {
+        final T prev = (T) pairs.put(key(id1, id2), obj);
+        if (prev == null)
+            link(id1, id2);
         return prev;
     }
 
@@ -88,48 +108,56 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
     @Override
     public T remove(Object key) {
         final Couple c = (Couple) key;
-        final T obj = remove(c.id1(), c.id2());
-        size--;
-        return obj;
+        return remove((int) c.id1(), (int) c.id2());
     }
 
-    T remove(Integer id1, Integer id2) {
-        final Map<Integer, T> from_map = map.get(id1);
-        final T obj = from_map.remove(id2);
-        if (from_map.isEmpty())
-            map.remove(id1);
+    @SuppressWarnings("unchecked")
+    T remove(int id1, int id2) {
+        final T obj = (T) pairs.remove(key(id1, id2));
+        if (obj != null)
+            unlink(id1, id2);
         return obj;
     }
 
     protected abstract C newCouple(Integer id1, Integer id2);
 
     Iterator<T> valuesIterator() {
-        return new ValuesIterator();
+        return new RowsIterator<T>() {
+            @Override
+            T current() {
+                return value();
+            }
+        };
     }
 
     Iterator<C> keysIterator() {
-        return new KeysIterator();
+        return new RowsIterator<C>() {
+            @Override
+            C current() {
+                return newCouple(id1, id2);
+            }
+        };
     }
 
     Iterator<Map.Entry<C, T>> entriesIterator() {
-        return new EntriesIterator();
+        return new RowsIterator<Map.Entry<C, T>>() {
+            @Override
+            Map.Entry<C, T> current() {
+                return new AbstractMap.SimpleImmutableEntry<C, T>(newCouple(id1, id2), value());
+            }
+        };
     }
 
     @Override
     public void clear() {
-        for (final Map<Integer, T> from_maps : map.values())
-            from_maps.clear();
-        map.clear();
-        size = 0;
+        pairs.clear();
+        rows.clear();
     }
 
     @Override
     public boolean containsKey(Object key) {
         final Couple c = (Couple) key;
-        final Map<Integer, T> from_map = map.get(c.id1());
-        if (from_map != null)
-            return from_map.containsKey(c.id2());
-        return false;
+        return pairs.get(key(c.id1(), c.id2())) != null;
     }
 
     @Override
@@ -150,7 +178,7 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
     @Override
     public boolean isEmpty() {
-        return map.isEmpty();
+        return pairs.size() == 0;
     }
 
     @Override
@@ -160,7 +188,7 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
     @Override
     public int size() {
-        return size;
+        return pairs.size();
     }
 
     @Override
@@ -200,7 +228,7 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
         @Override
         public boolean isEmpty() {
-            return map.isEmpty();
+            return AdjacencyMap.this.isEmpty();
         }
 
         @Override
@@ -225,12 +253,12 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
         @Override
         public int size() {
-            return map.size();
+            return AdjacencyMap.this.size();
         }
 
         @Override
         public Object[] toArray() {
-            final Object[] array = new Object[size];
+            final Object[] array = new Object[size()];
             int j = 0;
             final Iterator<T> i = valuesIterator();
             while (i.hasNext()) {
@@ -266,20 +294,20 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
         @Override
         public boolean contains(Object obj) {
-            return map.containsKey(obj);
+            return containsKey(obj);
         }
 
         @Override
         public boolean containsAll(Collection<?> objects) {
             for (final Object o : objects)
-                if (!map.containsKey(o))
+                if (!containsKey(o))
                     return false;
             return true;
         }
 
         @Override
         public boolean isEmpty() {
-            return map.isEmpty();
+            return AdjacencyMap.this.isEmpty();
         }
 
         @Override
@@ -302,26 +330,24 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
         @Override
         public boolean retainAll(Collection<?> objects) {
-            boolean changed = false;
+            final Collection<C> to_remove = new java.util.LinkedList<C>();
             final Iterator<C> i = keysIterator();
             while (i.hasNext()) {
                 final C c = i.next();
-                if (!objects.contains(c)) {
-                    i.remove();
-                    changed = true;
-                }
+                if (!objects.contains(c))
+                    to_remove.add(c);
             }
-            return changed;
+            return removeAll(to_remove);
         }
 
         @Override
         public int size() {
-            return size;
+            return AdjacencyMap.this.size();
         }
 
         @Override
         public Object[] toArray() {
-            final Object[] array = new Object[size];
+            final Object[] array = new Object[size()];
             final Iterator<C> i = keysIterator();
             int j = 0;
             while (i.hasNext()) {
@@ -359,7 +385,7 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
         public boolean contains(Object o) {
             @SuppressWarnings("unchecked")
             final Map.Entry<Couple, T> e = (Map.Entry<Couple, T>) o;
-            return map.containsKey(e.getKey());
+            return containsKey(e.getKey());
         }
 
         @Override
@@ -372,7 +398,7 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
         @Override
         public boolean isEmpty() {
-            return map.isEmpty();
+            return AdjacencyMap.this.isEmpty();
         }
 
         @Override
@@ -397,31 +423,35 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
         @Override
         public boolean retainAll(Collection<?> objects) {
-            boolean changed = false;
+            final Collection<C> to_remove = new java.util.LinkedList<C>();
             final Iterator<C> i = keysIterator();
             while (i.hasNext()) {
                 final C c = i.next();
+                boolean keep = false;
                 for (final Object o : objects)
                     if (o != null) {
                         @SuppressWarnings("unchecked")
                         final Map.Entry<C, T> e = (Map.Entry<C, T>) o;
-                        if (e.getKey().equals(c)) {
-                            i.remove();
-                            changed = true;
-                        }
+                        if (e.getKey().equals(c))
+                            keep = true;
                     }
+                if (!keep)
+                    to_remove.add(c);
             }
+            boolean changed = false;
+            for (final C c : to_remove)
+                changed |= (AdjacencyMap.this.remove(c) != null);
             return changed;
         }
 
         @Override
         public int size() {
-            return size;
+            return AdjacencyMap.this.size();
         }
 
         @Override
         public Object[] toArray() {
-            final Object[] array = new Object[size];
+            final Object[] array = new Object[size()];
             final Iterator<Map.Entry<C, T>> i = entriesIterator();
             int j = 0;
             while (i.hasNext()) {
@@ -439,44 +469,55 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
 
     }
 
-    class ValuesIterator implements Iterator<T> {
-        Iterator<Integer> ki = map.keySet().iterator();
-        Iterator<Map.Entry<Integer, T>> vi = null;
-        Integer id1 = null;
-        Integer id2 = null;
-        T next = null;
+    // Walks the rows in table order, and each row in increasing order.
+    abstract class RowsIterator<E> implements Iterator<E> {
+        private int slot = -1;
+        private int k = 0;
+        private boolean has_next;
+        int id1;
+        int id2;
 
-        public ValuesIterator() {
-            peek();
+        RowsIterator() {
+            has_next = advance();
         }
 
-        void peek() {
-            if (vi == null || !vi.hasNext()) {
-                if (!ki.hasNext()) {
-                    vi = null;
-                    id1 = null;
-                    id2 = null;
-                    next = null;
-                    return;
+        private boolean advance() {
+            final NeighborTable t = rows;
+            while (true) {
+                if (slot < 0 || ++k >= t.sizes[slot]) {
+                    do
+                        slot++;
+                    while (slot < t.capacity() && t.rows[slot] == null);
+                    if (slot >= t.capacity())
+                        return false;
+                    k = 0;
                 }
-                id1 = ki.next();
-                vi = map.get(id1).entrySet().iterator();
+                if (visits(t.vertices[slot], t.rows[slot][k]))
+                    return true;
             }
-            final Map.Entry<Integer, T> e = vi.next();
-            next = e.getValue();
-            id2 = e.getKey();
         }
 
+        @SuppressWarnings("unchecked")
+        T value() {
+            return (T) pairs.get(key(id1, id2));
+        }
+
+        abstract E current();
+
         @Override
         public boolean hasNext() {
-            return next != null;
+            return has_next;
         }
 
         @Override
-        public T next() {
-            final T ret = next;
-            peek();
-            return ret;
+        public E next() {
+            if (!has_next)
+                throw new NoSuchElementException();
+            id1 = rows.vertices[slot];
+            id2 = rows.rows[slot][k];
+            final E e = current();
+            has_next = advance();
+            return e;
         }
 
         @Override
@@ -485,92 +526,113 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
         }
     }
 
-    class KeysIterator implements Iterator<C> {
-        Iterator<Integer> ki = map.keySet().iterator();
-        Iterator<Integer> vi = null;
-        Integer id1 = null;
-        Integer id2 = null;
-
-        public KeysIterator() {
-            peek();
-        }
+    // Live view of the neighbors of a vertex
+    private class RowSet extends AbstractSet<Integer> {
+        private final int _v;
 
-        void peek() {
-            if (vi == null || !vi.hasNext()) {
-                if (!ki.hasNext()) {
-                    vi = null;
-                    id1 = null;
-                    id2 = null;
-                    return;
-                }
-                id1 = ki.next();
-                vi = map.get(id1).keySet().iterator();
-            }
-            id2 = vi.next();
+        RowSet(int v) {
+            _v = v;
         }
 
         @Override
-        public boolean hasNext() {
-            return id2 != null;
+        public boolean contains(Object o) {
+            return (o instanceof Integer) && rows.contains(_v, (Integer) o);
         }
 
         @Override
-        public C next() {
-            final C couple = newCouple(id1, id2);
-            peek();
-            return couple;
+        public int size() {
+            final int s = rows.find(_v);
+            return (s < 0) ? 0 : rows.sizes[s];
         }
 
         @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+        public Iterator<Integer> iterator() {
+            final int s = rows.find(_v);
+            final int[] row = (s < 0) ? new int[0] : Arrays.copyOf(rows.rows[s], rows.sizes[s]);
+            return new Iterator<Integer>() {
+                int k = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return k < row.length;
+                }
+
+                @Override
+                public Integer next() {
+                    if (k >= row.length)
+                        throw new NoSuchElementException();
+                    return row[k++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
     }
 
-    class EntriesIterator implements Iterator<Map.Entry<C, T>> {
-        Iterator<Integer> ki = map.keySet().iterator();
-        Iterator<Map.Entry<Integer, T>> vi = null;
-        Integer id1 = null;
-        Integer id2 = null;
-        T next = null;
+    // Live view of the values of the couples starting with a vertex
+    private class RowMap extends AbstractMap<Integer, T> {
+        private final int _v;
 
-        public EntriesIterator() {
-            peek();
+        RowMap(int v) {
+            _v = v;
         }
 
-        void peek() {
-            if (vi == null || !vi.hasNext()) {
-                if (!ki.hasNext()) {
-                    vi = null;
-                    id1 = null;
-                    id2 = null;
-                    next = null;
-                    return;
-                }
-                id1 = ki.next();
-                vi = map.get(id1).entrySet().iterator();
-            }
-            final Map.Entry<Integer, T> e = vi.next();
-            id2 = e.getKey();
-            next = e.getValue();
+        @SuppressWarnings("unchecked")
+        @Override
+        public T get(Object o) {
+            if (!(o instanceof Integer))
+                return null;
+            return (T) pairs.get(key(_v, (Integer) o));
         }
 
         @Override
-        public boolean hasNext() {
-            return id2 != null;
+        public boolean containsKey(Object o) {
+            return (o instanceof Integer) && rows.contains(_v, (Integer) o);
         }
 
         @Override
-        public Map.Entry<C, T> next() {
-            final C couple = newCouple(id1, id2);
-            final T cur = next;
-            peek();
-            return new AbstractMap.SimpleImmutableEntry<C, T>(couple, cur);
+        public int size() {
+            return getNext(_v).size();
         }
 
         @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+        public Set<Integer> keySet() {
+            return getNext(_v);
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, T>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, T>>() {
+                @Override
+                public int size() {
+                    return RowMap.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<Integer, T>> iterator() {
+                    final Iterator<Integer> i = getNext(_v).iterator();
+                    return new Iterator<Map.Entry<Integer, T>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return i.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<Integer, T> next() {
+                            final Integer k = i.next();
+                            return new AbstractMap.SimpleImmutableEntry<Integer, T>(k, get(k));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
         }
     }
 
@@ -587,59 +649,36 @@ public abstract class AdjacencyMap<C extends Couple, T> implements Map<C, T> {
             return new Edge(id1, id2);
         }
 
+        // a single entry per edge, but rows in both directions
         @Override
-        T put(Integer id1, Integer id2, T obj) {
-            final T prev = super.put(id1, id2, obj);
-            super.put(id2, id1, obj);
-            return prev;
+        long key(int id1, int id2) {
+            return (id1 < id2) ? PairTable.key(id1, id2) : PairTable.key(id2, id1);
         }
 
         @Override
-        T remove(Integer id1, Integer id2) {
-            final T obj = super.remove(id1, id2);
-            super.remove(id2, id1);
-            return obj;
+        boolean visits(int id1, int id2) {
+            return id2 > id1;
         }
 
         @Override
-        public Set<Integer> vertices() {
-            return Collections.unmodifiableSet(map.keySet());
-        }
-
-        @Override
-        Iterator<T> valuesIterator() {
-            return new ValuesIterator() {
-                @Override
-                void peek() {
-                    do
-                        super.peek();
-                    while (next != null && id2.compareTo(id1) <= 0);
-                }
-            };
+        void link(int id1, int id2) {
+            rows.add(id1, id2);
+            rows.add(id2, id1);
         }
 
         @Override
-        Iterator<Edge> keysIterator() {
-            return new KeysIterator() {
-                @Override
-                void peek() {
-                    do
-                        super.peek();
-                    while (id2 != null && id2.compareTo(id1) <= 0);
-                }
-            };
+        void unlink(int id1, int id2) {
+            rows.remove(id1, id2);
+            rows.remove(id2, id1);
         }
 
         @Override
-        Iterator<Map.Entry<Edge, T>> entriesIterator() {
-            return new EntriesIterator() {
-                @Override
-                void peek() {
-                    do
-                        super.peek();
-                    while (next != null && id2.compareTo(id1) <= 0);
-                }
-            };
+        public Set<Integer> vertices() {
+            final Set<Integer> vertices = new HashSet<Integer>(rows.numVertices() * 2);
+            for (int s = 0; s < rows.capacity(); ++s)
+                if (rows.rows[s] != null)
+                    vertices.add(rows.vertices[s]);
+            return Collections.unmodifiableSet(vertices);
         }
     }
 }
@@ -19,7 +19,6 @@
 package ditl.graphs;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -35,8 +34,9 @@ public abstract class AdjacencySet<C extends Couple> implements Set<C> {
         map.clear();
     }
 
+    // live read-only view of the neighbors of i, see AdjacencyMap.getStartsWith
     public Set<Integer> getNext(Integer i) {
-        return Collections.unmodifiableSet(map.getStartsWith(i).keySet());
+        return map.getNext(i);
     }
 
     public Set<Integer> vertices() {
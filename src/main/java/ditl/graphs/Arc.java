@@ -19,6 +19,7 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Comparator;
 import java.util.Set;
 
 import ditl.CodedBuffer;
@@ -28,10 +29,10 @@ import ditl.Item;
 
 public final class Arc implements Item, Couple {
 
-    final public Integer from;
-    final public Integer to;
+    final public int from;
+    final public int to;
 
-    public Arc(Integer nodeFrom, Integer nodeTo) {
+    public Arc(int nodeFrom, int nodeTo) {
         from = nodeFrom;
         to = nodeTo;
     }
@@ -61,10 +62,22 @@ public final class Arc implements Item, Couple {
         return new Edge(from, to);
     }
 
+    // by source, then destination
+    final static Comparator<Arc> order = new Comparator<Arc>() {
+        @Override
+        public int compare(Arc a1, Arc a2) {
+            if (a1.from != a2.from)
+                return (a1.from < a2.from) ? -1 : 1;
+            if (a1.to != a2.to)
+                return (a1.to < a2.to) ? -1 : 1;
+            return 0;
+        }
+    };
+
     @Override
     public boolean equals(Object o) {
         final Arc l = (Arc) o;
-        return (l.from.equals(from)) && (l.to.equals(to));
+        return l.from == from && l.to == to;
     }
 
     @Override
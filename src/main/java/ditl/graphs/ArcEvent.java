@@ -32,11 +32,12 @@ public final class ArcEvent implements Item {
         UP, DOWN
     };
 
-    final public Integer to;
-    final public Integer from;
+    final public int to;
+    final public int from;
     final public Type type;
+    private Arc arc = null;
 
-    public ArcEvent(Integer nodeFrom, Integer nodeTo, Type arcEventType) {
+    public ArcEvent(int nodeFrom, int nodeTo, Type arcEventType) {
         from = nodeFrom;
         to = nodeTo;
         type = arcEventType;
@@ -53,13 +54,40 @@ public final class ArcEvent implements Item {
     }
 
     public Arc arc() {
-        return new Arc(from, to);
+        if (arc == null)
+            arc = new Arc(from, to);
+        return arc;
     }
 
+    // With a positive cache size, the factory hands out the same immutable
+    // instance for recurring events instead of allocating a new one each time.
     public static final class Factory implements Item.Factory<ArcEvent> {
+        public final static int sharedCacheSize = 4096;
+
+        private final ArcEvent[] cache;
+
+        public Factory() {
+            this(0);
+        }
+
+        public Factory(int cacheSize) {
+            cache = (cacheSize > 0) ? new ArcEvent[Integer.highestOneBit(cacheSize)] : null;
+        }
+
         @Override
         public ArcEvent fromBinaryStream(CodedInputStream in) throws IOException {
-            return new ArcEvent(in.readSInt(), in.readSInt(), Type.values()[in.readByte()]);
+            final int from = in.readSInt();
+            final int to = in.readSInt();
+            final Type type = Type.values()[in.readByte()];
+            if (cache == null)
+                return new ArcEvent(from, to, type);
+            final int k = ((from * 31 + to) * 2 + type.ordinal()) & (cache.length - 1);
+            ArcEvent e = cache[k];
+            if (e == null || e.from != from || e.to != to || e.type != type) {
+                e = new ArcEvent(from, to, type);
+                cache[k] = e;
+            }
+            return e;
         }
     }
 
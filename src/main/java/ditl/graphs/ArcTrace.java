@@ -24,6 +24,7 @@ import java.util.Set;
 
 import net.sf.json.JSONObject;
 import ditl.Filter;
+import ditl.IdCollector;
 import ditl.Listener;
 import ditl.StateUpdater;
 import ditl.StateUpdaterFactory;
@@ -34,7 +35,7 @@ import ditl.Writer;
 
 @Trace.Type("arcs")
 public class ArcTrace extends StatefulTrace<ArcEvent, Arc>
-        implements StatefulTrace.Filterable<ArcEvent, Arc> {
+        implements StatefulTrace.Filterable<ArcEvent, Arc>, Trace.Indexable<ArcEvent> {
 
     public final static class Updater implements StateUpdater<ArcEvent, Arc> {
 
@@ -68,7 +69,7 @@ public class ArcTrace extends StatefulTrace<ArcEvent, Arc>
     }
 
     public ArcTrace(Store store, String name, JSONObject config) throws IOException {
-        super(store, name, config, new ArcEvent.Factory(), new Arc.Factory(),
+        super(store, name, config, new ArcEvent.Factory(ArcEvent.Factory.sharedCacheSize), new Arc.Factory(),
                 new StateUpdaterFactory<ArcEvent, Arc>() {
                     @Override
                     public StateUpdater<ArcEvent, Arc> getNew() {
@@ -90,4 +91,10 @@ public class ArcTrace extends StatefulTrace<ArcEvent, Arc>
     @Override
     public void copyOverTraceInfo(Writer<ArcEvent> writer) {
     }
+
+    @Override
+    public void collectIds(ArcEvent item, IdCollector collector) {
+        collector.add(item.from);
+        collector.add(item.to);
+    }
 }
@@ -19,14 +19,17 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import net.sf.json.JSONObject;
 import ditl.Bus;
@@ -53,13 +56,43 @@ public final class ArcsToDominatingSetConverter implements Converter,
     private final Bus<Object> update_bus = new Bus<Object>();
     private final long min_time;
     private final Integer gid = 0;
+    private final int full_recompute_every;
+    private final double max_growth;
+    private int n_updates = 0;
+    private int last_full_size = 0;
+    // number of nodes of the dominating set covering each present node,
+    // itself included
+    private final Map<Integer, int[]> coverage = new HashMap<Integer, int[]>();
+    private final Set<Integer> touched = new TreeSet<Integer>();
+    private final Set<Integer> to_check = new TreeSet<Integer>();
+    private final Set<Integer> joined = new HashSet<Integer>();
+    private final Set<Integer> left = new HashSet<Integer>();
+
+    public final static int defaultFullRecomputeEvery = 1;
+    public final static double defaultMaxGrowth = 1.1;
 
     public ArcsToDominatingSetConverter(GroupTrace dominatingSet,
             ArcTrace arcs, PresenceTrace presence) {
+        this(dominatingSet, arcs, presence, defaultFullRecomputeEvery);
+    }
+
+    public ArcsToDominatingSetConverter(GroupTrace dominatingSet,
+            ArcTrace arcs, PresenceTrace presence, int fullRecomputeEvery) {
+        this(dominatingSet, arcs, presence, fullRecomputeEvery, defaultMaxGrowth);
+    }
+
+    // fullRecomputeEvery: rebuild the dominating set from scratch every that
+    // many updates instead of repairing it (1 always rebuilds, 0 only when
+    // needed). maxGrowth: also rebuild it when the repaired set grows beyond
+    // that ratio of the last rebuilt one.
+    public ArcsToDominatingSetConverter(GroupTrace dominatingSet,
+            ArcTrace arcs, PresenceTrace presence, int fullRecomputeEvery, double maxGrowth) {
         _arcs = arcs;
         _presence = presence;
         dominating_set = dominatingSet;
         min_time = _presence.minTime();
+        full_recompute_every = fullRecomputeEvery;
+        max_growth = maxGrowth;
     }
 
     @Override
@@ -97,12 +130,20 @@ public final class ArcsToDominatingSetConverter implements Converter,
                 for (final ArcEvent aev : events) {
                     final Arc a = aev.arc();
                     if (aev.isUp()) {
-                        matrix.add(a);
-                        reverse_matrix.add(a.reverse());
-                    } else {
+                        if (!matrix.contains(a)) {
+                            matrix.add(a);
+                            reverse_matrix.add(a.reverse());
+                            if (inDS(a.from))
+                                cover(a.to, 1);
+                        }
+                    } else if (matrix.contains(a)) {
                         matrix.remove(a);
                         reverse_matrix.remove(a.reverse());
+                        if (inDS(a.from))
+                            cover(a.to, -1);
                     }
+                    touched.add(a.from);
+                    touched.add(a.to);
                 }
                 scheduleUpdate(time);
             }
@@ -117,6 +158,8 @@ public final class ArcsToDominatingSetConverter implements Converter,
                 for (final Arc a : events) {
                     matrix.add(a);
                     reverse_matrix.add(a.reverse());
+                    touched.add(a.from);
+                    touched.add(a.to);
                 }
                 scheduleUpdate(time);
             }
@@ -128,11 +171,20 @@ public final class ArcsToDominatingSetConverter implements Converter,
         return new Listener<PresenceEvent>() {
             @Override
             public void handle(long time, Collection<PresenceEvent> events) {
-                for (final PresenceEvent pev : events)
-                    if (pev.isIn())
-                        present.add(pev.id);
-                    else
-                        present.remove(pev.id);
+                for (final PresenceEvent pev : events) {
+                    final Integer id = pev.id;
+                    if (pev.isIn()) {
+                        present.add(id);
+                        if (ds_nodes != null)
+                            initCoverage(id);
+                    } else {
+                        present.remove(id);
+                        if (inDS(id))
+                            unpick(id);
+                        coverage.remove(id);
+                    }
+                    touched.add(id);
+                }
                 scheduleUpdate(time);
             }
         };
@@ -143,8 +195,10 @@ public final class ArcsToDominatingSetConverter implements Converter,
         return new Listener<Presence>() {
             @Override
             public void handle(long time, Collection<Presence> events) {
-                for (final Presence p : events)
+                for (final Presence p : events) {
                     present.add(p.id);
+                    touched.add(p.id);
+                }
                 scheduleUpdate(time);
             }
         };
@@ -256,8 +310,177 @@ public final class ArcsToDominatingSetConverter implements Converter,
     public void seek(long time) throws IOException {
     }
 
+    private boolean inDS(Integer id) {
+        return ds_nodes != null && ds_nodes.contains(id);
+    }
+
+    private void cover(Integer id, int d) {
+        final int[] c = coverage.get(id);
+        if (c != null)
+            c[0] += d;
+    }
+
+    private int coverageOf(Integer id) {
+        final int[] c = coverage.get(id);
+        return (c == null) ? 0 : c[0];
+    }
+
+    private void initCoverage(Integer id) {
+        int c = ds_nodes.contains(id) ? 1 : 0;
+        for (final Integer from : reverse_matrix.getNext(id))
+            if (ds_nodes.contains(from))
+                c++;
+        coverage.put(id, new int[] { c });
+    }
+
+    private void rebuildCoverage() {
+        coverage.clear();
+        for (final Integer id : present)
+            coverage.put(id, new int[] { 0 });
+        for (final Integer id : ds_nodes) {
+            cover(id, 1);
+            for (final Integer to : matrix.getNext(id))
+                cover(to, 1);
+        }
+    }
+
+    // nodes of the dominating set that cover the node 'id'
+    private void checkDominators(Integer id) {
+        if (ds_nodes.contains(id))
+            to_check.add(id);
+        for (final Integer from : reverse_matrix.getNext(id))
+            if (ds_nodes.contains(from))
+                to_check.add(from);
+    }
+
+    private void pick(Integer id) {
+        ds_nodes.add(id);
+        if (!left.remove(id))
+            joined.add(id);
+        cover(id, 1);
+        checkDominators(id);
+        for (final Integer to : matrix.getNext(id)) {
+            cover(to, 1);
+            checkDominators(to);
+        }
+    }
+
+    private void unpick(Integer id) {
+        ds_nodes.remove(id);
+        if (!joined.remove(id))
+            left.add(id);
+        cover(id, -1);
+        for (final Integer to : matrix.getNext(id)) {
+            cover(to, -1);
+            touched.add(to);
+        }
+    }
+
+    // A node of the dominating set can be dropped if it has incoming arcs and
+    // everything it covers is also covered by another node of the set.
+    private boolean isRedundant(Integer id) {
+        if (reverse_matrix.getNext(id).isEmpty() || coverageOf(id) < 2)
+            return false;
+        for (final Integer to : matrix.getNext(id))
+            if (coverage.containsKey(to) && coverageOf(to) < 2)
+                return false;
+        return true;
+    }
+
+    private int gain(Integer id, Set<Integer> uncovered) {
+        int g = uncovered.contains(id) ? 1 : 0;
+        for (final Integer to : matrix.getNext(id))
+            if (uncovered.contains(to))
+                g++;
+        return g;
+    }
+
+    private void addCandidate(Integer id, Set<Integer> uncovered, Set<Integer> candidates, List<List<Integer>> buckets) {
+        if (!candidates.add(id))
+            return;
+        final int g = gain(id, uncovered);
+        while (buckets.size() <= g)
+            buckets.add(new ArrayList<Integer>());
+        buckets.get(g).add(id);
+    }
+
+    // Greedily covers the given nodes, always picking the candidate that
+    // covers the most of them. Candidates sit in buckets indexed by their
+    // number of uncovered neighbors. Those numbers only decrease, so they are
+    // checked lazily when a candidate reaches the top of the highest bucket.
+    private void coverGreedily(Set<Integer> uncovered) {
+        final Set<Integer> candidates = new HashSet<Integer>();
+        final List<List<Integer>> buckets = new ArrayList<List<Integer>>();
+        for (final Integer id : new TreeSet<Integer>(uncovered)) {
+            boolean dominated = false;
+            for (final Integer from : reverse_matrix.getNext(id))
+                if (present.contains(from)) {
+                    addCandidate(from, uncovered, candidates, buckets);
+                    dominated = true;
+                }
+            if (!dominated || !matrix.getNext(id).isEmpty())
+                addCandidate(id, uncovered, candidates, buckets);
+        }
+        int top = buckets.size() - 1;
+        while (!uncovered.isEmpty() && top > 0) {
+            final List<Integer> bucket = buckets.get(top);
+            if (bucket.isEmpty()) {
+                top--;
+                continue;
+            }
+            final Integer id = bucket.remove(bucket.size() - 1);
+            final int g = gain(id, uncovered);
+            if (g == top) {
+                pick(id);
+                uncovered.remove(id);
+                uncovered.removeAll(matrix.getNext(id));
+            } else if (g > 0) {
+                buckets.get(g).add(id);
+            }
+        }
+    }
+
+    // Repairs the dominating set around the nodes touched since the last
+    // update: nodes without incoming arcs are added, uncovered nodes are
+    // covered greedily, and the nodes that are no longer needed are dropped.
+    private void repair() {
+        for (final Integer id : touched)
+            if (present.contains(id) && !ds_nodes.contains(id) && reverse_matrix.getNext(id).isEmpty())
+                pick(id);
+        final Set<Integer> uncovered = new HashSet<Integer>();
+        for (final Integer id : touched)
+            if (present.contains(id)) {
+                if (coverageOf(id) == 0)
+                    uncovered.add(id);
+                checkDominators(id);
+            }
+        if (!uncovered.isEmpty())
+            coverGreedily(uncovered);
+        for (final Integer id : to_check)
+            if (ds_nodes.contains(id) && isRedundant(id))
+                unpick(id);
+        to_check.clear();
+    }
+
+    private void writeChanges(long time) throws IOException {
+        if (!left.isEmpty())
+            group_writer.append(time, new GroupEvent(gid, GroupEvent.Type.LEAVE, left));
+        if (!joined.isEmpty())
+            group_writer.append(time, new GroupEvent(gid, GroupEvent.Type.JOIN, joined));
+        left.clear();
+        joined.clear();
+    }
+
     @Override
     public void handle(long time, Collection<Object> events) throws IOException {
+        if (time != min_time && (full_recompute_every <= 0 || ++n_updates % full_recompute_every != 0)) {
+            repair();
+            touched.clear();
+            if (ds_nodes.size() <= max_growth * last_full_size) {
+                writeChanges(time);
+                return;
+            }
+        }
         final DSCalculator calc = new DSCalculator();
         final Set<Integer> new_ds_nodes = calc.calculateNewDS();
         if (time == min_time) { // set the init state
@@ -265,19 +488,19 @@ public final class ArcsToDominatingSetConverter implements Converter,
             final Group grp = new Group(gid, new_ds_nodes);
             group_writer.setInitState(min_time, Collections.singleton(grp));
         } else {
-            final Set<Integer> to_del = new HashSet<Integer>();
-            final Set<Integer> to_add = new HashSet<Integer>();
+            // changes made by a repair at this time may still be pending
             for (final Integer n : ds_nodes)
-                if (!new_ds_nodes.contains(n))
-                    to_del.add(n);
+                if (!new_ds_nodes.contains(n) && !joined.remove(n))
+                    left.add(n);
             for (final Integer n : new_ds_nodes)
-                if (!ds_nodes.contains(n))
-                    to_add.add(n);
-            if (!to_del.isEmpty())
-                group_writer.append(time, new GroupEvent(gid, GroupEvent.Type.LEAVE, to_del));
-            if (!to_add.isEmpty())
-                group_writer.append(time, new GroupEvent(gid, GroupEvent.Type.JOIN, to_add));
+                if (!ds_nodes.contains(n) && !left.remove(n))
+                    joined.add(n);
+            writeChanges(time);
             ds_nodes = new_ds_nodes;
         }
+        last_full_size = new_ds_nodes.size();
+        rebuildCoverage();
+        touched.clear();
+        to_check.clear();
     }
 }
@@ -23,12 +23,13 @@ import java.util.Set;
 
 import net.sf.json.JSONObject;
 import ditl.Filter;
+import ditl.IdCollector;
 import ditl.Store;
 import ditl.Trace;
 import ditl.Writer;
 
 @Trace.Type("beacons")
-public class BeaconTrace extends Trace<Arc> implements Trace.Filterable<Arc> {
+public class BeaconTrace extends Trace<Arc> implements Trace.Filterable<Arc>, Trace.Indexable<Arc> {
 
     public final static String beaconningPeriodKey = "beaconning period";
 
@@ -49,4 +50,10 @@ public class BeaconTrace extends Trace<Arc> implements Trace.Filterable<Arc> {
     public void copyOverTraceInfo(Writer<Arc> writer) {
         writer.setProperty(beaconningPeriodKey, config.get(beaconningPeriodKey));
     }
+
+    @Override
+    public void collectIds(Arc item, IdCollector collector) {
+        collector.add(item.from);
+        collector.add(item.to);
+    }
 }
@@ -20,17 +20,19 @@ package ditl.graphs;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
 import ditl.Bus;
 import ditl.Converter;
 import ditl.Generator;
 import ditl.Listener;
-import ditl.Matcher;
 import ditl.Runner;
 import ditl.StatefulListener;
 import ditl.StatefulReader;
 import ditl.Trace;
+import ditl.WheelBus;
 import ditl.Writer;
 
 public final class BeaconningConverter implements PresenceTrace.Handler, Converter, Generator {
@@ -40,7 +42,8 @@ public final class BeaconningConverter implements PresenceTrace.Handler, Convert
     private final AdjacencySet.Edges _adjacency = new AdjacencySet.Edges();
     private final long _period;
     private final Random rng = new Random();
-    private final Bus<Integer> next_scans = new Bus<Integer>();
+    private final WheelBus<Integer> next_scans = new WheelBus<Integer>();
+    private final Map<Integer, WheelBus<Integer>.Timer> pending_scans = new HashMap<Integer, WheelBus<Integer>.Timer>();
     private Writer<Arc> beacon_writer;
 
     private final BeaconTrace _beacons;
@@ -68,7 +71,7 @@ public final class BeaconningConverter implements PresenceTrace.Handler, Convert
                         if (q < 1.0 - _p)
                             beacon_writer.append(time, new Arc(i, n));
                     }
-                    next_scans.queue(time + _period, i);
+                    pending_scans.put(i, next_scans.schedule(time + _period, i));
                 }
             }
         };
@@ -86,22 +89,22 @@ public final class BeaconningConverter implements PresenceTrace.Handler, Convert
             @Override
             public void reset() {
                 next_scans.reset();
+                pending_scans.clear();
             }
         };
     }
 
     private void initBeaconning(long time, Integer id) {
         final long nextScan = (_randomize) ? time + Math.abs(rng.nextLong() % _period) : time;
-        next_scans.queue(nextScan, id);
+        final WheelBus<Integer>.Timer scan = pending_scans.put(id, next_scans.schedule(nextScan, id));
+        if (scan != null)
+            scan.cancel();
     }
 
-    private void stopBeaconning(long time, final Integer id) {
-        next_scans.removeFromQueueAfterTime(time, new Matcher<Integer>() {
-            @Override
-            public boolean matches(Integer item) {
-                return item.equals(id);
-            }
-        });
+    private void stopBeaconning(Integer id) {
+        final WheelBus<Integer>.Timer scan = pending_scans.remove(id);
+        if (scan != null)
+            scan.cancel();
     }
 
     @Override
@@ -113,7 +116,7 @@ public final class BeaconningConverter implements PresenceTrace.Handler, Convert
                     if (pev.isIn())
                         initBeaconning(time, pev.id);
                     else
-                        stopBeaconning(time, pev.id);
+                        stopBeaconning(pev.id);
             }
         };
     }
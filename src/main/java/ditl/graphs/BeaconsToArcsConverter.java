@@ -22,8 +22,6 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
-import java.util.TreeMap;
 
 import ditl.Converter;
 import ditl.Incrementable;
@@ -31,14 +29,16 @@ import ditl.Listener;
 import ditl.Reader;
 import ditl.Runner;
 import ditl.StatefulWriter;
+import ditl.WheelBus;
 
 public final class BeaconsToArcsConverter implements Incrementable, Converter {
 
     private final long _period;
     private int _tol = 0;
     private long cur_time;
-    private final TreeMap<Long, Set<Arc>> arcsBuffer = new TreeMap<Long, Set<Arc>>();
-    private final Map<Arc, Long> lastArcs = new AdjacencyMap.Arcs<Long>();
+    // pending expiry of each detected arc, rescheduled on every beacon
+    private final WheelBus<Arc> expiries = new WheelBus<Arc>();
+    private final Map<Arc, WheelBus<Arc>.Timer> lastArcs = new AdjacencyMap.Arcs<WheelBus<Arc>.Timer>();
     private final Random rng = new Random();
     private final double _expansion;
     private StatefulWriter<ArcEvent, Arc> arc_writer;
@@ -54,6 +54,7 @@ public final class BeaconsToArcsConverter implements Incrementable, Converter {
         _period = beacons.beaconningPeriod();
         _tol = tol;
         _expansion = expansion;
+        expiries.addListener(expiredListener());
     }
 
     public Listener<Arc> detectedListener() {
@@ -61,44 +62,30 @@ public final class BeaconsToArcsConverter implements Incrementable, Converter {
             @Override
             public void handle(long time, Collection<Arc> events) {
                 for (final Arc a : events) {
-                    if (!lastArcs.containsKey(a)) { // edge comes up
+                    final WheelBus<Arc>.Timer expiry = lastArcs.get(a);
+                    if (expiry == null) { // edge comes up
                         final long start_time = time - (long) (_expansion * rand());
                         arc_writer.queue(start_time, new ArcEvent(a, ArcEvent.Type.UP));
-                    }
-                    appendLastArc(time, a);
+                    } else
+                        expiry.cancel();
+                    lastArcs.put(a, expiries.schedule(time + (_tol + 1) * _period, a));
                 }
             }
         };
     }
 
-    private void appendLastArc(long time, Arc arc) {
-        if (lastArcs.containsKey(arc)) { // remove from beaconBuffer
-            final Long prevTime = lastArcs.get(arc);
-            final Set<Arc> arcs = arcsBuffer.get(prevTime);
-            arcs.remove(arc);
-            if (arcs.isEmpty())
-                arcsBuffer.remove(prevTime);
-        }
-        Set<Arc> arcsAtTime = arcsBuffer.get(time);
-        if (arcsAtTime == null) {
-            arcsAtTime = new AdjacencySet.Arcs();
-            arcsBuffer.put(time, arcsAtTime);
-        }
-        arcsAtTime.add(arc);
-        lastArcs.put(arc, time);
-    }
-
-    private void expireBeacons() {
-        while (!arcsBuffer.isEmpty() &&
-                arcsBuffer.firstKey() <= cur_time - (_tol + 1) * _period) {
-            final Map.Entry<Long, Set<Arc>> e = arcsBuffer.pollFirstEntry();
-            final long time = e.getKey();
-            for (final Arc arc : e.getValue()) {
-                final long end_time = time + (long) (_expansion * rand());
-                arc_writer.queue(end_time, new ArcEvent(arc, ArcEvent.Type.DOWN));
-                lastArcs.remove(arc);
+    private Listener<Arc> expiredListener() {
+        return new Listener<Arc>() {
+            @Override
+            public void handle(long time, Collection<Arc> events) {
+                final long last_time = time - (_tol + 1) * _period;
+                for (final Arc arc : events) {
+                    final long end_time = last_time + (long) (_expansion * rand());
+                    arc_writer.queue(end_time, new ArcEvent(arc, ArcEvent.Type.DOWN));
+                    lastArcs.remove(arc);
+                }
             }
-        }
+        };
     }
 
     private long rand() {
@@ -107,7 +94,7 @@ public final class BeaconsToArcsConverter implements Incrementable, Converter {
 
     @Override
     public void incr(long dt) throws IOException {
-        expireBeacons();
+        expiries.flush(cur_time);
         arc_writer.flush(cur_time - (_tol + 1) * _period);
         cur_time += dt;
     }
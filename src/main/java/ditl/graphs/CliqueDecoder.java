@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import ditl.StatefulTrace;
+
+// Expands a reachability trace in which the members of a clique are encoded
+// as arcs towards a marker (see ReachabilityTrace.cliqueMarker) into plain
+// arcs. An arc is up if it is up explicitly or if both its ends belong to a
+// same clique. Events are decoded one by one into the arc events they cause,
+// so that arcs that are only up in the middle of a block still go up and
+// down.
+final class CliqueDecoder implements StatefulTrace.Decoder<ArcEvent, Arc> {
+
+    private final Map<Integer, TreeSet<Integer>> members = new HashMap<Integer, TreeSet<Integer>>();
+    // a node only belongs to several cliques while it moves from one to the other
+    private final Map<Integer, TreeSet<Integer>> cliques_of = new HashMap<Integer, TreeSet<Integer>>();
+    private final AdjacencySet.Arcs explicit = new AdjacencySet.Arcs();
+
+    @Override
+    public List<Arc> decodeState(List<Arc> states) {
+        members.clear();
+        cliques_of.clear();
+        explicit.clear();
+        final AdjacencySet.Arcs arcs = new AdjacencySet.Arcs();
+        for (final Arc a : states)
+            if (ReachabilityTrace.isCliqueMarker(a.to))
+                add(a.from, a.to);
+            else
+                explicit.add(a);
+        arcs.addAll(explicit);
+        for (final TreeSet<Integer> clique : members.values())
+            for (final Integer i : clique)
+                for (final Integer j : clique)
+                    if (!i.equals(j))
+                        arcs.add(new Arc(i, j));
+        return new ArrayList<Arc>(arcs);
+    }
+
+    @Override
+    public List<ArcEvent> decodeEvents(List<ArcEvent> events) {
+        if (members.isEmpty() && !hasMarkers(events)) {
+            for (final ArcEvent aev : events)
+                if (aev.isUp())
+                    explicit.add(aev.arc());
+                else
+                    explicit.remove(aev.arc());
+            return events;
+        }
+        final List<ArcEvent> decoded = new ArrayList<ArcEvent>();
+        for (final ArcEvent aev : events)
+            if (ReachabilityTrace.isCliqueMarker(aev.to)) {
+                if (aev.isUp())
+                    join(aev.from, aev.to, decoded);
+                else
+                    leave(aev.from, aev.to, decoded);
+            } else {
+                final boolean was_up = isUp(aev.from, aev.to);
+                if (aev.isUp())
+                    explicit.add(aev.arc());
+                else
+                    explicit.remove(aev.arc());
+                if (was_up != isUp(aev.from, aev.to))
+                    decoded.add(aev);
+            }
+        return decoded;
+    }
+
+    private boolean hasMarkers(List<ArcEvent> events) {
+        for (final ArcEvent aev : events)
+            if (ReachabilityTrace.isCliqueMarker(aev.to))
+                return true;
+        return false;
+    }
+
+    private boolean add(Integer node, Integer marker) {
+        TreeSet<Integer> clique = members.get(marker);
+        if (clique == null) {
+            clique = new TreeSet<Integer>();
+            members.put(marker, clique);
+        }
+        TreeSet<Integer> cliques = cliques_of.get(node);
+        if (cliques == null) {
+            cliques = new TreeSet<Integer>();
+            cliques_of.put(node, cliques);
+        }
+        cliques.add(marker);
+        return clique.add(node);
+    }
+
+    private void join(Integer node, Integer marker, List<ArcEvent> decoded) {
+        final TreeSet<Integer> clique = members.get(marker);
+        if (clique != null && clique.contains(node))
+            return;
+        if (clique != null)
+            for (final Integer m : clique) {
+                if (!isUp(node, m))
+                    decoded.add(new ArcEvent(node, m, ArcEvent.Type.UP));
+                if (!isUp(m, node))
+                    decoded.add(new ArcEvent(m, node, ArcEvent.Type.UP));
+            }
+        add(node, marker);
+    }
+
+    private void leave(Integer node, Integer marker, List<ArcEvent> decoded) {
+        final TreeSet<Integer> clique = members.get(marker);
+        if (clique == null || !clique.remove(node))
+            return;
+        final TreeSet<Integer> cliques = cliques_of.get(node);
+        cliques.remove(marker);
+        if (cliques.isEmpty())
+            cliques_of.remove(node);
+        if (clique.isEmpty())
+            members.remove(marker);
+        for (final Integer m : clique) {
+            if (!isUp(node, m))
+                decoded.add(new ArcEvent(node, m, ArcEvent.Type.DOWN));
+            if (!isUp(m, node))
+                decoded.add(new ArcEvent(m, node, ArcEvent.Type.DOWN));
+        }
+    }
+
+    private boolean isUp(int from, int to) {
+        final TreeSet<Integer> c1 = cliques_of.get(from);
+        final TreeSet<Integer> c2 = cliques_of.get(to);
+        if (c1 != null && c2 != null)
+            for (final Integer c : c1)
+                if (c2.contains(c))
+                    return true;
+        return !explicit.isEmpty() && explicit.contains(new Arc(from, to));
+    }
+}
@@ -20,11 +20,13 @@ package ditl.graphs;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import ditl.Listener;
 import ditl.ReportFactory;
@@ -36,70 +38,151 @@ public final class ClusteringCoefficientReport extends StateTimeReport
 
     private final AdjacencySet.Edges adjacency = new AdjacencySet.Edges();
     private final Map<Integer, Double> coeffs = new HashMap<Integer, Double>();
+    // number of triangles each node belongs to
+    private final Map<Integer, int[]> triangles = new HashMap<Integer, int[]>();
+    private final Set<Integer> changed = new TreeSet<Integer>();
+    // nodes whose degree or triangle count changed since the last refresh
+    private final Set<Integer> touched = new LinkedHashSet<Integer>();
     private final boolean remove_leaves;
+    private final boolean changed_only;
+    private int[] common = new int[16];
 
     public ClusteringCoefficientReport(OutputStream out, boolean removeLeaves) throws IOException {
+        this(out, removeLeaves, false);
+    }
+
+    public ClusteringCoefficientReport(OutputStream out, boolean removeLeaves, boolean changedOnly) throws IOException {
         super(out);
         remove_leaves = removeLeaves;
-        appendComment("time | duration | clustering coefficient distribution");
+        changed_only = changedOnly;
+        if (changed_only)
+            appendComment("time | duration | changed clustering coefficients (id:coeff, or id:- when the node leaves)");
+        else
+            appendComment("time | duration | clustering coefficient distribution");
     }
 
     public static final class Factory implements ReportFactory<ClusteringCoefficientReport> {
         private final boolean remove_leaves;
+        private final boolean changed_only;
 
         public Factory(boolean removeLeaves) {
+            this(removeLeaves, false);
+        }
+
+        public Factory(boolean removeLeaves, boolean changedOnly) {
             remove_leaves = removeLeaves;
+            changed_only = changedOnly;
         }
 
         @Override
         public ClusteringCoefficientReport getNew(OutputStream out) throws IOException {
-            return new ClusteringCoefficientReport(out, remove_leaves);
+            return new ClusteringCoefficientReport(out, remove_leaves, changed_only);
+        }
+    }
+
+    private int degree(int i) {
+        final NeighborTable rows = adjacency.map.rows;
+        final int s = rows.find(i);
+        return (s < 0) ? 0 : rows.sizes[s];
+    }
+
+    // fills 'common' with the common neighbors of i1 and i2 in increasing
+    // order, by looking up the smaller row in the larger one
+    private int commonNeighbors(int i1, int i2) {
+        final NeighborTable rows = adjacency.map.rows;
+        int s1 = rows.find(i1), s2 = rows.find(i2);
+        if (s1 < 0 || s2 < 0)
+            return 0;
+        if (rows.sizes[s1] > rows.sizes[s2]) {
+            final int s = s1;
+            s1 = s2;
+            s2 = s;
+        }
+        final int[] r1 = rows.rows[s1], r2 = rows.rows[s2];
+        final int n1 = rows.sizes[s1], n2 = rows.sizes[s2];
+        if (common.length < n1)
+            common = new int[Math.max(n1, common.length * 2)];
+        int n = 0;
+        for (int k = 0; k < n1; ++k)
+            if (Arrays.binarySearch(r2, 0, n2, r1[k]) >= 0)
+                common[n++] = r1[k];
+        return n;
+    }
+
+    private void addTriangles(int i, int n) {
+        int[] t = triangles.get(i);
+        if (t == null) {
+            t = new int[1];
+            triangles.put(i, t);
         }
+        t[0] += n;
+        if (t[0] == 0)
+            triangles.remove(i);
     }
 
-    private void updateSurroundingCoeffs(Edge edge) {
-        final Integer i1 = edge.id1;
-        final Integer i2 = edge.id2;
-        final Set<Integer> n1 = adjacency.getNext(i1);
-        final Set<Integer> n2 = adjacency.getNext(i2);
-        if (!n1.isEmpty() && !n2.isEmpty())
-            for (final Integer k : n1)
-                if (n2.contains(k))
-                    updateCoeff(k);
-        updateCoeff(i1);
-        updateCoeff(i2);
+    // the edge is added or removed, and the triangle counts of its endpoints
+    // and of their common neighbors adjusted accordingly
+    private void handleEdge(Edge edge, boolean up) {
+        if (adjacency.contains(edge) == up)
+            return;
+        if (up)
+            adjacency.add(edge);
+        final int n = commonNeighbors(edge.id1, edge.id2);
+        final int d = up ? 1 : -1;
+        for (int k = 0; k < n; ++k) {
+            addTriangles(common[k], d);
+            touched.add(common[k]);
+        }
+        if (n > 0) {
+            addTriangles(edge.id1, d * n);
+            addTriangles(edge.id2, d * n);
+        }
+        touched.add(edge.id1);
+        touched.add(edge.id2);
+        if (!up)
+            adjacency.remove(edge);
+    }
+
+    private void updateTouchedCoeffs() {
+        for (final Integer i : touched)
+            updateCoeff(i);
+        touched.clear();
     }
 
     private void updateCoeff(Integer i) {
-        final Set<Integer> neighbs = adjacency.getNext(i);
-        if (neighbs.isEmpty())
-            coeffs.put(i, 0.0);
+        final int k = degree(i);
+        final double coeff;
+        if (k < 2)
+            coeff = 0.0;
         else {
-            final int k = neighbs.size();
-            if (k < 2)
-                coeffs.put(i, 0.0);
-            else {
-                final Set<Integer> buff = new HashSet<Integer>();
-                int n_edges = 0;
-                for (final Integer j : neighbs) {
-                    final Set<Integer> j_neighbs = adjacency.getNext(j);
-                    for (final Integer l : buff)
-                        if (j_neighbs.contains(l))
-                            n_edges++;
-                    buff.add(j);
-                }
-                final double coeff = 2 * (double) n_edges / (k * (k - 1));
-                coeffs.put(i, coeff);
-            }
+            final int[] t = triangles.get(i);
+            coeff = 2 * (double) ((t == null) ? 0 : t[0]) / (k * (k - 1));
         }
+        setCoeff(i, coeff);
+    }
+
+    private void setCoeff(Integer i, Double coeff) {
+        final Double prev = (coeff == null) ? coeffs.remove(i) : coeffs.put(i, coeff);
+        if (changed_only && (prev == null ? coeff != null : !prev.equals(coeff)))
+            changed.add(i);
     }
 
     private void update(long time) throws IOException {
         final StringBuffer buffer = new StringBuffer();
-        // buffer.append(time);
-        for (final Double c : coeffs.values())
-            if (c > 0 || !remove_leaves)
-                buffer.append(c + " ");
+        if (changed_only) {
+            if (changed.isEmpty())
+                return;
+            for (final Integer i : changed) {
+                final Double c = coeffs.get(i);
+                buffer.append(i + ":" + ((c == null) ? "-" : c) + " ");
+            }
+            changed.clear();
+        } else {
+            // buffer.append(time);
+            for (final Double c : coeffs.values())
+                if (c > 0 || !remove_leaves)
+                    buffer.append(c + " ");
+        }
         append(time, buffer.toString());
     }
 
@@ -107,12 +190,16 @@ public final class ClusteringCoefficientReport extends StateTimeReport
     public Listener<PresenceEvent> presenceEventListener() {
         return new Listener<PresenceEvent>() {
             @Override
-            public void handle(long time, Collection<PresenceEvent> events) {
+            public void handle(long time, Collection<PresenceEvent> events)
+                    throws IOException {
                 for (final PresenceEvent pev : events)
                     if (pev.isIn())
-                        coeffs.put(pev.id, 0.0);
+                        setCoeff(pev.id, 0.0);
                     else
-                        coeffs.remove(pev.id);
+                        setCoeff(pev.id, null);
+                // report departures at their own time
+                if (changed_only)
+                    update(time);
             }
         };
     }
@@ -123,12 +210,13 @@ public final class ClusteringCoefficientReport extends StateTimeReport
             @Override
             public void reset() {
                 coeffs.clear();
+                changed.clear();
             }
 
             @Override
             public void handle(long time, Collection<Presence> events) {
                 for (final Presence p : events)
-                    coeffs.put(p.id, 0.0);
+                    setCoeff(p.id, 0.0);
             }
         };
     }
@@ -136,14 +224,12 @@ public final class ClusteringCoefficientReport extends StateTimeReport
     @Override
     public Listener<EdgeEvent> edgeEventListener() {
         return new Listener<EdgeEvent>() {
-            Listener<EdgeEvent> adj_listener = adjacency.edgeEventListener();
-
             @Override
             public void handle(long time, Collection<EdgeEvent> events)
                     throws IOException {
-                adj_listener.handle(time, events);
                 for (final EdgeEvent eev : events)
-                    updateSurroundingCoeffs(eev.edge());
+                    handleEdge(eev.edge(), eev.isUp());
+                updateTouchedCoeffs();
                 update(time);
             }
         };
@@ -152,19 +238,19 @@ public final class ClusteringCoefficientReport extends StateTimeReport
     @Override
     public Listener<Edge> edgeListener() {
         return new StatefulListener<Edge>() {
-            StatefulListener<Edge> adj_listener = (StatefulListener<Edge>) (adjacency.edgeListener());
-
             @Override
             public void reset() {
-                adj_listener.reset();
+                adjacency.clear();
+                triangles.clear();
+                touched.clear();
             }
 
             @Override
             public void handle(long time, Collection<Edge> events)
                     throws IOException {
-                adj_listener.handle(time, events);
                 for (final Edge e : events)
-                    updateSurroundingCoeffs(e);
+                    handleEdge(e, true);
+                updateTouchedCoeffs();
                 update(time);
             }
 
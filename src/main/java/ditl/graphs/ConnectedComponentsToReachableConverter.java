@@ -19,13 +19,14 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import ditl.Bus;
 import ditl.Converter;
@@ -47,11 +48,22 @@ public class ConnectedComponentsToReachableConverter
     private final Deque<Arc> to_bring_down = new LinkedList<Arc>();
     private final Bus<Object> update_bus = new Bus<Object>();
     private final long _eta;
+    // null when the components are written as cliques
+    private final CliqueDecoder decoder;
 
     public ConnectedComponentsToReachableConverter(ReachabilityTrace reachability, GroupTrace connectedComponents, long eta) {
+        this(reachability, connectedComponents, eta, false);
+    }
+
+    // Components are always tracked as one marker arc per member (see
+    // ReachabilityTrace.cliqueMarker). With cliques, the markers are written
+    // as they are, otherwise they are decoded into the arcs between members.
+    public ConnectedComponentsToReachableConverter(ReachabilityTrace reachability, GroupTrace connectedComponents, long eta,
+            boolean cliques) {
         _ccs = connectedComponents;
         _reachability = reachability;
         _eta = eta;
+        decoder = cliques ? null : new CliqueDecoder();
     }
 
     @Override
@@ -62,6 +74,8 @@ public class ConnectedComponentsToReachableConverter
         arc_writer.setProperty(ReachabilityTrace.delayKey, 0);
         arc_writer.setProperty(ReachabilityTrace.tauKey, 0);
         arc_writer.setProperty(ReachabilityTrace.etaKey, _eta);
+        if (decoder == null)
+            arc_writer.setProperty(ReachabilityTrace.cliquesKey, true);
         arc_writer.setPropertiesFromTrace(_ccs);
 
         ccs_reader.stateBus().addListener(groupListener());
@@ -84,15 +98,13 @@ public class ConnectedComponentsToReachableConverter
         return new Listener<Group>() {
             @Override
             public void handle(long time, Collection<Group> events) throws IOException {
-                final AdjacencySet.Arcs init_state = new AdjacencySet.Arcs();
+                final List<Arc> init_state = new ArrayList<Arc>();
                 for (final Group g : events) {
                     for (final Integer i : g.members())
-                        for (final Integer j : g.members())
-                            if (!i.equals(j))
-                                init_state.add(new Arc(i, j));
+                        init_state.add(new Arc(i, ReachabilityTrace.cliqueMarker(g.gid)));
                     group_map.put(g.gid, g);
                 }
-                arc_writer.setInitState(time, init_state);
+                arc_writer.setInitState(time, (decoder != null) ? decoder.decodeState(init_state) : init_state);
             }
         };
     }
@@ -136,30 +148,13 @@ public class ConnectedComponentsToReachableConverter
     }
 
     private void join(Group g, GroupEvent gev) {
-        final Set<Arc> cur_state = arc_writer.states();
-        // if g is empty, members of the group event may not be in contact
-        if (g.members().isEmpty())
-            for (final Integer i : gev.members())
-                for (final Integer j : gev.members())
-                    if (!i.equals(j)) {
-                        final Arc a = new Arc(i, j);
-                        if (!cur_state.contains(a))
-                            to_bring_up.add(a);
-                    }
-        // merge both groups
-        for (final Integer i : g.members())
-            for (final Integer j : gev.members()) {
-                to_bring_up.add(new Arc(i, j));
-                to_bring_up.add(new Arc(j, i));
-            }
+        for (final Integer i : gev.members())
+            to_bring_up.add(new Arc(i, ReachabilityTrace.cliqueMarker(g.gid)));
     }
 
     private void leave(Group g, GroupEvent gev) {
-        for (final Integer i : g.members())
-            for (final Integer j : gev.members()) {
-                to_bring_down.add(new Arc(i, j));
-                to_bring_down.add(new Arc(j, i));
-            }
+        for (final Integer i : gev.members())
+            to_bring_down.add(new Arc(i, ReachabilityTrace.cliqueMarker(g.gid)));
     }
 
     @Override
@@ -172,10 +167,13 @@ public class ConnectedComponentsToReachableConverter
 
     @Override
     public void handle(long time, Collection<Object> events) throws IOException {
+        final List<ArcEvent> markers = new ArrayList<ArcEvent>();
         while (!to_bring_up.isEmpty())
-            arc_writer.append(time, new ArcEvent(to_bring_up.poll(), ArcEvent.Type.UP));
+            markers.add(new ArcEvent(to_bring_up.poll(), ArcEvent.Type.UP));
         while (!to_bring_down.isEmpty())
-            arc_writer.append(time, new ArcEvent(to_bring_down.poll(), ArcEvent.Type.DOWN));
+            markers.add(new ArcEvent(to_bring_down.poll(), ArcEvent.Type.DOWN));
+        for (final ArcEvent aev : (decoder != null) ? decoder.decodeEvents(markers) : markers)
+            arc_writer.append(time, aev);
     }
 
     @Override
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import ditl.CodedBuffer;
+import ditl.CodedInputStream;
+import ditl.StatefulReader;
+import ditl.Store;
+import ditl.WritableStore;
+
+public final class ContactIndex {
+
+    public final static String contactIndexKey = "contact index";
+    final static String resourceName = "contacts";
+
+    private final long[] keys;
+    private final int[] offsets;
+    private final long[] begins;
+    private final long[] ends;
+    private final long[] cum_durations;
+
+    private ContactIndex(int nPairs, int nContacts) {
+        keys = new long[nPairs];
+        offsets = new int[nPairs + 1];
+        begins = new long[nContacts];
+        ends = new long[nContacts];
+        cum_durations = new long[nContacts + 1];
+    }
+
+    private static long key(int id1, int id2) {
+        if (id1 > id2)
+            return ((long) id2 << 32) | (id1 & 0xFFFFFFFFL);
+        return ((long) id1 << 32) | (id2 & 0xFFFFFFFFL);
+    }
+
+    private final static class Intervals {
+        long[] bounds = new long[4];
+        int n = 0;
+
+        void add(long begin, long end) {
+            if (n + 2 > bounds.length)
+                bounds = Arrays.copyOf(bounds, bounds.length << 1);
+            bounds[n++] = begin;
+            bounds[n++] = end;
+        }
+    }
+
+    public static void build(EdgeTrace edges) throws IOException {
+        final Store store = edges.store();
+        if (!(store instanceof WritableStore))
+            throw new IOException("Cannot index trace '" + edges.name() + "' in a read-only store");
+        final AdjacencyMap.Edges<Long> active = new AdjacencyMap.Edges<Long>();
+        final AdjacencyMap.Edges<Intervals> contacts = new AdjacencyMap.Edges<Intervals>();
+        final StatefulReader<EdgeEvent, Edge> reader = edges.getReader();
+        reader.seek(edges.minTime());
+        for (final Edge e : reader.referenceState())
+            active.put(e, edges.minTime());
+        while (reader.hasNext()) {
+            final long time = reader.nextTime();
+            for (final EdgeEvent event : reader.next()) {
+                final Edge e = event.edge();
+                if (event.isUp()) {
+                    // a repeated UP does not restart an ongoing contact
+                    if (!active.containsKey(e))
+                        active.put(e, time);
+                } else {
+                    final Long b = active.get(e);
+                    if (b != null) {
+                        active.remove(e);
+                        addContact(contacts, e, b, time);
+                    }
+                }
+            }
+        }
+        reader.close();
+        // contacts still up at the end of the trace are closed at max time
+        for (final Map.Entry<Edge, Long> e : active.entrySet())
+            addContact(contacts, e.getKey(), e.getValue(), edges.maxTime());
+
+        final int n_pairs = contacts.size();
+        final long[] keys = new long[n_pairs];
+        int k = 0;
+        for (final Edge e : contacts.keySet())
+            keys[k++] = key(e.id1, e.id2);
+        Arrays.sort(keys);
+        final Intervals[] sorted = new Intervals[n_pairs];
+        int n_contacts = 0;
+        for (int p = 0; p < n_pairs; ++p) {
+            sorted[p] = contacts.get(new Edge((int) (keys[p] >> 32), (int) keys[p]));
+            n_contacts += sorted[p].n / 2;
+        }
+
+        final OutputStream out = new BufferedOutputStream(((WritableStore) store).getOutputStream(
+                store.getTraceResource(edges, resourceName)));
+        final CodedBuffer buffer = new CodedBuffer();
+        buffer.writeInt(n_pairs);
+        buffer.writeInt(n_contacts);
+        // pair directory
+        for (int p = 0; p < n_pairs; ++p) {
+            buffer.writeSInt((int) (keys[p] >> 32));
+            buffer.writeSInt((int) keys[p]);
+            buffer.writeInt(sorted[p].n / 2);
+            buffer.flush(out);
+        }
+        // begin column, delta-coded within each pair
+        for (final Intervals intervals : sorted) {
+            long prev = 0;
+            for (int i = 0; i < intervals.n; i += 2) {
+                buffer.writeSLong(intervals.bounds[i] - prev);
+                prev = intervals.bounds[i];
+            }
+            buffer.flush(out);
+        }
+        // duration column
+        for (final Intervals intervals : sorted) {
+            for (int i = 0; i < intervals.n; i += 2)
+                buffer.writeLong(intervals.bounds[i + 1] - intervals.bounds[i]);
+            buffer.flush(out);
+        }
+        out.close();
+        edges.set(contactIndexKey, true);
+        ((WritableStore) store).writeInfo(edges);
+    }
+
+    private static void addContact(AdjacencyMap.Edges<Intervals> contacts, Edge e, long begin, long end) {
+        Intervals intervals = contacts.get(e);
+        if (intervals == null) {
+            intervals = new Intervals();
+            contacts.put(e, intervals);
+        }
+        intervals.add(begin, end);
+    }
+
+    public static ContactIndex open(EdgeTrace edges) throws IOException {
+        if (!edges.hasContactIndex())
+            throw new IOException("No contact index for trace '" + edges.name() + "'");
+        final Store store = edges.store();
+        final CodedInputStream in = new CodedInputStream(new BufferedInputStream(
+                store.getInputStream(store.getTraceResource(edges, resourceName))));
+        final int n_pairs = in.readInt();
+        final int n_contacts = in.readInt();
+        final ContactIndex index = new ContactIndex(n_pairs, n_contacts);
+        for (int p = 0; p < n_pairs; ++p) {
+            final int id1 = in.readSInt();
+            final int id2 = in.readSInt();
+            index.keys[p] = key(id1, id2);
+            index.offsets[p + 1] = index.offsets[p] + in.readInt();
+        }
+        for (int p = 0; p < n_pairs; ++p) {
+            long prev = 0;
+            for (int i = index.offsets[p]; i < index.offsets[p + 1]; ++i) {
+                prev += in.readSLong();
+                index.begins[i] = prev;
+            }
+        }
+        for (int i = 0; i < n_contacts; ++i) {
+            final long duration = in.readLong();
+            index.ends[i] = index.begins[i] + duration;
+            index.cum_durations[i + 1] = index.cum_durations[i] + duration;
+        }
+        in.close();
+        return index;
+    }
+
+    public int numPairs() {
+        return keys.length;
+    }
+
+    private int pair(int id1, int id2) {
+        return Arrays.binarySearch(keys, key(id1, id2));
+    }
+
+    public int numContacts(int id1, int id2) {
+        final int p = pair(id1, id2);
+        if (p < 0)
+            return 0;
+        return offsets[p + 1] - offsets[p];
+    }
+
+    public boolean inContact(int id1, int id2, long time) {
+        final int p = pair(id1, id2);
+        if (p < 0)
+            return false;
+        final int i = lastBeginAtOrBefore(p, time);
+        return i >= offsets[p] && time < ends[i];
+    }
+
+    // returns the { begin, end } bounds of all the contacts that overlap
+    // [begin, end)
+    public long[][] contacts(int id1, int id2, long begin, long end) {
+        final int p = pair(id1, id2);
+        if (p < 0)
+            return new long[0][];
+        final int from = firstEndAfter(p, begin);
+        final int to = lastBeginBefore(p, end);
+        if (to < from)
+            return new long[0][];
+        final long[][] bounds = new long[to - from + 1][];
+        for (int i = from; i <= to; ++i)
+            bounds[i - from] = new long[] { begins[i], ends[i] };
+        return bounds;
+    }
+
+    public long contactTime(int id1, int id2) {
+        final int p = pair(id1, id2);
+        if (p < 0)
+            return 0;
+        return cum_durations[offsets[p + 1]] - cum_durations[offsets[p]];
+    }
+
+    // total time during [begin, end) that the pair spent in contact
+    public long contactTime(int id1, int id2, long begin, long end) {
+        final int p = pair(id1, id2);
+        if (p < 0)
+            return 0;
+        final int from = firstEndAfter(p, begin);
+        final int to = lastBeginBefore(p, end);
+        if (to < from)
+            return 0;
+        long total = cum_durations[to + 1] - cum_durations[from];
+        if (begins[from] < begin)
+            total -= begin - begins[from];
+        if (ends[to] > end)
+            total -= ends[to] - end;
+        return total;
+    }
+
+    private int lastBeginAtOrBefore(int p, long time) {
+        int lo = offsets[p], hi = offsets[p + 1];
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (begins[mid] <= time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo - 1;
+    }
+
+    private int lastBeginBefore(int p, long time) {
+        return lastBeginAtOrBefore(p, time - 1);
+    }
+
+    private int firstEndAfter(int p, long time) {
+        int lo = offsets[p], hi = offsets[p + 1];
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (ends[mid] <= time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Fully dynamic connectivity (Holm, de Lichtenberg and Thorup). Every edge
+// has a level, and F_i is the spanning forest of the tree edges of level at
+// least i, so that a tree of F_i spans at most n/2^i vertices. When a tree
+// edge of level l is removed, the replacement edge is looked for from level
+// l down to 0 in the smaller of the two halves, and the edges that did not
+// qualify move up one level. Each forest is kept as Euler tours stored in
+// treaps whose nodes aggregate which vertices have edges at that level.
+final class DynamicConnectivity {
+
+    private final static class Node {
+        final Vertex vertex; // null for the arcs of tree edges
+        final int priority;
+        Node left, right, parent;
+        int size = 1;
+        int n_vertices;
+        boolean has_tree, has_non_tree; // for the node's own vertex
+        boolean sub_tree, sub_non_tree; // for the whole subtree
+
+        Node(Vertex v, int prio) {
+            vertex = v;
+            priority = prio;
+            n_vertices = (v != null) ? 1 : 0;
+        }
+    }
+
+    // edges of a given level incident to a vertex, with O(1) removal
+    private final static class EdgeList {
+        EdgeRec[] items = new EdgeRec[2];
+        int size = 0;
+
+        void add(EdgeRec e, Vertex owner) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            e.setPos(owner, size);
+            items[size++] = e;
+        }
+
+        void remove(EdgeRec e, Vertex owner) {
+            final int p = e.pos(owner);
+            final EdgeRec last = items[--size];
+            items[p] = last;
+            last.setPos(owner, p);
+            items[size] = null;
+        }
+    }
+
+    private final static class Vertex {
+        final int id;
+        Node[] nodes = new Node[1];
+        EdgeList[] tree_edges = new EdgeList[1];
+        EdgeList[] non_tree_edges = new EdgeList[1];
+
+        Vertex(int i) {
+            id = i;
+        }
+    }
+
+    private final static class EdgeRec {
+        final Vertex u, v;
+        int level = 0;
+        boolean tree;
+        int pos_u, pos_v;
+        Node[] arcs_uv, arcs_vu; // per level, for tree edges
+
+        EdgeRec(Vertex a, Vertex b) {
+            u = a;
+            v = b;
+        }
+
+        int pos(Vertex w) {
+            return (w == u) ? pos_u : pos_v;
+        }
+
+        void setPos(Vertex w, int p) {
+            if (w == u)
+                pos_u = p;
+            else
+                pos_v = p;
+        }
+
+        Vertex other(Vertex w) {
+            return (w == u) ? v : u;
+        }
+    }
+
+    private final Map<Integer, Vertex> vertices = new HashMap<Integer, Vertex>();
+    private final PairTable edges = new PairTable();
+    private final Random rng = new Random(0);
+    private final List<Vertex> flagged = new ArrayList<Vertex>();
+    private final List<Node> stack = new ArrayList<Node>();
+
+    private static long key(int id1, int id2) {
+        return (id1 < id2) ? PairTable.key(id1, id2) : PairTable.key(id2, id1);
+    }
+
+    private Vertex vertex(int id) {
+        Vertex v = vertices.get(id);
+        if (v == null) {
+            v = new Vertex(id);
+            vertices.put(id, v);
+        }
+        return v;
+    }
+
+    private Node node(Vertex v, int level) {
+        if (level >= v.nodes.length)
+            v.nodes = Arrays.copyOf(v.nodes, Math.max(level + 1, v.nodes.length * 2));
+        if (v.nodes[level] == null)
+            v.nodes[level] = new Node(v, rng.nextInt());
+        return v.nodes[level];
+    }
+
+    private static EdgeList list(EdgeList[] lists, int level) {
+        if (lists[level] == null)
+            lists[level] = new EdgeList();
+        return lists[level];
+    }
+
+    private static EdgeList[] grow(EdgeList[] lists, int level) {
+        if (level < lists.length)
+            return lists;
+        return Arrays.copyOf(lists, Math.max(level + 1, lists.length * 2));
+    }
+
+    private EdgeList treeEdges(Vertex v, int level) {
+        v.tree_edges = grow(v.tree_edges, level);
+        return list(v.tree_edges, level);
+    }
+
+    private EdgeList nonTreeEdges(Vertex v, int level) {
+        v.non_tree_edges = grow(v.non_tree_edges, level);
+        return list(v.non_tree_edges, level);
+    }
+
+    // treap primitives
+
+    private static int size(Node n) {
+        return (n == null) ? 0 : n.size;
+    }
+
+    private static void update(Node n) {
+        final Node l = n.left, r = n.right;
+        n.size = 1 + size(l) + size(r);
+        n.n_vertices = ((n.vertex != null) ? 1 : 0) + ((l == null) ? 0 : l.n_vertices) + ((r == null) ? 0 : r.n_vertices);
+        n.sub_tree = n.has_tree || (l != null && l.sub_tree) || (r != null && r.sub_tree);
+        n.sub_non_tree = n.has_non_tree || (l != null && l.sub_non_tree) || (r != null && r.sub_non_tree);
+    }
+
+    private static Node root(Node n) {
+        while (n.parent != null)
+            n = n.parent;
+        return n;
+    }
+
+    private static int index(Node n) {
+        int i = size(n.left);
+        while (n.parent != null) {
+            if (n == n.parent.right)
+                i += size(n.parent.left) + 1;
+            n = n.parent;
+        }
+        return i;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.right.parent = a;
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.left.parent = b;
+        update(b);
+        return b;
+    }
+
+    private Node split_right;
+
+    // splits t into its first k nodes, which are returned, and the rest,
+    // which is left in split_right
+    private Node split(Node t, int k) {
+        final Node l = splitRec(t, k);
+        if (l != null)
+            l.parent = null;
+        if (split_right != null)
+            split_right.parent = null;
+        return l;
+    }
+
+    private Node splitRec(Node t, int k) {
+        if (t == null) {
+            split_right = null;
+            return null;
+        }
+        if (size(t.left) >= k) {
+            final Node l = splitRec(t.left, k);
+            t.left = split_right;
+            if (t.left != null)
+                t.left.parent = t;
+            update(t);
+            split_right = t;
+            return l;
+        }
+        final Node l = splitRec(t.right, k - size(t.left) - 1);
+        t.right = l;
+        if (l != null)
+            l.parent = t;
+        update(t);
+        return t;
+    }
+
+    // Euler tour operations
+
+    private Node reroot(Node n) {
+        final Node l = split(root(n), index(n));
+        return merge(split_right, l);
+    }
+
+    private void link(EdgeRec e, int level) {
+        if (level >= e.arcs_uv.length) {
+            e.arcs_uv = Arrays.copyOf(e.arcs_uv, level + 1);
+            e.arcs_vu = Arrays.copyOf(e.arcs_vu, level + 1);
+        }
+        final Node uv = new Node(null, rng.nextInt()), vu = new Node(null, rng.nextInt());
+        e.arcs_uv[level] = uv;
+        e.arcs_vu[level] = vu;
+        final Node tu = reroot(node(e.u, level));
+        final Node tv = reroot(node(e.v, level));
+        merge(merge(merge(tu, uv), tv), vu);
+    }
+
+    private void cut(EdgeRec e, int level) {
+        Node a = e.arcs_uv[level], b = e.arcs_vu[level];
+        e.arcs_uv[level] = null;
+        e.arcs_vu[level] = null;
+        if (index(a) > index(b)) {
+            final Node t = a;
+            a = b;
+            b = t;
+        }
+        final Node left = split(root(a), index(a));
+        split(split_right, 1); // drops a
+        final Node rest = split_right;
+        split(rest, index(b)); // middle part is now a tree of its own
+        split(split_right, 1); // drops b
+        merge(left, split_right);
+    }
+
+    private void refresh(Vertex v, int level) {
+        final Node n = node(v, level);
+        n.has_tree = level < v.tree_edges.length && v.tree_edges[level] != null && v.tree_edges[level].size > 0;
+        n.has_non_tree = level < v.non_tree_edges.length && v.non_tree_edges[level] != null && v.non_tree_edges[level].size > 0;
+        for (Node p = n; p != null; p = p.parent)
+            update(p);
+    }
+
+    private void addTreeEdge(EdgeRec e, int level) {
+        e.tree = true;
+        e.level = level;
+        treeEdges(e.u, level).add(e, e.u);
+        treeEdges(e.v, level).add(e, e.v);
+        refresh(e.u, level);
+        refresh(e.v, level);
+    }
+
+    private void removeTreeEdge(EdgeRec e) {
+        treeEdges(e.u, e.level).remove(e, e.u);
+        treeEdges(e.v, e.level).remove(e, e.v);
+        refresh(e.u, e.level);
+        refresh(e.v, e.level);
+    }
+
+    private void addNonTreeEdge(EdgeRec e, int level) {
+        e.tree = false;
+        e.level = level;
+        nonTreeEdges(e.u, level).add(e, e.u);
+        nonTreeEdges(e.v, level).add(e, e.v);
+        refresh(e.u, level);
+        refresh(e.v, level);
+    }
+
+    private void removeNonTreeEdge(EdgeRec e) {
+        nonTreeEdges(e.u, e.level).remove(e, e.u);
+        nonTreeEdges(e.v, e.level).remove(e, e.v);
+        refresh(e.u, e.level);
+        refresh(e.v, e.level);
+    }
+
+    // vertices of the tree rooted at t whose own tree (resp. non-tree) flag
+    // is set
+    private void collect(Node t, boolean tree) {
+        flagged.clear();
+        stack.clear();
+        stack.add(t);
+        while (!stack.isEmpty()) {
+            final Node n = stack.remove(stack.size() - 1);
+            if (n == null || !(tree ? n.sub_tree : n.sub_non_tree))
+                continue;
+            if (tree ? n.has_tree : n.has_non_tree)
+                flagged.add(n.vertex);
+            stack.add(n.left);
+            stack.add(n.right);
+        }
+    }
+
+    boolean connected(int id1, int id2) {
+        final Vertex u = vertices.get(id1), v = vertices.get(id2);
+        if (u == null || v == null)
+            return id1 == id2;
+        return root(node(u, 0)) == root(node(v, 0));
+    }
+
+    void add(int id1, int id2) {
+        final long k = key(id1, id2);
+        if (id1 == id2 || edges.get(k) != null)
+            return;
+        final Vertex u = vertex(id1), v = vertex(id2);
+        final EdgeRec e = new EdgeRec(u, v);
+        edges.put(k, e);
+        if (root(node(u, 0)) == root(node(v, 0))) {
+            addNonTreeEdge(e, 0);
+        } else {
+            e.arcs_uv = new Node[1];
+            e.arcs_vu = new Node[1];
+            link(e, 0);
+            addTreeEdge(e, 0);
+        }
+    }
+
+    void remove(int id1, int id2) {
+        final EdgeRec e = (EdgeRec) edges.remove(key(id1, id2));
+        if (e == null)
+            return;
+        if (!e.tree) {
+            removeNonTreeEdge(e);
+            return;
+        }
+        final int l = e.level;
+        removeTreeEdge(e);
+        for (int i = 0; i <= l; ++i)
+            cut(e, i);
+        for (int i = l; i >= 0; --i)
+            if (replace(e.u, e.v, i))
+                return;
+    }
+
+    // Looks for an edge of level i reconnecting the trees of u and v in F_i.
+    // Tree edges of the smaller tree go up one level, and so do the non-tree
+    // edges examined on the way that turn out to have both ends in it.
+    private boolean replace(Vertex u, Vertex v, int i) {
+        final Node ru = root(node(u, i)), rv = root(node(v, i));
+        final Node small = (ru.n_vertices <= rv.n_vertices) ? ru : rv;
+
+        collect(small, true);
+        for (final Vertex w : new ArrayList<Vertex>(flagged)) {
+            final EdgeList l = treeEdges(w, i);
+            while (l.size > 0) {
+                final EdgeRec f = l.items[l.size - 1];
+                removeTreeEdge(f);
+                link(f, i + 1);
+                addTreeEdge(f, i + 1);
+            }
+        }
+
+        collect(small, false);
+        for (final Vertex w : new ArrayList<Vertex>(flagged)) {
+            final EdgeList l = nonTreeEdges(w, i);
+            while (l.size > 0) {
+                final EdgeRec f = l.items[l.size - 1];
+                removeNonTreeEdge(f);
+                if (root(node(f.other(w), i)) != small) { // found a replacement
+                    f.arcs_uv = new Node[i + 1];
+                    f.arcs_vu = new Node[i + 1];
+                    for (int j = 0; j <= i; ++j)
+                        link(f, j);
+                    addTreeEdge(f, i);
+                    return true;
+                }
+                addNonTreeEdge(f, i + 1);
+            }
+        }
+        return false;
+    }
+
+    // representative of the component of id, valid until the next update
+    Object component(int id) {
+        final Vertex v = vertices.get(id);
+        return (v == null) ? null : root(node(v, 0));
+    }
+
+    int componentSize(int id) {
+        final Vertex v = vertices.get(id);
+        return (v == null) ? 1 : root(node(v, 0)).n_vertices;
+    }
+
+    void members(int id, Collection<Integer> out) {
+        final Vertex v = vertices.get(id);
+        if (v == null) {
+            out.add(id);
+            return;
+        }
+        stack.clear();
+        stack.add(root(node(v, 0)));
+        while (!stack.isEmpty()) {
+            final Node n = stack.remove(stack.size() - 1);
+            if (n == null || n.n_vertices == 0)
+                continue;
+            if (n.vertex != null)
+                out.add(n.vertex.id);
+            stack.add(n.left);
+            stack.add(n.right);
+        }
+    }
+
+    void clear() {
+        vertices.clear();
+        edges.clear();
+    }
+}
@@ -28,10 +28,10 @@ import ditl.Item;
 
 public final class Edge implements Couple, Item {
 
-    final public Integer id1;
-    final public Integer id2;
+    final public int id1;
+    final public int id2;
 
-    public Edge(Integer i1, Integer i2) {
+    public Edge(int i1, int i2) {
         if (i1 < i2) {
             id1 = i1;
             id2 = i2;
@@ -59,13 +59,13 @@ public final class Edge implements Couple, Item {
     }
 
     public boolean hasVertex(Integer id) {
-        return (id.equals(id1) || id.equals(id2));
+        return (id == id1 || id == id2);
     }
 
     @Override
     public boolean equals(Object o) {
         final Edge ct = (Edge) o;
-        return (ct.id1.equals(id1)) && (ct.id2.equals(id2));
+        return ct.id1 == id1 && ct.id2 == id2;
     }
 
     @Override
@@ -32,11 +32,12 @@ public final class EdgeEvent implements Item {
         UP, DOWN
     };
 
-    final public Integer id1;
-    final public Integer id2;
+    final public int id1;
+    final public int id2;
     final public Type type;
+    private Edge edge = null;
 
-    public EdgeEvent(Integer i1, Integer i2, Type edgeEventType) {
+    public EdgeEvent(int i1, int i2, Type edgeEventType) {
         if (i1 < i2) {
             id1 = i1;
             id2 = i2;
@@ -58,13 +59,41 @@ public final class EdgeEvent implements Item {
     }
 
     public Edge edge() {
-        return new Edge(id1, id2);
+        if (edge == null)
+            edge = new Edge(id1, id2);
+        return edge;
     }
 
+    // With a positive cache size, the factory hands out the same immutable
+    // instance for recurring events instead of allocating a new one each time.
     public static final class Factory implements Item.Factory<EdgeEvent> {
+        public final static int sharedCacheSize = 4096;
+
+        private final EdgeEvent[] cache;
+
+        public Factory() {
+            this(0);
+        }
+
+        public Factory(int cacheSize) {
+            cache = (cacheSize > 0) ? new EdgeEvent[Integer.highestOneBit(cacheSize)] : null;
+        }
+
         @Override
         public EdgeEvent fromBinaryStream(CodedInputStream in) throws IOException {
-            return new EdgeEvent(in.readSInt(), in.readSInt(), Type.values()[in.readByte()]);
+            final int i1 = in.readSInt();
+            final int i2 = in.readSInt();
+            final Type type = Type.values()[in.readByte()];
+            if (cache == null)
+                return new EdgeEvent(i1, i2, type);
+            final int id1 = Math.min(i1, i2), id2 = Math.max(i1, i2);
+            final int k = ((id1 * 31 + id2) * 2 + type.ordinal()) & (cache.length - 1);
+            EdgeEvent e = cache[k];
+            if (e == null || e.id1 != id1 || e.id2 != id2 || e.type != type) {
+                e = new EdgeEvent(id1, id2, type);
+                cache[k] = e;
+            }
+            return e;
         }
     }
 
@@ -20,10 +20,13 @@ package ditl.graphs;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import net.sf.json.JSONObject;
 import ditl.Filter;
+import ditl.IdCollector;
 import ditl.Listener;
 import ditl.StateUpdater;
 import ditl.StateUpdaterFactory;
@@ -34,7 +37,7 @@ import ditl.Writer;
 
 @Trace.Type("edges")
 public class EdgeTrace extends StatefulTrace<EdgeEvent, Edge>
-        implements StatefulTrace.Filterable<EdgeEvent, Edge> {
+        implements StatefulTrace.Filterable<EdgeEvent, Edge>, Trace.Indexable<EdgeEvent> {
 
     public final static class Updater implements StateUpdater<EdgeEvent, Edge> {
         private final Set<Edge> edges = new AdjacencySet.Edges();
@@ -67,7 +70,7 @@ public class EdgeTrace extends StatefulTrace<EdgeEvent, Edge>
     }
 
     public EdgeTrace(Store store, String name, JSONObject config) throws IOException {
-        super(store, name, config, new EdgeEvent.Factory(), new Edge.Factory(),
+        super(store, name, config, new EdgeEvent.Factory(EdgeEvent.Factory.sharedCacheSize), new Edge.Factory(),
                 new StateUpdaterFactory<EdgeEvent, Edge>() {
                     @Override
                     public StateUpdater<EdgeEvent, Edge> getNew() {
@@ -76,6 +79,22 @@ public class EdgeTrace extends StatefulTrace<EdgeEvent, Edge>
                 });
     }
 
+    public boolean hasContactIndex() throws IOException {
+        return config.optBoolean(ContactIndex.contactIndexKey)
+                && store().hasFile(store().getTraceResource(this, ContactIndex.resourceName));
+    }
+
+    public ContactIndex contactIndex() throws IOException {
+        return ContactIndex.open(this);
+    }
+
+    @Override
+    public List<String> resources() throws IOException {
+        if (hasContactIndex())
+            return Collections.singletonList(ContactIndex.resourceName);
+        return super.resources();
+    }
+
     @Override
     public Filter<Edge> stateFilter(Set<Integer> group) {
         return new Edge.InternalGroupFilter(group);
@@ -89,4 +108,10 @@ public class EdgeTrace extends StatefulTrace<EdgeEvent, Edge>
     @Override
     public void copyOverTraceInfo(Writer<EdgeEvent> writer) {
     }
+
+    @Override
+    public void collectIds(EdgeEvent item, IdCollector collector) {
+        collector.add(item.id1);
+        collector.add(item.id2);
+    }
 }
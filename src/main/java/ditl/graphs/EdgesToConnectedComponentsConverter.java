@@ -19,11 +19,12 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
@@ -39,12 +40,35 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
     private StatefulWriter<GroupEvent, Group> group_writer;
     private StatefulReader<EdgeEvent, Edge> edge_reader;
     private int counter = 0;
+    // reusable buffers for the connectivity checks
+    private int[] affected = new int[16];
+    private int n_affected = 0;
+    private int[] marks = new int[0];
+    private int cur_mark = 0;
+    private int[] visited = new int[16];
+    private int[] piece_ends = new int[16];
+    private int[] piece_sizes = new int[16];
+    private Group[] piece_ccs = new Group[16];
+    private final DynamicConnectivity connectivity;
+    private final Map<Object, Object> pieces_seen = new IdentityHashMap<Object, Object>();
     private final GroupTrace _ccs;
     private final EdgeTrace _edges;
 
+    public enum Engine {
+        // traverse the affected components after edges go down
+        BFS,
+        // maintain a fully dynamic spanning forest
+        DYNAMIC
+    }
+
     public EdgesToConnectedComponentsConverter(GroupTrace ccs, EdgeTrace edges) {
+        this(ccs, edges, Engine.BFS);
+    }
+
+    public EdgesToConnectedComponentsConverter(GroupTrace ccs, EdgeTrace edges, Engine engine) {
         _ccs = ccs;
         _edges = edges;
+        connectivity = (engine == Engine.DYNAMIC) ? new DynamicConnectivity() : null;
     }
 
     private void merge(long time, Group cc1, Group cc2) throws IOException {
@@ -56,36 +80,6 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
         group_writer.append(time, new GroupEvent(cc1.gid, GroupEvent.Type.JOIN, cc2._members));
     }
 
-    private void checkSplit(long time, Integer i, Group cc) throws IOException {
-        final LinkedList<Integer> toVisit = new LinkedList<Integer>();
-        final Set<Integer> visited = new HashSet<Integer>();
-        toVisit.add(i);
-        visited.add(i);
-        while (!toVisit.isEmpty()) {
-            final Integer j = toVisit.pop();
-            for (final Integer k : adjacency.getNext(j))
-                if (!visited.contains(k)) {
-                    visited.add(k);
-                    toVisit.add(k);
-                }
-        }
-        if (visited.size() != cc.size()) { // the CC has split!
-            final int half = cc.size() / 2;
-            final Group ncc = newCC(time);
-            cc._members.removeAll(visited);
-            if (visited.size() > half) { // those in 'visited' remain in current
-                                         // cc, the others go to ncc
-                ncc._members = cc._members;
-                cc._members = visited;
-            } else
-                ncc._members = visited;
-            group_writer.append(time, new GroupEvent(cc.gid, GroupEvent.Type.LEAVE, ncc._members));
-            for (final Integer j : ncc._members)
-                cc_map.put(j, ncc);
-            group_writer.append(time, new GroupEvent(ncc.gid, GroupEvent.Type.JOIN, ncc._members));
-        }
-    }
-
     private Group newCC(long time) throws IOException {
         final Integer gid = counter++;
         group_writer.append(time, new GroupEvent(gid, GroupEvent.Type.NEW));
@@ -138,32 +132,160 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
             delCC(time, cc.gid);
     }
 
-    private void removeEdge(long time, Edge e) throws IOException {
-        final boolean singleton1 = (adjacency.getNext(e.id1).isEmpty());
-        final boolean singleton2 = (adjacency.getNext(e.id2).isEmpty());
-        if (singleton1) // id1 has become a singleton
-            removeSingleton(time, e.id1);
-        if (singleton2) // id2 has become a singleton
-            removeSingleton(time, e.id2);
-        if (!singleton1 && !singleton2)
-            checkSplit(time, e.id1, cc_map.get(e.id1));
+    // Splits the components of the vertices in 'affected' that are no longer
+    // connected. Pieces are listed in the order in which the affected vertices
+    // first reach them.
+    private void checkSplits(long time) throws IOException {
+        final int n_pieces = (connectivity == null) ? traversePieces() : lookupPieces();
+        for (int p = 0; p < n_pieces; ++p) {
+            final Group cc = piece_ccs[p];
+            if (cc == null)
+                continue;
+            if (piece_sizes[p] == cc.size()) { // still in one piece
+                piece_ccs[p] = null;
+                continue;
+            }
+            // the largest piece (the last one found on ties) remains in the
+            // current cc, the others each go to a new cc
+            int largest = p;
+            for (int q = p + 1; q < n_pieces; ++q)
+                if (piece_ccs[q] == cc && piece_sizes[q] >= piece_sizes[largest])
+                    largest = q;
+            for (int q = p; q < n_pieces; ++q)
+                if (piece_ccs[q] == cc) {
+                    piece_ccs[q] = null;
+                    if (q != largest)
+                        splitOff(time, cc, q);
+                }
+        }
+        n_affected = 0;
+    }
+
+    private void addPiece(int p, Group cc, int size, int end) {
+        if (p == piece_ends.length) {
+            piece_ends = Arrays.copyOf(piece_ends, p * 2);
+            piece_sizes = Arrays.copyOf(piece_sizes, p * 2);
+            piece_ccs = Arrays.copyOf(piece_ccs, p * 2);
+        }
+        piece_ccs[p] = cc;
+        piece_sizes[p] = size;
+        piece_ends[p] = end;
+    }
+
+    // Each piece is found by a single traversal of the neighbor rows, with
+    // vertices marked by their slot in the row table. Piece p is made of the
+    // vertices in 'visited' up to piece_ends[p].
+    private int traversePieces() {
+        final NeighborTable rows = adjacency.map.rows;
+        if (marks.length != rows.capacity())
+            marks = new int[rows.capacity()];
+        if (++cur_mark == 0) { // wrapped around
+            Arrays.fill(marks, 0);
+            cur_mark = 1;
+        }
+        int n_visited = 0, n_pieces = 0;
+        for (int a = 0; a < n_affected; ++a) {
+            final int s = rows.find(affected[a]);
+            if (s < 0 || marks[s] == cur_mark)
+                continue;
+            final int begin = n_visited;
+            marks[s] = cur_mark;
+            visited = grow(visited, n_visited + 1);
+            visited[n_visited++] = s;
+            int head = begin;
+            while (head < n_visited) {
+                final int j = visited[head++];
+                final int[] row = rows.rows[j];
+                for (int r = 0; r < rows.sizes[j]; ++r) {
+                    final int k = rows.find(row[r]);
+                    if (marks[k] != cur_mark) {
+                        marks[k] = cur_mark;
+                        visited = grow(visited, n_visited + 1);
+                        visited[n_visited++] = k;
+                    }
+                }
+            }
+            addPiece(n_pieces++, cc_map.get(affected[a]), n_visited - begin, n_visited);
+        }
+        return n_pieces;
+    }
+
+    // Pieces are the components of the dynamic connectivity structure. Piece p
+    // is represented by the vertex visited[p].
+    private int lookupPieces() {
+        final NeighborTable rows = adjacency.map.rows;
+        int n_pieces = 0;
+        for (int a = 0; a < n_affected; ++a) {
+            final int i = affected[a];
+            if (rows.find(i) < 0)
+                continue;
+            final Object c = connectivity.component(i);
+            if (pieces_seen.put(c, c) != null)
+                continue;
+            visited = grow(visited, n_pieces + 1);
+            visited[n_pieces] = i;
+            addPiece(n_pieces++, cc_map.get(i), connectivity.componentSize(i), 0);
+        }
+        pieces_seen.clear();
+        return n_pieces;
+    }
+
+    private void splitOff(long time, Group cc, int p) throws IOException {
+        final Group ncc = newCC(time);
+        if (connectivity == null) {
+            final int[] vertices = adjacency.map.rows.vertices;
+            for (int v = piece_ends[p] - piece_sizes[p]; v < piece_ends[p]; ++v)
+                ncc._members.add(vertices[visited[v]]);
+        } else {
+            connectivity.members(visited[p], ncc._members);
+        }
+        cc._members.removeAll(ncc._members);
+        group_writer.append(time, new GroupEvent(cc.gid, GroupEvent.Type.LEAVE, ncc._members));
+        for (final Integer j : ncc._members)
+            cc_map.put(j, ncc);
+        group_writer.append(time, new GroupEvent(ncc.gid, GroupEvent.Type.JOIN, ncc._members));
     }
 
+    private static int[] grow(int[] array, int size) {
+        if (size <= array.length)
+            return array;
+        return Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    private void removeEdge(Edge e) {
+        adjacency.remove(e);
+        if (connectivity != null)
+            connectivity.remove(e.id1, e.id2);
+        affected = grow(affected, n_affected + 2);
+        affected[n_affected++] = e.id1;
+        affected[n_affected++] = e.id2;
+    }
+
+    // All edges going down at a given time are removed before looking for
+    // singletons and split components, so that each affected component is
+    // traversed once.
     public void handleEvents(long time, Collection<EdgeEvent> events) throws IOException {
-        final Deque<EdgeEvent> down_events = new LinkedList<EdgeEvent>();
-        for (final EdgeEvent eev : events) {
-            final Edge e = eev.edge();
+        for (final EdgeEvent eev : events)
             if (eev.isUp()) {
+                final Edge e = eev.edge();
                 adjacency.add(e);
+                if (connectivity != null)
+                    connectivity.add(e.id1, e.id2);
                 addEdge(time, e);
-            } else
-                down_events.addLast(eev);
-        }
-        while (!down_events.isEmpty()) {
-            final Edge dl = down_events.poll().edge();
-            adjacency.remove(dl);
-            removeEdge(time, dl);
+            }
+        for (final EdgeEvent eev : events)
+            if (!eev.isUp())
+                removeEdge(eev.edge());
+        if (n_affected == 0)
+            return;
+        final NeighborTable rows = adjacency.map.rows;
+        for (int a = 0; a < n_affected; ++a) {
+            final Integer i = affected[a];
+            if (rows.find(i) < 0 && cc_map.containsKey(i)) // i has become a
+                                                           // singleton
+                removeSingleton(time, i);
         }
+        checkSplits(time);
     }
 
     private void setInitState(long time) throws IOException {
@@ -212,8 +334,11 @@ public final class EdgesToConnectedComponentsConverter implements Converter {
         final long minTime = _edges.minTime();
         edge_reader.seek(minTime);
         final Collection<Edge> initEdges = edge_reader.referenceState();
-        for (final Edge e : initEdges)
+        for (final Edge e : initEdges) {
             adjacency.add(e);
+            if (connectivity != null)
+                connectivity.add(e.id1, e.id2);
+        }
         setInitState(minTime);
         while (edge_reader.hasNext()) {
             final long time = edge_reader.nextTime();
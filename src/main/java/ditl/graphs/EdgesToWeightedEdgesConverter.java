@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ditl.Converter;
+import ditl.StatefulReader;
+import ditl.Writer;
+
+public final class EdgesToWeightedEdgesConverter implements Converter {
+
+    private final WeightedEdgeTrace[] _levels;
+    private final long[] _windows;
+    private final EdgeTrace _edges;
+
+    private final List<Writer<WeightedEdge>> writers = new ArrayList<Writer<WeightedEdge>>();
+    private final List<AdjacencyMap.Edges<Long>> weights = new ArrayList<AdjacencyMap.Edges<Long>>();
+    private long[] starts;
+    private final AdjacencyMap.Edges<Long> active = new AdjacencyMap.Edges<Long>();
+
+    // levels must be given from finest to coarsest, each window being a
+    // multiple of the previous one
+    public EdgesToWeightedEdgesConverter(List<WeightedEdgeTrace> levels, EdgeTrace edges, List<Long> windows) {
+        if (levels.size() != windows.size() || levels.isEmpty())
+            throw new IllegalArgumentException("Expected one output trace per window");
+        _levels = levels.toArray(new WeightedEdgeTrace[levels.size()]);
+        _windows = new long[windows.size()];
+        for (int l = 0; l < _windows.length; ++l) {
+            _windows[l] = windows.get(l);
+            if (_windows[l] <= 0)
+                throw new IllegalArgumentException("Windows must be strictly positive");
+            if (l > 0 && _windows[l] % _windows[l - 1] != 0)
+                throw new IllegalArgumentException("Window " + _windows[l] + " is not a multiple of " + _windows[l - 1]);
+        }
+        _edges = edges;
+    }
+
+    @Override
+    public void convert() throws IOException {
+        final int n = _levels.length;
+        final long min_time = _edges.minTime();
+        final long max_time = _edges.maxTime();
+        starts = new long[n];
+        writers.clear();
+        weights.clear();
+        for (int l = 0; l < n; ++l) {
+            writers.add(_levels[l].getWriter());
+            weights.add(new AdjacencyMap.Edges<Long>());
+            starts[l] = min_time;
+        }
+
+        final StatefulReader<EdgeEvent, Edge> reader = _edges.getReader();
+        reader.seek(min_time);
+        for (final Edge e : reader.referenceState())
+            active.put(e, min_time);
+        while (reader.hasNext()) {
+            final long time = reader.nextTime();
+            if (time > max_time)
+                break;
+            while (time >= starts[0] + _windows[0])
+                closeWindow(0, starts[0] + _windows[0]);
+            for (final EdgeEvent event : reader.next()) {
+                final Edge e = event.edge();
+                if (event.isUp()) {
+                    if (!active.containsKey(e))
+                        active.put(e, time);
+                } else {
+                    final Long b = active.get(e);
+                    if (b != null) {
+                        active.remove(e);
+                        addWeight(weights.get(0), e, time - Math.max(b, starts[0]));
+                    }
+                }
+            }
+        }
+        reader.close();
+
+        // flush the remaining finest windows, the last one being truncated at
+        // max time
+        while (starts[0] < max_time)
+            closeWindow(0, Math.min(starts[0] + _windows[0], max_time));
+        // then whatever partial windows remain at coarser levels
+        for (int l = 1; l < n; ++l)
+            if (starts[l] < max_time)
+                flush(l);
+
+        for (int l = 0; l < n; ++l) {
+            writers.get(l).setPropertiesFromTrace(_edges);
+            writers.get(l).setProperty(WeightedEdgeTrace.windowKey, _windows[l]);
+            writers.get(l).close();
+        }
+    }
+
+    private void closeWindow(int level, long end) throws IOException {
+        if (level == 0)
+            for (final Map.Entry<Edge, Long> e : active.entrySet())
+                addWeight(weights.get(0), e.getKey(), end - Math.max(e.getValue(), starts[0]));
+        flush(level);
+        starts[level] += _windows[level];
+        // coarser windows are aligned on finer ones
+        if (level + 1 < _levels.length && starts[level] == starts[level + 1] + _windows[level + 1])
+            closeWindow(level + 1, starts[level]);
+    }
+
+    private void flush(int level) throws IOException {
+        final AdjacencyMap.Edges<Long> w = weights.get(level);
+        if (!w.isEmpty()) {
+            final List<WeightedEdge> items = new ArrayList<WeightedEdge>(w.size());
+            for (final Map.Entry<Edge, Long> e : w.entrySet()) {
+                items.add(new WeightedEdge(e.getKey(), e.getValue()));
+                if (level + 1 < _levels.length)
+                    addWeight(weights.get(level + 1), e.getKey(), e.getValue());
+            }
+            writers.get(level).handle(starts[level], items);
+            w.clear();
+        }
+    }
+
+    private void addWeight(AdjacencyMap.Edges<Long> w, Edge e, long weight) {
+        if (weight <= 0)
+            return;
+        final Long cur = w.get(e);
+        w.put(e, (cur == null) ? weight : cur + weight);
+    }
+}
@@ -19,9 +19,16 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -38,15 +45,19 @@ import ditl.Trace;
 public class FloodingReachableConverter implements
         EdgeTrace.Handler, PresenceTrace.Handler, Generator, Converter {
 
+    // SETS queues one infection per origin and arc, BITSETS one set of
+    // origins per arc
+    public enum Engine {
+        SETS, BITSETS
+    }
+
     private final long _tau;
     private final long _delay;
     private final long min_time;
 
     private StatefulWriter<ArcEvent, Arc> arc_writer;
 
-    private final Set<Arc> state = new TreeSet<Arc>();
     private final Set<Integer> present = new HashSet<Integer>();
-    private final AdjacencySet.Arcs rev_matrix = new AdjacencySet.Arcs();
     private final AdjacencySet.Edges matrix = new AdjacencySet.Edges();
     private boolean started = false;
 
@@ -55,18 +66,23 @@ public class FloodingReachableConverter implements
     private final ReachabilityTrace _reachability;
 
     private final Bus<Object> update_bus = new Bus<Object>();
-    private final Bus<Infection> infection_bus = new Bus<Infection>();
+    private final Epidemic epidemic;
 
     public FloodingReachableConverter(ReachabilityTrace reachability, PresenceTrace presence,
             EdgeTrace edges, long tau, long period, long minTime) {
+        this(reachability, presence, edges, tau, period, minTime, Engine.SETS);
+    }
+
+    public FloodingReachableConverter(ReachabilityTrace reachability, PresenceTrace presence,
+            EdgeTrace edges, long tau, long period, long minTime, Engine engine) {
         min_time = minTime;
         _edges = edges;
         _presence = presence;
         _reachability = reachability;
         _tau = tau;
         _delay = period;
+        epidemic = (engine == Engine.BITSETS) ? new BitSetEpidemic() : new SetEpidemic();
         update_bus.addListener(new UpdateListener());
-        infection_bus.addListener(new InfectionListener());
     }
 
     @Override
@@ -78,23 +94,10 @@ public class FloodingReachableConverter implements
                     final Edge e = eev.edge();
                     if (eev.isUp()) {
                         matrix.add(e);
-                        final Set<Integer> already_inf_1 = rev_matrix.getNext(e.id1);
-                        final Set<Integer> already_inf_2 = rev_matrix.getNext(e.id2);
-                        if (already_inf_1 != null) {
-                            final Arc a = new Arc(e.id1, e.id2);
-                            for (final Integer orig : already_inf_1)
-                                if (already_inf_2 == null || !already_inf_2.contains(orig))
-                                    infection_bus.queue(time + _tau, new Infection(orig, a));
-                        }
-                        if (already_inf_2 != null) {
-                            final Arc a = new Arc(e.id2, e.id1);
-                            for (final Integer orig : already_inf_2)
-                                if (already_inf_1 == null || !already_inf_1.contains(orig))
-                                    infection_bus.queue(time + _tau, new Infection(orig, a));
-                        }
+                        epidemic.edgeUp(time, e);
                     } else {
                         matrix.remove(e);
-                        infection_bus.removeFromQueueAfterTime(time, new EdgeMatcher(e));
+                        epidemic.edgeDown(time, e);
                     }
                 }
             }
@@ -154,7 +157,7 @@ public class FloodingReachableConverter implements
 
     @Override
     public Bus<?>[] busses() {
-        return new Bus<?>[] { infection_bus, update_bus };
+        return new Bus<?>[] { epidemic.bus(), update_bus };
     }
 
     @Override
@@ -162,35 +165,13 @@ public class FloodingReachableConverter implements
         return Integer.MAX_VALUE; // this should come after all other events
     }
 
-    private final static class Infection {
-        Integer _orig;
-        Arc _arc;
-
-        Infection(Integer orig, Arc arc) {
-            _orig = orig;
-            _arc = arc;
-        }
-
-        Arc arc() {
-            return new Arc(_orig, _arc.to);
-        }
-
-        Integer rcpt() {
-            return _arc.to;
-        }
-
-        @Override
-        public String toString() {
-            return arc().toString();
-        }
-    }
-
     private final class UpdateListener implements Listener<Object> {
         @Override
         public void handle(long time, Collection<Object> events) throws IOException {
             if (started) {
                 // first handle previous time period
                 final long t = time - _delay;
+                final Collection<Arc> state = epidemic.state();
                 if (t == _edges.minTime())
                     arc_writer.setInitState(min_time, state);
                 else {
@@ -199,15 +180,13 @@ public class FloodingReachableConverter implements
                         if (!cur_state.contains(a))
                             arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.UP));
                     for (final Arc a : cur_state)
-                        if (!state.contains(a))
+                        if (!epidemic.contains(a))
                             arc_writer.queue(t, new ArcEvent(a, ArcEvent.Type.DOWN));
                     arc_writer.flush();
                 }
 
                 // then clear state and start new epidemic
-                state.clear();
-                rev_matrix.clear();
-                infection_bus.reset();
+                epidemic.clear();
             } else {
                 started = true;
                 if (min_time > _edges.minTime()) // starting after min_time =>
@@ -215,41 +194,42 @@ public class FloodingReachableConverter implements
                     arc_writer.setInitState(_edges.minTime(), Collections.<Arc> emptySet());
             }
 
-            for (final Integer i : present) {
-                rev_matrix.add(new Arc(i, i));
-                broadcast(time, i, i);
-            }
+            for (final Integer i : present)
+                epidemic.seed(time, i);
 
             update_bus.queue(time + _delay, Collections.emptySet());
         }
     }
 
-    private final class InfectionListener implements Listener<Infection> {
-        @Override
-        public void handle(long time, Collection<Infection> events) throws IOException {
-            for (final Infection infection : events) {
-                final Arc a = infection.arc();
-                state.add(a);
-                rev_matrix.add(a.reverse());
-                infection_bus.removeFromQueueAfterTime(time, new TransferMatcher(infection.rcpt(), infection._orig));
-                broadcast(time, infection.rcpt(), infection._orig);
-            }
-        }
+    // Which origins have reached which nodes in the current period. A node
+    // that has been seeded counts as reached by itself for the edges that
+    // come up, but messages that come back to their origin are still
+    // delivered.
+    private abstract class Epidemic {
+        abstract Bus<?> bus();
+
+        abstract void edgeUp(long time, Edge e);
+
+        abstract void edgeDown(long time, Edge e);
+
+        abstract void seed(long time, Integer id);
+
+        abstract void leave(long time, Integer id);
+
+        abstract void clear();
+
+        // in arc order
+        abstract Collection<Arc> state();
+
+        abstract boolean contains(Arc a);
     }
 
-    private void broadcast(long time, Integer id, Integer orig) {
-        final Set<Integer> neighbs = matrix.getNext(id);
-        if (neighbs != null)
-            for (final Integer i : neighbs) {
-                final Arc a = new Arc(orig, i);
-                if (!state.contains(a)) {
-                    final Infection inf = new Infection(orig, new Arc(id, i));
-                    infection_bus.queue(time + _tau, inf);
-                }
-            }
+    // a message (or set of messages) on its way over an arc
+    private interface Hop {
+        Arc hop();
     }
 
-    private final class EdgeMatcher implements Matcher<Infection> {
+    private final static class EdgeMatcher<H extends Hop> implements Matcher<H> {
         Edge _edge;
 
         EdgeMatcher(Edge edge) {
@@ -257,12 +237,12 @@ public class FloodingReachableConverter implements
         }
 
         @Override
-        public boolean matches(Infection item) {
-            return item._arc.edge().equals(_edge);
+        public boolean matches(H item) {
+            return item.hop().edge().equals(_edge);
         }
     }
 
-    private final class NodeMatcher implements Matcher<Infection> {
+    private final static class NodeMatcher<H extends Hop> implements Matcher<H> {
         Integer _id;
 
         NodeMatcher(Integer id) {
@@ -270,12 +250,129 @@ public class FloodingReachableConverter implements
         }
 
         @Override
-        public boolean matches(Infection item) {
-            return item._arc.from.equals(_id) || item._arc.to.equals(_id);
+        public boolean matches(H item) {
+            return item.hop().from == _id || item.hop().to == _id;
+        }
+    }
+
+    private final static class Infection implements Hop {
+        Integer _orig;
+        Arc _arc;
+
+        Infection(Integer orig, Arc arc) {
+            _orig = orig;
+            _arc = arc;
+        }
+
+        Arc arc() {
+            return new Arc(_orig, _arc.to);
+        }
+
+        Integer rcpt() {
+            return _arc.to;
+        }
+
+        @Override
+        public Arc hop() {
+            return _arc;
+        }
+
+        @Override
+        public String toString() {
+            return arc().toString();
         }
     }
 
-    private final class TransferMatcher implements Matcher<Infection> {
+    private final class SetEpidemic extends Epidemic implements Listener<Infection> {
+        private final Set<Arc> state = new TreeSet<Arc>(Arc.order);
+        private final AdjacencySet.Arcs rev_matrix = new AdjacencySet.Arcs();
+        private final Bus<Infection> infection_bus = new Bus<Infection>();
+
+        SetEpidemic() {
+            infection_bus.addListener(this);
+        }
+
+        @Override
+        Bus<?> bus() {
+            return infection_bus;
+        }
+
+        @Override
+        void edgeUp(long time, Edge e) {
+            final Set<Integer> already_inf_1 = rev_matrix.getNext(e.id1);
+            final Set<Integer> already_inf_2 = rev_matrix.getNext(e.id2);
+            if (already_inf_1 != null) {
+                final Arc a = new Arc(e.id1, e.id2);
+                for (final Integer orig : already_inf_1)
+                    if (already_inf_2 == null || !already_inf_2.contains(orig))
+                        infection_bus.queue(time + _tau, new Infection(orig, a));
+            }
+            if (already_inf_2 != null) {
+                final Arc a = new Arc(e.id2, e.id1);
+                for (final Integer orig : already_inf_2)
+                    if (already_inf_1 == null || !already_inf_1.contains(orig))
+                        infection_bus.queue(time + _tau, new Infection(orig, a));
+            }
+        }
+
+        @Override
+        void edgeDown(long time, Edge e) {
+            infection_bus.removeFromQueueAfterTime(time, new EdgeMatcher<Infection>(e));
+        }
+
+        @Override
+        void seed(long time, Integer id) {
+            rev_matrix.add(new Arc(id, id));
+            broadcast(time, id, id);
+        }
+
+        @Override
+        void leave(long time, Integer id) {
+            infection_bus.removeFromQueueAfterTime(time, new NodeMatcher<Infection>(id));
+        }
+
+        @Override
+        void clear() {
+            state.clear();
+            rev_matrix.clear();
+            infection_bus.reset();
+        }
+
+        @Override
+        Collection<Arc> state() {
+            return state;
+        }
+
+        @Override
+        boolean contains(Arc a) {
+            return state.contains(a);
+        }
+
+        @Override
+        public void handle(long time, Collection<Infection> events) {
+            for (final Infection infection : events) {
+                final Arc a = infection.arc();
+                state.add(a);
+                rev_matrix.add(a.reverse());
+                infection_bus.removeFromQueueAfterTime(time, new TransferMatcher(infection.rcpt(), infection._orig));
+                broadcast(time, infection.rcpt(), infection._orig);
+            }
+        }
+
+        private void broadcast(long time, Integer id, Integer orig) {
+            final Set<Integer> neighbs = matrix.getNext(id);
+            if (neighbs != null)
+                for (final Integer i : neighbs) {
+                    final Arc a = new Arc(orig, i);
+                    if (!state.contains(a)) {
+                        final Infection inf = new Infection(orig, new Arc(id, i));
+                        infection_bus.queue(time + _tau, inf);
+                    }
+                }
+        }
+    }
+
+    private final static class TransferMatcher implements Matcher<Infection> {
         Integer _id;
         Integer _orig;
 
@@ -286,7 +383,168 @@ public class FloodingReachableConverter implements
 
         @Override
         public boolean matches(Infection item) {
-            return _orig.equals(item._orig) && item._arc.to.equals(_id);
+            return _orig.equals(item._orig) && item._arc.to == _id;
+        }
+    }
+
+    // the origins are indexed by node, in order of appearance
+    private final static class Transfer implements Hop {
+        final Arc _arc;
+        final BitSet _origins;
+
+        Transfer(Arc arc, BitSet origins) {
+            _arc = arc;
+            _origins = origins;
+        }
+
+        @Override
+        public Arc hop() {
+            return _arc;
+        }
+    }
+
+    // One bitset of reached origins per node. Instead of removing the
+    // transfers made redundant by an infection from the queue, the origins
+    // that a node already has are masked out when a transfer is delivered.
+    private final class BitSetEpidemic extends Epidemic implements Listener<Transfer> {
+        private final Map<Integer, Integer> index = new HashMap<Integer, Integer>();
+        private int[] ids = new int[64];
+        private BitSet[] reached = new BitSet[64];
+        private final BitSet seeded = new BitSet();
+        private final Bus<Transfer> transfer_bus = new Bus<Transfer>();
+
+        BitSetEpidemic() {
+            transfer_bus.addListener(this);
+        }
+
+        private int index(Integer id) {
+            Integer k = index.get(id);
+            if (k == null) {
+                k = index.size();
+                if (k == ids.length) {
+                    ids = Arrays.copyOf(ids, 2 * k);
+                    reached = Arrays.copyOf(reached, 2 * k);
+                }
+                ids[k] = id;
+                reached[k] = new BitSet();
+                index.put(id, k);
+            }
+            return k;
+        }
+
+        // reached, or seeded
+        private BitSet origins(int k) {
+            final BitSet origins = (BitSet) reached[k].clone();
+            if (seeded.get(k))
+                origins.set(k);
+            return origins;
+        }
+
+        @Override
+        Bus<?> bus() {
+            return transfer_bus;
+        }
+
+        @Override
+        void edgeUp(long time, Edge e) {
+            final BitSet inf_1 = origins(index(e.id1));
+            final BitSet inf_2 = origins(index(e.id2));
+            final BitSet diff_12 = (BitSet) inf_1.clone();
+            diff_12.andNot(inf_2);
+            inf_2.andNot(inf_1);
+            if (!diff_12.isEmpty())
+                transfer_bus.queue(time + _tau, new Transfer(new Arc(e.id1, e.id2), diff_12));
+            if (!inf_2.isEmpty())
+                transfer_bus.queue(time + _tau, new Transfer(new Arc(e.id2, e.id1), inf_2));
+        }
+
+        @Override
+        void edgeDown(long time, Edge e) {
+            transfer_bus.removeFromQueueAfterTime(time, new EdgeMatcher<Transfer>(e));
+        }
+
+        @Override
+        void seed(long time, Integer id) {
+            final int k = index(id);
+            seeded.set(k);
+            final BitSet origins = new BitSet();
+            origins.set(k);
+            broadcast(time, id, origins);
+        }
+
+        @Override
+        void leave(long time, Integer id) {
+            transfer_bus.removeFromQueueAfterTime(time, new NodeMatcher<Transfer>(id));
+        }
+
+        @Override
+        void clear() {
+            for (final Integer k : index.values())
+                reached[k].clear();
+            seeded.clear();
+            transfer_bus.reset();
+        }
+
+        @Override
+        Collection<Arc> state() {
+            // sort the nodes by id, and list the reached nodes of each origin
+            final int n = index.size();
+            final Integer[] order = new Integer[n];
+            for (int k = 0; k < n; ++k)
+                order[k] = k;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer k1, Integer k2) {
+                    return (ids[k1] < ids[k2]) ? -1 : (ids[k1] > ids[k2]) ? 1 : 0;
+                }
+            });
+            final List<List<Integer>> by_origin = new ArrayList<List<Integer>>(n);
+            for (int k = 0; k < n; ++k)
+                by_origin.add(null);
+            for (final Integer v : order) {
+                final BitSet r = reached[v];
+                for (int o = r.nextSetBit(0); o >= 0; o = r.nextSetBit(o + 1)) {
+                    if (by_origin.get(o) == null)
+                        by_origin.set(o, new ArrayList<Integer>());
+                    by_origin.get(o).add(ids[v]);
+                }
+            }
+            final List<Arc> state = new ArrayList<Arc>();
+            for (final Integer o : order)
+                if (by_origin.get(o) != null)
+                    for (final Integer to : by_origin.get(o))
+                        state.add(new Arc(ids[o], to));
+            return state;
+        }
+
+        @Override
+        boolean contains(Arc a) {
+            final Integer o = index.get(a.from);
+            final Integer v = index.get(a.to);
+            return o != null && v != null && reached[v].get(o);
+        }
+
+        @Override
+        public void handle(long time, Collection<Transfer> events) {
+            for (final Transfer transfer : events) {
+                final Integer rcpt = transfer._arc.to;
+                final BitSet fresh = transfer._origins;
+                final BitSet r = reached[index(rcpt)];
+                fresh.andNot(r);
+                if (!fresh.isEmpty()) {
+                    r.or(fresh);
+                    broadcast(time, rcpt, fresh);
+                }
+            }
+        }
+
+        private void broadcast(long time, Integer id, BitSet origins) {
+            for (final Integer i : matrix.getNext(id)) {
+                final BitSet diff = (BitSet) origins.clone();
+                diff.andNot(reached[index(i)]);
+                if (!diff.isEmpty())
+                    transfer_bus.queue(time + _tau, new Transfer(new Arc(id, i), diff));
+            }
         }
     }
 
@@ -310,11 +568,10 @@ public class FloodingReachableConverter implements
                     final Integer id = pev.id;
                     if (pev.isIn()) {
                         present.add(id);
-                        rev_matrix.add(new Arc(id, id));
-                        broadcast(time, id, id);
+                        epidemic.seed(time, id);
                     } else {
                         present.remove(id);
-                        infection_bus.removeFromQueueAfterTime(time, new NodeMatcher(id));
+                        epidemic.leave(time, id);
                     }
                 }
             }
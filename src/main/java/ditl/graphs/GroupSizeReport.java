@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import ditl.Listener;
 import ditl.ReportFactory;
@@ -31,20 +33,82 @@ import ditl.StatefulListener;
 public final class GroupSizeReport extends StateTimeReport implements GroupTrace.Handler {
 
     private final GroupTrace.Updater updater = new GroupTrace.Updater();
+    private final Map<Integer, Integer> sizes = new HashMap<Integer, Integer>();
+    private final Histogram histogram;
 
     public GroupSizeReport(OutputStream out) throws IOException {
+        this(out, false, 0);
+    }
+
+    // with histogram, only group sizes are tracked and the report gives the
+    // number of groups per size, as changes or, if interval > 0, as means
+    // over each interval
+    public GroupSizeReport(OutputStream out, boolean histogram, long interval) throws IOException {
         super(out);
-        appendComment("time | duration | group size distribution");
+        this.histogram = histogram ? new Histogram(this, interval) : null;
+        if (!histogram)
+            appendComment("time | duration | group size distribution");
+        else if (interval > 0)
+            appendComment("time | duration | mean number of groups per size (size:count)");
+        else
+            appendComment("time | duration | changed numbers of groups per size (size:count)");
     }
 
     public static final class Factory implements ReportFactory<GroupSizeReport> {
+        private final boolean _histogram;
+        private final long _interval;
+
+        public Factory() {
+            this(false, 0);
+        }
+
+        public Factory(boolean histogram, long interval) {
+            _histogram = histogram;
+            _interval = interval;
+        }
+
         @Override
         public GroupSizeReport getNew(OutputStream out) throws IOException {
-            return new GroupSizeReport(out);
+            return new GroupSizeReport(out, _histogram, _interval);
+        }
+    }
+
+    private void handleEvent(long time, GroupEvent gev) throws IOException {
+        final Integer size = sizes.get(gev.gid);
+        switch (gev.type) {
+            case NEW:
+                sizes.put(gev.gid, 0);
+                histogram.add(time, 0, 1);
+                break;
+            case JOIN:
+                sizes.put(gev.gid, size + gev.members().size());
+                histogram.move(time, size, size + gev.members().size());
+                break;
+            case LEAVE:
+                sizes.put(gev.gid, size - gev.members().size());
+                histogram.move(time, size, size - gev.members().size());
+                break;
+            case DELETE:
+                sizes.remove(gev.gid);
+                histogram.add(time, size, -1);
+                break;
+        }
+    }
+
+    private void setState(long time, Collection<Group> groups) throws IOException {
+        sizes.clear();
+        histogram.clear();
+        for (final Group g : groups) {
+            sizes.put(g.gid, g.size());
+            histogram.add(time, g.size(), 1);
         }
     }
 
     private void update(long time) throws IOException {
+        if (histogram != null) {
+            histogram.update(time);
+            return;
+        }
         final StringBuffer buffer = new StringBuffer();
         for (final Group g : updater.states())
             buffer.append(g.size() + " ");
@@ -58,7 +122,10 @@ public final class GroupSizeReport extends StateTimeReport implements GroupTrace
             public void handle(long time, Collection<GroupEvent> events)
                     throws IOException {
                 for (final GroupEvent gev : events)
-                    updater.handleEvent(time, gev);
+                    if (histogram != null)
+                        handleEvent(time, gev);
+                    else
+                        updater.handleEvent(time, gev);
                 update(time);
             }
         };
@@ -70,15 +137,30 @@ public final class GroupSizeReport extends StateTimeReport implements GroupTrace
             @Override
             public void reset() {
                 updater.setState(Collections.<Group> emptySet());
+                sizes.clear();
+                if (histogram != null)
+                    histogram.clear();
             }
 
             @Override
             public void handle(long time, Collection<Group> events)
                     throws IOException {
-                updater.setState(events);
+                if (histogram != null)
+                    setState(time, events);
+                else
+                    updater.setState(events);
                 update(time);
             }
         };
     }
 
+    @Override
+    public void finish(long time) throws IOException {
+        if (histogram != null && histogram.timeWeighted()) {
+            histogram.flush(time);
+            finish();
+        } else
+            super.finish(time);
+    }
+
 }
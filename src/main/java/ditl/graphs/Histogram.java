@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ditl.StateTimeReport;
+
+// Number of nodes (or groups) per degree (or size), updated in constant
+// time. Without an interval, each update appends the bins whose count
+// changed as value:count. With an interval, one line per interval lists the
+// mean count of each bin over that interval as value:mean.
+final class Histogram {
+
+    private final StateTimeReport _report;
+    private final long _interval;
+    private long[] counts = new long[16];
+    private long[] emitted = new long[16];
+    private long[] weights = new long[16]; // count x time since interval start
+    private long[] since = new long[16];
+    private int n_bins = 0;
+    private boolean started = false;
+    private long interval_start;
+
+    Histogram(StateTimeReport report, long interval) {
+        _report = report;
+        _interval = interval;
+    }
+
+    boolean timeWeighted() {
+        return _interval > 0;
+    }
+
+    private void start(long time) {
+        if (!started) {
+            started = true;
+            interval_start = time;
+        }
+    }
+
+    void add(long time, int value, int n) throws IOException {
+        start(time);
+        if (value >= counts.length) {
+            final int len = Math.max(value + 1, 2 * counts.length);
+            counts = Arrays.copyOf(counts, len);
+            emitted = Arrays.copyOf(emitted, len);
+            weights = Arrays.copyOf(weights, len);
+            since = Arrays.copyOf(since, len);
+        }
+        if (value >= n_bins)
+            n_bins = value + 1;
+        if (timeWeighted()) {
+            roll(time);
+            weights[value] += counts[value] * (time - since[value]);
+            since[value] = time;
+        }
+        counts[value] += n;
+    }
+
+    void move(long time, int from, int to) throws IOException {
+        add(time, from, -1);
+        add(time, to, 1);
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(emitted, 0);
+        Arrays.fill(weights, 0);
+        n_bins = 0;
+        started = false;
+    }
+
+    void update(long time) throws IOException {
+        start(time);
+        if (timeWeighted()) {
+            roll(time);
+            return;
+        }
+        final StringBuffer buffer = new StringBuffer();
+        for (int v = 0; v < n_bins; ++v)
+            if (counts[v] != emitted[v]) {
+                buffer.append(v + ":" + counts[v] + " ");
+                emitted[v] = counts[v];
+            }
+        if (buffer.length() > 0)
+            _report.append(time, buffer.toString());
+    }
+
+    // writes the intervals that end at or before time
+    private void roll(long time) throws IOException {
+        while (time >= interval_start + _interval)
+            close(interval_start + _interval);
+    }
+
+    private void close(long end) throws IOException {
+        final long duration = end - interval_start;
+        final StringBuffer buffer = new StringBuffer();
+        buffer.append(interval_start + " " + duration + " ");
+        for (int v = 0; v < n_bins; ++v) {
+            final long w = weights[v] + counts[v] * (end - since[v]);
+            if (w != 0)
+                buffer.append(v + ":" + ((double) w / duration) + " ");
+            weights[v] = 0;
+            since[v] = end;
+        }
+        _report.append(buffer.toString());
+        interval_start = end;
+    }
+
+    // writes the remaining intervals, the last one possibly shorter
+    void flush(long time) throws IOException {
+        if (!started)
+            return;
+        roll(time);
+        if (time > interval_start)
+            close(time);
+    }
+}
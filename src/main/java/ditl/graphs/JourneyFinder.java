@@ -0,0 +1,619 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import ditl.StatefulReader;
+
+// Time-respecting journeys over the contacts of an edge trace between begin
+// and end. Crossing a contact takes tau, and nodes may hold a message for as
+// long as they like. As in EdgesToReachableConverter, a contact that is up
+// during [up,down) may be crossed starting from up to down-tau excluded, or
+// only at up if it lasts exactly tau. The contacts are read once and every
+// query is a single scan of these departure windows.
+public class JourneyFinder {
+
+    public final static long NEVER = Long.MAX_VALUE;
+    private final static int UNREACHED = Integer.MAX_VALUE;
+
+    private final long _tau;
+    private final long _begin;
+    private final long _end;
+    private final Contacts forward;
+    private Contacts backward = null;
+
+    public JourneyFinder(EdgeTrace edges, long tau, long begin, long end) throws IOException {
+        _tau = tau;
+        _begin = begin;
+        _end = end;
+        forward = load(edges, tau, begin, end);
+    }
+
+    public long begin() {
+        return _begin;
+    }
+
+    public long end() {
+        return _end;
+    }
+
+    // the nodes that have at least one contact between begin and end
+    public Set<Integer> nodes() {
+        return Collections.unmodifiableSet(forward.index.keySet());
+    }
+
+    // foremost journeys, i.e., those that arrive first, from source leaving no
+    // earlier than time
+    public Journeys foremost(Integer source, long time) {
+        return foremost(Collections.singletonList(source), time).get(0);
+    }
+
+    // same as above for several sources at once, in a single scan that sends
+    // one bitset of sources per contact
+    public List<Journeys> foremost(List<Integer> sources, long time) {
+        final int[] srcs = new int[sources.size()];
+        for (int s = 0; s < srcs.length; ++s)
+            srcs[s] = forward.nodeIndex(sources.get(s));
+        final ForemostScan scan = new ForemostScan(forward, srcs, -1);
+        scan.run(time, _end);
+        final List<Journeys> journeys = new ArrayList<Journeys>(srcs.length);
+        for (int s = 0; s < srcs.length; ++s)
+            journeys.add(new Journeys(sources.get(s), time, scan.arrival[s], scan.hops[s], scan.pred[s]));
+        return journeys;
+    }
+
+    // journeys with the fewest hops from source leaving no earlier than time
+    // and arriving no later than end, and the earliest arrival among those
+    public Journeys shortest(Integer source, long time) {
+        final ShortestScan scan = new ShortestScan(forward, forward.nodeIndex(source));
+        scan.run(time, _end);
+        return new Journeys(source, time, scan.arrival, scan.min_hops, null);
+    }
+
+    // The fastest journey from source to dest leaving no earlier than time,
+    // as {departure, arrival}, or null if dest cannot be reached. Each round
+    // finds the earliest arrival for a departure after the previous round's,
+    // and then the latest departure that still makes that arrival.
+    public long[] fastest(Integer source, Integer dest, long time) {
+        final int src = forward.nodeIndex(source);
+        final int dst = forward.nodeIndex(dest);
+        if (source.equals(dest))
+            return new long[] { time, time };
+        if (src < 0 || dst < 0)
+            return null;
+        if (backward == null)
+            backward = forward.mirror(_tau);
+        long[] best = null;
+        long t = time;
+        while (t <= _end) {
+            final ForemostScan fwd = new ForemostScan(forward, new int[] { src }, dst);
+            fwd.run(t, _end);
+            final long arrival = fwd.arrival[0][dst];
+            if (arrival == NEVER)
+                break;
+            final ForemostScan bwd = new ForemostScan(backward, new int[] { dst }, src);
+            bwd.run(-arrival, -t);
+            final long departure = -bwd.arrival[0][src];
+            if (best == null || arrival - departure < best[1] - best[0])
+                best = new long[] { departure, arrival };
+            t = departure + 1;
+        }
+        return best;
+    }
+
+    // Same as above from source to each of dests, with the destinations that
+    // cannot be reached left out. The rounds of all the destinations that
+    // depart at the same time share one forward scan, only the backward scans
+    // are run per destination.
+    public Map<Integer, long[]> fastest(Integer source, Collection<Integer> dests, long time) {
+        final Map<Integer, long[]> best = new HashMap<Integer, long[]>();
+        final int src = forward.nodeIndex(source);
+        // destinations by departure time of their next round
+        final TreeMap<Long, List<Integer>> rounds = new TreeMap<Long, List<Integer>>();
+        for (final Integer dest : dests)
+            if (dest.equals(source))
+                best.put(dest, new long[] { time, time });
+            else if (src >= 0 && forward.nodeIndex(dest) >= 0)
+                addRound(rounds, time, dest);
+        if (!rounds.isEmpty() && backward == null)
+            backward = forward.mirror(_tau);
+        while (!rounds.isEmpty() && rounds.firstKey() <= _end) {
+            final Map.Entry<Long, List<Integer>> round = rounds.pollFirstEntry();
+            final long t = round.getKey();
+            final ForemostScan fwd = new ForemostScan(forward, new int[] { src }, -1);
+            fwd.run(t, _end);
+            for (final Integer dest : round.getValue()) {
+                final int dst = forward.nodeIndex(dest);
+                final long arrival = fwd.arrival[0][dst];
+                if (arrival == NEVER)
+                    continue;
+                final ForemostScan bwd = new ForemostScan(backward, new int[] { dst }, src);
+                bwd.run(-arrival, -t);
+                final long departure = -bwd.arrival[0][src];
+                final long[] b = best.get(dest);
+                if (b == null || arrival - departure < b[1] - b[0])
+                    best.put(dest, new long[] { departure, arrival });
+                addRound(rounds, departure + 1, dest);
+            }
+        }
+        return best;
+    }
+
+    private static void addRound(TreeMap<Long, List<Integer>> rounds, long time, Integer dest) {
+        List<Integer> round = rounds.get(time);
+        if (round == null) {
+            round = new ArrayList<Integer>();
+            rounds.put(time, round);
+        }
+        round.add(dest);
+    }
+
+    public final class Journeys {
+        private final Integer _source;
+        private final long _start;
+        private final long[] _arrival;
+        private final int[] _hops;
+        private final int[] _pred;
+
+        Journeys(Integer source, long start, long[] arrival, int[] hops, int[] pred) {
+            _source = source;
+            _start = start;
+            _arrival = arrival;
+            _hops = hops;
+            _pred = pred;
+        }
+
+        public Integer source() {
+            return _source;
+        }
+
+        public long start() {
+            return _start;
+        }
+
+        public boolean reaches(Integer id) {
+            return arrival(id) != NEVER;
+        }
+
+        public long arrival(Integer id) {
+            if (id.equals(_source))
+                return _start;
+            final int k = forward.nodeIndex(id);
+            return (k < 0) ? NEVER : _arrival[k];
+        }
+
+        public int hops(Integer id) {
+            if (id.equals(_source))
+                return 0;
+            final int k = forward.nodeIndex(id);
+            return (k < 0 || _arrival[k] == NEVER) ? -1 : _hops[k];
+        }
+
+        // the nodes along the journey to id, starting with the source, or
+        // null if id is not reached or the journeys are not foremost
+        public List<Integer> path(Integer id) {
+            if (_pred == null || !reaches(id))
+                return null;
+            final LinkedList<Integer> path = new LinkedList<Integer>();
+            path.add(id);
+            if (!id.equals(_source))
+                for (int k = _pred[forward.nodeIndex(id)]; k >= 0; k = _pred[k])
+                    path.addFirst(forward.ids[k]);
+            return path;
+        }
+    }
+
+    private static Contacts load(EdgeTrace edges, long tau, long begin, long end) throws IOException {
+        final List<long[]> contacts = new ArrayList<long[]>();
+        // position in contacts of the open contact of each edge
+        final PairTable open = new PairTable();
+        final StatefulReader<EdgeEvent, Edge> reader = edges.getReader();
+        reader.seek(begin);
+        // these came up before begin
+        for (final Edge e : reader.referenceState()) {
+            open.put(PairTable.key(e.id1, e.id2), contacts.size());
+            contacts.add(new long[] { begin - 1, NEVER, e.id1, e.id2 });
+        }
+        while (reader.hasNext() && reader.nextTime() <= end) {
+            final long time = reader.nextTime();
+            for (final EdgeEvent eev : reader.next()) {
+                final long key = PairTable.key(eev.id1, eev.id2);
+                if (eev.isUp()) {
+                    if (open.get(key) == null) {
+                        open.put(key, contacts.size());
+                        contacts.add(new long[] { time, NEVER, eev.id1, eev.id2 });
+                    }
+                } else {
+                    final Integer k = (Integer) open.remove(key);
+                    if (k != null)
+                        contacts.get(k)[1] = time;
+                }
+            }
+        }
+        reader.close();
+        // turn {up, down} into the window of departures {first, last}
+        final Iterator<long[]> i = contacts.iterator();
+        while (i.hasNext()) {
+            final long[] c = i.next();
+            final long last;
+            if (c[1] == NEVER)
+                last = end - tau;
+            else if (c[1] - c[0] == tau)
+                last = c[0];
+            else
+                last = c[1] - tau - 1;
+            c[0] = Math.max(c[0], begin);
+            c[1] = last;
+            if (c[1] < c[0])
+                i.remove();
+        }
+        final Set<Integer> ids = new TreeSet<Integer>();
+        for (final long[] c : contacts) {
+            ids.add((int) c[2]);
+            ids.add((int) c[3]);
+        }
+        final Map<Integer, Integer> index = new HashMap<Integer, Integer>();
+        for (final Integer id : ids)
+            index.put(id, index.size());
+        for (final long[] c : contacts) {
+            c[2] = index.get((int) c[2]);
+            c[3] = index.get((int) c[3]);
+        }
+        return new Contacts(index, contacts);
+    }
+
+    private final static Comparator<long[]> by_up = new Comparator<long[]>() {
+        @Override
+        public int compare(long[] c1, long[] c2) {
+            for (int i = 0; i < 4; ++i)
+                if (c1[i] != c2[i])
+                    return (c1[i] < c2[i]) ? -1 : 1;
+            return 0;
+        }
+    };
+
+    // {first, last, node1, node2} sorted by first departure, with nodes as
+    // dense indices
+    private final static class Contacts {
+        final Map<Integer, Integer> index;
+        final int[] ids;
+        final int n;
+        final long[] first;
+        final long[] last;
+        final int[] node1;
+        final int[] node2;
+        final int[] by_last;
+
+        Contacts(Map<Integer, Integer> nodeIndex, List<long[]> contacts) {
+            index = nodeIndex;
+            ids = new int[index.size()];
+            for (final Map.Entry<Integer, Integer> e : index.entrySet())
+                ids[e.getValue()] = e.getKey();
+            Collections.sort(contacts, by_up);
+            n = contacts.size();
+            first = new long[n];
+            last = new long[n];
+            node1 = new int[n];
+            node2 = new int[n];
+            for (int k = 0; k < n; ++k) {
+                final long[] c = contacts.get(k);
+                first[k] = c[0];
+                last[k] = c[1];
+                node1[k] = (int) c[2];
+                node2[k] = (int) c[3];
+            }
+            final Integer[] order = new Integer[n];
+            for (int k = 0; k < n; ++k)
+                order[k] = k;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer k1, Integer k2) {
+                    if (last[k1] != last[k2])
+                        return (last[k1] < last[k2]) ? -1 : 1;
+                    return k1.compareTo(k2);
+                }
+            });
+            by_last = new int[n];
+            for (int k = 0; k < n; ++k)
+                by_last[k] = order[k];
+        }
+
+        int nodeIndex(Integer id) {
+            final Integer k = index.get(id);
+            return (k == null) ? -1 : k;
+        }
+
+        // the same contacts with reversed time, for latest departures:
+        // leaving at -t in the mirror is arriving at t
+        Contacts mirror(long tau) {
+            final List<long[]> contacts = new ArrayList<long[]>(n);
+            for (int k = 0; k < n; ++k)
+                contacts.add(new long[] { -last[k] - tau, -first[k] - tau, node1[k], node2[k] });
+            return new Contacts(index, contacts);
+        }
+    }
+
+    private final static class Delivery {
+        final long time;
+        final long seq;
+        final int from;
+        final int to;
+        final BitSet sources;
+        final int hops;
+
+        Delivery(long deliveryTime, long sequence, int nodeFrom, int nodeTo, BitSet deliveredSources, int nHops) {
+            time = deliveryTime;
+            seq = sequence;
+            from = nodeFrom;
+            to = nodeTo;
+            sources = deliveredSources;
+            hops = nHops;
+        }
+    }
+
+    private final static Comparator<Delivery> delivery_order = new Comparator<Delivery>() {
+        @Override
+        public int compare(Delivery d1, Delivery d2) {
+            if (d1.time != d2.time)
+                return (d1.time < d2.time) ? -1 : 1;
+            return (d1.seq < d2.seq) ? -1 : (d1.seq > d2.seq) ? 1 : 0;
+        }
+    };
+
+    // At each time, contacts whose window is over are dropped, contacts whose
+    // window opens come up, and then messages are delivered (possibly over
+    // several hops when tau is 0).
+    private abstract class Scan {
+        final Contacts _c;
+        // contacts currently up at each node
+        private final int[][] active;
+        private final int[] n_active;
+        private final PriorityQueue<Delivery> queue = new PriorityQueue<Delivery>(64, delivery_order);
+        private long seq = 0;
+
+        Scan(Contacts contacts) {
+            _c = contacts;
+            active = new int[_c.ids.length][];
+            n_active = new int[_c.ids.length];
+        }
+
+        abstract void seed(long time);
+
+        abstract void contactUp(long time, int k);
+
+        abstract void deliver(Delivery d);
+
+        boolean done() {
+            return false;
+        }
+
+        void run(long from, long until) {
+            int next_up = 0;
+            int next_down = 0;
+            long t = from;
+            while (true) {
+                for (; next_down < _c.n && _c.last[_c.by_last[next_down]] < t; ++next_down)
+                    deactivate(_c.by_last[next_down]);
+                for (; next_up < _c.n && _c.first[next_up] <= t; ++next_up)
+                    if (_c.last[next_up] >= t) {
+                        activate(next_up);
+                        contactUp(t, next_up);
+                    }
+                if (t == from)
+                    seed(from);
+                while (!queue.isEmpty() && queue.peek().time == t)
+                    deliver(queue.poll());
+                if (done())
+                    return;
+                t = NEVER;
+                if (next_up < _c.n)
+                    t = _c.first[next_up];
+                if (!queue.isEmpty())
+                    t = Math.min(t, queue.peek().time);
+                if (t == NEVER || t > until)
+                    return;
+            }
+        }
+
+        private void activate(int k) {
+            add(_c.node1[k], k);
+            add(_c.node2[k], k);
+        }
+
+        private void add(int node, int k) {
+            if (active[node] == null)
+                active[node] = new int[4];
+            else if (n_active[node] == active[node].length)
+                active[node] = Arrays.copyOf(active[node], 2 * n_active[node]);
+            active[node][n_active[node]++] = k;
+        }
+
+        private void deactivate(int k) {
+            remove(_c.node1[k], k);
+            remove(_c.node2[k], k);
+        }
+
+        private void remove(int node, int k) {
+            final int[] ks = active[node];
+            for (int i = 0; i < n_active[node]; ++i)
+                if (ks[i] == k) {
+                    ks[i] = ks[--n_active[node]];
+                    return;
+                }
+        }
+
+        int other(int k, int node) {
+            return (_c.node1[k] == node) ? _c.node2[k] : _c.node1[k];
+        }
+
+        // the contacts up at node, valid until the next call to run's steps
+        int nActive(int node) {
+            return n_active[node];
+        }
+
+        int activeContact(int node, int i) {
+            return active[node][i];
+        }
+
+        void send(long time, int k, int from, BitSet sources, int hops) {
+            queue.add(new Delivery(time + _tau, seq++, from, other(k, from), sources, hops));
+        }
+    }
+
+    // per node, the bitset of the sources that reached it
+    private final class ForemostScan extends Scan {
+        final int[] _sources;
+        final BitSet[] reached;
+        final long[][] arrival;
+        final int[][] hops;
+        final int[][] pred;
+        final int _target;
+        private int n_pending;
+
+        ForemostScan(Contacts contacts, int[] sources, int target) {
+            super(contacts);
+            _sources = sources;
+            _target = target;
+            final int n_nodes = contacts.ids.length;
+            reached = new BitSet[n_nodes];
+            for (int k = 0; k < n_nodes; ++k)
+                reached[k] = new BitSet();
+            arrival = new long[sources.length][n_nodes];
+            hops = new int[sources.length][n_nodes];
+            pred = new int[sources.length][n_nodes];
+            for (int s = 0; s < sources.length; ++s)
+                Arrays.fill(arrival[s], NEVER);
+            n_pending = (target >= 0) ? sources.length : 0;
+        }
+
+        @Override
+        void seed(long time) {
+            for (int s = 0; s < _sources.length; ++s) {
+                final int node = _sources[s];
+                if (node < 0)
+                    continue;
+                final BitSet bits = new BitSet();
+                bits.set(s);
+                reach(time, node, -1, bits);
+            }
+        }
+
+        @Override
+        void contactUp(long time, int k) {
+            offer(time, k, _c.node1[k], reached[_c.node1[k]]);
+            offer(time, k, _c.node2[k], reached[_c.node2[k]]);
+        }
+
+        private void offer(long time, int k, int from, BitSet sources) {
+            final BitSet bits = (BitSet) sources.clone();
+            bits.andNot(reached[other(k, from)]);
+            if (!bits.isEmpty())
+                send(time, k, from, bits, 0);
+        }
+
+        @Override
+        void deliver(Delivery d) {
+            // other deliveries may have reached d.to since d was sent
+            final BitSet bits = (BitSet) d.sources.clone();
+            bits.andNot(reached[d.to]);
+            if (!bits.isEmpty())
+                reach(d.time, d.to, d.from, bits);
+        }
+
+        private void reach(long time, int node, int from, BitSet bits) {
+            for (int s = bits.nextSetBit(0); s >= 0; s = bits.nextSetBit(s + 1)) {
+                arrival[s][node] = time;
+                hops[s][node] = (from < 0) ? 0 : hops[s][from] + 1;
+                pred[s][node] = from;
+                if (node == _target)
+                    n_pending--;
+            }
+            reached[node].or(bits);
+            for (int i = 0; i < nActive(node); ++i)
+                offer(time, activeContact(node, i), node, bits);
+        }
+
+        @Override
+        boolean done() {
+            return _target >= 0 && n_pending == 0;
+        }
+    }
+
+    // per node, the fewest hops of the journeys that reached it so far
+    private final class ShortestScan extends Scan {
+        final int _source;
+        final int[] min_hops;
+        final long[] arrival;
+
+        ShortestScan(Contacts contacts, int source) {
+            super(contacts);
+            _source = source;
+            min_hops = new int[contacts.ids.length];
+            arrival = new long[contacts.ids.length];
+            Arrays.fill(min_hops, UNREACHED);
+            Arrays.fill(arrival, NEVER);
+        }
+
+        @Override
+        void seed(long time) {
+            if (_source >= 0)
+                reach(time, _source, 0);
+        }
+
+        @Override
+        void contactUp(long time, int k) {
+            offer(time, k, _c.node1[k]);
+            offer(time, k, _c.node2[k]);
+        }
+
+        private void offer(long time, int k, int from) {
+            if (min_hops[from] != UNREACHED && min_hops[from] + 1 < min_hops[other(k, from)])
+                send(time, k, from, null, min_hops[from] + 1);
+        }
+
+        @Override
+        void deliver(Delivery d) {
+            if (d.hops < min_hops[d.to])
+                reach(d.time, d.to, d.hops);
+        }
+
+        private void reach(long time, int node, int hops) {
+            min_hops[node] = hops;
+            arrival[node] = time;
+            for (int i = 0; i < nActive(node); ++i)
+                offer(time, activeContact(node, i), node);
+        }
+    }
+}
@@ -31,7 +31,7 @@ public final class Movement implements Item {
     public final Integer id;
     double x, y;
     private double sx, sy;
-    private long since;
+    long since;
     long arrival;
     private double dx, dy;
 
@@ -105,6 +105,14 @@ public final class Movement implements Item {
         return new Point(x + dX, y + dY);
     }
 
+    double velocityX() {
+        return sx;
+    }
+
+    double velocityY() {
+        return sy;
+    }
+
     public Point from() {
         return new Point(x, y);
     }
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Uniform grid over the boxes swept by movements during a time horizon.
+// Used to find the movements that may come within range of a given one.
+// Two movements with the same non-zero velocity are always candidates of
+// one another: Movement.meetingTimes does not look at their actual
+// positions in that case.
+final class MovementGrid {
+
+    private final static int maxCells = 1024;
+
+    private final class Entry implements Comparable<Entry> {
+        final Movement m;
+        int cx0, cy0, cx1, cy1;
+        long expiry;
+        boolean oversized;
+        boolean live = true;
+        int stamp;
+
+        Entry(Movement mv) {
+            m = mv;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return (expiry < o.expiry) ? -1 : ((expiry > o.expiry) ? 1 : 0);
+        }
+    }
+
+    private final double cell_size;
+    private final long _horizon;
+    private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+    private final Map<Long, List<Entry>> cells = new HashMap<Long, List<Entry>>();
+    private final Map<Long, List<Movement>> by_velocity = new HashMap<Long, List<Movement>>();
+    private final List<Entry> oversized = new ArrayList<Entry>();
+    private final PriorityQueue<Entry> expiries = new PriorityQueue<Entry>();
+    private int cur_stamp = 0;
+    // cells spanned by everything indexed so far
+    private int min_cx = Integer.MAX_VALUE, min_cy = Integer.MAX_VALUE;
+    private int max_cx = Integer.MIN_VALUE, max_cy = Integer.MIN_VALUE;
+
+    MovementGrid(double cellSize, long horizon) {
+        cell_size = cellSize;
+        _horizon = horizon;
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cell_size);
+    }
+
+    // bijective mix so that neighboring cells do not collide in the hash map
+    private static long cellKey(int cx, int cy) {
+        return (((long) cx << 32) | (cy & 0xffffffffL)) * 0x9E3779B97F4A7C15L;
+    }
+
+    // collisions only add spurious candidates, adding 0.0 folds -0.0 into 0.0
+    private static Long velocity(Movement m) {
+        return Double.doubleToLongBits(m.velocityX() + 0.0) * 31 + Double.doubleToLongBits(m.velocityY() + 0.0);
+    }
+
+    private static boolean isMoving(Movement m) {
+        return m.velocityX() != 0 || m.velocityY() != 0;
+    }
+
+    void add(Movement m, long time) {
+        if (isMoving(m)) {
+            final Long v = velocity(m);
+            List<Movement> same = by_velocity.get(v);
+            if (same == null) {
+                same = new ArrayList<Movement>(2);
+                by_velocity.put(v, same);
+            }
+            same.add(m);
+        }
+        index(m, time);
+    }
+
+    void remove(Movement m) {
+        final Entry e = entries.remove(m.id);
+        if (e == null)
+            return;
+        unindex(e);
+        if (isMoving(m)) {
+            final Long v = velocity(m);
+            final List<Movement> same = by_velocity.get(v);
+            same.remove(m);
+            if (same.isEmpty())
+                by_velocity.remove(v);
+        }
+    }
+
+    void clear() {
+        for (final Entry e : entries.values())
+            e.live = false;
+        entries.clear();
+        cells.clear();
+        by_velocity.clear();
+        oversized.clear();
+        expiries.clear();
+    }
+
+    // box swept from 'time' until the end of the horizon
+    private void index(Movement m, long time) {
+        final Entry e = new Entry(m);
+        entries.put(m.id, e);
+        if (isMoving(m)) {
+            final long end = time + _horizon;
+            final Point p = m.positionAtTime(time), q = m.positionAtTime(end);
+            e.cx0 = cell(Math.min(p.x, q.x));
+            e.cx1 = cell(Math.max(p.x, q.x));
+            e.cy0 = cell(Math.min(p.y, q.y));
+            e.cy1 = cell(Math.max(p.y, q.y));
+            e.expiry = end;
+            expiries.add(e);
+        } else {
+            e.cx0 = e.cx1 = cell(m.x);
+            e.cy0 = e.cy1 = cell(m.y);
+            e.expiry = Long.MAX_VALUE;
+        }
+        e.oversized = (long) (e.cx1 - e.cx0 + 1) * (e.cy1 - e.cy0 + 1) > maxCells;
+        if (e.oversized) {
+            oversized.add(e);
+        } else {
+            min_cx = Math.min(min_cx, e.cx0);
+            max_cx = Math.max(max_cx, e.cx1);
+            min_cy = Math.min(min_cy, e.cy0);
+            max_cy = Math.max(max_cy, e.cy1);
+            for (int cx = e.cx0; cx <= e.cx1; ++cx)
+                for (int cy = e.cy0; cy <= e.cy1; ++cy) {
+                    final Long key = cellKey(cx, cy);
+                    List<Entry> list = cells.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Entry>(4);
+                        cells.put(key, list);
+                    }
+                    list.add(e);
+                }
+        }
+    }
+
+    // expired heap entries are dropped lazily
+    private void unindex(Entry e) {
+        e.live = false;
+        if (e.oversized) {
+            oversized.remove(e);
+        } else {
+            for (int cx = e.cx0; cx <= e.cx1; ++cx)
+                for (int cy = e.cy0; cy <= e.cy1; ++cy) {
+                    final Long key = cellKey(cx, cy);
+                    final List<Entry> list = cells.get(key);
+                    list.remove(e);
+                    if (list.isEmpty())
+                        cells.remove(key);
+                }
+        }
+    }
+
+    // re-index the movements whose swept box ends before 'until'
+    private void refresh(long time, long until) {
+        while (!expiries.isEmpty() && expiries.peek().expiry < until) {
+            final Entry e = expiries.poll();
+            if (e.live) {
+                unindex(e);
+                index(e.m, time);
+            }
+        }
+    }
+
+    // Indexed movements that may come within distance r of m at some point
+    // during [from, to], in increasing id order. Returns null when m sweeps too
+    // large a part of the grid for it to be of any help.
+    List<Movement> candidates(Movement m, long from, long to, double r) {
+        refresh(from, to);
+        final Point p = m.positionAtTime(from), q = m.positionAtTime(to);
+        final double margin = r * (1 + 1e-9) + 1e-9;
+        final int cx0 = cell(Math.min(p.x, q.x) - margin), cx1 = cell(Math.max(p.x, q.x) + margin);
+        final int cy0 = cell(Math.min(p.y, q.y) - margin), cy1 = cell(Math.max(p.y, q.y) + margin);
+        final long area = (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+        final long span = (long) (max_cx - min_cx + 1) * (max_cy - min_cy + 1);
+        if (area > maxCells || 4 * area > span)
+            return null;
+        // entries spanning several cells are only collected once
+        ++cur_stamp;
+        int[] ids = new int[16];
+        int n = 0;
+        for (int cx = cx0; cx <= cx1; ++cx)
+            for (int cy = cy0; cy <= cy1; ++cy) {
+                final List<Entry> list = cells.get(cellKey(cx, cy));
+                if (list != null)
+                    for (final Entry e : list)
+                        if (e.stamp != cur_stamp) {
+                            e.stamp = cur_stamp;
+                            if (n == ids.length)
+                                ids = Arrays.copyOf(ids, n * 2);
+                            ids[n++] = e.m.id;
+                        }
+            }
+        final List<Movement> same = isMoving(m) ? by_velocity.get(velocity(m)) : null;
+        final int extra = oversized.size() + (same == null ? 0 : same.size());
+        if (n + extra > ids.length)
+            ids = Arrays.copyOf(ids, n + extra);
+        for (final Entry e : oversized)
+            if (e.stamp != cur_stamp) {
+                e.stamp = cur_stamp;
+                ids[n++] = e.m.id;
+            }
+        if (same != null)
+            for (final Movement v : same) {
+                final Entry e = entries.get(v.id);
+                if (e.stamp != cur_stamp) {
+                    e.stamp = cur_stamp;
+                    ids[n++] = v.id;
+                }
+            }
+        Arrays.sort(ids, 0, n);
+        final List<Movement> movements = new ArrayList<Movement>(n);
+        for (int i = 0; i < n; ++i)
+            movements.add(entries.get(ids[i]).m);
+        return movements;
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Positions and velocities of a set of movements in parallel arrays indexed
+// by a dense node index, so that the positions of all nodes at some time are
+// computed in a single allocation-free loop. Removing a node moves the last
+// node to its index. Start times are kept as doubles, which is exact for
+// times below 2^53 and gives the same positions as Movement.positionAtTime.
+public final class MovementState {
+
+    private final Map<Integer, Integer> index = new HashMap<Integer, Integer>();
+    private int[] ids = new int[16];
+    private double[] x = new double[16];
+    private double[] y = new double[16];
+    private double[] sx = new double[16];
+    private double[] sy = new double[16];
+    private double[] since = new double[16];
+    private int n = 0;
+
+    public int size() {
+        return n;
+    }
+
+    public Integer id(int i) {
+        return ids[i];
+    }
+
+    // dense index of the node, or -1 if it is not in the state
+    public int indexOf(Integer id) {
+        final Integer i = index.get(id);
+        return (i == null) ? -1 : i;
+    }
+
+    public void set(Movement m) {
+        Integer i = index.get(m.id);
+        if (i == null) {
+            if (n == ids.length)
+                grow();
+            i = n++;
+            ids[i] = m.id;
+            index.put(m.id, i);
+        }
+        x[i] = m.x;
+        y[i] = m.y;
+        sx[i] = m.velocityX();
+        sy[i] = m.velocityY();
+        since[i] = m.since;
+    }
+
+    public void setAll(Collection<Movement> movements) {
+        for (final Movement m : movements)
+            set(m);
+    }
+
+    public void remove(Integer id) {
+        final Integer i = index.remove(id);
+        if (i == null)
+            return;
+        final int last = --n;
+        if (i != last) {
+            ids[i] = ids[last];
+            x[i] = x[last];
+            y[i] = y[last];
+            sx[i] = sx[last];
+            sy[i] = sy[last];
+            since[i] = since[last];
+            index.put(ids[i], i);
+        }
+    }
+
+    public void clear() {
+        index.clear();
+        n = 0;
+    }
+
+    private void grow() {
+        final int len = ids.length * 2;
+        ids = Arrays.copyOf(ids, len);
+        x = Arrays.copyOf(x, len);
+        y = Arrays.copyOf(y, len);
+        sx = Arrays.copyOf(sx, len);
+        sy = Arrays.copyOf(sy, len);
+        since = Arrays.copyOf(since, len);
+    }
+
+    // writes the position of node i at time t to outX[i] and outY[i]; the
+    // arrays must hold at least size() elements
+    public void positionsAt(long t, double[] outX, double[] outY) {
+        final double time = t;
+        for (int i = 0; i < n; ++i) {
+            final double dt = time - since[i];
+            outX[i] = x[i] + sx[i] * dt;
+            outY[i] = y[i] + sy[i] * dt;
+        }
+    }
+}
@@ -19,11 +19,20 @@
 package ditl.graphs;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ditl.Converter;
 import ditl.Incrementable;
@@ -37,9 +46,18 @@ import ditl.StatefulWriter;
 public class MovementToEdgesConverter implements Incrementable, MovementTrace.Handler, Converter {
 
     private final double r2;
+    private final double _range;
     private final long max_interval;
+    private final int n_threads;
+    public final static int defaultMinParallelPairs = 4096;
+    private int min_parallel_pairs = defaultMinParallelPairs;
+    private boolean use_grid = true;
+    private ExecutorService executor = null;
     private final Map<Integer, Movement> invalid_movements = new HashMap<Integer, Movement>();
-    private final Map<Integer, Movement> valid_movements = new HashMap<Integer, Movement>();
+    // kept in id order, like the grid candidates, so that both emit meetings
+    // in the same order
+    private final Map<Integer, Movement> valid_movements = new TreeMap<Integer, Movement>();
+    private MovementGrid grid = null;
     private StatefulWriter<EdgeEvent, Edge> edge_writer;
     private StatefulReader<MovementEvent, Movement> movement_reader;
     private final MovementTrace _movement;
@@ -48,10 +66,31 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
 
     public MovementToEdgesConverter(EdgeTrace edges, MovementTrace movement,
             double range, long maxInterval) {
+        this(edges, movement, range, maxInterval, 1);
+    }
+
+    public MovementToEdgesConverter(EdgeTrace edges, MovementTrace movement,
+            double range, long maxInterval, int nThreads) {
         _edges = edges;
         _movement = movement;
         r2 = range * range;
+        _range = range;
         max_interval = maxInterval;
+        n_threads = nThreads;
+    }
+
+    // batches with fewer candidate pairs are computed on the calling thread
+    public void setMinParallelPairs(int minPairs) {
+        min_parallel_pairs = minPairs;
+    }
+
+    // without the grid, each movement is checked against all the others
+    public void setSpatialGrid(boolean useGrid) {
+        use_grid = useGrid;
+    }
+
+    private interface MeetingHandler {
+        void handle(Movement m, Movement vm, long begin, long end);
     }
 
     @Override
@@ -68,38 +107,68 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
             public void reset() {
                 valid_movements.clear();
                 invalid_movements.clear();
+                grid = null;
             }
         };
     }
 
-    private void setInitialState(long time) throws IOException {
+    // cells about as large as the area swept by a movement within max_interval
+    private void initGrid(long time) {
+        double extent = 0;
+        for (final Movement m : invalid_movements.values()) {
+            final Point p = m.positionAtTime(time - 1), q = m.positionAtTime(time + max_interval + 1);
+            extent += Math.max(Math.abs(q.x - p.x), Math.abs(q.y - p.y));
+        }
+        if (!invalid_movements.isEmpty())
+            extent /= invalid_movements.size();
+        grid = new MovementGrid(Math.max(_range, extent), 2 * (max_interval + 2));
+    }
+
+    // valid movements that may come within range of m before max_interval,
+    // in increasing id order
+    private Collection<Movement> candidates(Movement m, long time) {
+        if (!use_grid)
+            return valid_movements.values();
+        final List<Movement> movements = grid.candidates(m, time - 1, time + max_interval + 1, _range);
+        if (movements == null)
+            return valid_movements.values();
+        return movements;
+    }
+
+    private void validate(Movement m, long time) {
+        valid_movements.put(m.id, m);
+        grid.add(m, time - 1);
+    }
+
+    private Movement invalidate(Integer id) {
+        final Movement m = valid_movements.remove(id);
+        if (m != null)
+            grid.remove(m);
+        return m;
+    }
+
+    private void setInitialState(final long time) throws IOException {
+        if (grid == null)
+            initGrid(time);
         final Set<Edge> initEdges = new AdjacencySet.Edges();
-        final Iterator<Movement> i = invalid_movements.values().iterator();
-        while (i.hasNext()) {
-            final Movement im = i.next();
-            for (final Movement vm : valid_movements.values()) {
-                final long[] meetings = im.meetingTimes(vm, r2);
-                if (meetings != null) {
-                    final long begin = meetings[0], end = meetings[1];
-                    final Edge e = new Edge(im.id, vm.id);
-                    if (begin < time) {
-                        if (time <= end) {
-                            initEdges.add(e); // edge is already up
-                            if (end - time < max_interval) // edge goes down
-                                                           // before
-                                                           // max_interval
-                                edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
-                        }
-                    } else if (begin - time < max_interval) {
-                        edge_writer.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
-                        if (end - time < max_interval)
+        validateMeetings(time, new MeetingHandler() {
+            @Override
+            public void handle(Movement m, Movement vm, long begin, long end) {
+                final Edge e = new Edge(m.id, vm.id);
+                if (begin < time) {
+                    if (time <= end) {
+                        initEdges.add(e); // edge is already up
+                        if (end - time < max_interval) // edge goes down before
+                                                       // max_interval
                             edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
                     }
+                } else if (begin - time < max_interval) {
+                    edge_writer.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
+                    if (end - time < max_interval)
+                        edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
                 }
             }
-            i.remove();
-            valid_movements.put(im.id, im);
-        }
+        });
         edge_writer.setInitState(time, initEdges);
     }
 
@@ -116,7 +185,7 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
                             break;
 
                         case OUT:
-                            valid_movements.remove(id);
+                            invalidate(id);
                             invalidNodeMeetings(time, id);
                             break;
 
@@ -126,7 +195,7 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
                                 m = invalid_movements.get(id);
                                 m.handleEvent(time, event);
                             } else {
-                                m = valid_movements.remove(id);
+                                m = invalidate(id);
                                 invalidNodeMeetings(time, id);
                                 m.handleEvent(time, event);
                                 invalid_movements.put(id, m);
@@ -139,25 +208,97 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
         };
     }
 
-    private void updateNextMeetings(long time) {
-        final Iterator<Movement> i = invalid_movements.values().iterator();
-        while (i.hasNext()) {
-            final Movement m = i.next();
-            for (final Movement vm : valid_movements.values()) {
-                final long[] meetings = m.meetingTimes(vm, r2);
-                if (meetings != null) {
-                    final long begin = meetings[0], end = meetings[1];
-                    final Edge e = new Edge(m.id, vm.id);
-                    if (begin >= time && begin - time < max_interval)
-                        edge_writer.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
-                    if (end >= time && end - time < max_interval) // edge goes
-                                                                  // down before
-                                                                  // max_interval
-                        edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
+    private void updateNextMeetings(final long time) throws IOException {
+        validateMeetings(time, new MeetingHandler() {
+            @Override
+            public void handle(Movement m, Movement vm, long begin, long end) {
+                final Edge e = new Edge(m.id, vm.id);
+                if (begin >= time && begin - time < max_interval)
+                    edge_writer.queue(begin, new EdgeEvent(e, EdgeEvent.Type.UP));
+                if (end >= time && end - time < max_interval) // edge goes down
+                                                              // before
+                                                              // max_interval
+                    edge_writer.queue(end, new EdgeEvent(e, EdgeEvent.Type.DOWN));
+            }
+        });
+    }
+
+    // Each invalid movement is checked against the valid ones, and then
+    // becomes valid itself. The handler always sees the meetings in the same
+    // order, whatever the number of threads.
+    private void validateMeetings(long time, MeetingHandler handler) throws IOException {
+        if (executor == null) {
+            final Iterator<Movement> i = invalid_movements.values().iterator();
+            while (i.hasNext()) {
+                final Movement m = i.next();
+                for (final Movement vm : candidates(m, time)) {
+                    final long[] meetings = m.meetingTimes(vm, r2);
+                    if (meetings != null)
+                        handler.handle(m, vm, meetings[0], meetings[1]);
                 }
+                i.remove();
+                validate(m, time);
+            }
+            return;
+        }
+        final int n = invalid_movements.size();
+        final Movement[] movements = new Movement[n];
+        final Movement[][] others = new Movement[n][];
+        int k = 0, n_pairs = 0;
+        for (final Movement m : invalid_movements.values()) {
+            movements[k] = m;
+            others[k] = candidates(m, time).toArray(new Movement[0]);
+            n_pairs += others[k].length;
+            validate(m, time);
+            ++k;
+        }
+        invalid_movements.clear();
+        // not worth handing small batches over to the pool
+        final long[][][] meetings = computeMeetings(movements, others, n_pairs < min_parallel_pairs ? 1 : n_threads);
+        for (k = 0; k < n; ++k)
+            for (int j = 0; j < others[k].length; ++j)
+                if (meetings[k][j] != null)
+                    handler.handle(movements[k], others[k][j], meetings[k][j][0], meetings[k][j][1]);
+    }
+
+    // workers pick movements one at a time, as their candidate lists vary a lot
+    // in size
+    private long[][][] computeMeetings(final Movement[] movements, final Movement[][] others, int nThreads) throws IOException {
+        final long[][][] meetings = new long[movements.length][][];
+        final AtomicInteger next = new AtomicInteger(0);
+        if (nThreads <= 1) {
+            fillMeetings(movements, others, meetings, next);
+            return meetings;
+        }
+        final Callable<Void> task = new Callable<Void>() {
+            @Override
+            public Void call() {
+                fillMeetings(movements, others, meetings, next);
+                return null;
             }
-            valid_movements.put(m.id, m);
-            i.remove();
+        };
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nThreads);
+        for (int t = 0; t < nThreads; ++t)
+            tasks.add(task);
+        try {
+            for (final Future<Void> f : executor.invokeAll(tasks))
+                f.get();
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        return meetings;
+    }
+
+    private void fillMeetings(Movement[] movements, Movement[][] others, long[][][] meetings, AtomicInteger next) {
+        int k;
+        while ((k = next.getAndIncrement()) < movements.length) {
+            final Movement m = movements[k];
+            final long[][] mt = new long[others[k].length][];
+            for (int j = 0; j < mt.length; ++j)
+                mt[j] = m.meetingTimes(others[k][j], r2);
+            meetings[k] = mt;
         }
     }
 
@@ -189,10 +330,19 @@ public class MovementToEdgesConverter implements Incrementable, MovementTrace.Ha
         movement_reader.stateBus().addListener(movementListener());
         movement_reader.bus().addListener(movementEventListener());
 
-        final Runner runner = new Runner(_movement.maxUpdateInterval(), _movement.minTime(), _movement.maxTime());
-        runner.addGenerator(movement_reader);
-        runner.add(this);
-        runner.run();
+        if (n_threads > 1)
+            executor = Executors.newFixedThreadPool(n_threads);
+        try {
+            final Runner runner = new Runner(_movement.maxUpdateInterval(), _movement.minTime(), _movement.maxTime());
+            runner.addGenerator(movement_reader);
+            runner.add(this);
+            runner.run();
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
 
         edge_writer.flush(_movement.maxTime());
         edge_writer.setPropertiesFromTrace(_movement);
@@ -27,6 +27,7 @@ import java.util.Set;
 
 import net.sf.json.JSONObject;
 import ditl.Filter;
+import ditl.IdCollector;
 import ditl.Listener;
 import ditl.StateUpdater;
 import ditl.StateUpdaterFactory;
@@ -38,7 +39,7 @@ import ditl.Writer;
 
 @Trace.Type("movement")
 public class MovementTrace extends StatefulTrace<MovementEvent, Movement>
-        implements StatefulTrace.Filterable<MovementEvent, Movement> {
+        implements StatefulTrace.Filterable<MovementEvent, Movement>, Trace.Indexable<MovementEvent> {
 
     final public static String
             minXKey = "min X",
@@ -81,19 +82,28 @@ public class MovementTrace extends StatefulTrace<MovementEvent, Movement>
         setIfUnset(Trace.defaultPriorityKey, defaultPriority);
     }
 
+    @Override
+    protected Movement copyState(Movement state) {
+        // the binary encoding recomputes the velocity, cloning keeps it exact
+        return state.clone();
+    }
+
     public final static class Updater implements StateUpdater<MovementEvent, Movement> {
 
         private final Map<Integer, Movement> movement_map = new HashMap<Integer, Movement>();
         private final Set<Movement> movements = new HashSet<Movement>();
+        private final MovementState movement_state = new MovementState();
 
         @Override
         public void setState(Collection<Movement> states) {
             movements.clear();
             movement_map.clear();
+            movement_state.clear();
             for (final Movement m : states) {
                 final Movement mv = m.clone();
                 movements.add(mv);
                 movement_map.put(mv.id, mv);
+                movement_state.set(mv);
             }
         }
 
@@ -102,6 +112,10 @@ public class MovementTrace extends StatefulTrace<MovementEvent, Movement>
             return movements;
         }
 
+        public MovementState movementState() {
+            return movement_state;
+        }
+
         @Override
         public void handleEvent(long time, MovementEvent event) {
             Movement m;
@@ -110,17 +124,20 @@ public class MovementTrace extends StatefulTrace<MovementEvent, Movement>
                     m = event.origMovement();
                     movements.add(m);
                     movement_map.put(m.id, m);
+                    movement_state.set(m);
                     break;
 
                 case OUT:
                     m = movement_map.get(event.id);
                     movements.remove(m);
                     movement_map.remove(m.id);
+                    movement_state.remove(m.id);
                     break;
 
                 default:
                     m = movement_map.get(event.id);
                     m.handleEvent(time, event);
+                    movement_state.set(m);
             }
         }
     }
@@ -201,4 +218,8 @@ public class MovementTrace extends StatefulTrace<MovementEvent, Movement>
     public void copyOverTraceInfo(Writer<MovementEvent> writer) {
     }
 
+    @Override
+    public void collectIds(MovementEvent item, IdCollector collector) {
+        collector.add(item.id);
+    }
 }
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.util.Arrays;
+
+// Open addressing hash table from vertex ids to sorted rows of neighbor ids.
+// Vertices are hashed like java.util.HashMap hashes Integers so that small
+// ids are visited in increasing order.
+final class NeighborTable {
+
+    private final static int MIN_CAPACITY = 16;
+    private final static int MIN_ROW = 4;
+
+    int[] vertices = new int[MIN_CAPACITY];
+    int[][] rows = new int[MIN_CAPACITY][];
+    int[] sizes = new int[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int n_vertices = 0;
+
+    private int slot(int v) {
+        return (v ^ (v >>> 16)) & mask;
+    }
+
+    int numVertices() {
+        return n_vertices;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    int find(int v) {
+        int i = slot(v);
+        while (rows[i] != null) {
+            if (vertices[i] == v)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    boolean contains(int v, int n) {
+        final int s = find(v);
+        return s >= 0 && Arrays.binarySearch(rows[s], 0, sizes[s], n) >= 0;
+    }
+
+    void add(int v, int n) {
+        int i = slot(v);
+        while (rows[i] != null) {
+            if (vertices[i] == v) {
+                insert(i, n);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        vertices[i] = v;
+        rows[i] = new int[MIN_ROW];
+        rows[i][0] = n;
+        sizes[i] = 1;
+        if (++n_vertices > (mask + 1) * 3 / 4)
+            resize((mask + 1) * 2);
+    }
+
+    private void insert(int s, int n) {
+        int k = Arrays.binarySearch(rows[s], 0, sizes[s], n);
+        if (k >= 0)
+            return;
+        k = -(k + 1);
+        int[] row = rows[s];
+        if (sizes[s] == row.length) {
+            row = Arrays.copyOf(row, row.length + (row.length >> 1));
+            rows[s] = row;
+        }
+        System.arraycopy(row, k, row, k + 1, sizes[s] - k);
+        row[k] = n;
+        sizes[s]++;
+    }
+
+    void remove(int v, int n) {
+        final int s = find(v);
+        if (s < 0)
+            return;
+        final int[] row = rows[s];
+        final int k = Arrays.binarySearch(row, 0, sizes[s], n);
+        if (k < 0)
+            return;
+        System.arraycopy(row, k + 1, row, k, sizes[s] - k - 1);
+        if (--sizes[s] == 0) {
+            deleteSlot(s);
+            n_vertices--;
+        } else if (sizes[s] > MIN_ROW && sizes[s] < row.length / 4) {
+            rows[s] = Arrays.copyOf(row, row.length / 2);
+        }
+    }
+
+    void clear() {
+        vertices = new int[MIN_CAPACITY];
+        rows = new int[MIN_CAPACITY][];
+        sizes = new int[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+        n_vertices = 0;
+    }
+
+    private void deleteSlot(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (rows[j] == null)
+                break;
+            final int k = slot(vertices[j]);
+            if ((j > i) ? (k <= i || k > j) : (k <= i && k > j)) {
+                vertices[i] = vertices[j];
+                rows[i] = rows[j];
+                sizes[i] = sizes[j];
+                i = j;
+            }
+        }
+        rows[i] = null;
+        sizes[i] = 0;
+    }
+
+    private void resize(int capacity) {
+        final int[] old_vertices = vertices;
+        final int[][] old_rows = rows;
+        final int[] old_sizes = sizes;
+        vertices = new int[capacity];
+        rows = new int[capacity][];
+        sizes = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < old_rows.length; ++i)
+            if (old_rows[i] != null) {
+                int j = slot(old_vertices[i]);
+                while (rows[j] != null)
+                    j = (j + 1) & mask;
+                vertices[j] = old_vertices[i];
+                rows[j] = old_rows[i];
+                sizes[j] = old_sizes[i];
+            }
+    }
+}
@@ -32,16 +32,41 @@ import ditl.StatefulListener;
 public final class NodeDegreeReport extends StateTimeReport implements EdgeTrace.Handler, PresenceTrace.Handler {
 
     private final Map<Integer, Integer> degrees = new HashMap<Integer, Integer>();
+    private final Histogram histogram;
 
     public NodeDegreeReport(OutputStream out) throws IOException {
+        this(out, false, 0);
+    }
+
+    // with histogram, write node counts per degree instead of all degrees,
+    // as changes or, if interval > 0, as means over each interval
+    public NodeDegreeReport(OutputStream out, boolean histogram, long interval) throws IOException {
         super(out);
-        appendComment("time | duration | node degree distribution");
+        this.histogram = histogram ? new Histogram(this, interval) : null;
+        if (!histogram)
+            appendComment("time | duration | node degree distribution");
+        else if (interval > 0)
+            appendComment("time | duration | mean number of nodes per degree (degree:count)");
+        else
+            appendComment("time | duration | changed numbers of nodes per degree (degree:count)");
     }
 
     public static final class Factory implements ReportFactory<NodeDegreeReport> {
+        private final boolean _histogram;
+        private final long _interval;
+
+        public Factory() {
+            this(false, 0);
+        }
+
+        public Factory(boolean histogram, long interval) {
+            _histogram = histogram;
+            _interval = interval;
+        }
+
         @Override
         public NodeDegreeReport getNew(OutputStream out) throws IOException {
-            return new NodeDegreeReport(out);
+            return new NodeDegreeReport(out, _histogram, _interval);
         }
     }
 
@@ -52,9 +77,9 @@ public final class NodeDegreeReport extends StateTimeReport implements EdgeTrace
             public void handle(long time, Collection<PresenceEvent> events) throws IOException {
                 for (final PresenceEvent p : events)
                     if (p.isIn())
-                        degrees.put(p.id, 0);
+                        setDegree(time, p.id, 0);
                     else
-                        degrees.remove(p.id);
+                        setDegree(time, p.id, null);
                 update(time);
             }
         };
@@ -67,11 +92,11 @@ public final class NodeDegreeReport extends StateTimeReport implements EdgeTrace
             public void handle(long time, Collection<EdgeEvent> events) throws IOException {
                 for (final EdgeEvent ce : events)
                     if (ce.isUp()) {
-                        incrDegree(ce.id1, 1);
-                        incrDegree(ce.id2, 1);
+                        incrDegree(time, ce.id1, 1);
+                        incrDegree(time, ce.id2, 1);
                     } else {
-                        incrDegree(ce.id1, -1);
-                        incrDegree(ce.id2, -1);
+                        incrDegree(time, ce.id1, -1);
+                        incrDegree(time, ce.id2, -1);
                     }
                 update(time);
             }
@@ -84,12 +109,14 @@ public final class NodeDegreeReport extends StateTimeReport implements EdgeTrace
             @Override
             public void handle(long time, Collection<Presence> events) throws IOException {
                 for (final Presence p : events)
-                    degrees.put(p.id, 0);
+                    setDegree(time, p.id, 0);
             }
 
             @Override
             public void reset() {
                 degrees.clear();
+                if (histogram != null)
+                    histogram.clear();
             }
         };
     }
@@ -100,8 +127,8 @@ public final class NodeDegreeReport extends StateTimeReport implements EdgeTrace
             @Override
             public void handle(long time, Collection<Edge> events) throws IOException {
                 for (final Edge c : events) {
-                    incrDegree(c.id1, 1);
-                    incrDegree(c.id2, 1);
+                    incrDegree(time, c.id1, 1);
+                    incrDegree(time, c.id2, 1);
                 }
                 update(time);
             }
@@ -109,14 +136,39 @@ public final class NodeDegreeReport extends StateTimeReport implements EdgeTrace
     }
 
     private void update(long time) throws IOException {
+        if (histogram != null) {
+            histogram.update(time);
+            return;
+        }
         final StringBuffer buffer = new StringBuffer();
         for (final Integer d : degrees.values())
             buffer.append(d + " ");
         append(time, buffer.toString());
     }
 
-    private void incrDegree(Integer id, int incr) {
+    private void setDegree(long time, Integer id, Integer degree) throws IOException {
+        final Integer prev = (degree == null) ? degrees.remove(id) : degrees.put(id, degree);
+        if (histogram != null) {
+            if (prev != null)
+                histogram.add(time, prev, -1);
+            if (degree != null)
+                histogram.add(time, degree, 1);
+        }
+    }
+
+    private void incrDegree(long time, Integer id, int incr) throws IOException {
         final Integer d = degrees.get(id);
         degrees.put(id, d + incr);
+        if (histogram != null)
+            histogram.move(time, d, d + incr);
+    }
+
+    @Override
+    public void finish(long time) throws IOException {
+        if (histogram != null && histogram.timeWeighted()) {
+            histogram.flush(time);
+            finish();
+        } else
+            super.finish(time);
     }
 }
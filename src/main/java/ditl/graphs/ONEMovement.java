@@ -33,10 +33,6 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import ditl.IdGenerator;
-import ditl.Incrementable;
-import ditl.Listener;
-import ditl.Runner;
-import ditl.StatefulReader;
 import ditl.StatefulWriter;
 import ditl.Trace;
 import ditl.Units;
@@ -105,8 +101,12 @@ public class ONEMovement {
     }
 
     public static void toONE(MovementTrace movement,
-            OutputStream out, final double timeMul, long interval, Long maxTime) throws IOException {
-        final StatefulReader<MovementEvent, Movement> movementReader = movement.getReader();
+            OutputStream out, double timeMul, long interval, Long maxTime) throws IOException {
+        toONE(movement, out, timeMul, interval, maxTime, 1);
+    }
+
+    public static void toONE(MovementTrace movement,
+            OutputStream out, final double timeMul, long interval, Long maxTime, int nThreads) throws IOException {
         final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
 
         // write initial ONE line
@@ -114,42 +114,19 @@ public class ONEMovement {
         writer.write(movement.minX() + " " + movement.maxX() + " ");
         writer.write(movement.minY() + " " + movement.maxY() + "\n");
         // print all positions every interval
-        final MovementTrace.Updater updater = new MovementTrace.Updater();
-        movementReader.bus().addListener(new Listener<MovementEvent>() {
-            @Override
-            public void handle(long time, Collection<MovementEvent> events) {
-                for (final MovementEvent event : events)
-                    updater.handleEvent(time, event);
-            }
-        });
-        movementReader.stateBus().addListener(new Listener<Movement>() {
-            @Override
-            public void handle(long time, Collection<Movement> events) {
-                updater.setState(events);
-            }
-        });
-
         final long max_time = (maxTime != null) ? maxTime : movement.maxTime();
-        final Runner runner = new Runner(interval, movement.minTime(), max_time);
-        runner.addGenerator(movementReader);
-        runner.add(new Incrementable() {
-            long cur_time;
-
-            @Override
-            public void incr(long dt) throws IOException {
-                for (final Movement m : updater.states())
-                    writer.write(m.oneString(cur_time, timeMul));
-                cur_time += dt;
-            }
-
+        final long span = max_time - movement.minTime();
+        final long[] times = new long[(span > 0) ? (int) ((span + interval - 1) / interval) : 0];
+        for (int k = 0; k < times.length; ++k)
+            times[k] = movement.minTime() + k * interval;
+        new PositionSampler(movement, times, nThreads).write(writer, new PositionSampler.Format() {
             @Override
-            public void seek(long time) throws IOException {
-                cur_time = time;
+            public void append(StringBuilder buffer, long time, Integer id, double x, double y) {
+                buffer.append(time * timeMul).append(' ').append(id).append(' ')
+                        .append(x).append(' ').append(y).append('\n');
             }
         });
-        runner.run();
         writer.close();
-        movementReader.close();
     }
 
     private static double speed(Point o, Point n, double dt) {
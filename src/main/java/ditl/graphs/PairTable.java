@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+// Open addressing hash table from packed (id1,id2) long keys to non-null
+// values, with linear probing and backward shift deletion.
+public final class PairTable {
+
+    private final static int MIN_CAPACITY = 16;
+
+    private long[] keys = new long[MIN_CAPACITY];
+    private Object[] values = new Object[MIN_CAPACITY];
+    private int mask = MIN_CAPACITY - 1;
+    private int shift = 64 - 4;
+    private int size = 0;
+
+    public static long key(int id1, int id2) {
+        return ((long) id1 << 32) | (id2 & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Object get(long key) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key)
+                return values[i];
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public Object put(long key, Object value) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                final Object prev = values[i];
+                values[i] = value;
+                return prev;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) / 2)
+            resize((mask + 1) * 2);
+        return null;
+    }
+
+    public Object remove(long key) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                final Object prev = values[i];
+                deleteSlot(i);
+                size--;
+                return prev;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        mask = MIN_CAPACITY - 1;
+        shift = 64 - 4;
+        size = 0;
+    }
+
+    private void deleteSlot(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null)
+                break;
+            final int k = slot(keys[j]);
+            // move the entry at j back into the hole at i unless its ideal
+            // slot lies cyclically in (i,j]
+            if ((j > i) ? (k <= i || k > j) : (k <= i && k > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = null;
+    }
+
+    private void resize(int capacity) {
+        final long[] old_keys = keys;
+        final Object[] old_values = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        for (int i = 0; i < old_values.length; ++i)
+            if (old_values[i] != null) {
+                int j = slot(old_keys[i]);
+                while (values[j] != null)
+                    j = (j + 1) & mask;
+                keys[j] = old_keys[i];
+                values[j] = old_values[i];
+            }
+    }
+}
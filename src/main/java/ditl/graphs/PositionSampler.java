@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ditl.StatefulReader;
+
+// Writes the positions of all nodes of a movement trace at a sorted list of
+// times, in increasing id order. Positions at time t follow the movements in
+// force at t (i.e., after all events up to and including t). With several
+// threads, the times are split into segments that are sampled by independent
+// readers and written back in order, so the output does not depend on the
+// number of threads.
+public final class PositionSampler {
+
+    public interface Format {
+        public void append(StringBuilder buffer, long time, Integer id, double x, double y);
+    }
+
+    // about that many positions per segment
+    private final static int segmentPositions = 1 << 18;
+    private final static int flushLength = 1 << 16;
+
+    private final MovementTrace _movement;
+    private final long[] _times;
+    private final int n_threads;
+
+    public PositionSampler(MovementTrace movement, long[] times, int nThreads) {
+        _movement = movement;
+        _times = times;
+        n_threads = nThreads;
+    }
+
+    public void write(Writer writer, final Format format) throws IOException {
+        if (_times.length == 0)
+            return;
+        if (n_threads <= 1) {
+            sample(0, _times.length, writer, format);
+            return;
+        }
+        final int seg_len = segmentLength();
+        final int n_segments = (_times.length + seg_len - 1) / seg_len;
+        final ExecutorService executor = Executors.newFixedThreadPool(n_threads);
+        try {
+            final LinkedList<Future<CharArrayWriter>> pending = new LinkedList<Future<CharArrayWriter>>();
+            int next = 0;
+            while (next < n_segments || !pending.isEmpty()) {
+                // keep a bounded number of segments in memory
+                while (next < n_segments && pending.size() < 2 * n_threads) {
+                    final int from = next * seg_len;
+                    final int to = Math.min(from + seg_len, _times.length);
+                    pending.add(executor.submit(new Callable<CharArrayWriter>() {
+                        @Override
+                        public CharArrayWriter call() throws IOException {
+                            final CharArrayWriter segment = new CharArrayWriter();
+                            sample(from, to, segment, format);
+                            return segment;
+                        }
+                    }));
+                    ++next;
+                }
+                pending.removeFirst().get().writeTo(writer);
+            }
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // number of times per segment, from the number of nodes at the first time
+    private int segmentLength() throws IOException {
+        final StatefulReader<MovementEvent, Movement> reader = _movement.getReader();
+        reader.seek(_times[0]);
+        final int n_nodes = Math.max(reader.referenceState().size(), 1);
+        reader.close();
+        return Math.max(segmentPositions / n_nodes, 1);
+    }
+
+    private void sample(int from, int to, Writer writer, Format format) throws IOException {
+        final StatefulReader<MovementEvent, Movement> reader = _movement.getReader();
+        final MovementTrace.Updater updater = new MovementTrace.Updater();
+        final MovementState positions = updater.movementState();
+        final StringBuilder buffer = new StringBuilder();
+        double[] xs = new double[0], ys = new double[0];
+        long[] order = new long[0]; // id << 32 | index, sorted
+        boolean joined_or_left = true;
+        reader.seek(_times[from]);
+        updater.setState(reader.referenceState());
+        for (int k = from; k < to; ++k) {
+            final long time = _times[k];
+            while (reader.hasNext() && reader.nextTime() <= time) {
+                final long t = reader.nextTime();
+                for (final MovementEvent mev : reader.next()) {
+                    updater.handleEvent(t, mev);
+                    if (mev.type != MovementEvent.Type.NEW_DEST)
+                        joined_or_left = true;
+                }
+            }
+            final int n = positions.size();
+            if (xs.length < n) {
+                xs = new double[n];
+                ys = new double[n];
+            }
+            if (joined_or_left) {
+                order = new long[n];
+                for (int i = 0; i < n; ++i)
+                    order[i] = ((long) positions.id(i) << 32) | i;
+                Arrays.sort(order);
+                joined_or_left = false;
+            }
+            positions.positionsAt(time, xs, ys);
+            for (int j = 0; j < n; ++j) {
+                final int i = (int) order[j];
+                format.append(buffer, time, positions.id(i), xs[i], ys[i]);
+            }
+            if (buffer.length() > flushLength) {
+                writer.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+        writer.append(buffer);
+        reader.close();
+    }
+}
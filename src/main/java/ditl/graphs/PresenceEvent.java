@@ -32,10 +32,11 @@ public final class PresenceEvent implements Item {
         IN, OUT
     }
 
-    public final Integer id;
+    public final int id;
     public final Type type;
+    private Presence presence = null;
 
-    public PresenceEvent(Integer i, Type presenceEventType) {
+    public PresenceEvent(int i, Type presenceEventType) {
         id = i;
         type = presenceEventType;
     }
@@ -45,13 +46,39 @@ public final class PresenceEvent implements Item {
     }
 
     public Presence presence() {
-        return new Presence(id);
+        if (presence == null)
+            presence = new Presence(id);
+        return presence;
     }
 
+    // With a positive cache size, the factory hands out the same immutable
+    // instance for recurring events instead of allocating a new one each time.
     public static final class Factory implements Item.Factory<PresenceEvent> {
+        public final static int sharedCacheSize = 1024;
+
+        private final PresenceEvent[] cache;
+
+        public Factory() {
+            this(0);
+        }
+
+        public Factory(int cacheSize) {
+            cache = (cacheSize > 0) ? new PresenceEvent[Integer.highestOneBit(cacheSize)] : null;
+        }
+
         @Override
         public PresenceEvent fromBinaryStream(CodedInputStream in) throws IOException {
-            return new PresenceEvent(in.readSInt(), Type.values()[in.readByte()]);
+            final int id = in.readSInt();
+            final Type type = Type.values()[in.readByte()];
+            if (cache == null)
+                return new PresenceEvent(id, type);
+            final int k = (id * 2 + type.ordinal()) & (cache.length - 1);
+            PresenceEvent e = cache[k];
+            if (e == null || e.id != id || e.type != type) {
+                e = new PresenceEvent(id, type);
+                cache[k] = e;
+            }
+            return e;
         }
     }
 
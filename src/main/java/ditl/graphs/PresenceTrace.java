@@ -25,6 +25,7 @@ import java.util.Set;
 
 import net.sf.json.JSONObject;
 import ditl.Filter;
+import ditl.IdCollector;
 import ditl.Listener;
 import ditl.StateUpdater;
 import ditl.StateUpdaterFactory;
@@ -35,7 +36,7 @@ import ditl.Writer;
 
 @Trace.Type("presence")
 public class PresenceTrace extends StatefulTrace<PresenceEvent, Presence>
-        implements StatefulTrace.Filterable<PresenceEvent, Presence> {
+        implements StatefulTrace.Filterable<PresenceEvent, Presence>, Trace.Indexable<PresenceEvent> {
 
     public final static int defaultPriority = 10;
 
@@ -70,7 +71,7 @@ public class PresenceTrace extends StatefulTrace<PresenceEvent, Presence>
     }
 
     public PresenceTrace(Store store, String name, JSONObject config) throws IOException {
-        super(store, name, config, new PresenceEvent.Factory(), new Presence.Factory(),
+        super(store, name, config, new PresenceEvent.Factory(PresenceEvent.Factory.sharedCacheSize), new Presence.Factory(),
                 new StateUpdaterFactory<PresenceEvent, Presence>() {
                     @Override
                     public StateUpdater<PresenceEvent, Presence> getNew() {
@@ -93,4 +94,9 @@ public class PresenceTrace extends StatefulTrace<PresenceEvent, Presence>
     @Override
     public void copyOverTraceInfo(Writer<PresenceEvent> writer) {
     }
+
+    @Override
+    public void collectIds(PresenceEvent item, IdCollector collector) {
+        collector.add(item.id);
+    }
 }
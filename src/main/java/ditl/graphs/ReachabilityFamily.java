@@ -93,6 +93,11 @@ public class ReachabilityFamily {
         return rt;
     }
 
+    // picks up a member that was calculated through another family
+    public void loadMember(long delay) {
+        members[j(delay)] = getExisting(delay);
+    }
+
     public boolean hasMember(long delay) {
         return members[j(delay)] != null;
     }
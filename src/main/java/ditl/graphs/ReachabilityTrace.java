@@ -21,6 +21,7 @@ package ditl.graphs;
 import java.io.IOException;
 
 import net.sf.json.JSONObject;
+import ditl.StatefulTrace;
 import ditl.Store;
 import ditl.Trace;
 import ditl.Writer;
@@ -31,7 +32,26 @@ public class ReachabilityTrace extends ArcTrace {
     final public static String
             tauKey = "tau",
             etaKey = "eta",
-            delayKey = "delay";
+            delayKey = "delay",
+            cliquesKey = "cliques";
+
+    // In a trace with cliques, an arc from a node to cliqueMarker(gid) means
+    // that the node belongs to clique gid, i.e., that it reaches and is
+    // reached by all the other members of gid. Readers decode them into
+    // plain arcs, except for AddingReachableConverter, which composes two
+    // such traces from their markers. Its output is plain, so the later
+    // steps still see every arc.
+    public static int cliqueMarker(int gid) {
+        return -1 - gid;
+    }
+
+    public static boolean isCliqueMarker(int id) {
+        return id < 0;
+    }
+
+    public boolean hasCliques() {
+        return config.optBoolean(cliquesKey);
+    }
 
     public long tau() {
         return config.getLong(tauKey);
@@ -53,6 +73,12 @@ public class ReachabilityTrace extends ArcTrace {
         super(store, name, config);
     }
 
+    @Override
+    protected StatefulTrace.Decoder<ArcEvent, Arc> newDecoder() {
+        return hasCliques() ? new CliqueDecoder() : null;
+    }
+
+    // copies are written decoded, so the cliques flag is not copied over
     @Override
     public void copyOverTraceInfo(Writer<ArcEvent> writer) {
         writer.setProperty(tauKey, tau());
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.IOException;
+import java.util.Set;
+
+import ditl.CodedBuffer;
+import ditl.CodedInputStream;
+import ditl.Filter;
+import ditl.Item;
+
+public final class WeightedEdge implements Couple, Item {
+
+    final public int id1;
+    final public int id2;
+    final public long weight;
+
+    public WeightedEdge(int i1, int i2, long w) {
+        if (i1 < i2) {
+            id1 = i1;
+            id2 = i2;
+        } else {
+            id1 = i2;
+            id2 = i1;
+        }
+        weight = w;
+    }
+
+    public WeightedEdge(Edge e, long w) {
+        id1 = e.id1;
+        id2 = e.id2;
+        weight = w;
+    }
+
+    @Override
+    public Integer id1() {
+        return id1;
+    }
+
+    @Override
+    public Integer id2() {
+        return id2;
+    }
+
+    public Edge edge() {
+        return new Edge(id1, id2);
+    }
+
+    public static final class Factory implements Item.Factory<WeightedEdge> {
+        @Override
+        public WeightedEdge fromBinaryStream(CodedInputStream in) throws IOException {
+            return new WeightedEdge(in.readSInt(), in.readSInt(), in.readLong());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        final WeightedEdge we = (WeightedEdge) o;
+        return we.id1 == id1 && we.id2 == id2 && we.weight == weight;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * id1 + id2;
+    }
+
+    @Override
+    public String toString() {
+        return id1 + " " + id2 + " " + weight;
+    }
+
+    public static final class InternalGroupFilter implements Filter<WeightedEdge> {
+        private final Set<Integer> _group;
+
+        public InternalGroupFilter(Set<Integer> group) {
+            _group = group;
+        }
+
+        @Override
+        public WeightedEdge filter(WeightedEdge item) {
+            if (_group.contains(item.id1) && _group.contains(item.id2))
+                return item;
+            return null;
+        }
+    }
+
+    @Override
+    public void write(CodedBuffer out) {
+        out.writeSInt(id1);
+        out.writeSInt(id2);
+        out.writeLong(weight);
+    }
+}
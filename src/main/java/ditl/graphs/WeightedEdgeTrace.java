@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import net.sf.json.JSONObject;
+import ditl.Filter;
+import ditl.IdCollector;
+import ditl.Reader;
+import ditl.Store;
+import ditl.Trace;
+import ditl.Writer;
+
+@Trace.Type("weighted_edges")
+public class WeightedEdgeTrace extends Trace<WeightedEdge> implements Trace.Filterable<WeightedEdge>, Trace.Indexable<WeightedEdge> {
+
+    public final static String windowKey = "window";
+
+    public WeightedEdgeTrace(Store store, String name, JSONObject config) throws IOException {
+        super(store, name, config, new WeightedEdge.Factory());
+    }
+
+    public static String defaultName(String prefix, long window) {
+        return prefix + "_w" + window;
+    }
+
+    public long window() {
+        return config.getLong(windowKey);
+    }
+
+    // start of the aggregation window that contains 'time'
+    public long windowStart(long time) {
+        final long w = window();
+        return minTime() + ((time - minTime()) / w) * w;
+    }
+
+    // aggregated graph of the window containing 'time'
+    public List<WeightedEdge> snapshot(long time) throws IOException {
+        final long start = windowStart(time);
+        final Reader<WeightedEdge> reader = getReader();
+        try {
+            reader.seek(start);
+            if (reader.hasNext() && reader.nextTime() == start)
+                return reader.next();
+            return Collections.emptyList();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public Filter<WeightedEdge> eventFilter(Set<Integer> group) {
+        return new WeightedEdge.InternalGroupFilter(group);
+    }
+
+    @Override
+    public void copyOverTraceInfo(Writer<WeightedEdge> writer) {
+        writer.setProperty(windowKey, window());
+    }
+
+    @Override
+    public void collectIds(WeightedEdge item, IdCollector collector) {
+        collector.add(item.id1);
+        collector.add(item.id2);
+    }
+}
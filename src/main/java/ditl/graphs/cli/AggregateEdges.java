@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs.cli;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import ditl.cli.App;
+import ditl.cli.ConvertApp;
+import ditl.graphs.EdgeTrace;
+import ditl.graphs.EdgesToWeightedEdgesConverter;
+import ditl.graphs.WeightedEdgeTrace;
+
+@App.Cli(pkg = "graphs", cmd = "aggregate-edges", alias = "ae")
+public class AggregateEdges extends ConvertApp {
+
+    final static String prefixOption = "prefix";
+
+    private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES);
+    private final List<Double> u_windows = new ArrayList<Double>();
+    private String prefix;
+
+    @Override
+    protected void run() throws Exception {
+        final EdgeTrace edges = orig_store.getTrace(graph_options.get(GraphOptions.EDGES));
+        final long tps = edges.ticsPerSecond();
+        if (prefix == null)
+            prefix = edges.name();
+        final List<Long> windows = new ArrayList<Long>();
+        for (final Double w : u_windows)
+            windows.add(Math.round(w * tps));
+        final List<WeightedEdgeTrace> levels = new ArrayList<WeightedEdgeTrace>();
+        for (final Long w : windows)
+            levels.add(dest_store.newTrace(WeightedEdgeTrace.defaultName(prefix, w), WeightedEdgeTrace.class, force));
+        new EdgesToWeightedEdgesConverter(levels, edges, windows).convert();
+    }
+
+    @Override
+    protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException {
+        super.parseArgs(cli, args);
+        graph_options.parse(cli);
+        for (int i = 1; i < args.length; ++i)
+            u_windows.add(Double.parseDouble(args[i]));
+        if (u_windows.isEmpty())
+            throw new HelpException();
+        // check the windows before any trace gets created
+        Collections.sort(u_windows);
+        for (int l = 0; l < u_windows.size(); ++l) {
+            final double w = u_windows.get(l);
+            if (w <= 0)
+                throw new HelpException();
+            if (l > 0) {
+                final double r = w / u_windows.get(l - 1);
+                if (r < 1.5 || Math.abs(r - Math.rint(r)) > 1e-9 * r)
+                    throw new HelpException();
+            }
+        }
+        if (cli.hasOption(prefixOption))
+            prefix = cli.getOptionValue(prefixOption);
+    }
+
+    @Override
+    protected String getUsageString() {
+        return "[OPTIONS] STORE WINDOW [WINDOW...]";
+    }
+
+    @Override
+    protected void initOptions() {
+        super.initOptions();
+        graph_options.setOptions(options);
+        options.addOption(null, prefixOption, true, "Prefix for aggregated traces (default: name of the 'edges' trace)");
+    }
+
+}
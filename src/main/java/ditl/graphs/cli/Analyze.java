@@ -77,12 +77,16 @@ public class Analyze extends ExportApp {
             interAnyContactsOption = "inter-any-contacts",
             clusteringOption = "clustering",
             groupSizeOption = "group-size",
-            reachabilityOption = "reachability";
+            reachabilityOption = "reachability",
+            changedOnlyOption = "changed-only",
+            histogramOption = "histogram",
+            histogramIntervalOption = "histogram-interval";
 
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(PRESENCE, EDGES, GROUPS, ARCS);
     private ReportFactory<?> factory;
     private Long min_time;
     private Long max_time;
+    private Long histogram_interval;
 
     @Override
     protected void initOptions() {
@@ -103,6 +107,9 @@ public class Analyze extends ExportApp {
         reportGroup.addOption(new Option(null, reachabilityOption, false, "proportion of bi-directional and directional edges in the reachability graph"));
         reportGroup.setRequired(true);
         options.addOptionGroup(reportGroup);
+        options.addOption(null, changedOnlyOption, false, "only output the coefficients that changed (with --clustering)");
+        options.addOption(null, histogramOption, false, "output changes to the count per degree or size (with --node-degree or --group-size)");
+        options.addOption(null, histogramIntervalOption, true, "output the mean count per degree or size over intervals of <arg> seconds (with --node-degree or --group-size)");
         options.addOption(null, maxTimeOption, true, "Ignore event after <arg> seconds");
         options.addOption(null, minTimeOption, true, "Ignore event before <arg> seconds");
     }
@@ -115,6 +122,15 @@ public class Analyze extends ExportApp {
         super.parseArgs(cli, args);
         graph_options.parse(cli);
 
+        final boolean histogram = cli.hasOption(histogramOption) || cli.hasOption(histogramIntervalOption);
+        // these options only make sense with the reports that support them
+        if (histogram && !cli.hasOption(nodeDegreeOption) && !cli.hasOption(groupSizeOption))
+            throw new HelpException();
+        if (cli.hasOption(changedOnlyOption) && !cli.hasOption(clusteringOption))
+            throw new HelpException();
+        if (cli.hasOption(histogramIntervalOption))
+            histogram_interval = Long.parseLong(cli.getOptionValue(histogramIntervalOption));
+
         if (cli.hasOption(nodeCountOption))
             factory = new NodeCountReport.Factory();
         else if (cli.hasOption(transitTimesOption))
@@ -124,7 +140,7 @@ public class Analyze extends ExportApp {
         else if (cli.hasOption(numContactsOption))
             factory = new NumberContactsReport.Factory();
         else if (cli.hasOption(nodeDegreeOption))
-            factory = new NodeDegreeReport.Factory();
+            factory = new NodeDegreeReport.Factory(histogram, 0);
         else if (cli.hasOption(contactsOption))
             factory = new ContactTimesReport.Factory(true);
         else if (cli.hasOption(interContactsOption))
@@ -134,9 +150,9 @@ public class Analyze extends ExportApp {
         else if (cli.hasOption(interAnyContactsOption))
             factory = new AnyContactTimesReport.Factory(false);
         else if (cli.hasOption(clusteringOption))
-            factory = new ClusteringCoefficientReport.Factory(true);
+            factory = new ClusteringCoefficientReport.Factory(true, cli.hasOption(changedOnlyOption));
         else if (cli.hasOption(groupSizeOption))
-            factory = new GroupSizeReport.Factory();
+            factory = new GroupSizeReport.Factory(histogram, 0);
         else if (cli.hasOption(reachabilityOption))
             factory = new ReachabilityReport.Factory();
 
@@ -148,6 +164,18 @@ public class Analyze extends ExportApp {
 
     @Override
     protected void run() throws Exception {
+        if (histogram_interval != null) {
+            // the interval is in seconds, so convert it to the time unit of
+            // the trace the report follows
+            if (factory instanceof NodeDegreeReport.Factory) {
+                final EdgeTrace edges = _store.getTrace(graph_options.get(EDGES));
+                factory = new NodeDegreeReport.Factory(true, histogram_interval * edges.ticsPerSecond());
+            } else if (factory instanceof GroupSizeReport.Factory) {
+                final GroupTrace groups = _store.getTrace(graph_options.get(GROUPS));
+                factory = new GroupSizeReport.Factory(true, histogram_interval * groups.ticsPerSecond());
+            }
+        }
+
         final Report report = factory.getNew(_out);
 
         Long minTime = null, maxTime = null, incrTime = null;
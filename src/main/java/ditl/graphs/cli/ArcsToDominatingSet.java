@@ -31,26 +31,37 @@ import ditl.graphs.PresenceTrace;
 @App.Cli(pkg = "graphs", cmd = "arcs-to-dominating-set", alias = "a2ds")
 public class ArcsToDominatingSet extends ConvertApp {
 
+    private final static String fullRecomputeEveryOption = "full-recompute-every";
+    private final static String maxGrowthOption = "max-growth";
+
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.GROUPS, GraphOptions.ARCS, GraphOptions.PRESENCE);
+    private int full_recompute_every;
+    private double max_growth;
 
     @Override
     protected void run() throws Exception {
         final PresenceTrace presence = orig_store.getTrace(graph_options.get(GraphOptions.PRESENCE));
         final ArcTrace arcs = orig_store.getTrace(graph_options.get(GraphOptions.ARCS));
         final GroupTrace ds = dest_store.newTrace(graph_options.get(GraphOptions.GROUPS), GroupTrace.class, force);
-        new ArcsToDominatingSetConverter(ds, arcs, presence).convert();
+        new ArcsToDominatingSetConverter(ds, arcs, presence, full_recompute_every, max_growth).convert();
     }
 
     @Override
     protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException {
         super.parseArgs(cli, args);
         graph_options.parse(cli);
+        full_recompute_every = Integer.parseInt(cli.getOptionValue(fullRecomputeEveryOption,
+                String.valueOf(ArcsToDominatingSetConverter.defaultFullRecomputeEvery)));
+        max_growth = Double.parseDouble(cli.getOptionValue(maxGrowthOption,
+                String.valueOf(ArcsToDominatingSetConverter.defaultMaxGrowth)));
     }
 
     @Override
     protected void initOptions() {
         super.initOptions();
         graph_options.setOptions(options);
+        options.addOption(null, fullRecomputeEveryOption, true, "rebuild the dominating set from scratch every <arg> updates, and repair it in between (default: 1, always rebuild; 0: only rebuild on growth)");
+        options.addOption(null, maxGrowthOption, true, "when repairing, rebuild the dominating set once it is <arg> times larger than the last rebuilt one (default: 1.1)");
     }
 
 }
@@ -30,12 +30,16 @@ import ditl.graphs.GroupTrace;
 @App.Cli(pkg = "graphs", cmd = "edges-to-ccs", alias = "e2c")
 public class EdgesToCCs extends ConvertApp {
 
+    private final static String engineOption = "engine";
+
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES, GraphOptions.GROUPS);
+    private EdgesToConnectedComponentsConverter.Engine engine;
 
     @Override
     protected void initOptions() {
         super.initOptions();
         graph_options.setOptions(options);
+        options.addOption(null, engineOption, true, "connectivity engine: 'bfs' or 'dynamic' (default: bfs)");
     }
 
     @Override
@@ -44,13 +48,18 @@ public class EdgesToCCs extends ConvertApp {
             HelpException {
         super.parseArgs(cli, args);
         graph_options.parse(cli);
+        try {
+            engine = EdgesToConnectedComponentsConverter.Engine.valueOf(cli.getOptionValue(engineOption, "bfs").toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            throw new HelpException();
+        }
     }
 
     @Override
     protected void run() throws Exception {
         final EdgeTrace edges = orig_store.getTrace(graph_options.get(GraphOptions.EDGES));
         final GroupTrace ccs = dest_store.newTrace(graph_options.get(GraphOptions.GROUPS), GroupTrace.class, force);
-        new EdgesToConnectedComponentsConverter(ccs, edges).convert();
+        new EdgesToConnectedComponentsConverter(ccs, edges, engine).convert();
     }
 
 }
@@ -41,6 +41,7 @@ public class ExportMovement extends ExportApp {
     private ExternalFormat ext_fmt;
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.MOVEMENT);
     private double d_interval;
+    private int n_threads;
 
     @Override
     protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException {
@@ -53,6 +54,7 @@ public class ExportMovement extends ExportApp {
         if (dtps == null)
             throw new HelpException();
         d_interval = Double.parseDouble(cli.getOptionValue(intervalOption, "1"));
+        n_threads = Integer.parseInt(cli.getOptionValue(threadsOption, "1"));
     }
 
     @Override
@@ -63,6 +65,7 @@ public class ExportMovement extends ExportApp {
         options.addOption(null, maxTimeOption, true, "maximum movement time (for ONE only)");
         options.addOption(null, destTimeUnitOption, true, "time unit of destination trace [s, ms, us, ns] (default: s)");
         options.addOption(null, intervalOption, true, "interval (for ONE only)");
+        options.addOption(null, threadsOption, true, "number of threads sampling positions (for ONE only, default: 1)");
     }
 
     @Override
@@ -78,7 +81,7 @@ public class ExportMovement extends ExportApp {
                 NS2Movement.toNS2(movement, _out, timeMul);
                 break;
             case ONE:
-                ONEMovement.toONE(movement, _out, timeMul, interval, maxTime);
+                ONEMovement.toONE(movement, _out, timeMul, interval, maxTime, n_threads);
                 break;
         }
     }
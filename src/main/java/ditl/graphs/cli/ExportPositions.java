@@ -19,6 +19,9 @@
 package ditl.graphs.cli;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
@@ -28,19 +31,37 @@ import ditl.cli.App;
 import ditl.cli.ExportApp;
 import ditl.graphs.Movement;
 import ditl.graphs.MovementEvent;
+import ditl.graphs.MovementState;
 import ditl.graphs.MovementTrace;
 
 @App.Cli(pkg = "graphs", cmd = "export-positions", alias = "xp")
 public class ExportPositions extends ExportApp {
 
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.MOVEMENT);
-    private double time;
+    private final List<Double> times = new ArrayList<Double>();
 
     @Override
     protected void parseArgs(CommandLine cli, String[] args) throws ParseException, HelpException {
         super.parseArgs(cli, args);
         graph_options.parse(cli);
-        time = Double.parseDouble(args[1]);
+        for (int i = 1; i < args.length; ++i) {
+            final String[] range = args[i].split(":");
+            if (range.length == 3) {
+                final double begin = Double.parseDouble(range[0]);
+                final double end = Double.parseDouble(range[1]);
+                final double step = Double.parseDouble(range[2]);
+                if (step <= 0)
+                    throw new ParseException("Range step must be strictly positive");
+                // stepping by multiples avoids accumulating rounding errors
+                final long n = (long) Math.floor((end - begin) / step + 1e-9);
+                for (long k = 0; k <= n; ++k)
+                    times.add(begin + k * step);
+            } else {
+                times.add(Double.parseDouble(args[i]));
+            }
+        }
+        if (times.isEmpty())
+            throw new HelpException();
     }
 
     @Override
@@ -52,16 +73,42 @@ public class ExportPositions extends ExportApp {
     @Override
     protected void run() throws IOException {
         final MovementTrace movement = _store.getTrace(graph_options.get(GraphOptions.MOVEMENT));
-        final long u_time = (long) (time * movement.ticsPerSecond());
+        final long[] u_times = new long[times.size()];
+        for (int i = 0; i < u_times.length; ++i)
+            u_times[i] = (long) (times.get(i) * movement.ticsPerSecond());
+        Arrays.sort(u_times);
+        final boolean print_time = u_times.length > 1;
+        final double tps = movement.ticsPerSecond();
         final StatefulReader<MovementEvent, Movement> reader = movement.getReader();
-        reader.seek(u_time);
-        for (final Movement m : reader.referenceState())
-            System.out.println(m.id + " " + m.positionAtTime(u_time));
+        final MovementTrace.Updater updater = new MovementTrace.Updater();
+        final MovementState positions = updater.movementState();
+        double[] xs = new double[0], ys = new double[0];
+        reader.seek(u_times[0]);
+        updater.setState(reader.referenceState());
+        for (final long time : u_times) {
+            // the positions before the events at the time, as seek() gives them
+            while (reader.hasNext() && reader.nextTime() < time) {
+                final long t = reader.nextTime();
+                for (final MovementEvent mev : reader.next())
+                    updater.handleEvent(t, mev);
+            }
+            final int n = positions.size();
+            if (xs.length < n) {
+                xs = new double[n];
+                ys = new double[n];
+            }
+            positions.positionsAt(time, xs, ys);
+            for (int i = 0; i < n; ++i)
+                if (print_time)
+                    System.out.println(time / tps + " " + positions.id(i) + " " + xs[i] + " " + ys[i]);
+                else
+                    System.out.println(positions.id(i) + " " + xs[i] + " " + ys[i]);
+        }
         reader.close();
     }
 
     @Override
     protected String getUsageString() {
-        return "[OPTIONS] STORE TIME";
+        return "[OPTIONS] STORE TIME|BEGIN:END:STEP [TIME|BEGIN:END:STEP...]";
     }
 }
@@ -31,10 +31,13 @@ import ditl.graphs.ReachabilityTrace;
 @App.Cli(pkg = "graphs", cmd = "flooding-reachability", alias = "fr")
 public class FloodingReachability extends ConvertApp {
 
+    private final static String engineOption = "engine";
+
     private double tau;
     private long delay;
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES, GraphOptions.PRESENCE);
     private Long min_time;
+    private FloodingReachableConverter.Engine engine;
 
     @Override
     protected String getUsageString() {
@@ -49,6 +52,11 @@ public class FloodingReachability extends ConvertApp {
         delay = Integer.parseInt(args[2]);
         if (cli.hasOption(minTimeOption))
             min_time = Long.parseLong(cli.getOptionValue(minTimeOption));
+        try {
+            engine = FloodingReachableConverter.Engine.valueOf(cli.getOptionValue(engineOption, "sets").toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            throw new HelpException();
+        }
     }
 
     @Override
@@ -56,6 +64,7 @@ public class FloodingReachability extends ConvertApp {
         super.initOptions();
         graph_options.setOptions(options);
         options.addOption(null, minTimeOption, true, "Start flooding at time <arg>");
+        options.addOption(null, engineOption, true, "flooding engine: 'sets' or 'bitsets' (default: sets)");
     }
 
     @Override
@@ -70,7 +79,7 @@ public class FloodingReachability extends ConvertApp {
         delay *= edges.ticsPerSecond();
         final String name = edges.name() + "_t" + _tau + "_pd" + delay;
         final ReachabilityTrace reachability = dest_store.newTrace(name, ReachabilityTrace.class, force);
-        new FloodingReachableConverter(reachability, presence, edges, _tau, delay, min_time).convert();
+        new FloodingReachableConverter(reachability, presence, edges, _tau, delay, min_time, engine).convert();
 
     }
 }
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs.cli;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.sf.json.JSONArray;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import ditl.Groups;
+import ditl.IdMap;
+import ditl.cli.App;
+import ditl.cli.ReadOnlyApp;
+import ditl.graphs.EdgeTrace;
+import ditl.graphs.JourneyFinder;
+
+@App.Cli(pkg = "graphs", cmd = "journeys", alias = "j")
+public class Journeys extends ReadOnlyApp {
+
+    private final static String
+            sourcesOption = "sources",
+            destinationsOption = "destinations",
+            shortestOption = "shortest",
+            fastestOption = "fastest",
+            batchOption = "batch";
+
+    private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES);
+    private double tau;
+    private JSONArray sources_json = null;
+    private JSONArray destinations_json = null;
+    private Double d_begin = null;
+    private Double d_end = null;
+    private boolean shortest;
+    private boolean fastest;
+    private int batch;
+
+    @Override
+    protected void initOptions() {
+        super.initOptions();
+        graph_options.setOptions(options);
+        options.addOption(null, sourcesOption, true, "Only consider journeys from these nodes (e.g., [1,[3,5]])");
+        options.addOption(null, destinationsOption, true, "Only consider journeys to these nodes (e.g., [1,[3,5]])");
+        options.addOption(null, minTimeOption, true, "Leave the sources at time <arg> seconds");
+        options.addOption(null, maxTimeOption, true, "Ignore journeys that arrive after <arg> seconds");
+        options.addOption(null, shortestOption, false, "Also calculate the journeys with the fewest hops");
+        options.addOption(null, fastestOption, false, "Also calculate the fastest journeys (slower: each destination takes several backward scans)");
+        options.addOption(null, batchOption, true, "Calculate foremost journeys for <arg> sources at a time (default: 64)");
+    }
+
+    @Override
+    protected void parseArgs(CommandLine cli, String[] args)
+            throws ParseException, ArrayIndexOutOfBoundsException, HelpException {
+        super.parseArgs(cli, args);
+        graph_options.parse(cli);
+        tau = Double.parseDouble(args[1]);
+        if (cli.hasOption(sourcesOption))
+            sources_json = JSONArray.fromObject(cli.getOptionValue(sourcesOption));
+        if (cli.hasOption(destinationsOption))
+            destinations_json = JSONArray.fromObject(cli.getOptionValue(destinationsOption));
+        if (cli.hasOption(minTimeOption))
+            d_begin = Double.parseDouble(cli.getOptionValue(minTimeOption));
+        if (cli.hasOption(maxTimeOption))
+            d_end = Double.parseDouble(cli.getOptionValue(maxTimeOption));
+        shortest = cli.hasOption(shortestOption);
+        fastest = cli.hasOption(fastestOption);
+        batch = Integer.parseInt(cli.getOptionValue(batchOption, "64"));
+        if (batch < 1)
+            throw new HelpException();
+    }
+
+    @Override
+    protected void run() throws IOException {
+        final EdgeTrace edges = _store.getTrace(graph_options.get(GraphOptions.EDGES));
+        final IdMap id_map = edges.idMap();
+        final long tps = edges.ticsPerSecond();
+        final long begin = (d_begin != null) ? (long) (d_begin * tps) : edges.minTime();
+        final long end = (d_end != null) ? (long) (d_end * tps) : edges.maxTime();
+        final JourneyFinder finder = new JourneyFinder(edges, (long) (tau * tps), begin, end);
+        final Set<Integer> sources = (sources_json != null) ? Groups.parse(sources_json, id_map) : new TreeSet<Integer>(finder.nodes());
+        final Set<Integer> dests = (destinations_json != null) ? Groups.parse(destinations_json, id_map) : new TreeSet<Integer>(finder.nodes());
+
+        System.out.println("# SRC DST ARRIVAL DELAY HOPS" + (shortest ? " MIN_HOPS" : "") + (fastest ? " FASTEST_DEPARTURE FASTEST_DURATION" : ""));
+        long n_pairs = 0, n_connected = 0, total_delay = 0, total_hops = 0, total_min_hops = 0, total_duration = 0;
+        final List<Integer> all_sources = new ArrayList<Integer>(sources);
+        for (int i = 0; i < all_sources.size(); i += batch) {
+            final List<Integer> batch_sources = all_sources.subList(i, Math.min(i + batch, all_sources.size()));
+            for (final JourneyFinder.Journeys foremost : finder.foremost(batch_sources, begin)) {
+                final Integer src = foremost.source();
+                final JourneyFinder.Journeys fewest = shortest ? finder.shortest(src, begin) : null;
+                final Map<Integer, long[]> fastest_journeys = fastest ? finder.fastest(src, dests, begin) : null;
+                for (final Integer dst : dests) {
+                    if (dst.equals(src))
+                        continue;
+                    n_pairs++;
+                    if (!foremost.reaches(dst))
+                        continue;
+                    n_connected++;
+                    final long delay = foremost.arrival(dst) - begin;
+                    total_delay += delay;
+                    total_hops += foremost.hops(dst);
+                    final StringBuilder line = new StringBuilder();
+                    line.append(externalId(id_map, src) + " " + externalId(id_map, dst) + " "
+                            + (double) foremost.arrival(dst) / tps + " " + (double) delay / tps + " " + foremost.hops(dst));
+                    if (fewest != null) {
+                        total_min_hops += fewest.hops(dst);
+                        line.append(" " + fewest.hops(dst));
+                    }
+                    if (fastest_journeys != null) {
+                        final long[] journey = fastest_journeys.get(dst);
+                        total_duration += journey[1] - journey[0];
+                        line.append(" " + (double) journey[0] / tps + " " + (double) (journey[1] - journey[0]) / tps);
+                    }
+                    System.out.println(line);
+                }
+            }
+        }
+        System.out.println("# pairs: " + n_pairs);
+        System.out.println("# connected pairs: " + n_connected);
+        if (n_connected > 0) {
+            System.out.println("# mean delay: " + (double) total_delay / n_connected / tps);
+            System.out.println("# mean hops: " + (double) total_hops / n_connected);
+            if (shortest)
+                System.out.println("# mean min hops: " + (double) total_min_hops / n_connected);
+            if (fastest)
+                System.out.println("# mean fastest duration: " + (double) total_duration / n_connected / tps);
+        }
+    }
+
+    private String externalId(IdMap idMap, Integer id) {
+        return (idMap != null) ? idMap.getExternalId(id) : id.toString();
+    }
+
+    @Override
+    protected String getUsageString() {
+        return "[OPTIONS] STORE TAU";
+    }
+}
@@ -33,6 +33,7 @@ public class MovementToEdges extends ConvertApp {
     private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES, GraphOptions.MOVEMENT);
     private double range;
     private Long max_interval = null;
+    private int n_threads;
 
     @Override
     protected void run() throws Exception {
@@ -42,7 +43,7 @@ public class MovementToEdges extends ConvertApp {
             max_interval = movement.maxTime() - movement.minTime();
         else
             max_interval *= movement.ticsPerSecond();
-        new MovementToEdgesConverter(edges, movement, range, max_interval).convert();
+        new MovementToEdgesConverter(edges, movement, range, max_interval, n_threads).convert();
     }
 
     @Override
@@ -52,6 +53,7 @@ public class MovementToEdges extends ConvertApp {
         range = Double.parseDouble(args[1]);
         if (cli.hasOption(intervalOption))
             max_interval = Long.parseLong(cli.getOptionValue(intervalOption));
+        n_threads = Integer.parseInt(cli.getOptionValue(threadsOption, "1"));
     }
 
     @Override
@@ -64,6 +66,7 @@ public class MovementToEdges extends ConvertApp {
         super.initOptions();
         graph_options.setOptions(options);
         options.addOption(null, intervalOption, true, "interval beyond which not to look for new meetings (useful if positions are updated every seconds)");
+        options.addOption(null, threadsOption, true, "number of threads computing meeting times (default: 1)");
     }
 
 }
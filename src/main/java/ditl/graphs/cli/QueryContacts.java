@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of DITL.                                                  *
+ *                                                                             *
+ * Copyright (C) 2011-2012 John Whitbeck <john@whitbeck.fr>                    *
+ *                                                                             *
+ * DITL is free software: you can redistribute it and/or modify                *
+ * it under the terms of the GNU General Public License as published by        *
+ * the Free Software Foundation, either version 3 of the License, or           *
+ * (at your option) any later version.                                         *
+ *                                                                             *
+ * DITL is distributed in the hope that it will be useful,                     *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of              *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the               *
+ * GNU General Public License for more details.                                *
+ *                                                                             *
+ * You should have received a copy of the GNU General Public License           *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.       *
+ *******************************************************************************/
+package ditl.graphs.cli;
+
+import java.io.IOException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import ditl.IdMap;
+import ditl.cli.App;
+import ditl.cli.ReadOnlyApp;
+import ditl.graphs.ContactIndex;
+import ditl.graphs.EdgeTrace;
+
+@App.Cli(pkg = "graphs", cmd = "query-contacts", alias = "qc")
+public class QueryContacts extends ReadOnlyApp {
+
+    private final static String atOption = "at";
+
+    private final GraphOptions.CliParser graph_options = new GraphOptions.CliParser(GraphOptions.EDGES);
+    private String str_id1, str_id2;
+    private Double d_at = null;
+    private Double d_begin = null;
+    private Double d_end = null;
+
+    @Override
+    protected void initOptions() {
+        super.initOptions();
+        graph_options.setOptions(options);
+        options.addOption(null, atOption, true, "only check whether the nodes are in contact at time <arg>");
+        options.addOption(null, minTimeOption, true, "Ignore contacts before <arg> seconds");
+        options.addOption(null, maxTimeOption, true, "Ignore contacts after <arg> seconds");
+    }
+
+    @Override
+    protected void parseArgs(CommandLine cli, String[] args)
+            throws ParseException, ArrayIndexOutOfBoundsException, HelpException {
+        super.parseArgs(cli, args);
+        graph_options.parse(cli);
+        str_id1 = args[1];
+        str_id2 = args[2];
+        if (cli.hasOption(atOption))
+            d_at = Double.parseDouble(cli.getOptionValue(atOption));
+        if (cli.hasOption(minTimeOption))
+            d_begin = Double.parseDouble(cli.getOptionValue(minTimeOption));
+        if (cli.hasOption(maxTimeOption))
+            d_end = Double.parseDouble(cli.getOptionValue(maxTimeOption));
+    }
+
+    private int parseId(IdMap idMap, String strId) {
+        if (idMap != null) {
+            final Integer id = idMap.getInternalId(strId);
+            if (id != null)
+                return id;
+        }
+        return Integer.parseInt(strId);
+    }
+
+    @Override
+    protected void run() throws IOException {
+        final EdgeTrace edges = _store.getTrace(graph_options.get(GraphOptions.EDGES));
+        if (!edges.hasContactIndex()) {
+            System.err.println("Trace '" + edges.name() + "' has no contact index. Run 'graphs index-contacts' first.");
+            return;
+        }
+        final ContactIndex index = edges.contactIndex();
+        final IdMap id_map = edges.idMap();
+        final int id1 = parseId(id_map, str_id1);
+        final int id2 = parseId(id_map, str_id2);
+        final long tps = edges.ticsPerSecond();
+        if (d_at != null) {
+            System.out.println(index.inContact(id1, id2, (long) (d_at * tps)));
+            return;
+        }
+        final long begin = (d_begin != null) ? (long) (d_begin * tps) : edges.minTime();
+        final long end = (d_end != null) ? (long) (d_end * tps) : edges.maxTime();
+        for (final long[] contact : index.contacts(id1, id2, begin, end))
+            System.out.println((double) contact[0] / tps + " " + (double) contact[1] / tps
+                    + " " + (double) (contact[1] - contact[0]) / tps);
+        System.out.println("# total contact time: " + (double) index.contactTime(id1, id2, begin, end) / tps);
+    }
+
+    @Override
+    protected String getUsageString() {
+        return "[OPTIONS] STORE ID1 ID2";
+    }
+}
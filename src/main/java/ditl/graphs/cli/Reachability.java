@@ -19,19 +19,31 @@
 package ditl.graphs.cli;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.ParseException;
 
+import ditl.Converter;
+import ditl.MemoryStore;
+import ditl.WritableStore;
 import ditl.cli.App;
 import ditl.cli.ConvertApp;
 import ditl.graphs.AddingReachableConverter;
@@ -53,7 +65,11 @@ public class Reachability extends ConvertApp {
             minDelayOption = "min-delay",
             verboseOption = "verbose",
             prefixOption = "prefix",
-            timeFileOption = "times-file";
+            timeFileOption = "times-file",
+            jobsOption = "jobs",
+            inMemoryOption = "in-memory",
+            spillDirOption = "spill-dir",
+            cliquesOption = "cliques";
 
     private double u_tau;
     private double u_eta;
@@ -69,7 +85,7 @@ public class Reachability extends ConvertApp {
     private String ccsName;
     private String prefix;
     private Long min_delay;
-    private final List<ReachabilityFamily> created_families = new ArrayList<ReachabilityFamily>();
+    private final List<ReachabilityFamily> created_families = Collections.synchronizedList(new ArrayList<ReachabilityFamily>());
     private final Set<Long> families_to_keep = new HashSet<Long>();
     private boolean delete = true;
     private boolean prune = true;
@@ -77,7 +93,21 @@ public class Reachability extends ConvertApp {
     private boolean prune_reused = false;
     private boolean verbose = false;
     private long tps;
-    private long ref_time;
+    private int jobs;
+    private int n_threads;
+    // member traces are calculated on member_pool, while families wait for
+    // their operands and members on family_pool
+    private ExecutorService member_pool = null;
+    private ExecutorService family_pool = null;
+    private final Map<Long, Future<ReachabilityFamily>> pending_families = new HashMap<Long, Future<ReachabilityFamily>>();
+    // families with the same tau share the members with the same delay
+    private final Map<Long, Future<Void>> pending_members = new HashMap<Long, Future<Void>>();
+    // intermediate families are written to work_store, which is either
+    // dest_store or a MemoryStore on top of it
+    private WritableStore work_store;
+    private Long memory_budget = null;
+    private File spill_dir = null;
+    private boolean cliques = false;
 
     @Override
     protected String getUsageString() {
@@ -105,6 +135,13 @@ public class Reachability extends ConvertApp {
         if (cli.hasOption(prefixOption))
             prefix = cli.getOptionValue(prefixOption);
         timeFileName = cli.getOptionValue(timeFileOption);
+        jobs = Integer.parseInt(cli.getOptionValue(jobsOption, "1"));
+        n_threads = Integer.parseInt(cli.getOptionValue(threadsOption, "1"));
+        if (cli.hasOption(inMemoryOption))
+            memory_budget = Long.parseLong(cli.getOptionValue(inMemoryOption)) << 20;
+        if (cli.hasOption(spillDirOption))
+            spill_dir = new File(cli.getOptionValue(spillDirOption));
+        cliques = cli.hasOption(cliquesOption);
     }
 
     private void clean() throws IOException {
@@ -137,11 +174,13 @@ public class Reachability extends ConvertApp {
 
         to_remove.removeAll(to_keep);
         for (final String name : to_remove)
-            dest_store.deleteTrace(name);
+            work_store.deleteTrace(name);
+        if (work_store != dest_store)
+            ((MemoryStore) work_store).persistAll();
     }
 
     private ReachabilityFamily getFamily(long D) {
-        return new ReachabilityFamily(dest_store, prefix, eta, tau, D);
+        return new ReachabilityFamily(work_store, prefix, eta, tau, D);
     }
 
     @Override
@@ -157,6 +196,11 @@ public class Reachability extends ConvertApp {
         options.addOption(null, verboseOption, false, "Be verbose");
         options.addOption(null, prefixOption, true, "Prefix for reachability traces (default: name of the 'edges' trace)");
         options.addOption(null, timeFileOption, true, "Write calculation times in milliseconds to file <arg>");
+        options.addOption(null, jobsOption, true, "Calculate up to <arg> reachability traces concurrently (default: 1)");
+        options.addOption(null, threadsOption, true, "Number of threads used by each reachability trace calculation (default: 1)");
+        options.addOption(null, inMemoryOption, true, "Keep new reachability traces in memory, up to <arg> MB, and only write the ones that are kept to the store");
+        options.addOption(null, spillDirOption, true, "Write the traces that do not fit in memory to a temporary directory in <arg> (default: java.io.tmpdir)");
+        options.addOption(null, cliquesOption, false, "Encode connected components as cliques in the reachability traces with tau=0");
     }
 
     private void initTimeFile() throws IOException {
@@ -169,18 +213,34 @@ public class Reachability extends ConvertApp {
             time_writer.close();
     }
 
-    private void armTimer() {
-        ref_time = System.currentTimeMillis();
-    }
-
-    private void stopTimer(long delay) throws IOException {
-        final long dt = System.currentTimeMillis() - ref_time;
+    private synchronized void writeTime(long delay, long dt) throws IOException {
         if (time_writer != null)
             time_writer.write(delay + " " + dt + "\n");
     }
 
     @Override
     protected void run() throws Exception {
+        if (jobs > 1) {
+            member_pool = Executors.newFixedThreadPool(jobs);
+            family_pool = Executors.newCachedThreadPool();
+        }
+        if (memory_budget != null)
+            work_store = new MemoryStore(dest_store, memory_budget, spill_dir);
+        else
+            work_store = dest_store;
+        try {
+            calculate();
+        } finally {
+            if (member_pool != null) {
+                member_pool.shutdownNow();
+                family_pool.shutdownNow();
+            }
+            if (work_store != dest_store)
+                work_store.close();
+        }
+    }
+
+    private void calculate() throws Exception {
         initTimeFile();
 
         if (u_tau == 0) {
@@ -251,13 +311,15 @@ public class Reachability extends ConvertApp {
         // then combine the results
         if (every != null) {
             long d = 0;
-            if (!rf_e.isComplete())
-                rf_e = combine(T, every);
+            final Future<ReachabilityFamily> f_e = rf_e.isComplete() ? done(rf_e) : combine(T, every);
+            Future<ReachabilityFamily> f_m = null;
+            if (min_delay != null)
+                f_m = rf_m.isComplete() ? done(rf_m) : combine(T, min_delay);
+            rf_e = get(f_e);
             rf = rf_e;
             d = rf_e.delay();
             if (min_delay != null) {
-                if (!rf_m.isComplete())
-                    rf_m = combine(T, min_delay);
+                rf_m = get(f_m);
                 rf = rf_m;
                 d = rf_m.delay();
             }
@@ -270,7 +332,7 @@ public class Reachability extends ConvertApp {
             }
         } else {
             if (!rf.hasMain())
-                rf = combine(T, delay);
+                rf = get(combine(T, delay));
             families_to_keep.add(rf.delay());
         }
 
@@ -283,27 +345,116 @@ public class Reachability extends ConvertApp {
             System.out.println(str);
     }
 
-    private ReachabilityFamily add(ReachabilityFamily rf1, ReachabilityFamily rf2) throws Exception {
+    private ReachabilityFamily add(final ReachabilityFamily rf1, final ReachabilityFamily rf2) throws Exception {
         final long _delay = rf1.delay() + rf2.delay();
         log("Initializing reachability family " + _delay / tps + " from " + rf1.delay() / tps + "+" + rf2.delay() / tps);
         final ReachabilityFamily rf = getFamily(_delay);
-        boolean has_new = false;
+        final boolean has_new = calculateMembers(rf, new MemberFactory() {
+            @Override
+            public Converter converter(ReachabilityFamily rf, long d) throws Exception {
+                return new AddingReachableConverter(rf.newMember(d), rf1, rf2, d, n_threads);
+            }
+        });
+        separator();
+        if (has_new)
+            created_families.add(rf);
+        return rf;
+    }
+
+    // Adds the two families once they are available. Each family is only
+    // calculated once, whatever the order in which it is requested.
+    private Future<ReachabilityFamily> addWhenReady(final Future<ReachabilityFamily> f1, final Future<ReachabilityFamily> f2, long delay) throws Exception {
+        Future<ReachabilityFamily> f = pending_families.get(delay);
+        if (f == null) {
+            f = submit(family_pool, new Callable<ReachabilityFamily>() {
+                @Override
+                public ReachabilityFamily call() throws Exception {
+                    return add(get(f1), get(f2));
+                }
+            });
+            pending_families.put(delay, f);
+        }
+        return f;
+    }
+
+    private Future<ReachabilityFamily> familyWhenReady(long delay) {
+        final Future<ReachabilityFamily> f = pending_families.get(delay);
+        return (f != null) ? f : done(getFamily(delay));
+    }
+
+    private interface MemberFactory {
+        Converter converter(ReachabilityFamily rf, long d) throws Exception;
+    }
+
+    // Calculates the missing members of the family, up to 'jobs' at a time,
+    // and returns whether there were any. Members that another family is
+    // already calculating are waited for, and then loaded.
+    private boolean calculateMembers(final ReachabilityFamily rf, final MemberFactory factory) throws Exception {
+        final List<Future<Void>> members = new ArrayList<Future<Void>>();
+        final Map<Long, Future<Void>> others = new HashMap<Long, Future<Void>>();
         for (final Long d : rf.delays())
             if (rf.hasMember(d)) {
                 log("Reachability trace " + d / tps + " already exists in family. Skipping.");
                 if (prune_reused)
                     created_families.add(rf);
-            } else {
-                log("Calculating reachability trace " + d / tps);
-                armTimer();
-                new AddingReachableConverter(rf.newMember(d), rf1, rf2, d).convert();
-                stopTimer(d);
-                has_new = true;
+            } else
+                synchronized (pending_members) {
+                    if (pending_members.containsKey(d)) {
+                        log("Reachability trace " + d / tps + " is already being calculated. Skipping.");
+                        if (prune_reused)
+                            created_families.add(rf);
+                        others.put(d, pending_members.get(d));
+                        continue;
+                    }
+                    final Future<Void> member = submit(member_pool, new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            log("Calculating reachability trace " + d / tps);
+                            final long ref_time = System.currentTimeMillis();
+                            factory.converter(rf, d).convert();
+                            writeTime(d, System.currentTimeMillis() - ref_time);
+                            return null;
+                        }
+                    });
+                    pending_members.put(d, member);
+                    members.add(member);
+                }
+        for (final Future<Void> member : members)
+            get(member);
+        for (final Map.Entry<Long, Future<Void>> e : others.entrySet()) {
+            get(e.getValue());
+            rf.loadMember(e.getKey());
+        }
+        return !members.isEmpty();
+    }
+
+    // without a pool, the task runs right away in the calling thread
+    private <T> Future<T> submit(ExecutorService pool, Callable<T> task) {
+        if (pool != null)
+            return pool.submit(task);
+        final FutureTask<T> f = new FutureTask<T>(task);
+        f.run();
+        return f;
+    }
+
+    private <T> Future<T> done(final T value) {
+        return submit(null, new Callable<T>() {
+            @Override
+            public T call() {
+                return value;
             }
-        separator();
-        if (has_new)
-            created_families.add(rf);
-        return rf;
+        });
+    }
+
+    private <T> T get(Future<T> f) throws Exception {
+        try {
+            return f.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
     }
 
     private void separator() {
@@ -314,19 +465,12 @@ public class Reachability extends ConvertApp {
         final EdgeTrace edges = orig_store.getTrace(edgesName);
         log("Initializing reachability family " + tau / tps + " from edge trace '" + edges.name() + "'");
         final ReachabilityFamily rf = getFamily(tau);
-        boolean has_new = false;
-        for (final Long d : rf.delays())
-            if (rf.hasMember(d)) {
-                log("Reachability trace " + d / tps + " already exists in family. Skipping.");
-                if (prune_reused)
-                    created_families.add(rf);
-            } else {
-                log("Calculating reachability trace " + d / tps);
-                armTimer();
-                new EdgesToReachableConverter(rf.newMember(d), edges, eta, tau, d).convert();
-                stopTimer(d);
-                has_new = true;
+        final boolean has_new = calculateMembers(rf, new MemberFactory() {
+            @Override
+            public Converter converter(ReachabilityFamily rf, long d) throws Exception {
+                return new EdgesToReachableConverter(rf.newMember(d), edges, eta, tau, d);
             }
+        });
         if (has_new)
             created_families.add(rf);
         separator();
@@ -343,9 +487,9 @@ public class Reachability extends ConvertApp {
                 created_families.add(rf);
         } else {
             log("Calculating reachability trace 0");
-            armTimer();
-            new ConnectedComponentsToReachableConverter(rf.newMember(0), ccs, eta).convert();
-            stopTimer(0);
+            final long ref_time = System.currentTimeMillis();
+            new ConnectedComponentsToReachableConverter(rf.newMember(0), ccs, eta, cliques).convert();
+            writeTime(0, System.currentTimeMillis() - ref_time);
             created_families.add(rf);
         }
         final ReachabilityFamily rf1 = getFamily(eta);
@@ -353,9 +497,9 @@ public class Reachability extends ConvertApp {
             log("Reachability trace " + eta / tps + " already exists in family. Skipping.");
         else {
             log("Calculating reachability trace " + eta / tps);
-            armTimer();
+            final long ref_time = System.currentTimeMillis();
             new AddingReachableConverter(rf1.newMember(eta), rf, rf, eta).convert();
-            stopTimer(eta);
+            writeTime(eta, System.currentTimeMillis() - ref_time);
             created_families.add(rf1);
         }
         separator();
@@ -371,27 +515,30 @@ public class Reachability extends ConvertApp {
         return i;
     }
 
+    // Only schedules the calculations: the families are then picked up by
+    // combine().
     private void exponentiate(ReachabilityFamily rf, int e) throws Exception {
-        ReachabilityFamily next;
-        ReachabilityFamily cur = rf;
+        Future<ReachabilityFamily> cur = done(rf);
+        long d = rf.delay();
         for (int i = 1; i < e; ++i) {
-            next = add(cur, cur);
-            cur = next;
+            d *= 2;
+            cur = addWhenReady(cur, cur, d);
         }
     }
 
-    private ReachabilityFamily combine(long T, long delay) throws Exception {
-        ReachabilityFamily rf = null;
+    private Future<ReachabilityFamily> combine(long T, long delay) throws Exception {
+        Future<ReachabilityFamily> rf = null;
+        long rf_delay = 0;
         long d = 1;
         long mul = delay / T;
         while (mul != 0) {
             if ((mul & 1) == 1)
-                if (rf == null)
-                    rf = getFamily(d * T);
-                else {
-                    final ReachabilityFamily o = getFamily(d * T);
-                    final ReachabilityFamily tmp = add(rf, o);
-                    rf = tmp;
+                if (rf == null) {
+                    rf = familyWhenReady(d * T);
+                    rf_delay = d * T;
+                } else {
+                    rf_delay += d * T;
+                    rf = addWhenReady(rf, familyWhenReady(d * T), rf_delay);
                 }
             mul >>= 1;
             d *= 2;
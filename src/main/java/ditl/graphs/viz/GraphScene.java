@@ -40,6 +40,7 @@ import ditl.graphs.GroupEvent;
 import ditl.graphs.GroupTrace;
 import ditl.graphs.Movement;
 import ditl.graphs.MovementEvent;
+import ditl.graphs.MovementState;
 import ditl.graphs.MovementTrace;
 import ditl.viz.Scene;
 
@@ -48,6 +49,8 @@ public class GraphScene extends Scene implements
         MovementTrace.Handler, EdgeTrace.Handler, ArcTrace.Handler, GroupTrace.Handler {
 
     protected Map<Integer, NodeElement> nodes = new HashMap<Integer, NodeElement>();
+    private final MovementState positions = new MovementState();
+    private double[] xs = new double[0], ys = new double[0];
     private final Map<Edge, EdgeElement> edges = new AdjacencyMap.Edges<EdgeElement>();
     private final Map<Edge, ArcElement> arcs = new AdjacencyMap.Edges<ArcElement>();
     private boolean showIds = false;
@@ -76,6 +79,7 @@ public class GraphScene extends Scene implements
                         node = new NodeElement(m, id_map.getExternalId(m.id));
                     node.setShowId(showIds);
                     nodes.put(m.id, node);
+                    positions.set(m);
                     addScaleListener(node);
                 }
             }
@@ -83,6 +87,7 @@ public class GraphScene extends Scene implements
             @Override
             public void reset() {
                 nodes.clear();
+                positions.clear();
             }
         };
     }
@@ -99,17 +104,20 @@ public class GraphScene extends Scene implements
                         case IN:
                             node = new NodeElement(mev.origMovement());
                             nodes.put(id, node);
+                            positions.set(node.movement());
                             addScaleListener(node);
                             break;
 
                         case OUT:
                             removeScaleListener(nodes.get(id));
                             nodes.remove(id);
+                            positions.remove(id);
                             break;
 
                         case NEW_DEST:
                             node = nodes.get(id);
                             node.updateMovement(time, mev);
+                            positions.set(node.movement());
                             break;
                     }
                 }
@@ -236,8 +244,16 @@ public class GraphScene extends Scene implements
 
     @Override
     public void changeTime(long time) {
-        for (final NodeElement node : nodes.values()) {
-            node.changeTime(time);
+        final int n = positions.size();
+        if (xs.length < n) {
+            xs = new double[n];
+            ys = new double[n];
+        }
+        positions.positionsAt(time, xs, ys);
+        for (int i = 0; i < n; ++i) {
+            final NodeElement node = nodes.get(positions.id(i));
+            node.X = xs[i];
+            node.Y = ys[i];
             node.rescale(this);
         }
         super.changeTime(time);
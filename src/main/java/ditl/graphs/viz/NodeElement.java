@@ -58,6 +58,10 @@ public class NodeElement implements Clickable, SceneElement, ScaleListener, Time
         return movement.id;
     }
 
+    Movement movement() {
+        return movement;
+    }
+
     public String name() {
         return name;
     }
@@ -65,6 +65,7 @@ public final class PlausibleMobilityConverter implements Converter,
     private final List<Constraint> global_constraints = new ArrayList<Constraint>();
     private final List<Force> global_forces = new ArrayList<Force>();
     private final Map<Integer, List<Constraint>> node_constraints = new HashMap<Integer, List<Constraint>>();
+    private final List<NodeTracker> trackers = new ArrayList<NodeTracker>();
 
     private final double _height, _width;
     private final boolean _overlap;
@@ -132,6 +133,8 @@ public final class PlausibleMobilityConverter implements Converter,
         global_constraints.add(constraint);
         if (constraint instanceof Interaction)
             ((Interaction) constraint).setNodeCollection(Collections.unmodifiableList(all_nodes));
+        if (constraint instanceof NodeTracker)
+            trackers.add((NodeTracker) constraint);
     }
 
     public void addNodeConstraint(Integer id, Constraint constraint) {
@@ -140,12 +143,16 @@ public final class PlausibleMobilityConverter implements Converter,
         node_constraints.get(id).add(constraint);
         if (constraint instanceof Interaction)
             ((Interaction) constraint).setNodeCollection(Collections.unmodifiableList(all_nodes));
+        if (constraint instanceof NodeTracker)
+            trackers.add((NodeTracker) constraint);
     }
 
     public void addGlobalForce(Force force) {
         global_forces.add(force);
         if (force instanceof Interaction)
             ((Interaction) force).setNodeCollection(Collections.unmodifiableList(all_nodes));
+        if (force instanceof NodeTracker)
+            trackers.add((NodeTracker) force);
     }
 
     @Override
@@ -263,6 +270,7 @@ public final class PlausibleMobilityConverter implements Converter,
                         final KnownNode node = new KnownNode(id, mv);
                         known_nodes.put(id, node);
                         all_nodes.add(node);
+                        nodeMoved(node);
                     }
                 }
             }
@@ -285,10 +293,12 @@ public final class PlausibleMobilityConverter implements Converter,
                                 node = new KnownNode(id, mev.origMovement());
                                 known_nodes.put(id, node);
                                 all_nodes.add(node);
+                                nodeMoved(node);
                                 break;
                             case OUT:
                                 node = known_nodes.remove(id);
                                 all_nodes.remove(node);
+                                nodeRemoved(node);
                                 break;
                             default:
                                 node = known_nodes.get(id);
@@ -351,11 +361,23 @@ public final class PlausibleMobilityConverter implements Converter,
         node.next.x = node.cur.x;
         node.cur.y = rng.nextFloat() * _height;
         node.next.y = node.cur.y;
+        nodeMoved(node);
     }
 
     private void removeInferredNode(Integer id) {
         final Node node = inferred_nodes.remove(id);
         all_nodes.remove(node);
+        nodeRemoved(node);
+    }
+
+    private void nodeMoved(Node node) {
+        for (final NodeTracker tracker : trackers)
+            tracker.nodeMoved(node);
+    }
+
+    private void nodeRemoved(Node node) {
+        for (final NodeTracker tracker : trackers)
+            tracker.nodeRemoved(node);
     }
 
     private void setForces(InferredNode node) {
@@ -390,11 +412,15 @@ public final class PlausibleMobilityConverter implements Converter,
         final double rdt = (double) incr_interval / (double) tps;
         for (final Node node : all_nodes) {
             node.step(time, rdt);
-            if (_overlap)
+            if (_overlap) {
                 node.commit();
+                nodeMoved(node);
+            }
         }
         if (!_overlap)
-            for (final Node node : all_nodes)
+            for (final Node node : all_nodes) {
                 node.commit();
+                nodeMoved(node);
+            }
     }
 }
@@ -18,7 +18,10 @@
  *******************************************************************************/
 package ditl.plausible.forces;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,16 +32,17 @@ import ditl.graphs.AdjacencySet;
 import ditl.graphs.Edge;
 import ditl.graphs.EdgeEvent;
 import ditl.graphs.EdgeTrace;
+import ditl.graphs.PairTable;
 import ditl.graphs.Point;
 import ditl.plausible.Force;
 import ditl.plausible.InferredNode;
-import ditl.plausible.Interaction;
 import ditl.plausible.Node;
+import ditl.plausible.NodeTracker;
 import ditl.plausible.WindowedEdge;
 import ditl.plausible.WindowedEdgeEvent;
 import ditl.plausible.WindowedEdgeTrace;
 
-public class AnticipatedForce implements Force, Interaction,
+public class AnticipatedForce implements Force, NodeTracker,
         EdgeTrace.Handler, WindowedEdgeTrace.Handler {
 
     final static public double defaultK = 50.0; // the hooke parameter
@@ -63,11 +67,15 @@ public class AnticipatedForce implements Force, Interaction,
     private final double _lambda;
     private final long _tps;
     private final double _G;
+    private final double _cell;
 
-    private Collection<Node> _nodes;
+    // nodes indexed by id and binned in a grid of |cutoff|-sized cells
+    private final Map<Integer, Node> nodes_by_id = new HashMap<Integer, Node>();
+    private final PairTable cells = new PairTable();
+    private final Map<Node, long[]> node_cells = new HashMap<Node, long[]>();
 
-    private final Map<Edge, WindowedEdge> window_map = new AdjacencyMap.Edges<WindowedEdge>();
-    private final Set<Edge> active_edges = new AdjacencySet.Edges();
+    private final AdjacencyMap.Edges<WindowedEdge> window_map = new AdjacencyMap.Edges<WindowedEdge>();
+    private final AdjacencySet.Edges active_edges = new AdjacencySet.Edges();
 
     public AnticipatedForce(double K, double alpha, double vmax, double range,
             double epsilon, double tau, double cutoff, double lambda, long tps) {
@@ -81,6 +89,7 @@ public class AnticipatedForce implements Force, Interaction,
         _lambda = lambda;
         _tps = tps;
         _G = defaultG();
+        _cell = Math.abs(cutoff);
     }
 
     private double defaultG() {
@@ -91,28 +100,51 @@ public class AnticipatedForce implements Force, Interaction,
     @Override
     public Point apply(long time, InferredNode node) {
         final Point f = new Point(0, 0);
-        for (final Node other_node : _nodes)
-            if (node != other_node) {
-                f_rep(time, node, other_node, f);
-                f_att(time, node, other_node, f);
+        final Point r = node.nextPosition();
+        final Integer id = node.id();
+        final Set<Integer> connected = active_edges.getNext(id);
+        final Map<Integer, WindowedEdge> windows = window_map.getStartsWith(id);
+        if (_cutoff != 0) {
+            // only nodes in the 3x3 surrounding cells can be within cutoff
+            final int cx = cell(r.x);
+            final int cy = cell(r.y);
+            for (int i = cx - 1; i <= cx + 1; ++i)
+                for (int j = cy - 1; j <= cy + 1; ++j) {
+                    final List<Node> cell = nodesIn(PairTable.key(i, j));
+                    if (cell != null)
+                        for (final Node other_node : cell)
+                            if (node != other_node)
+                                f_rep(time, r, other_node, connected, windows, f);
+                }
+        }
+        for (final Integer oid : connected) {
+            final Node other_node = nodes_by_id.get(oid);
+            if (other_node != null && other_node != node)
+                f_att(r, other_node, 1.0, f);
+        }
+        for (final Map.Entry<Integer, WindowedEdge> e : windows.entrySet()) {
+            final Node other_node = nodes_by_id.get(e.getKey());
+            if (other_node != null && other_node != node && !connected.contains(e.getKey())) {
+                final double dt = (double) e.getValue().minDownTime(time) / (double) _tps;
+                f_att(r, other_node, Math.exp(-_vmax * dt / _tau), f);
             }
+        }
         return f;
     }
 
-    private void f_rep(long time, InferredNode node, Node other_node, Point f) {
-        final Point r = node.nextPosition();
+    private void f_rep(long time, Point r, Node other_node, Set<Integer> connected,
+            Map<Integer, WindowedEdge> windows, Point f) {
         final Point or = other_node.currentPosition();
         final double dx = r.x - or.x;
         final double dy = r.y - or.y;
         final double d2 = dx * dx + dy * dy;
         if (d2 < _cutoff * _cutoff) {
             final double d = Math.sqrt(d2);
-            final Integer id = node.id();
-            final Integer oid = other_node.id();
-            final Edge e = new Edge(id, oid);
             double dt = 0;
-            if (active_edges.contains(e)) {
-                dt = (double) window_map.get(e).minUpTime(time) / (double) _tps;
+            if (connected.contains(other_node.id())) {
+                final WindowedEdge we = windows.get(other_node.id());
+                if (we != null)
+                    dt = (double) we.minUpTime(time) / (double) _tps;
             }
             final double F = _G / Math.pow(_epsilon + (d + _vmax * dt) / _range, _alpha);
             f.x += F * dx / d;
@@ -120,32 +152,68 @@ public class AnticipatedForce implements Force, Interaction,
         }
     }
 
-    private void f_att(long time, InferredNode node, Node other_node, Point f) {
-        final Point r = node.nextPosition();
+    private void f_att(Point r, Node other_node, double decay, Point f) {
         final Point or = other_node.currentPosition();
         final double dx = r.x - or.x;
         final double dy = r.y - or.y;
-        final Integer id = node.id();
-        final Integer oid = other_node.id();
-        final Edge e = new Edge(id, oid);
-        if (active_edges.contains(e)) { // are connected
-            final double d = Math.sqrt(dx * dx + dy * dy);
-            final double F = _K * (d - _lambda);
-            f.x = -F * dx / d;
-            f.y = -F * dy / d;
-        } else if (window_map.containsKey(e)) { // a window edge exists between
-                                                // them
-            final double dt = (double) window_map.get(new Edge(id, oid)).minDownTime(time) / (double) _tps;
-            final double d = Math.sqrt(dx * dx + dy * dy);
-            final double F = _K * (d - _lambda) * Math.exp(-_vmax * dt / _tau);
-            f.x += -F * dx / d;
-            f.y += -F * dy / d;
+        final double d = Math.sqrt(dx * dx + dy * dy);
+        final double F = _K * (d - _lambda) * decay;
+        f.x += -F * dx / d;
+        f.y += -F * dy / d;
+    }
+
+    // clamped so that the neighboring cells never overflow
+    private int cell(double x) {
+        return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE - 1, Math.floor(x / _cell)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Node> nodesIn(long k) {
+        return (List<Node>) cells.get(k);
+    }
+
+    @Override
+    public void nodeMoved(Node node) {
+        if (_cutoff == 0) {
+            nodes_by_id.put(node.id(), node);
+            return;
+        }
+        final Point p = node.currentPosition();
+        final long k = PairTable.key(cell(p.x), cell(p.y));
+        final long[] prev = node_cells.get(node);
+        if (prev == null) {
+            node_cells.put(node, new long[] { k });
+            nodes_by_id.put(node.id(), node);
+        } else if (prev[0] == k)
+            return;
+        else {
+            removeFromCell(prev[0], node);
+            prev[0] = k;
+        }
+        List<Node> cell = nodesIn(k);
+        if (cell == null) {
+            cell = new ArrayList<Node>();
+            cells.put(k, cell);
         }
+        cell.add(node);
     }
 
     @Override
-    public void setNodeCollection(Collection<Node> nodes) {
-        _nodes = nodes;
+    public void nodeRemoved(Node node) {
+        if (node == null)
+            return;
+        if (nodes_by_id.get(node.id()) == node)
+            nodes_by_id.remove(node.id());
+        final long[] prev = node_cells.remove(node);
+        if (prev != null)
+            removeFromCell(prev[0], node);
+    }
+
+    private void removeFromCell(long k, Node node) {
+        final List<Node> cell = nodesIn(k);
+        cell.remove(node);
+        if (cell.isEmpty())
+            cells.remove(k);
     }
 
     @Override
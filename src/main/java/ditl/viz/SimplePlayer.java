@@ -111,6 +111,7 @@ public abstract class SimplePlayer extends JFrame {
         close();
         try {
             _store = Store.open(files);
+            _store.setStateCacheSize(Store.seekingStateCacheSize);
             loadReaders();
             enableControls(true);
         } catch (final Exception e) {
@@ -126,6 +127,7 @@ public abstract class SimplePlayer extends JFrame {
         close();
         try {
             _store = Store.open();
+            _store.setStateCacheSize(Store.seekingStateCacheSize);
             for (final String traceName : traceNames)
                 _store.loadTrace(traceName);
             loadReaders();
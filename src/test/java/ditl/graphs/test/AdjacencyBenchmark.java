@@ -0,0 +1,187 @@
+package ditl.graphs.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import ditl.graphs.AdjacencySet;
+import ditl.graphs.Edge;
+
+// Not a unit test: compares AdjacencySet.Edges with the nested HashMap layout
+// it replaced. Usage: AdjacencyBenchmark [NODES] [EDGES]
+public class AdjacencyBenchmark {
+
+    interface EdgeSet {
+        void add(Edge e);
+
+        boolean contains(Edge e);
+
+        void remove(Edge e);
+
+        int degreeSum(int n_nodes);
+
+        int iterate();
+    }
+
+    // previous layout: both directions stored in boxed nested hash maps
+    static final class NestedMaps implements EdgeSet {
+        final Map<Integer, Map<Integer, Edge>> map = new HashMap<Integer, Map<Integer, Edge>>();
+
+        void put(Integer a, Integer b, Edge e) {
+            Map<Integer, Edge> m = map.get(a);
+            if (m == null) {
+                m = new HashMap<Integer, Edge>();
+                map.put(a, m);
+            }
+            m.put(b, e);
+        }
+
+        void del(Integer a, Integer b) {
+            final Map<Integer, Edge> m = map.get(a);
+            m.remove(b);
+            if (m.isEmpty())
+                map.remove(a);
+        }
+
+        @Override
+        public void add(Edge e) {
+            put(e.id1, e.id2, e);
+            put(e.id2, e.id1, e);
+        }
+
+        @Override
+        public boolean contains(Edge e) {
+            final Map<Integer, Edge> m = map.get(e.id1);
+            return m != null && m.containsKey(e.id2);
+        }
+
+        @Override
+        public void remove(Edge e) {
+            del(e.id1, e.id2);
+            del(e.id2, e.id1);
+        }
+
+        @Override
+        public int degreeSum(int n_nodes) {
+            int s = 0;
+            for (int i = 0; i < n_nodes; ++i) {
+                final Map<Integer, Edge> m = map.get(i);
+                if (m != null)
+                    for (final Integer j : m.keySet())
+                        s += j;
+            }
+            return s;
+        }
+
+        @Override
+        public int iterate() {
+            int s = 0;
+            for (final Map.Entry<Integer, Map<Integer, Edge>> e : map.entrySet())
+                for (final Edge edge : e.getValue().values())
+                    if (edge.id2 > e.getKey())
+                        s += edge.id1;
+            return s;
+        }
+    }
+
+    static final class Primitive implements EdgeSet {
+        final AdjacencySet.Edges set = new AdjacencySet.Edges();
+
+        @Override
+        public void add(Edge e) {
+            set.add(e);
+        }
+
+        @Override
+        public boolean contains(Edge e) {
+            return set.contains(e);
+        }
+
+        @Override
+        public void remove(Edge e) {
+            set.remove(e);
+        }
+
+        @Override
+        public int degreeSum(int n_nodes) {
+            int s = 0;
+            for (int i = 0; i < n_nodes; ++i)
+                for (final Integer j : set.getNext(i))
+                    s += j;
+            return s;
+        }
+
+        @Override
+        public int iterate() {
+            int s = 0;
+            for (final Edge e : set)
+                s += e.id1;
+            return s;
+        }
+    }
+
+    static long usedMemory() {
+        final Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static Edge[] randomEdges(int n_nodes, int n_edges, long seed) {
+        final Random rng = new Random(seed);
+        final Edge[] edges = new Edge[n_edges];
+        for (int k = 0; k < n_edges; ++k) {
+            int a = rng.nextInt(n_nodes), b;
+            do
+                b = rng.nextInt(n_nodes);
+            while (b == a);
+            edges[k] = new Edge(a, b);
+        }
+        return edges;
+    }
+
+    static void run(String name, EdgeSet set, Edge[] edges, Edge[] probes, int n_nodes) {
+        final long mem0 = usedMemory();
+        long t = System.nanoTime();
+        for (final Edge e : edges)
+            set.add(e);
+        final long t_add = System.nanoTime() - t;
+        final long mem = usedMemory() - mem0;
+
+        t = System.nanoTime();
+        int hits = 0;
+        for (final Edge e : probes)
+            if (set.contains(e))
+                hits++;
+        final long t_get = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        final int s1 = set.degreeSum(n_nodes);
+        final long t_adj = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        final int s2 = set.iterate();
+        final long t_it = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        for (int k = 0; k < edges.length; k += 2)
+            if (set.contains(edges[k]))
+                set.remove(edges[k]);
+        final long t_rm = System.nanoTime() - t;
+
+        System.out.printf("%-10s add %6d ms  contains %6d ms  neighbors %6d ms  iterate %6d ms  remove %6d ms  ~%d bytes/edge  (%d %d %d)%n",
+                name, t_add / 1000000, t_get / 1000000, t_adj / 1000000, t_it / 1000000, t_rm / 1000000,
+                mem / edges.length, hits, s1, s2);
+    }
+
+    public static void main(String[] args) {
+        final int n_nodes = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        final int n_edges = (args.length > 1) ? Integer.parseInt(args[1]) : 2000000;
+        final Edge[] edges = randomEdges(n_nodes, n_edges, 0);
+        final Edge[] probes = randomEdges(n_nodes, n_edges, 1);
+        for (int round = 0; round < 2; ++round) {
+            run("nested", new NestedMaps(), edges, probes, n_nodes);
+            run("primitive", new Primitive(), edges, probes, n_nodes);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ditl.graphs.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import ditl.StatefulReader;
+import ditl.StatefulWriter;
+import ditl.Trace;
+import ditl.WritableStore;
+import ditl.graphs.Edge;
+import ditl.graphs.EdgeEvent;
+import ditl.graphs.EdgeTrace;
+import ditl.graphs.EdgesToConnectedComponentsConverter;
+import ditl.graphs.EdgesToConnectedComponentsConverter.Engine;
+import ditl.graphs.Group;
+import ditl.graphs.GroupEvent;
+import ditl.graphs.GroupTrace;
+
+// Not a unit test: runs edges-to-ccs with both connectivity engines on a dense
+// random graph with a giant component, where a few edges are replaced at
+// every time step, and checks that they write the same trace.
+// Usage: ConnectivityBenchmark [NODES] [DEGREE] [STEPS] [CHANGES]
+public class ConnectivityBenchmark {
+
+    static Edge randomEdge(Random rng, int n_nodes) {
+        final int a = rng.nextInt(n_nodes);
+        int b;
+        do
+            b = rng.nextInt(n_nodes);
+        while (b == a);
+        return new Edge(a, b);
+    }
+
+    static void writeEdges(WritableStore store, int n_nodes, int degree, int n_steps, int n_changes) throws Exception {
+        final Random rng = new Random(0);
+        final EdgeTrace edges = store.newTrace("edges", EdgeTrace.class, true);
+        final StatefulWriter<EdgeEvent, Edge> writer = edges.getWriter();
+        final Set<Edge> set = new HashSet<Edge>();
+        final List<Edge> list = new ArrayList<Edge>();
+        while (set.size() < n_nodes * degree / 2) {
+            final Edge e = randomEdge(rng, n_nodes);
+            if (set.add(e))
+                list.add(e);
+        }
+        writer.setInitState(0, set);
+        for (long t = 1; t <= n_steps; ++t) {
+            for (int k = 0; k < n_changes; ++k) {
+                final int i = rng.nextInt(list.size());
+                final Edge e = list.get(i);
+                list.set(i, list.get(list.size() - 1));
+                list.remove(list.size() - 1);
+                set.remove(e);
+                writer.append(t, new EdgeEvent(e, EdgeEvent.Type.DOWN));
+            }
+            for (int k = 0; k < n_changes; ++k) {
+                Edge e;
+                do
+                    e = randomEdge(rng, n_nodes);
+                while (set.contains(e));
+                set.add(e);
+                list.add(e);
+                writer.append(t, new EdgeEvent(e, EdgeEvent.Type.UP));
+            }
+        }
+        writer.setProperty(Trace.timeUnitKey, "s");
+        writer.close();
+    }
+
+    static List<String> readGroups(GroupTrace groups) throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        final StatefulReader<GroupEvent, Group> reader = groups.getReader();
+        reader.seek(groups.minTime());
+        for (final Group g : reader.referenceState())
+            lines.add(g.toString());
+        while (reader.hasNext()) {
+            final long time = reader.nextTime();
+            for (final GroupEvent gev : reader.next())
+                lines.add(time + " " + gev);
+        }
+        reader.close();
+        return lines;
+    }
+
+    static List<String> run(WritableStore store, Engine engine) throws Exception {
+        final EdgeTrace edges = store.getTrace("edges");
+        final GroupTrace ccs = store.newTrace("ccs_" + engine, GroupTrace.class, true);
+        final long t = System.nanoTime();
+        new EdgesToConnectedComponentsConverter(ccs, edges, engine).convert();
+        System.out.printf("%-8s %6d ms%n", engine, (System.nanoTime() - t) / 1000000);
+        return readGroups(store.<GroupTrace> getTrace("ccs_" + engine));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int n_nodes = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+        final int degree = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        final int n_steps = (args.length > 2) ? Integer.parseInt(args[2]) : 2000;
+        final int n_changes = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+        final File dir = new File("target/test-data/connectivity-benchmark");
+        dir.mkdirs();
+        final WritableStore store = WritableStore.open(dir);
+        writeEdges(store, n_nodes, degree, n_steps, n_changes);
+        for (int round = 0; round < 2; ++round) {
+            final List<String> bfs = run(store, Engine.BFS);
+            final List<String> dynamic = run(store, Engine.DYNAMIC);
+            System.out.println(bfs.equals(dynamic) ? "identical output (" + bfs.size() + " lines)" : "OUTPUT DIFFERS");
+        }
+        store.close();
+    }
+}
@@ -0,0 +1,156 @@
+package ditl.graphs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ditl.graphs.AdjacencyMap;
+import ditl.graphs.AdjacencySet;
+import ditl.graphs.Arc;
+import ditl.graphs.Edge;
+
+public class TestAdjacency {
+
+    // id ranges chosen to hit probe collisions, long rows and table growth
+    private final static int[][] ranges = {
+            { 8, 2000 }, { 64, 64 }, { 5000, 5000 }, { 1 << 30, 1 << 30 } };
+
+    @Test
+    public void compareArcsMap() {
+        final Random rng = new Random(0);
+        for (final int[] range : ranges) {
+            final AdjacencyMap.Arcs<Integer> map = new AdjacencyMap.Arcs<Integer>();
+            final Map<String, Integer> ref = new HashMap<String, Integer>();
+            final Map<Integer, Map<Integer, Integer>> ref_rows = new HashMap<Integer, Map<Integer, Integer>>();
+            for (int op = 0; op < 50000; ++op) {
+                final int from = randomId(rng, range[0]);
+                final int to = randomId(rng, range[1]);
+                final Arc a = new Arc(from, to);
+                final String key = from + " " + to;
+                if (rng.nextInt(3) > 0) {
+                    final Integer v = rng.nextInt();
+                    assertEquals(ref.put(key, v), map.put(a, v));
+                    row(ref_rows, from).put(to, v);
+                } else {
+                    assertEquals(ref.remove(key), map.remove(a));
+                    removeFromRow(ref_rows, from, to);
+                }
+                assertEquals(ref.size(), map.size());
+                if (op % 5000 == 0)
+                    checkArcs(map, ref, ref_rows, rng, range);
+            }
+            checkArcs(map, ref, ref_rows, rng, range);
+            // drain everything through backward-shift deletes
+            for (final String key : new ArrayList<String>(ref.keySet())) {
+                final String[] ids = key.split(" ");
+                assertEquals(ref.remove(key), map.remove(new Arc(Integer.parseInt(ids[0]), Integer.parseInt(ids[1]))));
+            }
+            assertTrue(map.isEmpty());
+            assertTrue(map.vertices().isEmpty());
+        }
+    }
+
+    @Test
+    public void compareEdgesSet() {
+        final Random rng = new Random(1);
+        for (final int[] range : ranges) {
+            final AdjacencySet.Edges set = new AdjacencySet.Edges();
+            final Set<String> ref = new HashSet<String>();
+            final Map<Integer, Map<Integer, Integer>> ref_rows = new HashMap<Integer, Map<Integer, Integer>>();
+            for (int op = 0; op < 50000; ++op) {
+                final int id1 = randomId(rng, range[0]);
+                final int id2 = randomId(rng, range[1]);
+                if (id1 == id2)
+                    continue;
+                final Edge e = new Edge(id1, id2);
+                final String key = e.id1 + " " + e.id2;
+                if (rng.nextInt(3) > 0) {
+                    set.add(e);
+                    ref.add(key);
+                    row(ref_rows, id1).put(id2, 0);
+                    row(ref_rows, id2).put(id1, 0);
+                } else {
+                    assertEquals(ref.remove(key), set.remove(e));
+                    removeFromRow(ref_rows, id1, id2);
+                    removeFromRow(ref_rows, id2, id1);
+                }
+                assertEquals(ref.size(), set.size());
+            }
+            final Set<String> found = new HashSet<String>();
+            for (final Edge e : set)
+                assertTrue(found.add(e.id1 + " " + e.id2));
+            assertEquals(ref, found);
+            assertEquals(ref_rows.keySet(), set.vertices());
+            for (final Map.Entry<Integer, Map<Integer, Integer>> row : ref_rows.entrySet()) {
+                final Set<Integer> next = set.getNext(row.getKey());
+                assertEquals(row.getValue().size(), next.size());
+                assertEquals(new TreeSet<Integer>(row.getValue().keySet()), new TreeSet<Integer>(next));
+                for (final Integer n : row.getValue().keySet())
+                    assertTrue(next.contains(n));
+            }
+            assertTrue(set.getNext(Integer.MIN_VALUE).isEmpty());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void rowViewsAreReadOnly() {
+        final AdjacencyMap.Arcs<Integer> map = new AdjacencyMap.Arcs<Integer>();
+        map.put(new Arc(1, 2), 3);
+        map.getStartsWith(1).put(4, 5);
+    }
+
+    private void checkArcs(AdjacencyMap.Arcs<Integer> map, Map<String, Integer> ref,
+            Map<Integer, Map<Integer, Integer>> ref_rows, Random rng, int[] range) {
+        final Map<String, Integer> found = new HashMap<String, Integer>();
+        for (final Map.Entry<Arc, Integer> e : map.entrySet())
+            assertEquals(null, found.put(e.getKey().from + " " + e.getKey().to, e.getValue()));
+        assertEquals(ref, found);
+        for (int k = 0; k < 1000; ++k) {
+            final int from = randomId(rng, range[0]);
+            final int to = randomId(rng, range[1]);
+            assertEquals(ref.get(from + " " + to), map.get(new Arc(from, to)));
+            assertEquals(ref.containsKey(from + " " + to), map.containsKey(new Arc(from, to)));
+        }
+        final Set<Integer> vertices = new HashSet<Integer>();
+        for (final Map.Entry<Integer, Map<Integer, Integer>> row : ref_rows.entrySet()) {
+            vertices.add(row.getKey());
+            vertices.addAll(row.getValue().keySet());
+            assertEquals(new TreeMap<Integer, Integer>(row.getValue()),
+                    new TreeMap<Integer, Integer>(map.getStartsWith(row.getKey())));
+        }
+        assertEquals(vertices, map.vertices());
+    }
+
+    private static Map<Integer, Integer> row(Map<Integer, Map<Integer, Integer>> rows, int id) {
+        Map<Integer, Integer> row = rows.get(id);
+        if (row == null) {
+            row = new HashMap<Integer, Integer>();
+            rows.put(id, row);
+        }
+        return row;
+    }
+
+    private static void removeFromRow(Map<Integer, Map<Integer, Integer>> rows, int id, int n) {
+        final Map<Integer, Integer> row = rows.get(id);
+        if (row != null) {
+            row.remove(n);
+            if (row.isEmpty())
+                rows.remove(id);
+        }
+    }
+
+    private static int randomId(Random rng, int range) {
+        // include negative ids
+        return rng.nextInt(range) - range / 4;
+    }
+}
@@ -40,14 +40,14 @@ public class TestItemSerializations {
     public void presence() throws IOException {
         Presence p1 = new Presence(1);
         Presence p2 = writeAndRead(p1, new Presence.Factory());
-        assertTrue(p1.id.equals(p2.id));
+        assertTrue(p1.id == p2.id);
     }
 
     @Test
     public void presenceEvent() throws IOException {
         PresenceEvent p1 = new PresenceEvent(1, PresenceEvent.Type.IN);
         PresenceEvent p2 = writeAndRead(p1, new PresenceEvent.Factory());
-        assertTrue(p1.id.equals(p2.id));
+        assertTrue(p1.id == p2.id);
         assertTrue(p1.isIn() == p2.isIn());
     }
 
@@ -62,8 +62,8 @@ public class TestItemSerializations {
     public void arcEvent() throws IOException {
         ArcEvent ae = new ArcEvent(1, 2, ArcEvent.Type.UP);
         ArcEvent be = writeAndRead(ae, new ArcEvent.Factory());
-        assertTrue(ae.from.equals(be.from));
-        assertTrue(ae.to.equals(be.to));
+        assertTrue(ae.from == be.from);
+        assertTrue(ae.to == be.to);
         assertTrue(ae.isUp() == be.isUp());
     }
 
@@ -78,11 +78,23 @@ public class TestItemSerializations {
     public void edgeEvent() throws IOException {
         EdgeEvent ee = new EdgeEvent(-1, 2, EdgeEvent.Type.UP);
         EdgeEvent ef = writeAndRead(ee, new EdgeEvent.Factory());
-        assertTrue(ee.id1.equals(ef.id1));
-        assertTrue(ee.id2.equals(ef.id2));
+        assertTrue(ee.id1 == ef.id1);
+        assertTrue(ee.id2 == ef.id2);
         assertTrue(ee.isUp() == ef.isUp());
     }
 
+    @Test
+    public void sharedEdgeEvents() throws IOException {
+        EdgeEvent.Factory factory = new EdgeEvent.Factory(EdgeEvent.Factory.sharedCacheSize);
+        EdgeEvent e1 = writeAndRead(new EdgeEvent(3, 2, EdgeEvent.Type.UP), factory);
+        EdgeEvent e2 = writeAndRead(new EdgeEvent(2, 3, EdgeEvent.Type.UP), factory);
+        EdgeEvent e3 = writeAndRead(new EdgeEvent(2, 3, EdgeEvent.Type.DOWN), factory);
+        assertTrue(e1 == e2);
+        assertTrue(e1.edge() == e2.edge());
+        assertTrue(e3.edge().equals(e1.edge()));
+        assertTrue(!e3.isUp());
+    }
+
     @Test
     public void group() throws IOException {
         Set<Integer> members = new HashSet<Integer>(Arrays.asList(1, 5, 8));
@@ -0,0 +1,134 @@
+package ditl.graphs.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ditl.StatefulReader;
+import ditl.StatefulWriter;
+import ditl.Trace;
+import ditl.Units;
+import ditl.WritableStore;
+import ditl.graphs.Edge;
+import ditl.graphs.EdgeEvent;
+import ditl.graphs.EdgeTrace;
+import ditl.graphs.Movement;
+import ditl.graphs.MovementEvent;
+import ditl.graphs.MovementToEdgesConverter;
+import ditl.graphs.MovementTrace;
+import ditl.graphs.Point;
+
+public class TestMovementToEdges {
+
+    // coarse tics, so that many events share a time
+    private final static long tps = 1;
+    private final static int nNodes = 300;
+    private final static double size = 3000;
+    private final static double range = 20;
+    private final static long duration = 120 * tps;
+    private final static long maxInterval = 5 * tps;
+
+    private static WritableStore store;
+    private static MovementTrace movement;
+
+    @BeforeClass
+    public static void writeMovement() throws Exception {
+        final File storeDir = new File(getStorePath());
+        if (!storeDir.exists())
+            storeDir.mkdirs();
+        store = WritableStore.open(storeDir);
+        movement = store.newTrace("movement", MovementTrace.class, true);
+
+        // a dense random waypoint where every node changes direction at least
+        // once per max interval
+        final Random rng = new Random(0);
+        final List<Movement> init = new ArrayList<Movement>();
+        final TreeMap<Long, List<MovementEvent>> events = new TreeMap<Long, List<MovementEvent>>();
+        for (int id = 0; id < nNodes; ++id) {
+            init.add(new Movement(id, randomPoint(rng)));
+            for (long t = rng.nextInt((int) (4 * tps)); t < duration; t += tps + rng.nextInt((int) (3 * tps))) {
+                if (!events.containsKey(t))
+                    events.put(t, new ArrayList<MovementEvent>());
+                events.get(t).add(new MovementEvent(id, (1 + rng.nextDouble() * 19) / tps, randomPoint(rng)));
+            }
+        }
+        final StatefulWriter<MovementEvent, Movement> writer = movement.getWriter();
+        writer.setInitState(0, init);
+        for (final Map.Entry<Long, List<MovementEvent>> e : events.entrySet())
+            writer.handle(e.getKey(), e.getValue());
+        writer.setProperty(Trace.maxTimeKey, duration);
+        writer.setProperty(Trace.timeUnitKey, Units.toTimeUnit(tps));
+        writer.close();
+    }
+
+    @AfterClass
+    public static void closeStore() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void compareGridWithAllPairs() throws Exception {
+        final List<String> all_pairs = edges("all_pairs", false, 1, MovementToEdgesConverter.defaultMinParallelPairs);
+        assertTrue(all_pairs.size() > 100);
+        assertEquals(all_pairs, edges("grid", true, 1, MovementToEdgesConverter.defaultMinParallelPairs));
+    }
+
+    @Test
+    public void compareThreads() throws Exception {
+        // every batch goes through the thread pool
+        final List<String> single = edges("single", true, 1, 1);
+        assertEquals(single, edges("threads", true, 4, 1));
+        assertEquals(single, edges("threads_all_pairs", false, 4, 1));
+    }
+
+    private List<String> edges(String name, boolean useGrid, int nThreads, int minParallelPairs) throws Exception {
+        final EdgeTrace edges = store.newTrace(name, EdgeTrace.class, true);
+        final MovementToEdgesConverter converter = new MovementToEdgesConverter(edges, movement, range, maxInterval, nThreads);
+        converter.setSpatialGrid(useGrid);
+        converter.setMinParallelPairs(minParallelPairs);
+        converter.convert();
+
+        // the order of events within a time is compared as well
+        final List<String> lines = new ArrayList<String>();
+        final StatefulReader<EdgeEvent, Edge> reader = edges.getReader();
+        reader.seek(edges.minTime());
+        lines.add(edges.minTime() + " " + strings(reader.referenceState()));
+        int n_shared = 0;
+        while (reader.hasNext()) {
+            final long time = reader.nextTime();
+            final List<String> events = strings(reader.next());
+            if (events.size() > 1)
+                n_shared++;
+            lines.add(time + " " + events);
+        }
+        reader.close();
+        assertTrue(n_shared > 10);
+        return lines;
+    }
+
+    private static List<String> strings(Iterable<?> items) {
+        final List<String> strs = new ArrayList<String>();
+        for (final Object item : items)
+            strs.add(item.toString());
+        return strs;
+    }
+
+    private static Point randomPoint(Random rng) {
+        return new Point(rng.nextDouble() * size, rng.nextDouble() * size);
+    }
+
+    private static String getStorePath() {
+        return "target/test-data/m2e";
+    }
+}
@@ -19,11 +19,19 @@
 package ditl.graphs.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.BeforeClass;
@@ -32,13 +40,38 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import ditl.StatefulReader;
+import ditl.Store;
 import ditl.cli.CLI;
+import ditl.graphs.Arc;
+import ditl.graphs.ArcEvent;
+import ditl.graphs.ArcTrace;
+import ditl.graphs.ContactIndex;
+import ditl.graphs.Edge;
+import ditl.graphs.EdgeEvent;
+import ditl.graphs.EdgeTrace;
+import ditl.graphs.Group;
+import ditl.graphs.GroupEvent;
+import ditl.graphs.GroupTrace;
+import ditl.graphs.JourneyFinder;
+import ditl.graphs.Movement;
+import ditl.graphs.MovementEvent;
+import ditl.graphs.MovementState;
+import ditl.graphs.MovementTrace;
+import ditl.graphs.Point;
+import ditl.graphs.Presence;
+import ditl.graphs.PresenceEvent;
+import ditl.graphs.PresenceTrace;
+import ditl.graphs.ReachabilityTrace;
+import ditl.graphs.WeightedEdge;
+import ditl.graphs.WeightedEdgeTrace;
 
 @RunWith(Suite.class)
 @SuiteClasses({
         TestRWP.Import.class,
         TestRWP.CompareExport.class,
-        TestRWP.CompareAnalyze.class })
+        TestRWP.CompareAnalyze.class,
+        TestRWP.CompareIndexes.class })
 public class TestRWP {
 
     @BeforeClass
@@ -56,24 +89,40 @@ public class TestRWP {
             graphsCli("import-movement --force %s " + getResourcePath() + "/movement.ns2");
             // 2. edges
             graphsCli("movement-to-edges --force %s 20");
+            graphsCli("index-contacts %s");
             // 3. presence
             graphsCli("movement-to-presence --force %s");
             // 4. connected components
             graphsCli("edges-to-ccs --groups ccs --force %s");
+            graphsCli("edges-to-ccs --groups dynamic_ccs --engine dynamic --force %s");
             // 5. groups
             graphsCli("import-groups --force %s [{members:[[0,3]]},{members:[4,6]},{members:[5,[7,9]]}]");
             // 6. resample with 1 second
             graphsCli("resample --force %s 1");
             // 7. calculate arcs from beacons
             graphsCli("beacons-to-arcs --force %s");
+            graphsCli("arcs-to-dominating-set --force --groups ds %s");
+            graphsCli("arcs-to-dominating-set --force --groups ds_full --full-recompute-every 1 %s");
+            graphsCli("arcs-to-dominating-set --force --groups ds_repaired --full-recompute-every 0 %s");
+            graphsCli("arcs-to-dominating-set --force --groups ds_never_rebuilt --full-recompute-every 0 --max-growth 100 %s");
+            graphsCli("arcs-to-dominating-set --force --groups ds_often_rebuilt --full-recompute-every 0 --max-growth 0.5 %s");
             // 8. calculate resampled edges
             graphsCli("arcs-to-edges --force --edges resampled %s");
             // 9. calculate group edges
             graphsCli("group-edges --force %s group_edges");
             // 10. buffer edges
             graphsCli("buffer-edges --force %s 5");
+            // 10b. weighted edges
+            graphsCli("aggregate-edges --force %s 10 30 90");
             // 11. Reachability
             graphsCli("reachability --force --edges resampled --prune-reused %s 1 1 5");
+            graphsCli("reachability --force --edges resampled --prefix jobs --jobs 3 --threads 2 --in-memory 1 %s 1 1 5");
+            graphsCli("reachability --force --no-delete --groups ccs --prefix ccs %s 1 0 5");
+            graphsCli("reachability --force --no-delete --groups ccs --prefix ccs --cliques --index-blocks --out-store " + getCliquesStorePath() + " %s 1 0 5");
+            graphsCli("reachability --force --edges resampled --prefix direct %s 1 1 1");
+            // 12. Flooding reachability
+            graphsCli("flooding-reachability --force --edges resampled %s 1 20");
+            graphsCli("flooding-reachability --force --edges resampled --engine bitsets --out-store " + getBitSetsStorePath() + " %s 1 20");
         }
     }
 
@@ -108,6 +157,83 @@ public class TestRWP {
         public void compareReachable() throws IOException {
             graphsCliAndCompare("export-arcs --dest-time-unit ms --arcs resampled_t1000_d5000 %s", "reachable.crawdad");
         }
+
+        @Test
+        public void compareConcurrentReachable() throws IOException {
+            graphsCliAndCompare("export-arcs --dest-time-unit ms --arcs jobs_t1000_d5000 %s", "reachable.crawdad");
+        }
+
+        @Test
+        public void compareFloodingEngines() throws IOException {
+            graphsCliToFile("export-arcs --dest-time-unit ms --arcs resampled_t1000_pd20000 %s", "flooding.crawdad");
+            graphsCliToFile("export-arcs --dest-time-unit ms --arcs resampled_t1000_pd20000 " + getBitSetsStorePath(), "flooding_bitsets.crawdad");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/flooding_bitsets.crawdad")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/flooding.crawdad")));
+        }
+
+        @Test
+        public void compareOneMovement() throws IOException {
+            graphsCliAndCompare("export-movement --format one --max-time 60 --threads 2 %s", "movement.one");
+        }
+
+        @Test
+        public void compareMovementState() throws Exception {
+            // bulk positions should match those of the movement objects
+            final Store store = Store.open(new File(getStorePath()));
+            final MovementTrace movement = store.getTrace("movement");
+            final MovementTrace.Updater updater = new MovementTrace.Updater();
+            final StatefulReader<MovementEvent, Movement> reader = movement.getReader();
+            reader.seek(movement.minTime());
+            updater.setState(reader.referenceState());
+            final double[] xs = new double[100], ys = new double[100];
+            while (reader.hasNext()) {
+                final long time = reader.nextTime();
+                for (final MovementEvent mev : reader.next())
+                    updater.handleEvent(time, mev);
+                final MovementState positions = updater.movementState();
+                assertEquals(updater.states().size(), positions.size());
+                positions.positionsAt(time + 1000, xs, ys);
+                for (final Movement m : updater.states()) {
+                    final int i = positions.indexOf(m.id);
+                    final Point p = m.positionAtTime(time + 1000);
+                    assertEquals(p.x, xs[i], 0);
+                    assertEquals(p.y, ys[i], 0);
+                }
+            }
+            reader.close();
+            store.close();
+        }
+
+        @Test
+        public void compareCliques() throws IOException {
+            // the first step composes the cliques directly
+            for (final String name : new String[] { "ccs_t0_d1000", "ccs_t0_d5000" }) {
+                graphsCliToFile("export-arcs --dest-time-unit ms --arcs " + name + " %s", "ccs_reachability.crawdad");
+                graphsCliToFile("export-arcs --dest-time-unit ms --arcs " + name + " " + getCliquesStorePath(), "ccs_reachability_cliques.crawdad");
+                assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/ccs_reachability_cliques.crawdad")),
+                        FileUtils.readFileToString(new File(getStorePath() + "/ccs_reachability.crawdad")));
+            }
+        }
+
+        @Test
+        public void compareFilteredCliques() throws Exception {
+            cli("filter --force " + getStorePath() + " ccs_t0_d0 ccs_filtered [[0,4]]");
+            cli("filter --force " + getCliquesStorePath() + " ccs_t0_d0 ccs_filtered [[0,4]]");
+            graphsCliToFile("export-arcs --dest-time-unit ms --arcs ccs_filtered %s", "ccs_filtered.crawdad");
+            graphsCliToFile("export-arcs --dest-time-unit ms --arcs ccs_filtered " + getCliquesStorePath(), "ccs_filtered_cliques.crawdad");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/ccs_filtered_cliques.crawdad")),
+                    FileUtils.readFileToString(new File(getStorePath() + "/ccs_filtered.crawdad")));
+
+            // the decoder needs every block, so none are skipped
+            final Store store = Store.open(new File(getCliquesStorePath()));
+            final ReachabilityTrace cliques = store.getTrace("ccs_t0_d0");
+            assertTrue(cliques.hasCliques());
+            assertTrue(cliques.hasBlockIndex());
+            final Set<Integer> group = new HashSet<Integer>();
+            group.add(0);
+            assertEquals(readArcEvents(cliques, null), readArcEvents(cliques, group));
+            store.close();
+        }
     }
 
     public static class CompareAnalyze {
@@ -122,6 +248,79 @@ public class TestRWP {
             graphsCliAndCompare("analyze --clustering %s", "clustering.report");
         }
 
+        @Test
+        public void compareDominatingSet() throws Exception {
+            // both should match the output of the full greedy recomputation
+            writeGroups("ds", "dominating_set.txt");
+            compareWithResource("dominating_set.txt");
+            writeGroups("ds_full", "dominating_set.txt");
+            compareWithResource("dominating_set.txt");
+        }
+
+        @Test
+        public void checkDominatingSets() throws Exception {
+            final Store store = Store.open(new File(getStorePath()));
+            for (final String name : new String[] { "ds", "ds_repaired", "ds_never_rebuilt", "ds_often_rebuilt" }) {
+                final ArcTrace arcs = store.getTrace("arcs");
+                final PresenceTrace presence = store.getTrace("presence");
+                final GroupTrace ds = store.getTrace(name);
+                final ArcTrace.Updater arc_updater = new ArcTrace.Updater();
+                final PresenceTrace.Updater presence_updater = new PresenceTrace.Updater();
+                final GroupTrace.Updater ds_updater = new GroupTrace.Updater();
+                final StatefulReader<ArcEvent, Arc> arc_reader = arcs.getReader();
+                final StatefulReader<PresenceEvent, Presence> presence_reader = presence.getReader();
+                final StatefulReader<GroupEvent, Group> ds_reader = ds.getReader();
+                long time = presence.minTime();
+                arc_reader.seek(time);
+                presence_reader.seek(time);
+                ds_reader.seek(time);
+                arc_updater.setState(arc_reader.referenceState());
+                presence_updater.setState(presence_reader.referenceState());
+                ds_updater.setState(ds_reader.referenceState());
+                int n_checks = 0;
+                while (time != Long.MAX_VALUE) {
+                    if (arc_reader.hasNext() && arc_reader.nextTime() == time)
+                        for (final ArcEvent aev : arc_reader.next())
+                            arc_updater.handleEvent(time, aev);
+                    if (presence_reader.hasNext() && presence_reader.nextTime() == time)
+                        for (final PresenceEvent pev : presence_reader.next())
+                            presence_updater.handleEvent(time, pev);
+                    if (ds_reader.hasNext() && ds_reader.nextTime() == time)
+                        for (final GroupEvent gev : ds_reader.next())
+                            ds_updater.handleEvent(time, gev);
+
+                    // every present node is in the set or has an arc from it
+                    final Set<Integer> dominated = new HashSet<Integer>();
+                    for (final Group g : ds_updater.states())
+                        dominated.addAll(g.members());
+                    for (final Arc a : arc_updater.states())
+                        if (dominated.contains(a.from))
+                            dominated.add(a.to);
+                    for (final Presence p : presence_updater.states())
+                        assertTrue(name + ": " + p.id + " not dominated at " + time, dominated.contains(p.id));
+                    n_checks++;
+
+                    time = Long.MAX_VALUE;
+                    if (arc_reader.hasNext())
+                        time = Math.min(time, arc_reader.nextTime());
+                    if (presence_reader.hasNext())
+                        time = Math.min(time, presence_reader.nextTime());
+                    if (ds_reader.hasNext())
+                        time = Math.min(time, ds_reader.nextTime());
+                }
+                assertTrue(n_checks > 100);
+                arc_reader.close();
+                presence_reader.close();
+                ds_reader.close();
+            }
+            store.close();
+        }
+
+        @Test
+        public void compareChangedClustering() throws IOException {
+            graphsCliAndCompare("analyze --clustering --changed-only %s", "clustering_changed.report");
+        }
+
         @Test
         public void compareContacts() throws IOException {
             graphsCliAndCompare("analyze --contacts %s", "contacts.report");
@@ -142,6 +341,18 @@ public class TestRWP {
             graphsCliAndCompare("analyze --group-size --groups ccs %s", "group_size.ccs.report");
         }
 
+        @Test
+        public void compareCCSizeHistogram() throws IOException {
+            graphsCliAndCompare("analyze --group-size --groups ccs --histogram %s", "group_size_histogram.ccs.report");
+        }
+
+        @Test
+        public void compareDynamicCCSize() throws IOException {
+            graphsCliToFile("analyze --group-size --groups dynamic_ccs %s", "group_size.dynamic_ccs.report");
+            assertEquals(FileUtils.readFileToString(new File(getStorePath() + "/group_size.dynamic_ccs.report")),
+                    FileUtils.readFileToString(new File(getResourcePath() + "/group_size.ccs.report")));
+        }
+
         @Test
         public void compareInterAnyContacts() throws IOException {
             graphsCliAndCompare("analyze --inter-any-contacts %s", "inter_any_contacts.report");
@@ -162,6 +373,11 @@ public class TestRWP {
             graphsCliAndCompare("analyze --node-degree %s", "node_degree.report");
         }
 
+        @Test
+        public void compareNodeDegreeHistogram() throws IOException {
+            graphsCliAndCompare("analyze --node-degree --histogram-interval 10 %s", "node_degree_histogram.report");
+        }
+
         @Test
         public void compareNumContacts() throws IOException {
             graphsCliAndCompare("analyze --num-contacts %s", "num_contacts.report");
@@ -171,12 +387,239 @@ public class TestRWP {
         public void compareReachability() throws IOException {
             graphsCliAndCompare("analyze --reachability --arcs resampled_t1000_d5000 %s", "reachability.report");
         }
+
+        @Test
+        public void compareWeightedEdges() throws Exception {
+            // each level should match the contact time of every pair during
+            // each window, computed straight from the edges
+            final Store store = Store.open(new File(getStorePath()));
+            final EdgeTrace edges = store.getTrace("edges");
+            final Map<String, List<long[]>> contacts = scanContacts(edges);
+            final long tps = edges.ticsPerSecond();
+            for (final long w : new long[] { 10 * tps, 30 * tps, 90 * tps }) {
+                final WeightedEdgeTrace weighted = store.getTrace(WeightedEdgeTrace.defaultName("edges", w));
+                assertEquals(w, weighted.window());
+                for (long s = edges.minTime(); s < edges.maxTime(); s += w) {
+                    final long e = Math.min(s + w, edges.maxTime());
+                    final Set<String> expected = new HashSet<String>();
+                    for (final Map.Entry<String, List<long[]>> p : contacts.entrySet()) {
+                        long weight = 0;
+                        for (final long[] c : p.getValue())
+                            if (c[1] > s && c[0] < e)
+                                weight += Math.min(c[1], e) - Math.max(c[0], s);
+                        if (weight > 0)
+                            expected.add(p.getKey() + " " + weight);
+                    }
+                    final Set<String> found = new HashSet<String>();
+                    for (final WeightedEdge we : weighted.snapshot(s + w / 2))
+                        found.add(we.toString());
+                    assertEquals("window " + s + " of " + w, expected, found);
+                }
+            }
+            store.close();
+        }
+
+        @Test
+        public void compareJourneys() throws Exception {
+            // foremost journeys within one hop delay should match the direct
+            // reachability trace, counting arcs that only blink up at time t
+            final Store store = Store.open(new File(getStorePath()));
+            final EdgeTrace edges = store.getTrace("resampled");
+            final ReachabilityTrace reachable = store.getTrace("direct_t1000_d1000");
+            final JourneyFinder finder = new JourneyFinder(edges, 1000, edges.minTime(), edges.maxTime());
+            final List<Integer> nodes = new ArrayList<Integer>(finder.nodes());
+            for (long t = edges.minTime(); t < edges.maxTime(); t += 100000) {
+                final Set<String> arcs = new HashSet<String>();
+                final StatefulReader<ArcEvent, Arc> reader = reachable.getReader();
+                reader.seek(t);
+                for (final Arc a : reader.referenceState())
+                    arcs.add(a.toString());
+                final Set<String> blinks = new HashSet<String>();
+                while (reader.hasNext() && reader.nextTime() == t)
+                    for (final ArcEvent aev : reader.next())
+                        if (aev.isUp()) {
+                            arcs.add(aev.arc().toString());
+                            blinks.add(aev.arc().toString());
+                        } else
+                            arcs.remove(aev.arc().toString());
+                arcs.addAll(blinks);
+                reader.close();
+                final Set<String> journeys = new HashSet<String>();
+                for (final JourneyFinder.Journeys j : finder.foremost(nodes, t))
+                    for (final Integer id : nodes)
+                        if (!id.equals(j.source()) && j.reaches(id) && j.arrival(id) - t <= 1000)
+                            journeys.add(j.source() + " " + id);
+                assertEquals("journeys at " + t, arcs, journeys);
+            }
+            store.close();
+        }
+
+        @Test
+        public void compareFastestJourneys() throws Exception {
+            // fastest journeys from a source to all destinations at once
+            // should match those computed pair by pair
+            final Store store = Store.open(new File(getStorePath()));
+            final EdgeTrace edges = store.getTrace("resampled");
+            final JourneyFinder finder = new JourneyFinder(edges, 1000, edges.minTime(), edges.maxTime());
+            final List<Integer> nodes = new ArrayList<Integer>(finder.nodes());
+            int n_reached = 0;
+            for (long t = edges.minTime(); t < edges.maxTime(); t += 60000)
+                for (final Integer src : nodes) {
+                    final Map<Integer, long[]> fastest = finder.fastest(src, nodes, t);
+                    for (final Integer dst : nodes) {
+                        final long[] journey = finder.fastest(src, dst, t);
+                        assertEquals(journey == null, !fastest.containsKey(dst));
+                        if (journey != null) {
+                            assertEquals(journey[0], fastest.get(dst)[0]);
+                            assertEquals(journey[1], fastest.get(dst)[1]);
+                            n_reached++;
+                        }
+                    }
+                }
+            assertTrue(n_reached > nodes.size());
+            store.close();
+        }
+    }
+
+    public static class CompareIndexes {
+
+        @Test
+        public void compareContactIndex() throws Exception {
+            // every query should agree with a scan of the edge trace
+            final Store store = Store.open(new File(getStorePath()));
+            final EdgeTrace edges = store.getTrace("edges");
+            final Map<String, List<long[]>> contacts = scanContacts(edges);
+            final ContactIndex index = edges.contactIndex();
+            assertEquals(contacts.size(), index.numPairs());
+            final long min_time = edges.minTime(), max_time = edges.maxTime();
+            final long window = (max_time - min_time) / 13;
+            for (final Map.Entry<String, List<long[]>> e : contacts.entrySet()) {
+                final String[] ids = e.getKey().split(" ");
+                final int id1 = Integer.parseInt(ids[0]), id2 = Integer.parseInt(ids[1]);
+                final List<long[]> intervals = e.getValue();
+                assertEquals(intervals.size(), index.numContacts(id2, id1));
+                long total = 0;
+                for (final long[] c : intervals)
+                    total += c[1] - c[0];
+                assertEquals(total, index.contactTime(id1, id2));
+                for (long t = min_time - 1000; t <= max_time; t += 997) {
+                    boolean in_contact = false;
+                    final List<String> overlaps = new ArrayList<String>();
+                    long overlap_time = 0;
+                    for (final long[] c : intervals) {
+                        in_contact |= (c[0] <= t && t < c[1]);
+                        if (c[1] > t && c[0] < t + window) {
+                            overlaps.add(c[0] + "-" + c[1]);
+                            overlap_time += Math.min(c[1], t + window) - Math.max(c[0], t);
+                        }
+                    }
+                    assertEquals(in_contact, index.inContact(id1, id2, t));
+                    final List<String> found = new ArrayList<String>();
+                    for (final long[] c : index.contacts(id1, id2, t, t + window))
+                        found.add(c[0] + "-" + c[1]);
+                    assertEquals(overlaps, found);
+                    assertEquals(overlap_time, index.contactTime(id1, id2, t, t + window));
+                }
+            }
+            store.close();
+
+            // copied traces keep their index
+            cli("cp " + getStorePath() + " " + getCopyStorePath() + " edges");
+            final Store copy = Store.open(new File(getCopyStorePath()));
+            final EdgeTrace copied_edges = copy.getTrace("edges");
+            assertTrue(copied_edges.hasContactIndex());
+            assertEquals(index.numPairs(), copied_edges.contactIndex().numPairs());
+            copy.close();
+        }
+    }
+
+    private static void writeGroups(String name, String fileName) throws Exception {
+        final Store store = Store.open(new File(getStorePath()));
+        final PrintStream out = new PrintStream(new FileOutputStream(new File(getStorePath() + "/" + fileName)));
+        final GroupTrace groups = store.getTrace(name);
+        final GroupTrace.Updater updater = new GroupTrace.Updater();
+        final StatefulReader<GroupEvent, Group> reader = groups.getReader();
+        reader.seek(groups.minTime());
+        updater.setState(reader.referenceState());
+        out.println(groups.minTime() + " " + members(updater));
+        while (reader.hasNext()) {
+            final long time = reader.nextTime();
+            for (final GroupEvent gev : reader.next())
+                updater.handleEvent(time, gev);
+            out.println(time + " " + members(updater));
+        }
+        reader.close();
+        out.close();
+        store.close();
+    }
+
+    private static List<String> readArcEvents(ArcTrace arcs, Set<Integer> skipBlocksNotContaining) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final StatefulReader<ArcEvent, Arc> reader = arcs.getReader();
+        reader.skipBlocksNotContaining(skipBlocksNotContaining);
+        reader.seek(arcs.minTime());
+        while (reader.hasNext()) {
+            final long time = reader.nextTime();
+            for (final ArcEvent aev : reader.next())
+                lines.add(time + " " + aev);
+        }
+        reader.close();
+        return lines;
+    }
+
+    private static String members(GroupTrace.Updater updater) {
+        final Set<Integer> members = new TreeSet<Integer>();
+        for (final Group g : updater.states())
+            members.addAll(g.members());
+        return members.toString();
+    }
+
+    private static Map<String, List<long[]>> scanContacts(EdgeTrace edges) throws IOException {
+        final Map<String, List<long[]>> contacts = new HashMap<String, List<long[]>>();
+        final Map<String, Long> active = new HashMap<String, Long>();
+        final StatefulReader<EdgeEvent, Edge> reader = edges.getReader();
+        reader.seek(edges.minTime());
+        for (final Edge e : reader.referenceState())
+            active.put(e.id1 + " " + e.id2, edges.minTime());
+        while (reader.hasNext()) {
+            final long time = reader.nextTime();
+            for (final EdgeEvent eev : reader.next()) {
+                final String key = eev.edge().id1 + " " + eev.edge().id2;
+                if (eev.isUp()) {
+                    if (!active.containsKey(key))
+                        active.put(key, time);
+                } else if (active.containsKey(key))
+                    addInterval(contacts, key, active.remove(key), time);
+            }
+        }
+        reader.close();
+        for (final Map.Entry<String, Long> e : active.entrySet())
+            addInterval(contacts, e.getKey(), e.getValue(), edges.maxTime());
+        return contacts;
+    }
+
+    private static void addInterval(Map<String, List<long[]>> contacts, String key, long begin, long end) {
+        if (!contacts.containsKey(key))
+            contacts.put(key, new ArrayList<long[]>());
+        contacts.get(key).add(new long[] { begin, end });
     }
 
     private static String getStorePath() {
         return "target/test-data/rwp";
     }
 
+    private static String getCopyStorePath() {
+        return "target/test-data/rwp-copy";
+    }
+
+    private static String getBitSetsStorePath() {
+        return "target/test-data/rwp-bitsets";
+    }
+
+    private static String getCliquesStorePath() {
+        return "target/test-data/rwp-cliques";
+    }
+
     private static void cli(String cmd) throws IOException {
         CLI.main(cmd.split(" "));
     }
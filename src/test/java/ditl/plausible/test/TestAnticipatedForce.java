@@ -0,0 +1,133 @@
+package ditl.plausible.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ditl.graphs.Edge;
+import ditl.graphs.Point;
+import ditl.plausible.InferredNode;
+import ditl.plausible.Node;
+import ditl.plausible.WindowedEdge;
+import ditl.plausible.WindowedEdgeEvent;
+import ditl.plausible.forces.AnticipatedForce;
+
+public class TestAnticipatedForce {
+
+    private final static double K = 50, alpha = 2, vmax = 10, range = 20, epsilon = 1, tau = 100, lambda = 5;
+    private final static long tps = 1000;
+    private final static long time = 100000;
+
+    @Test
+    public void compareWithAllPairs() throws Exception {
+        // cutoffs 0 and below are the edge cases of the grid
+        for (final double cutoff : new double[] { 30, 7, -30, 0 })
+            compare(cutoff, new Random(0));
+    }
+
+    private void compare(double cutoff, Random rng) throws Exception {
+        final int n = 300;
+        final AnticipatedForce force = new AnticipatedForce(K, alpha, vmax, range, epsilon, tau, cutoff, lambda, tps);
+        final List<Node> nodes = new ArrayList<Node>();
+        final double w = Math.sqrt(n) * 25;
+        for (int i = 0; i < n; ++i) {
+            final InferredNode node = new InferredNode(i);
+            // include negative coordinates
+            node.currentPosition().x = rng.nextDouble() * w - 40;
+            node.currentPosition().y = rng.nextDouble() * w - 40;
+            node.nextPosition().x = node.currentPosition().x + rng.nextGaussian();
+            node.nextPosition().y = node.currentPosition().y + rng.nextGaussian();
+            nodes.add(node);
+            force.nodeMoved(node);
+        }
+
+        // Edge has no hashCode, so the references are keyed by string
+        final List<Edge> edges = new ArrayList<Edge>();
+        final Map<String, WindowedEdge> windows = new HashMap<String, WindowedEdge>();
+        final Set<String> connected = new HashSet<String>();
+        for (int k = 0; k < n * 3; ++k) {
+            final int a = rng.nextInt(n), b = rng.nextInt(n);
+            if (a == b)
+                continue;
+            final Edge e = new Edge(a, b);
+            final WindowedEdge we = new WindowedEdge(e);
+            we.handleEvent(new WindowedEdgeEvent(e, WindowedEdgeEvent.Type.PREVUP, rng.nextInt((int) time)));
+            we.handleEvent(new WindowedEdgeEvent(e, WindowedEdgeEvent.Type.PREVDOWN, rng.nextInt((int) time)));
+            we.handleEvent(new WindowedEdgeEvent(e, WindowedEdgeEvent.Type.NEXTUP, time + rng.nextInt((int) time)));
+            we.handleEvent(new WindowedEdgeEvent(e, WindowedEdgeEvent.Type.NEXTDOWN, time + rng.nextInt((int) time)));
+            if (windows.put(e.toString(), we) == null && rng.nextBoolean()) {
+                edges.add(e);
+                connected.add(e.toString());
+            }
+        }
+        force.edgeListener().handle(0, edges);
+        force.windowedEdgesListener().handle(0, windows.values());
+
+        int n_checks = 0;
+        for (int round = 0; round < 3; ++round) {
+            // move some nodes across cells and remove one
+            for (int i = 0; i < n / 10; ++i) {
+                final Node node = nodes.get(rng.nextInt(nodes.size()));
+                node.currentPosition().x += rng.nextGaussian() * 20;
+                node.currentPosition().y += rng.nextGaussian() * 20;
+                force.nodeMoved(node);
+            }
+            force.nodeRemoved(nodes.remove(rng.nextInt(nodes.size())));
+            for (final Node node : nodes) {
+                final Point f = force.apply(time, (InferredNode) node);
+                final Point ref = allPairs(cutoff, (InferredNode) node, nodes, connected, windows);
+                final double tol = 1e-9 * (1 + Math.max(Math.abs(ref.x), Math.abs(ref.y)));
+                assertEquals(ref.x, f.x, tol);
+                assertEquals(ref.y, f.y, tol);
+                n_checks++;
+            }
+        }
+        assertTrue(n_checks > n);
+    }
+
+    // the force from every other node, without the grid
+    private Point allPairs(double cutoff, InferredNode node, List<Node> nodes, Set<String> connected,
+            Map<String, WindowedEdge> windows) {
+        final double G = K * Math.pow(epsilon + 1, alpha) * range * (1 - lambda / range);
+        final Point f = new Point(0, 0);
+        final Point r = node.nextPosition();
+        for (final Node other : nodes) {
+            if (other == node)
+                continue;
+            final Point or = other.currentPosition();
+            final double dx = r.x - or.x;
+            final double dy = r.y - or.y;
+            final double d2 = dx * dx + dy * dy;
+            final double d = Math.sqrt(d2);
+            final String e = new Edge(node.id(), other.id()).toString();
+            if (d2 < cutoff * cutoff) {
+                double dt = 0;
+                if (connected.contains(e))
+                    dt = (double) windows.get(e).minUpTime(time) / (double) tps;
+                final double F = G / Math.pow(epsilon + (d + vmax * dt) / range, alpha);
+                f.x += F * dx / d;
+                f.y += F * dy / d;
+            }
+            if (connected.contains(e)) {
+                final double F = K * (d - lambda);
+                f.x += -F * dx / d;
+                f.y += -F * dy / d;
+            } else if (windows.containsKey(e)) {
+                final double dt = (double) windows.get(e).minDownTime(time) / (double) tps;
+                final double F = K * (d - lambda) * Math.exp(-vmax * dt / tau);
+                f.x += -F * dx / d;
+                f.y += -F * dy / d;
+            }
+        }
+        return f;
+    }
+}
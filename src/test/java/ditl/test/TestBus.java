@@ -0,0 +1,85 @@
+package ditl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ditl.Bus;
+import ditl.Listener;
+import ditl.Matcher;
+import ditl.WheelBus;
+
+public class TestBus {
+
+    static Listener<Integer> recorder(final List<String> lines) {
+        return new Listener<Integer>() {
+            @Override
+            public void handle(long time, Collection<Integer> events) {
+                lines.add(time + " " + events);
+            }
+        };
+    }
+
+    static Matcher<Integer> is(final Integer id) {
+        return new Matcher<Integer>() {
+            @Override
+            public boolean matches(Integer item) {
+                return item.equals(id);
+            }
+        };
+    }
+
+    @Test
+    public void wheelMatchesTreeMap() throws IOException {
+        final long[] scales = { 1, 100, 1000, 100000, 1L << 20, 1L << 31, 1L << 40 };
+        final Random rng = new Random(0);
+        final List<String> expected = new ArrayList<String>();
+        final List<String> got = new ArrayList<String>();
+        final Bus<Integer> bus = new Bus<Integer>();
+        final WheelBus<Integer> wheel = new WheelBus<Integer>();
+        bus.addListener(recorder(expected));
+        wheel.addListener(recorder(got));
+        final Map<Integer, WheelBus<Integer>.Timer> timers = new HashMap<Integer, WheelBus<Integer>.Timer>();
+        long time = -5000;
+        int id = 0;
+        for (int step = 0; step < 20000; ++step) {
+            final int op = rng.nextInt(10);
+            if (op < 6) {
+                final long scale = scales[rng.nextInt(scales.length)];
+                // a few events are queued slightly in the past
+                final long t = time + (long) (rng.nextDouble() * scale) - (rng.nextInt(20) == 0 ? 3 : 0);
+                bus.queue(t, id);
+                timers.put(id, wheel.schedule(t, id));
+                ++id;
+            } else if (op < 8 && id > 0) {
+                final Integer victim = rng.nextInt(id);
+                bus.removeFromQueueAfterTime(Long.MIN_VALUE, is(victim));
+                timers.get(victim).cancel();
+                assertFalse(timers.get(victim).isPending());
+            } else if (op == 8 && id > 0) {
+                final Integer victim = rng.nextInt(id);
+                assertEquals(bus.removeFromQueueAfterTime(time, is(victim)),
+                        wheel.removeFromQueueAfterTime(time, is(victim)));
+            } else {
+                time += (long) (rng.nextDouble() * scales[rng.nextInt(4)]);
+                bus.flush(time);
+                wheel.flush(time);
+            }
+            assertEquals(bus.hasNextEvent(), wheel.hasNextEvent());
+            if (bus.hasNextEvent())
+                assertEquals(bus.nextEventTime(), wheel.nextEventTime());
+        }
+        bus.flush();
+        wheel.flush();
+        assertEquals(expected, got);
+    }
+}
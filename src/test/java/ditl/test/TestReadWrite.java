@@ -1,26 +1,35 @@
 package ditl.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import ditl.MemoryStore;
+import ditl.NodeIndex;
 import ditl.Reader;
 import ditl.SeekMap;
 import ditl.StateUpdater;
+import ditl.StateVisitor;
 import ditl.StatefulReader;
 import ditl.StatefulTrace;
 import ditl.StatefulWriter;
+import ditl.Store;
 import ditl.Trace;
 import ditl.WritableStore;
 import ditl.Writer;
@@ -229,5 +238,169 @@ public class TestReadWrite {
             gen.getNextEvents(param[1]);
         }
         reader.close();
+
+        // test batch states
+        gen = new StatefulEventGenerator(1000);
+        final long[] times = new long[simpleTestCase.length];
+        final int[] sizes = new int[simpleTestCase.length];
+        for (int k = 0; k < simpleTestCase.length; ++k) {
+            times[k] = simpleTestCase[k][0];
+            sizes[k] = gen.updater.states().size();
+            gen.getNextEvents(simpleTestCase[k][1]);
+        }
+        reader = trace.getReader();
+        reader.statesAt(times, new StateVisitor<Arc>() {
+            int k = 0;
+
+            @Override
+            public void visit(long time, Set<Arc> state) {
+                assertEquals(times[k], time);
+                assertEquals(sizes[k], state.size());
+                k++;
+            }
+        });
+        reader.close();
+    }
+
+    @Test
+    public void testStateCache() throws Exception {
+        // enough events for the writer to lay down several snapshots
+        StatefulTrace<ArcEvent, Arc> trace = store.newTrace("cached", ArcTrace.class, true);
+        StatefulWriter<ArcEvent, Arc> writer = trace.getWriter();
+        StatefulEventGenerator gen = new StatefulEventGenerator(1000);
+        writer.setInitState(0, gen.updater.states());
+        for (int t = 1; t <= 300; ++t)
+            writer.handle(t, gen.getNextEvents(100));
+        writer.close();
+
+        store.setStateCacheSize(1 << 20);
+        Store plain = Store.open(new File(getStorePath()));
+        assertEquals(0, plain.stateCacheSize());
+        StatefulTrace<ArcEvent, Arc> plain_trace = plain.getTrace("cached");
+        StatefulReader<ArcEvent, Arc> reader = trace.getReader();
+        StatefulReader<ArcEvent, Arc> ref_reader = plain_trace.getReader();
+        List<Long> times = new LinkedList<Long>(Arrays.asList(150L, 120L, 150L, 160L, 250L, 150L, 99L, 250L, 251L, 0L, 300L));
+        Random rng = new Random(0);
+        for (int i = 0; i < 100; ++i)
+            times.add((long) rng.nextInt(301));
+        for (long t : times) {
+            reader.seek(t);
+            ref_reader.seek(t);
+            assertEquals(ref_reader.referenceState().size(), reader.referenceState().size());
+            assertTrue(ref_reader.referenceState().containsAll(reader.referenceState()));
+            assertEquals(ref_reader.hasNext(), reader.hasNext());
+            if (ref_reader.hasNext()) {
+                assertEquals(ref_reader.nextTime(), reader.nextTime());
+                assertEquals(ref_reader.next().toString(), reader.next().toString());
+            }
+        }
+        reader.close();
+        ref_reader.close();
+        plain.close();
+        store.setStateCacheSize(Store.defaultStateCacheSize);
+    }
+
+    @Test
+    public void testSkipBlocks() throws Exception {
+        store.setBlockIndexing(true);
+        Trace<Arc> trace = store.newTrace("skip", BeaconTrace.class, true);
+        Writer<Arc> writer = trace.getWriter();
+        for (int t = 0; t < 100; ++t) {
+            writer.handle(t, Collections.singleton(new Arc(t, t + 1)));
+        }
+        writer.close();
+        store.setBlockIndexing(false);
+        assertTrue(trace.hasBlockIndex());
+
+        Reader<Arc> reader = trace.getReader();
+        reader.skipBlocksNotContaining(Collections.singleton(42));
+        reader.seek(0);
+        assertTrue(reader.hasNext());
+        assertEquals(41, reader.nextTime());
+        assertTrue(reader.next().get(0).equals(new Arc(41, 42)));
+        assertTrue(reader.hasNext());
+        assertEquals(42, reader.nextTime());
+        assertTrue(reader.next().get(0).equals(new Arc(42, 43)));
+        assertFalse(reader.hasNext());
+        reader.close();
+    }
+
+    @Test
+    public void testNodeIndex() throws Exception {
+        Trace<Arc> trace = store.newTrace("nodes", BeaconTrace.class, true);
+        Writer<Arc> writer = trace.getWriter();
+        for (int t = 0; t < 100; ++t) {
+            List<Arc> arcs = new LinkedList<Arc>();
+            arcs.add(new Arc(t, t + 1));
+            arcs.add(new Arc(t + 1, t + 2));
+            writer.handle(t, arcs);
+        }
+        writer.close();
+        assertFalse(trace.hasNodeIndex());
+        NodeIndex.build(trace);
+        assertTrue(trace.hasNodeIndex());
+
+        Reader<Arc> reader = trace.getReader();
+        reader.selectNodes(Collections.singleton(42));
+        reader.seek(0);
+        int n_blocks = 0;
+        while (reader.hasNext()) {
+            for (Arc a : reader.next())
+                assertTrue(a.from == 42 || a.to == 42);
+            n_blocks++;
+        }
+        assertEquals(3, n_blocks);
+        reader.close();
+    }
+
+    @Test
+    public void testMemoryStore() throws Exception {
+        // the info and index files fit in 16kB, but the trace file has to
+        // spill to disk
+        MemoryStore tier = new MemoryStore(store, 16 << 10, null);
+        StatefulTrace<ArcEvent, Arc> trace = tier.newTrace("tier", ArcTrace.class, true);
+        StatefulWriter<ArcEvent, Arc> writer = trace.getWriter();
+        StatefulEventGenerator gen = new StatefulEventGenerator(1000);
+        writer.setInitState(0, gen.updater.states());
+        for (int[] param : simpleTestCase)
+            writer.handle(param[0], gen.getNextEvents(param[1]));
+        writer.close();
+        assertTrue(tier.isOwnTrace("tier"));
+        assertFalse(store.hasTrace("tier"));
+        assertTrue(tier.usedBytes() > 0 && tier.usedBytes() <= 16 << 10);
+
+        for (int round = 0; round < 2; ++round) {
+            trace = tier.getTrace("tier");
+            gen = new StatefulEventGenerator(1000);
+            StatefulReader<ArcEvent, Arc> reader = trace.getReader();
+            reader.seek(trace.minTime());
+            for (int[] param : simpleTestCase) {
+                assertTrue(reader.hasNext());
+                assertEquals(param[0], reader.nextTime());
+                assertEquals(gen.getNextEvents(param[1]).size(), reader.next().size());
+            }
+            assertFalse(reader.hasNext());
+            reader.close();
+            tier.persistTrace("tier");
+            assertFalse(tier.isOwnTrace("tier"));
+            assertTrue(store.hasTrace("tier"));
+        }
+        tier.deleteTrace("tier");
+        assertFalse(store.hasTrace("tier"));
+        tier.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testMemoryStoreWithoutParent() throws Exception {
+        MemoryStore tier = new MemoryStore(1 << 10);
+        try {
+            StatefulWriter<ArcEvent, Arc> writer = tier.newTrace("orphan", ArcTrace.class, true).getWriter();
+            writer.setInitState(0, Collections.<Arc> emptyList());
+            writer.close();
+            assertTrue(tier.isOwnTrace("orphan"));
+            tier.persistTrace("orphan");
+        } finally {
+            tier.close();
+        }
     }
 }